@@ -0,0 +1,61 @@
+package com.balivishnu.mymedalert;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adherence on a dashboard render: recording a dose and summarizing a month for one medicine,
+ * against months to years of history. Both should stay flat as history grows.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AdherenceAnalyticsBenchmark {
+    private static final long START = 1_700_000_000_000L;
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final long DAY = 24 * HOUR;
+
+    @Param({"1000", "30000"})
+    public int events;
+
+    private AdherenceAnalytics analytics;
+    private long lastTime;
+    private long monthFrom;
+
+    @Setup
+    public void setUp() {
+        analytics = new AdherenceAnalytics(ZoneId.of("UTC"));
+        for (int i = 0; i < events; i++) {
+            analytics.record(event(START + i * 3 * HOUR, i));
+        }
+        lastTime = START + events * 3 * HOUR;
+        monthFrom = START + (events / 2) * 3 * HOUR;
+    }
+
+    @Benchmark
+    public void record() {
+        lastTime += 3 * HOUR;
+        analytics.record(event(lastTime, (int) (lastTime / HOUR)));
+    }
+
+    @Benchmark
+    public AdherenceAnalytics.Summary summarizeMonth() {
+        return analytics.summarize(AdherenceAnalytics.Scope.MEDICINE, "med-1", monthFrom, monthFrom + 30 * DAY);
+    }
+
+    private static DoseEvent event(long time, int i) {
+        int medicine = i % 5;
+        DoseEvent.Status status = i % 17 == 0 ? DoseEvent.Status.MISSED : DoseEvent.Status.TAKEN;
+        return new DoseEvent(time, time - (i % 7) * 10 * 60 * 1000L, medicine, "med-" + medicine,
+                "Medicine " + medicine, "Patient " + (medicine % 2), "1 tablet", 1f, status);
+    }
+}
@@ -0,0 +1,63 @@
+package com.balivishnu.mymedalert;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Payload index on the fire path: writing a grouped alarm's payload and resolving it by ID.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AlarmPayloadIndexBenchmark {
+    private File file;
+    private AlarmPayloadIndex index;
+    private AlarmGroup group;
+    private long payloadId;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = File.createTempFile("alarm_payloads", ".idx");
+        index = new AlarmPayloadIndex(file);
+        List<AlarmRecord> items = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            items.add(new AlarmRecord(i + 1, "med-" + i, "Medicine " + i, "1 tablet", "Patient",
+                    1_700_000_000_000L));
+        }
+        group = new AlarmGroup(items);
+        payloadId = index.put(group.toBytes());
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Benchmark
+    public long put() {
+        return index.put(group.toBytes());
+    }
+
+    @Benchmark
+    public AlarmGroup resolve() throws IOException {
+        // Keep the looked-up payload live while put() laps the ring in the same fork
+        byte[] payload = index.get(payloadId);
+        if (payload == null) {
+            payloadId = index.put(group.toBytes());
+            payload = index.get(payloadId);
+        }
+        return AlarmGroup.fromBytes(payload);
+    }
+}
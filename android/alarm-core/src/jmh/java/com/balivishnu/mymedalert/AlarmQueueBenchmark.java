@@ -0,0 +1,77 @@
+package com.balivishnu.mymedalert;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scheduling throughput of the in-memory alarm heap: bulk-loading a dose set, draining it in
+ * coalesced batches the way AlarmReceiver does, and rescheduling with replaced trigger times.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AlarmQueueBenchmark {
+    private static final long START = 1_700_000_000_000L;
+    private static final long MINUTE = 60_000L;
+
+    @Param({"10000"})
+    public int doses;
+
+    private long[] triggerTimes;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        triggerTimes = new long[doses];
+        for (int i = 0; i < doses; i++) {
+            // Spread over a month, on whole minutes like real dose times
+            triggerTimes[i] = START + random.nextInt(30 * 24 * 60) * MINUTE;
+        }
+    }
+
+    @Benchmark
+    public int scheduleAll() {
+        AlarmQueue queue = new AlarmQueue();
+        for (int i = 0; i < doses; i++) {
+            queue.add(i + 1, triggerTimes[i]);
+        }
+        return queue.size();
+    }
+
+    @Benchmark
+    public int scheduleAndDrain() {
+        AlarmQueue queue = new AlarmQueue();
+        for (int i = 0; i < doses; i++) {
+            queue.add(i + 1, triggerTimes[i]);
+        }
+        int fired = 0;
+        while (!queue.isEmpty()) {
+            List<Integer> due = queue.pollDue(queue.peekTriggerTime() + MINUTE);
+            fired += due.size();
+        }
+        return fired;
+    }
+
+    @Benchmark
+    public long rescheduleAll() {
+        AlarmQueue queue = new AlarmQueue();
+        for (int i = 0; i < doses; i++) {
+            queue.add(i + 1, triggerTimes[i]);
+        }
+        // Replacing every entry leaves stale heap nodes behind until the queue rebuilds
+        for (int i = 0; i < doses; i++) {
+            queue.add(i + 1, triggerTimes[i] + MINUTE);
+        }
+        return queue.peekTriggerTime();
+    }
+}
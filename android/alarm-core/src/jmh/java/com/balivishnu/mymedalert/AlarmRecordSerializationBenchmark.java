@@ -0,0 +1,104 @@
+package com.balivishnu.mymedalert;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of persisting and restoring the dose set: record encoding on its own, and the journal's
+ * batched append plus the replay a cold process does on first access.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AlarmRecordSerializationBenchmark {
+    @Param({"10000"})
+    public int doses;
+
+    private List<AlarmRecord> records;
+    private byte[] encoded;
+    private File dir;
+
+    @Setup
+    public void setUp() throws IOException {
+        RecurrenceRule rule = RecurrenceRule.daily(Arrays.asList(LocalTime.of(8, 0), LocalTime.of(20, 0)),
+                LocalDate.of(2024, 1, 1), LocalDate.of(2024, 6, 30), "1 tablet",
+                Collections.singletonList(new RecurrenceRule.TaperStep(90, "1/2 tablet")));
+        records = new ArrayList<>(doses);
+        for (int i = 0; i < doses; i++) {
+            records.add(new AlarmRecord(i + 1, "med-" + i, "Medicine " + i, "1 tablet", "Patient " + (i % 4),
+                    1_700_000_000_000L + i * 60_000L, i % 2 == 0 ? rule : null));
+        }
+        encoded = encode();
+    }
+
+    @Setup(Level.Invocation)
+    public void createDir() throws IOException {
+        dir = Files.createTempDirectory("alarm-journal").toFile();
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteDir() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(doses * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (AlarmRecord record : records) {
+            record.writeTo(out);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public int decode() throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+        int count = 0;
+        for (int i = 0; i < doses; i++) {
+            count += AlarmRecord.readFrom(in).alarmId != 0 ? 1 : 0;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int journalWriteAndReplay() throws IOException {
+        AlarmJournal journal = new AlarmJournal(dir);
+        journal.putAll(records);
+        journal.close();
+        AlarmJournal reopened = new AlarmJournal(dir);
+        int size = reopened.size();
+        reopened.close();
+        return size;
+    }
+}
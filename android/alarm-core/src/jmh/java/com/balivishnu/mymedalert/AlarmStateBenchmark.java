@@ -0,0 +1,60 @@
+package com.balivishnu.mymedalert;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Alarm-state transitions on the fire path: one full ring → dismiss cycle of the versioned state,
+ * and a burst of concurrent sessions queued and finished one after another.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AlarmStateBenchmark {
+    private AlarmGroup group;
+
+    @Setup
+    public void setUp() {
+        List<AlarmRecord> items = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            items.add(new AlarmRecord(i + 1, "med-" + i, "Medicine " + i, "1 tablet", "Patient",
+                    1_700_000_000_000L));
+        }
+        group = new AlarmGroup(items);
+    }
+
+    @Benchmark
+    public AlarmState ringAndDismiss() {
+        AlarmState state = AlarmState.IDLE;
+        if (state.phase.canMoveTo(AlarmState.Phase.RINGING)) {
+            state = state.next(AlarmState.Phase.RINGING, group);
+        }
+        if (state.phase.canMoveTo(AlarmState.Phase.DISMISSED)) {
+            state = state.next(AlarmState.Phase.DISMISSED, null);
+        }
+        return state;
+    }
+
+    @Benchmark
+    public int sessionBurst() {
+        AlarmSessionQueue sessions = new AlarmSessionQueue();
+        for (int i = 0; i < 8; i++) {
+            sessions.start(group, i, 0);
+        }
+        int finished = 0;
+        while (!sessions.isEmpty()) {
+            sessions.finish(sessions.current().sessionId, AlarmSession.Outcome.DISMISSED, 100);
+            finished++;
+        }
+        return finished;
+    }
+}
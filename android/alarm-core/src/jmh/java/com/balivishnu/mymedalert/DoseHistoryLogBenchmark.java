@@ -0,0 +1,75 @@
+package com.balivishnu.mymedalert;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dose history: appending a taken dose and reading one page of a day, against a year or more of
+ * history. Both should stay flat as history grows.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DoseHistoryLogBenchmark {
+    private static final long START = 1_700_000_000_000L;
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    // Eight doses a day: about a year and about four years of a household's history
+    @Param({"3000", "12000"})
+    public int events;
+
+    private File directory;
+    private DoseHistoryLog log;
+    private long lastTime;
+    private long dayFrom;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("dose_history").toFile();
+        log = new DoseHistoryLog(directory);
+        for (int i = 0; i < events; i++) {
+            log.append(event(START + i * 3 * HOUR));
+        }
+        lastTime = START + events * 3 * HOUR;
+        dayFrom = START + (events / 2) * 3 * HOUR;
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        log.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) file.delete();
+        }
+        directory.delete();
+    }
+
+    @Benchmark
+    public long append() throws IOException {
+        lastTime += 3 * HOUR;
+        return log.append(event(lastTime));
+    }
+
+    @Benchmark
+    public DoseHistoryLog.Page queryDay() throws IOException {
+        return log.query(dayFrom, dayFrom + 24 * HOUR, -1, 50);
+    }
+
+    private static DoseEvent event(long time) {
+        int medicine = (int) (time / HOUR % 5);
+        return new DoseEvent(time, time - 5 * 60 * 1000L, medicine, "med-" + medicine, "Medicine " + medicine,
+                "Patient " + (medicine % 2), "1 tablet", 1f, DoseEvent.Status.TAKEN);
+    }
+}
@@ -0,0 +1,79 @@
+package com.balivishnu.mymedalert;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Next-trigger computation: advancing a recurring course to its next occurrence after a fire,
+ * and finding the earliest trigger of a whole dose set after every course has advanced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RecurrenceBenchmark {
+    private static final ZoneId ZONE = ZoneId.of("Europe/Berlin");
+    private static final long NOW = LocalDate.of(2024, 3, 30).atTime(21, 0).atZone(ZONE).toInstant().toEpochMilli();
+
+    @Param({"10000"})
+    public int doses;
+
+    private RecurrenceRule daily;
+    private RecurrenceRule weekly;
+    private RecurrenceRule interval;
+    private RecurrenceRule[] rules;
+
+    @Setup
+    public void setUp() {
+        LocalDate start = LocalDate.of(2024, 1, 1);
+        daily = RecurrenceRule.daily(Arrays.asList(LocalTime.of(8, 0), LocalTime.of(14, 0), LocalTime.of(20, 0)),
+                start, null, "1 tablet",
+                Collections.singletonList(new RecurrenceRule.TaperStep(60, "1/2 tablet")));
+        weekly = RecurrenceRule.weekly(Arrays.asList(DayOfWeek.MONDAY, DayOfWeek.THURSDAY),
+                Collections.singletonList(LocalTime.of(9, 30)), start, null, "5 ml",
+                Collections.<RecurrenceRule.TaperStep>emptyList());
+        interval = RecurrenceRule.everyHours(6, LocalTime.of(6, 0), start, null, "1 capsule",
+                Collections.<RecurrenceRule.TaperStep>emptyList());
+        rules = new RecurrenceRule[]{daily, weekly, interval};
+    }
+
+    // NOW is the evening before a DST switch, so the next occurrence crosses it
+
+    @Benchmark
+    public RecurrenceRule.Occurrence nextDaily() {
+        return daily.nextOccurrence(NOW, ZONE);
+    }
+
+    @Benchmark
+    public RecurrenceRule.Occurrence nextWeekly() {
+        return weekly.nextOccurrence(NOW, ZONE);
+    }
+
+    @Benchmark
+    public RecurrenceRule.Occurrence nextInterval() {
+        return interval.nextOccurrence(NOW, ZONE);
+    }
+
+    @Benchmark
+    public long nextTriggerOfDoseSet() {
+        AlarmQueue queue = new AlarmQueue();
+        for (int i = 0; i < doses; i++) {
+            RecurrenceRule.Occurrence next = rules[i % rules.length].nextOccurrence(NOW + i * 1000L, ZONE);
+            queue.add(i + 1, next.triggerTime);
+        }
+        return queue.peekTriggerTime();
+    }
+}
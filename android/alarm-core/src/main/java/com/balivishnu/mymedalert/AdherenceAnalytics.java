@@ -0,0 +1,417 @@
+package com.balivishnu.mymedalert;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rolling adherence aggregates over the dose history, kept up to date as events are recorded.
+ *
+ * Every medicine, every patient and the history as a whole get a segment tree over calendar
+ * days. Each node holds the taken/missed/skipped/late counts and lateness total of its days, plus
+ * the runs of "perfect" days (at least one dose taken, none missed or skipped) at its start, at
+ * its end and anywhere inside. Recording an event updates one leaf and its ancestors, and any
+ * date range is summarized by merging O(log days) nodes, so neither depends on how much history
+ * there is. Days with nothing recorded count as zero and break a streak. The trees span at most
+ * {@link #MAX_DAYS} days; an event that would stretch them further is left out. Not thread-safe
+ * on its own; callers synchronize.
+ */
+public final class AdherenceAnalytics {
+    // A taken dose this much after its scheduled time counts as late
+    public static final long DEFAULT_LATE_THRESHOLD_MS = 30 * 60 * 1000L;
+    // About 89 years: enough for any real history while a bogus time cannot size a tree past a few MB
+    public static final int MAX_DAYS = 1 << 15;
+
+    public enum Scope {
+        ALL,
+        MEDICINE,
+        PATIENT
+    }
+
+    /**
+     * Aggregates for one scope and date range.
+     */
+    public static final class Summary {
+        public final long fromDay;
+        public final long toDay;
+        public int taken;
+        public int missed;
+        public int skipped;
+        public int late;
+        public long latenessTotalMs;
+        public int latenessCount;
+        // Perfect days ending at the last day of the range
+        public int currentStreak;
+        public int longestStreak;
+
+        Summary(long fromDay, long toDay) {
+            this.fromDay = fromDay;
+            this.toDay = toDay;
+        }
+
+        public long getMeanLatenessMs() {
+            return latenessCount > 0 ? latenessTotalMs / latenessCount : 0;
+        }
+
+        /**
+         * Taken doses as a share of all recorded doses, 0..1; 0 when nothing was recorded.
+         */
+        public double getAdherence() {
+            int total = taken + missed + skipped;
+            return total > 0 ? (double) taken / total : 0;
+        }
+    }
+
+    private final ZoneId zone;
+    private final long lateThresholdMs;
+    private final DayTree all = new DayTree();
+    private final Map<String, DayTree> medicines = new HashMap<>();
+    private final Map<String, DayTree> patients = new HashMap<>();
+
+    public AdherenceAnalytics(ZoneId zone) {
+        this(zone, DEFAULT_LATE_THRESHOLD_MS);
+    }
+
+    public AdherenceAnalytics(ZoneId zone, long lateThresholdMs) {
+        this.zone = zone;
+        this.lateThresholdMs = lateThresholdMs;
+    }
+
+    /**
+     * Adds one event to every scope it belongs to. O(log days).
+     *
+     * @return false, recording nothing, when the event lies too far from the others to be covered
+     */
+    public boolean record(DoseEvent event) {
+        long day = dayOf(event.eventTime);
+        // Every other tree covers a subset of the days of this one, so they fit when it does
+        if (!all.add(day, event)) {
+            return false;
+        }
+        tree(medicines, medicineKey(event)).add(day, event);
+        tree(patients, event.patientName).add(day, event);
+        return true;
+    }
+
+    /**
+     * Aggregates for events with {@code from <= eventTime < to}, by whole days in the analytics'
+     * time zone. {@code key} is the medicine ID or patient name; ignored for {@link Scope#ALL}.
+     * O(log days).
+     */
+    public Summary summarize(Scope scope, String key, long from, long to) {
+        long fromDay = dayOf(from);
+        long toDay = dayOf(to - 1) + 1;
+        Summary summary = new Summary(fromDay, toDay);
+        DayTree tree = treeFor(scope, key);
+        if (tree != null && fromDay < toDay) {
+            tree.query(fromDay, toDay, summary);
+        }
+        return summary;
+    }
+
+    /**
+     * One summary per day of the range, oldest first. O(days in range).
+     *
+     * @throws IllegalArgumentException when the range has more than {@link #MAX_DAYS} days
+     */
+    public List<Summary> daily(Scope scope, String key, long from, long to) {
+        long fromDay = dayOf(from);
+        long toDay = dayOf(to - 1) + 1;
+        if (toDay - fromDay > MAX_DAYS) {
+            throw new IllegalArgumentException("A daily breakdown covers at most " + MAX_DAYS + " days");
+        }
+        List<Summary> days = new ArrayList<>();
+        DayTree tree = treeFor(scope, key);
+        for (long day = fromDay; day < toDay; day++) {
+            Summary summary = new Summary(day, day + 1);
+            if (tree != null) {
+                tree.query(day, day + 1, summary);
+            }
+            days.add(summary);
+        }
+        return days;
+    }
+
+    public Set<String> getMedicineIds() {
+        return medicines.keySet();
+    }
+
+    public Set<String> getPatientNames() {
+        return patients.keySet();
+    }
+
+    public void clear() {
+        all.clear();
+        medicines.clear();
+        patients.clear();
+    }
+
+    private DayTree treeFor(Scope scope, String key) {
+        switch (scope) {
+            case MEDICINE:
+                return medicines.get(key != null ? key : "");
+            case PATIENT:
+                return patients.get(key != null ? key : "");
+            default:
+                return all;
+        }
+    }
+
+    private static String medicineKey(DoseEvent event) {
+        return !event.medicineId.isEmpty() ? event.medicineId : event.medicineName;
+    }
+
+    private DayTree tree(Map<String, DayTree> trees, String key) {
+        DayTree tree = trees.get(key);
+        if (tree == null) {
+            tree = new DayTree();
+            trees.put(key, tree);
+        }
+        return tree;
+    }
+
+    private long dayOf(long time) {
+        return Instant.ofEpochMilli(time).atZone(zone).toLocalDate().toEpochDay();
+    }
+
+    /**
+     * Bottom-up segment tree over the days [base, base + capacity), grown by doubling when an
+     * event falls outside, up to {@link #MAX_DAYS}. Node i covers capacity / highestOneBit(i) days;
+     * leaves start at capacity.
+     */
+    private final class DayTree {
+        private long base;
+        private int capacity;
+        private int[] taken;
+        private int[] missed;
+        private int[] skipped;
+        private int[] late;
+        private long[] latenessTotal;
+        private int[] latenessCount;
+        private int[] prefixRun;
+        private int[] suffixRun;
+        private int[] bestRun;
+
+        boolean add(long day, DoseEvent event) {
+            if (!ensureCovers(day)) {
+                return false;
+            }
+            int node = capacity + (int) (day - base);
+            switch (event.status) {
+                case TAKEN:
+                    taken[node]++;
+                    long lateness = event.getLatenessMs();
+                    if (event.scheduledTime > 0) {
+                        latenessTotal[node] += lateness;
+                        latenessCount[node]++;
+                    }
+                    if (lateness > lateThresholdMs) late[node]++;
+                    break;
+                case MISSED:
+                    missed[node]++;
+                    break;
+                default:
+                    skipped[node]++;
+                    break;
+            }
+            int run = taken[node] > 0 && missed[node] == 0 && skipped[node] == 0 ? 1 : 0;
+            prefixRun[node] = run;
+            suffixRun[node] = run;
+            bestRun[node] = run;
+            for (node >>= 1; node > 0; node >>= 1) {
+                pull(node);
+            }
+            return true;
+        }
+
+        void query(long fromDay, long toDay, Summary out) {
+            if (capacity == 0) return;
+            long lo = Math.max(fromDay, base);
+            long hi = Math.min(toDay, base + capacity);
+            if (lo >= hi) {
+                return;
+            }
+            // Left and right accumulators, merged in day order: [left][...][right]
+            Acc left = new Acc();
+            Acc right = new Acc();
+            int l = capacity + (int) (lo - base);
+            int r = capacity + (int) (hi - base);
+            while (l < r) {
+                if ((l & 1) == 1) left.append(this, l++);
+                if ((r & 1) == 1) right.prepend(this, --r);
+                l >>= 1;
+                r >>= 1;
+            }
+            left.append(right);
+            out.taken = left.taken;
+            out.missed = left.missed;
+            out.skipped = left.skipped;
+            out.late = left.late;
+            out.latenessTotalMs = left.latenessTotal;
+            out.latenessCount = left.latenessCount;
+            out.longestStreak = left.best;
+            // Days of the range past the tree's last day have nothing recorded
+            out.currentStreak = hi == toDay ? left.suffix : 0;
+        }
+
+        void clear() {
+            capacity = 0;
+        }
+
+        private void pull(int node) {
+            int a = node << 1;
+            int b = a | 1;
+            int half = length(a);
+            taken[node] = taken[a] + taken[b];
+            missed[node] = missed[a] + missed[b];
+            skipped[node] = skipped[a] + skipped[b];
+            late[node] = late[a] + late[b];
+            latenessTotal[node] = latenessTotal[a] + latenessTotal[b];
+            latenessCount[node] = latenessCount[a] + latenessCount[b];
+            prefixRun[node] = prefixRun[a] == half ? half + prefixRun[b] : prefixRun[a];
+            suffixRun[node] = suffixRun[b] == half ? half + suffixRun[a] : suffixRun[b];
+            bestRun[node] = Math.max(Math.max(bestRun[a], bestRun[b]), suffixRun[a] + prefixRun[b]);
+        }
+
+        private int length(int node) {
+            return capacity / Integer.highestOneBit(node);
+        }
+
+        private boolean ensureCovers(long day) {
+            if (capacity == 0) {
+                allocate(day, 64);
+                return true;
+            }
+            if (day >= base && day < base + capacity) {
+                return true;
+            }
+            long newBase = Math.min(base, day);
+            long span = Math.max(base + capacity, day + 1) - newBase;
+            if (span > MAX_DAYS) {
+                return false;
+            }
+            int newCapacity = capacity;
+            while (newCapacity < span) {
+                newCapacity <<= 1;
+            }
+            int[][] oldInts = {taken, missed, skipped, late, latenessCount};
+            long[] oldTotal = latenessTotal;
+            long oldBase = base;
+            int oldCapacity = capacity;
+            allocate(newBase, newCapacity);
+            int shift = (int) (oldBase - newBase);
+            for (int i = 0; i < oldCapacity; i++) {
+                int from = oldCapacity + i;
+                int to = capacity + shift + i;
+                taken[to] = oldInts[0][from];
+                missed[to] = oldInts[1][from];
+                skipped[to] = oldInts[2][from];
+                late[to] = oldInts[3][from];
+                latenessCount[to] = oldInts[4][from];
+                latenessTotal[to] = oldTotal[from];
+                int run = taken[to] > 0 && missed[to] == 0 && skipped[to] == 0 ? 1 : 0;
+                prefixRun[to] = run;
+                suffixRun[to] = run;
+                bestRun[to] = run;
+            }
+            for (int node = capacity - 1; node > 0; node--) {
+                pull(node);
+            }
+            return true;
+        }
+
+        private void allocate(long newBase, int newCapacity) {
+            base = newBase;
+            capacity = newCapacity;
+            int size = 2 * newCapacity;
+            taken = new int[size];
+            missed = new int[size];
+            skipped = new int[size];
+            late = new int[size];
+            latenessTotal = new long[size];
+            latenessCount = new int[size];
+            prefixRun = new int[size];
+            suffixRun = new int[size];
+            bestRun = new int[size];
+        }
+    }
+
+    /**
+     * A run of consecutive days being merged during a query.
+     */
+    private static final class Acc {
+        int length;
+        int taken;
+        int missed;
+        int skipped;
+        int late;
+        long latenessTotal;
+        int latenessCount;
+        int prefix;
+        int suffix;
+        int best;
+
+        void append(DayTree tree, int node) {
+            Acc other = of(tree, node);
+            append(other);
+        }
+
+        void prepend(DayTree tree, int node) {
+            Acc other = of(tree, node);
+            other.append(this);
+            copy(other);
+        }
+
+        void append(Acc next) {
+            if (next.length == 0) return;
+            if (length == 0) {
+                copy(next);
+                return;
+            }
+            int newPrefix = prefix == length ? length + next.prefix : prefix;
+            int newSuffix = next.suffix == next.length ? next.length + suffix : next.suffix;
+            best = Math.max(Math.max(best, next.best), suffix + next.prefix);
+            prefix = newPrefix;
+            suffix = newSuffix;
+            length += next.length;
+            taken += next.taken;
+            missed += next.missed;
+            skipped += next.skipped;
+            late += next.late;
+            latenessTotal += next.latenessTotal;
+            latenessCount += next.latenessCount;
+        }
+
+        private static Acc of(DayTree tree, int node) {
+            Acc acc = new Acc();
+            acc.length = tree.length(node);
+            acc.taken = tree.taken[node];
+            acc.missed = tree.missed[node];
+            acc.skipped = tree.skipped[node];
+            acc.late = tree.late[node];
+            acc.latenessTotal = tree.latenessTotal[node];
+            acc.latenessCount = tree.latenessCount[node];
+            acc.prefix = tree.prefixRun[node];
+            acc.suffix = tree.suffixRun[node];
+            acc.best = tree.bestRun[node];
+            return acc;
+        }
+
+        private void copy(Acc other) {
+            length = other.length;
+            taken = other.taken;
+            missed = other.missed;
+            skipped = other.skipped;
+            late = other.late;
+            latenessTotal = other.latenessTotal;
+            latenessCount = other.latenessCount;
+            prefix = other.prefix;
+            suffix = other.suffix;
+            best = other.best;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.balivishnu.mymedalert;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Doses that fire together as one alarm: one service start, one notification, one sound and
+ * one AlarmActivity listing every item.
+ * Travels between AlarmReceiver, AlarmService and AlarmActivity through AlarmIntents, encoded
+ * into the payload index.
+ */
+public final class AlarmGroup {
+    private final List<AlarmRecord> items;
+
+    public AlarmGroup(List<AlarmRecord> items) {
+        this.items = Collections.unmodifiableList(new ArrayList<>(items));
+    }
+
+    public static AlarmGroup of(String medicineName, String dosage, String patientName) {
+        return new AlarmGroup(Collections.singletonList(
+                new AlarmRecord(-1, "", medicineName, dosage, patientName, 0)));
+    }
+
+    public List<AlarmRecord> getItems() {
+        return items;
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    /**
+     * Single medicine name, or e.g. "3 medicines" for a grouped alarm.
+     */
+    public String getTitle() {
+        if (items.size() == 1) {
+            return orDefault(items.get(0).medicineName, "Medicine");
+        }
+        return items.size() + " medicines";
+    }
+
+    public String getMedicineSummary() {
+        List<String> names = new ArrayList<>(items.size());
+        for (AlarmRecord item : items) {
+            names.add(orDefault(item.medicineName, "Medicine"));
+        }
+        return join(names);
+    }
+
+    public String getDosageSummary() {
+        if (items.size() == 1) {
+            return orDefault(items.get(0).dosage, "Unknown dosage");
+        }
+        return items.size() + " doses";
+    }
+
+    /**
+     * The sound of the earliest dose that has one, empty for the default alarm sound.
+     */
+    public String getSound() {
+        for (AlarmRecord item : items) {
+            if (!item.sound.isEmpty()) return item.sound;
+        }
+        return "";
+    }
+
+    /**
+     * Distinct patient names in firing order, empty when none were given.
+     */
+    public String getPatientSummary() {
+        Set<String> patients = new LinkedHashSet<>();
+        for (AlarmRecord item : items) {
+            if (!item.patientName.isEmpty()) patients.add(item.patientName);
+        }
+        return join(new ArrayList<>(patients));
+    }
+
+    /**
+     * Encodes the group as [int count][AlarmRecord...] for the payload index.
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * items.size());
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(items.size());
+            for (AlarmRecord item : items) {
+                item.writeTo(out);
+            }
+            out.flush();
+        } catch (IOException e) {
+            // In-memory stream
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    public static AlarmGroup fromBytes(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int count = in.readInt();
+        if (count < 0 || count > payload.length) {
+            throw new IOException("Corrupt alarm group of " + count + " items");
+        }
+        List<AlarmRecord> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(AlarmRecord.readFrom(in));
+        }
+        return new AlarmGroup(items);
+    }
+
+    private static String orDefault(String value, String fallback) {
+        return value != null && !value.isEmpty() ? value : fallback;
+    }
+
+    private static String join(List<String> values) {
+        StringBuilder joined = new StringBuilder();
+        for (String value : values) {
+            if (joined.length() > 0) joined.append(", ");
+            joined.append(value);
+        }
+        return joined.toString();
+    }
+}
@@ -0,0 +1,292 @@
+package com.balivishnu.mymedalert;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Crash-safe store for alarm records: an append-only journal plus periodic snapshots.
+ *
+ * Every mutation is appended to the journal as a length + CRC32 framed entry and forced to disk
+ * before the call returns. Opening the store loads the last snapshot and replays the journal on
+ * top of it, stopping at the first torn, corrupt or undecodable entry and truncating the journal
+ * there, so a crash mid-write loses at most the write that was in flight. When the journal grows past {@link #COMPACT_THRESHOLD} entries the
+ * live set is written to a new snapshot (temp file + rename) and the journal is truncated.
+ *
+ * Plain Java on purpose: no Android classes, so it can be read from any process or thread.
+ */
+public final class AlarmJournal {
+    static final String SNAPSHOT_FILE = "alarms.snapshot";
+    static final String JOURNAL_FILE = "alarms.journal";
+    static final int COMPACT_THRESHOLD = 512;
+
+    private static final int SNAPSHOT_MAGIC = 0x4D4D4131; // "MMA1"
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+    private static final int ENTRY_HEADER_BYTES = 8;
+    private static final int MAX_ENTRY_BYTES = 64 * 1024;
+
+    private final File snapshotFile;
+    private final File journalFile;
+    private final Map<Integer, AlarmRecord> records = new HashMap<>();
+    private RandomAccessFile journal;
+    private int journalEntries;
+
+    public AlarmJournal(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create alarm store directory " + dir);
+        }
+        snapshotFile = new File(dir, SNAPSHOT_FILE);
+        journalFile = new File(dir, JOURNAL_FILE);
+
+        loadSnapshot();
+        journal = new RandomAccessFile(journalFile, "rw");
+        replayJournal();
+    }
+
+    public synchronized AlarmRecord get(int alarmId) {
+        return records.get(alarmId);
+    }
+
+    public synchronized List<AlarmRecord> getAll() {
+        return new ArrayList<>(records.values());
+    }
+
+    public synchronized int size() {
+        return records.size();
+    }
+
+    public synchronized void put(AlarmRecord record) throws IOException {
+        putAll(Collections.singletonList(record));
+    }
+
+    /**
+     * Writes all records with a single append and a single fsync.
+     *
+     * @throws IllegalArgumentException when a record is too large for one journal entry; nothing
+     *         of the batch is written then
+     */
+    public synchronized void putAll(Collection<AlarmRecord> batch) throws IOException {
+        if (batch.isEmpty()) return;
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(batch.size() * 96);
+        for (AlarmRecord record : batch) {
+            frameEntry(buffer, encodePut(record));
+        }
+        append(buffer.toByteArray(), batch.size());
+
+        for (AlarmRecord record : batch) {
+            records.put(record.alarmId, record);
+        }
+        maybeCompact();
+    }
+
+    public synchronized boolean remove(int alarmId) throws IOException {
+        return removeAll(Collections.singletonList(alarmId)) > 0;
+    }
+
+    /**
+     * Removes every listed alarm that is present, again with one append and one fsync.
+     *
+     * @return the number of records that were actually removed
+     */
+    public synchronized int removeAll(Collection<Integer> alarmIds) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(alarmIds.size() * 13);
+        int count = 0;
+        for (Integer alarmId : alarmIds) {
+            if (alarmId == null || !records.containsKey(alarmId)) continue;
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(5);
+            DataOutputStream out = new DataOutputStream(payload);
+            out.writeByte(OP_REMOVE);
+            out.writeInt(alarmId);
+            frameEntry(buffer, payload.toByteArray());
+            count++;
+        }
+        if (count == 0) return 0;
+
+        append(buffer.toByteArray(), count);
+        for (Integer alarmId : alarmIds) {
+            if (alarmId != null) records.remove(alarmId);
+        }
+        maybeCompact();
+        return count;
+    }
+
+    public synchronized void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    /**
+     * Checks that the record fits in one journal entry, so callers can reject it up front.
+     *
+     * @throws IllegalArgumentException when it does not
+     */
+    public static void checkFits(AlarmRecord record) {
+        try {
+            encodePut(record);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Alarm " + record.alarmId + " cannot be stored: " + e.getMessage(), e);
+        }
+    }
+
+    private static byte[] encodePut(AlarmRecord record) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(96);
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeByte(OP_PUT);
+        record.writeTo(out);
+        // Replay stops at the first entry above this size, so a larger one would cost every later write
+        if (payload.size() > MAX_ENTRY_BYTES) {
+            throw new IllegalArgumentException("Alarm " + record.alarmId + " is " + payload.size()
+                    + " bytes, more than the " + MAX_ENTRY_BYTES + " a journal entry holds");
+        }
+        return payload.toByteArray();
+    }
+
+    private static void frameEntry(ByteArrayOutputStream buffer, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER_BYTES);
+        header.putInt(payload.length);
+        header.putInt((int) crc.getValue());
+        buffer.write(header.array(), 0, ENTRY_HEADER_BYTES);
+        buffer.write(payload, 0, payload.length);
+    }
+
+    private void append(byte[] bytes, int entries) throws IOException {
+        if (journal == null) {
+            throw new IOException("Alarm journal is closed");
+        }
+        journal.seek(journal.length());
+        journal.write(bytes);
+        journal.getChannel().force(false);
+        journalEntries += entries;
+    }
+
+    private void loadSnapshot() throws IOException {
+        if (!snapshotFile.exists()) return;
+
+        try (CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(snapshotFile)), new CRC32())) {
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Alarm snapshot has an unknown format");
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                AlarmRecord record = AlarmRecord.readFrom(in);
+                records.put(record.alarmId, record);
+            }
+            int expected = (int) checked.getChecksum().getValue();
+            if (new DataInputStream(checked).readInt() != expected) {
+                records.clear();
+                throw new IOException("Alarm snapshot checksum mismatch");
+            }
+        } catch (EOFException e) {
+            records.clear();
+            throw new IOException("Alarm snapshot is truncated", e);
+        }
+    }
+
+    private void replayJournal() throws IOException {
+        long length = journal.length();
+        byte[] bytes = new byte[(int) length];
+        journal.seek(0);
+        journal.readFully(bytes);
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long validLength = 0;
+        while (buffer.remaining() >= ENTRY_HEADER_BYTES) {
+            int size = buffer.getInt();
+            int expectedCrc = buffer.getInt();
+            if (size <= 0 || size > MAX_ENTRY_BYTES || size > buffer.remaining()) break;
+
+            byte[] payload = new byte[size];
+            buffer.get(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload, 0, size);
+            if ((int) crc.getValue() != expectedCrc) break;
+
+            try {
+                applyEntry(payload);
+            } catch (IOException | RuntimeException e) {
+                // Intact frame this version cannot decode: cut the journal here like a torn tail
+                break;
+            }
+            journalEntries++;
+            validLength = buffer.position();
+        }
+
+        if (validLength < length) {
+            // Torn tail from a crash mid-append: drop it so new entries start on a clean frame
+            journal.setLength(validLength);
+            journal.getChannel().force(false);
+        }
+    }
+
+    private void applyEntry(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte op = in.readByte();
+        if (op == OP_PUT) {
+            AlarmRecord record = AlarmRecord.readFrom(in);
+            records.put(record.alarmId, record);
+        } else if (op == OP_REMOVE) {
+            records.remove(in.readInt());
+        } else {
+            throw new IOException("Unknown alarm journal op " + op);
+        }
+    }
+
+    private void maybeCompact() throws IOException {
+        if (journalEntries < COMPACT_THRESHOLD) return;
+        writeSnapshot();
+        journal.setLength(0);
+        journal.getChannel().force(false);
+        journalEntries = 0;
+    }
+
+    private void writeSnapshot() throws IOException {
+        File tmp = new File(snapshotFile.getPath() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(tmp)) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(file), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(records.size());
+            for (AlarmRecord record : records.values()) {
+                record.writeTo(out);
+            }
+            out.flush();
+            int crc = (int) checked.getChecksum().getValue();
+            DataOutputStream trailer = new DataOutputStream(file);
+            trailer.writeInt(crc);
+            trailer.flush();
+            FileChannel channel = file.getChannel();
+            channel.force(true);
+        }
+        if (!tmp.renameTo(snapshotFile)) {
+            throw new IOException("Cannot replace alarm snapshot " + snapshotFile);
+        }
+    }
+}
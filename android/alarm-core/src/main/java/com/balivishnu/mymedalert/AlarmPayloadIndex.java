@@ -0,0 +1,149 @@
+package com.balivishnu.mymedalert;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Memory-mapped index of alarm payloads, so intents and PendingIntents carry one 64-bit ID
+ * instead of the payload itself.
+ *
+ * IDs are a persisted sequence that is never reused, so an ID can never resolve to another
+ * alarm's payload. A payload takes one or more consecutive fixed-size slots of a ring; its ID is
+ * the sequence number of its first slot, which makes a lookup one index computation plus a
+ * header check. The first slot starts with [long id][int length][int crc32]; the payload follows
+ * contiguously and never wraps the end of the ring. The ring overwrites oldest payloads first,
+ * so once the first slot of a payload is intact the rest is too; an overwritten ID resolves to
+ * null. Not safe across processes without external locking.
+ */
+public final class AlarmPayloadIndex {
+    private static final int MAGIC = 0x41504931; // "API1"
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_HEADER_SIZE = 16;
+    public static final int SLOT_SIZE = 128;
+    public static final int DEFAULT_SLOT_COUNT = 4096;
+    // A single payload may span at most this many slots
+    public static final int MAX_SLOTS_PER_PAYLOAD = 64;
+
+    private final MappedByteBuffer ring;
+    private final int slotCount;
+    private long nextId;
+
+    public AlarmPayloadIndex(File file) throws IOException {
+        this(file, DEFAULT_SLOT_COUNT);
+    }
+
+    public AlarmPayloadIndex(File file, int slotCount) throws IOException {
+        if (slotCount < MAX_SLOTS_PER_PAYLOAD) {
+            throw new IllegalArgumentException("Ring must hold at least one maximum payload");
+        }
+        this.slotCount = slotCount;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long size = HEADER_SIZE + (long) slotCount * SLOT_SIZE;
+            boolean fresh = raf.length() != size;
+            raf.setLength(size);
+            ring = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (fresh || ring.getInt(0) != MAGIC || ring.getInt(4) != slotCount) {
+                for (int i = 0; i < size; i += 8) {
+                    ring.putLong(i, 0);
+                }
+                ring.putInt(0, MAGIC);
+                ring.putInt(4, slotCount);
+                ring.putLong(8, 1);
+            }
+            nextId = Math.max(1, ring.getLong(8));
+        }
+    }
+
+    /**
+     * Largest payload that fits, in bytes.
+     */
+    public static int maxPayloadSize() {
+        return MAX_SLOTS_PER_PAYLOAD * SLOT_SIZE - SLOT_HEADER_SIZE;
+    }
+
+    /**
+     * Stores a payload and returns its new ID. O(payload size).
+     *
+     * @throws IllegalArgumentException when the payload exceeds {@link #maxPayloadSize()}
+     */
+    public synchronized long put(byte[] payload) {
+        int slots = slotsFor(payload.length);
+        long id = nextId;
+        // A payload never wraps; skip the remainder of the ring instead
+        if (id % slotCount + slots > slotCount) {
+            id += slotCount - id % slotCount;
+        }
+        write(id, payload);
+        nextId = id + slots;
+        // Persist the sequence last: a crash before this only wastes the slots just written
+        ring.putLong(8, nextId);
+        return id;
+    }
+
+    /**
+     * The payload stored under {@code id}, or null when unknown, overwritten or damaged. O(1)
+     * lookup plus the copy.
+     */
+    public synchronized byte[] get(long id) {
+        if (!isLive(id)) return null;
+        int offset = slotOffset(id);
+        if (ring.getLong(offset) != id) return null;
+        int length = ring.getInt(offset + 8);
+        if (length < 0 || length > maxPayloadSize()
+                || (int) (id % slotCount) + slotsFor(length) > slotCount) {
+            return null;
+        }
+        byte[] payload = new byte[length];
+        ByteBuffer view = ring.duplicate();
+        // Through Buffer: javac 9+ would link the ByteBuffer.position(int) overload older Android lacks
+        ((Buffer) view).position(offset + SLOT_HEADER_SIZE);
+        view.get(payload);
+        return crc(payload) == ring.getInt(offset + 12) ? payload : null;
+    }
+
+    public synchronized boolean contains(long id) {
+        return get(id) != null;
+    }
+
+    private void write(long id, byte[] payload) {
+        int offset = slotOffset(id);
+        // Invalidate first so a torn write never passes the ID check with the old length
+        ring.putLong(offset, 0);
+        ByteBuffer view = ring.duplicate();
+        ((Buffer) view).position(offset + SLOT_HEADER_SIZE);
+        view.put(payload);
+        ring.putInt(offset + 8, payload.length);
+        ring.putInt(offset + 12, crc(payload));
+        ring.putLong(offset, id);
+    }
+
+    /**
+     * An ID still in the ring: issued, and not yet lapped by later payloads.
+     */
+    private boolean isLive(long id) {
+        return id > 0 && id < nextId && nextId - id <= slotCount;
+    }
+
+    private int slotOffset(long id) {
+        return HEADER_SIZE + (int) (id % slotCount) * SLOT_SIZE;
+    }
+
+    private static int slotsFor(int length) {
+        if (length > maxPayloadSize()) {
+            throw new IllegalArgumentException("Payload of " + length + " bytes exceeds " + maxPayloadSize());
+        }
+        return (length + SLOT_HEADER_SIZE + SLOT_SIZE - 1) / SLOT_SIZE;
+    }
+
+    private static int crc(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,128 @@
+package com.balivishnu.mymedalert;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Min-heap of upcoming alarm trigger times keyed by alarm ID.
+ *
+ * Insert is O(log n). Removal is O(1) and lazy: the map of live entries is the source of truth
+ * and stale heap entries are skipped when they reach the top. The heap is rebuilt once stale
+ * entries outnumber live ones, so memory stays proportional to the live set.
+ * Not thread-safe; AlarmScheduler guards it.
+ */
+public final class AlarmQueue {
+    private static final class Entry implements Comparable<Entry> {
+        final int alarmId;
+        final long triggerTime;
+
+        Entry(int alarmId, long triggerTime) {
+            this.alarmId = alarmId;
+            this.triggerTime = triggerTime;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (triggerTime != other.triggerTime) {
+                return triggerTime < other.triggerTime ? -1 : 1;
+            }
+            return Integer.compare(alarmId, other.alarmId);
+        }
+    }
+
+    private final PriorityQueue<Entry> heap = new PriorityQueue<>();
+    private final Map<Integer, Entry> live = new HashMap<>();
+
+    /**
+     * Adds or reschedules an alarm.
+     */
+    public void add(int alarmId, long triggerTime) {
+        Entry entry = new Entry(alarmId, triggerTime);
+        live.put(alarmId, entry);
+        heap.add(entry);
+        maybeRebuild();
+    }
+
+    public boolean remove(int alarmId) {
+        boolean removed = live.remove(alarmId) != null;
+        if (removed) {
+            maybeRebuild();
+        }
+        return removed;
+    }
+
+    public boolean contains(int alarmId) {
+        return live.containsKey(alarmId);
+    }
+
+    public int size() {
+        return live.size();
+    }
+
+    public boolean isEmpty() {
+        return live.isEmpty();
+    }
+
+    /**
+     * Earliest live trigger time, or {@link Long#MAX_VALUE} when the queue is empty.
+     */
+    public long peekTriggerTime() {
+        Entry head = peekLive();
+        return head != null ? head.triggerTime : Long.MAX_VALUE;
+    }
+
+    /**
+     * Removes and returns the IDs of every alarm due at or before {@code time}, earliest first.
+     */
+    public List<Integer> pollDue(long time) {
+        List<Integer> due = new ArrayList<>();
+        Entry head;
+        while ((head = peekLive()) != null && head.triggerTime <= time) {
+            heap.poll();
+            live.remove(head.alarmId);
+            due.add(head.alarmId);
+        }
+        return due;
+    }
+
+    /**
+     * IDs of every alarm due at or before {@code time}, earliest first, leaving them queued.
+     * O(k log n) for k due alarms.
+     */
+    public List<Integer> peekDue(long time) {
+        List<Entry> due = new ArrayList<>();
+        Entry head;
+        while ((head = peekLive()) != null && head.triggerTime <= time) {
+            due.add(heap.poll());
+        }
+        heap.addAll(due);
+        List<Integer> ids = new ArrayList<>(due.size());
+        for (Entry entry : due) {
+            ids.add(entry.alarmId);
+        }
+        return ids;
+    }
+
+    public void clear() {
+        heap.clear();
+        live.clear();
+    }
+
+    private Entry peekLive() {
+        Entry head;
+        while ((head = heap.peek()) != null && live.get(head.alarmId) != head) {
+            heap.poll();
+        }
+        return head;
+    }
+
+    private void maybeRebuild() {
+        if (heap.size() > 32 && heap.size() > 2 * live.size()) {
+            heap.clear();
+            heap.addAll(live.values());
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.balivishnu.mymedalert;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * One scheduled dose as persisted by the native alarm store.
+ * Immutable so it can be handed between the plugin, receivers and the service without copying.
+ */
+public final class AlarmRecord {
+    private static final int FORMAT_VERSION = 4;
+
+    public final int alarmId;
+    public final String medicineId;
+    public final String medicineName;
+    public final String dosage;
+    public final String patientName;
+    public final long triggerTime;
+    // Null for one-shot alarms; otherwise the course this alarm's next occurrence comes from
+    public final RecurrenceRule rule;
+    // Sound URI to ring with; empty for the system default alarm sound
+    public final String sound;
+    // How many times this dose has been snoozed; 0 for a scheduled dose
+    public final int snoozeCount;
+    // For a snoozed dose, the alarm ID of the dose it was snoozed from; otherwise alarmId
+    public final int snoozeOf;
+
+    public AlarmRecord(int alarmId, String medicineId, String medicineName, String dosage,
+                       String patientName, long triggerTime) {
+        this(alarmId, medicineId, medicineName, dosage, patientName, triggerTime, null);
+    }
+
+    public AlarmRecord(int alarmId, String medicineId, String medicineName, String dosage,
+                       String patientName, long triggerTime, RecurrenceRule rule) {
+        this(alarmId, medicineId, medicineName, dosage, patientName, triggerTime, rule, null);
+    }
+
+    public AlarmRecord(int alarmId, String medicineId, String medicineName, String dosage,
+                       String patientName, long triggerTime, RecurrenceRule rule, String sound) {
+        this(alarmId, medicineId, medicineName, dosage, patientName, triggerTime, rule, sound, 0, alarmId);
+    }
+
+    private AlarmRecord(int alarmId, String medicineId, String medicineName, String dosage,
+                        String patientName, long triggerTime, RecurrenceRule rule, String sound,
+                        int snoozeCount, int snoozeOf) {
+        this.alarmId = alarmId;
+        this.medicineId = medicineId != null ? medicineId : "";
+        this.medicineName = medicineName != null ? medicineName : "";
+        this.dosage = dosage != null ? dosage : "";
+        this.patientName = patientName != null ? patientName : "";
+        this.triggerTime = triggerTime;
+        this.rule = rule;
+        this.sound = sound != null ? sound : "";
+        this.snoozeCount = snoozeCount;
+        this.snoozeOf = snoozeCount > 0 ? snoozeOf : alarmId;
+    }
+
+    public boolean isSnoozed() {
+        return snoozeCount > 0;
+    }
+
+    /**
+     * Same alarm moved to another occurrence of its rule.
+     */
+    public AlarmRecord withOccurrence(RecurrenceRule.Occurrence occurrence) {
+        return new AlarmRecord(alarmId, medicineId, medicineName, occurrence.dosage, patientName,
+                occurrence.triggerTime, rule, sound);
+    }
+
+    /**
+     * This dose snoozed once more: a one-shot copy under {@code snoozeAlarmId} ringing at
+     * {@code triggerTime}, still pointing at the dose it was first snoozed from.
+     */
+    public AlarmRecord snoozed(int snoozeAlarmId, long triggerTime) {
+        return new AlarmRecord(snoozeAlarmId, medicineId, medicineName, dosage, patientName,
+                triggerTime, null, sound, snoozeCount + 1, snoozeOf);
+    }
+
+    /**
+     * This dose with its pending trigger recomputed after the clock or time zone changed. A
+     * recurring dose keeps its wall-clock time: the local time it was computed for in
+     * {@code previousZone}, now in {@code zone}, which may already be past and then rings at once.
+     * If the rule has an earlier occurrence after {@code now} - the clock was set back - that one
+     * is taken instead. One-shot and snoozed doses are absolute instants and are returned as is,
+     * as is a dose whose trigger does not move.
+     */
+    public AlarmRecord recomputed(ZoneId previousZone, ZoneId zone, long now) {
+        if (rule == null) {
+            return this;
+        }
+        LocalDateTime wallClock = LocalDateTime.ofInstant(Instant.ofEpochMilli(triggerTime), previousZone);
+        long anchored = wallClock.atZone(zone).toInstant().toEpochMilli();
+        RecurrenceRule.Occurrence earliest = rule.nextOccurrence(now, zone);
+        if (earliest != null && earliest.triggerTime < anchored) {
+            return withOccurrence(earliest);
+        }
+        if (anchored == triggerTime) {
+            return this;
+        }
+        return new AlarmRecord(alarmId, medicineId, medicineName, dosage, patientName, anchored, rule, sound);
+    }
+
+    /**
+     * Whether {@code other} schedules this same dose: same medicine details and sound, and the
+     * same rule - or, for one-shot alarms, the same trigger time and dosage. A recurring alarm's
+     * trigger time and dosage move with each occurrence and are not compared.
+     */
+    public boolean sameScheduleAs(AlarmRecord other) {
+        if (alarmId != other.alarmId || snoozeCount != other.snoozeCount
+                || !medicineId.equals(other.medicineId) || !medicineName.equals(other.medicineName)
+                || !patientName.equals(other.patientName) || !sound.equals(other.sound)) {
+            return false;
+        }
+        if (rule == null || other.rule == null) {
+            return rule == other.rule && triggerTime == other.triggerTime && dosage.equals(other.dosage);
+        }
+        return rule.sameAs(other.rule);
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        out.writeInt(alarmId);
+        out.writeUTF(medicineId);
+        out.writeUTF(medicineName);
+        out.writeUTF(dosage);
+        out.writeUTF(patientName);
+        out.writeLong(triggerTime);
+        out.writeBoolean(rule != null);
+        if (rule != null) {
+            rule.writeTo(out);
+        }
+        out.writeUTF(sound);
+        out.writeInt(snoozeCount);
+        out.writeInt(snoozeOf);
+    }
+
+    public static AlarmRecord readFrom(DataInput in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version < 1 || version > FORMAT_VERSION) {
+            throw new IOException("Unsupported alarm record version " + version);
+        }
+        int alarmId = in.readInt();
+        String medicineId = in.readUTF();
+        String medicineName = in.readUTF();
+        String dosage = in.readUTF();
+        String patientName = in.readUTF();
+        long triggerTime = in.readLong();
+        RecurrenceRule rule = null;
+        if (version >= 2 && in.readBoolean()) {
+            rule = RecurrenceRule.readFrom(in);
+        }
+        String sound = version >= 3 ? in.readUTF() : "";
+        int snoozeCount = 0;
+        int snoozeOf = alarmId;
+        if (version >= 4) {
+            snoozeCount = in.readInt();
+            snoozeOf = in.readInt();
+        }
+        return new AlarmRecord(alarmId, medicineId, medicineName, dosage, patientName, triggerTime, rule, sound,
+                snoozeCount, snoozeOf);
+    }
+
+    @Override
+    public String toString() {
+        return "AlarmRecord{id=" + alarmId + ", medicine=" + medicineName + ", trigger=" + triggerTime
+                + (rule != null ? ", rule=" + rule.type : "")
+                + (snoozeCount > 0 ? ", snoozed=" + snoozeCount + " of " + snoozeOf : "") + "}";
+    }
+}
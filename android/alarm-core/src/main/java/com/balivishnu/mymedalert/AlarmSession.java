@@ -0,0 +1,58 @@
+package com.balivishnu.mymedalert;
+
+/**
+ * One ringing alarm handled by AlarmService: the doses that fired together and what became of
+ * them. A session is RINGING until the user or the auto-stop timer gives it an outcome.
+ */
+public final class AlarmSession {
+    public enum State { RINGING, FINISHED }
+
+    public enum Outcome { TAKEN, DISMISSED, SNOOZED, AUTO_STOPPED }
+
+    public final long sessionId;
+    public final AlarmGroup group;
+    public final long startedAt;
+    // Fire latency trace this alarm belongs to, 0 when it was not traced
+    public final long traceId;
+
+    private State state = State.RINGING;
+    private Outcome outcome;
+    private long finishedAt;
+
+    AlarmSession(long sessionId, AlarmGroup group, long startedAt, long traceId) {
+        this.sessionId = sessionId;
+        this.group = group;
+        this.startedAt = startedAt;
+        this.traceId = traceId;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized Outcome getOutcome() {
+        return outcome;
+    }
+
+    public synchronized long getFinishedAt() {
+        return finishedAt;
+    }
+
+    /**
+     * Records the outcome. Only the first call wins, so a late auto-stop cannot overwrite a
+     * user's choice.
+     */
+    synchronized boolean finish(Outcome outcome, long now) {
+        if (state == State.FINISHED) return false;
+        this.state = State.FINISHED;
+        this.outcome = outcome;
+        this.finishedAt = now;
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "AlarmSession{id=" + sessionId + ", medicines=" + group.getMedicineSummary()
+                + ", state=" + getState() + (getOutcome() != null ? ", outcome=" + getOutcome() : "") + "}";
+    }
+}
@@ -0,0 +1,72 @@
+package com.balivishnu.mymedalert;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Active alarm sessions in arrival order, plus a short history of finished ones.
+ * The oldest ringing session is the one on screen; later arrivals wait behind it instead of
+ * replacing it. Not thread-safe; AlarmService only touches it from the main thread.
+ */
+public final class AlarmSessionQueue {
+    private static final int HISTORY_SIZE = 32;
+
+    private final Map<Long, AlarmSession> active = new LinkedHashMap<>();
+    private final Deque<AlarmSession> history = new ArrayDeque<>(HISTORY_SIZE);
+    private long nextSessionId = 1;
+
+    public AlarmSession start(AlarmGroup group, long now, long traceId) {
+        AlarmSession session = new AlarmSession(nextSessionId++, group, now, traceId);
+        active.put(session.sessionId, session);
+        return session;
+    }
+
+    /**
+     * Finishes a ringing session with the given outcome.
+     *
+     * @return the finished session, or null if it was unknown or already finished
+     */
+    public AlarmSession finish(long sessionId, AlarmSession.Outcome outcome, long now) {
+        AlarmSession session = active.remove(sessionId);
+        if (session == null || !session.finish(outcome, now)) return null;
+        if (history.size() == HISTORY_SIZE) {
+            history.removeFirst();
+        }
+        history.addLast(session);
+        return session;
+    }
+
+    /**
+     * The session currently shown: the oldest one still ringing, or null when idle.
+     */
+    public AlarmSession current() {
+        for (AlarmSession session : active.values()) {
+            return session;
+        }
+        return null;
+    }
+
+    public AlarmSession get(long sessionId) {
+        return active.get(sessionId);
+    }
+
+    public List<AlarmSession> getActive() {
+        return new ArrayList<>(active.values());
+    }
+
+    public List<AlarmSession> getHistory() {
+        return new ArrayList<>(history);
+    }
+
+    public int size() {
+        return active.size();
+    }
+
+    public boolean isEmpty() {
+        return active.isEmpty();
+    }
+}
@@ -0,0 +1,67 @@
+package com.balivishnu.mymedalert;
+
+/**
+ * Immutable, versioned snapshot of the alarm the user is looking at.
+ * Readers get a whole snapshot at once, so the phase, medicine, dosage and patient always belong
+ * to the same alarm. Every transition produces a new snapshot with the next version, which is
+ * what AlarmStateStore compares-and-sets on. The group is the in-memory detail of the doses;
+ * only the summary fields survive a process restart.
+ */
+public final class AlarmState {
+    /**
+     * IDLE → RINGING → SNOOZED / DISMISSED, and back to RINGING when the next alarm fires.
+     * RINGING → RINGING hands the screen to the next waiting alarm; RINGING → IDLE is an alarm
+     * that stopped without user action.
+     */
+    public enum Phase {
+        IDLE, RINGING, SNOOZED, DISMISSED;
+
+        public boolean canMoveTo(Phase next) {
+            switch (this) {
+                case RINGING:
+                    return true;
+                case IDLE:
+                    return next == RINGING;
+                default:
+                    return next == RINGING || next == IDLE;
+            }
+        }
+    }
+
+    public static final AlarmState IDLE = new AlarmState(0, Phase.IDLE, "", "", "", null);
+
+    public final long version;
+    public final Phase phase;
+    public final boolean active;
+    public final String medicineName;
+    public final String dosage;
+    public final String patientName;
+    public final AlarmGroup group;
+
+    AlarmState(long version, Phase phase, String medicineName, String dosage, String patientName, AlarmGroup group) {
+        this.version = version;
+        this.phase = phase;
+        this.active = phase == Phase.RINGING;
+        this.medicineName = medicineName != null ? medicineName : "";
+        this.dosage = dosage != null ? dosage : "";
+        this.patientName = patientName != null ? patientName : "";
+        this.group = group;
+    }
+
+    /**
+     * The next version of this state: ringing for {@code ringingGroup}, or ended in
+     * {@code phase} keeping the last alarm's details for reference.
+     */
+    AlarmState next(Phase phase, AlarmGroup ringingGroup) {
+        if (phase == Phase.RINGING) {
+            return new AlarmState(version + 1, phase, ringingGroup.getMedicineSummary(),
+                    ringingGroup.getDosageSummary(), ringingGroup.getPatientSummary(), ringingGroup);
+        }
+        return new AlarmState(version + 1, phase, medicineName, dosage, patientName, group);
+    }
+
+    @Override
+    public String toString() {
+        return "AlarmState{v" + version + ", " + phase + ", medicine=" + medicineName + "}";
+    }
+}
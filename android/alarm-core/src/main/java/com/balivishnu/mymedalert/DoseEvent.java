@@ -0,0 +1,109 @@
+package com.balivishnu.mymedalert;
+
+/**
+ * One entry of the dose history: a dose taken, missed or skipped.
+ * Immutable; {@link #sequence} is the entry's position in the history log, or -1 before it is
+ * appended.
+ */
+public final class DoseEvent {
+    public enum Status {
+        TAKEN,
+        MISSED,
+        SKIPPED;
+
+        public static Status parse(String value) {
+            for (Status status : values()) {
+                if (status.name().equalsIgnoreCase(value)) {
+                    return status;
+                }
+            }
+            throw new IllegalArgumentException("Unknown dose status " + value);
+        }
+    }
+
+    /**
+     * Who recorded the event. The app keeps its own history and pill counts for the doses it
+     * records, so it only imports the ones recorded natively.
+     */
+    public enum Source {
+        // The alarm screen, its notification or an alarm that stopped unanswered
+        ALARM,
+        // The app, through the plugin
+        APP
+    }
+
+    // How far an event may lie ahead of the clock, and its scheduled time away from it
+    public static final long MAX_FUTURE_MS = 24 * 60 * 60 * 1000L;
+    public static final long MAX_SCHEDULE_GAP_MS = 366L * 24 * 60 * 60 * 1000L;
+
+    public final long sequence;
+    // When the dose was taken, or when it was given up as missed or skipped
+    public final long eventTime;
+    // When the dose was due; 0 when unknown
+    public final long scheduledTime;
+    public final int alarmId;
+    public final String medicineId;
+    public final String medicineName;
+    public final String patientName;
+    public final String dosage;
+    // Pills taken, for inventory
+    public final float quantity;
+    public final Status status;
+    public final Source source;
+
+    public DoseEvent(long eventTime, long scheduledTime, int alarmId, String medicineId, String medicineName,
+                     String patientName, String dosage, float quantity, Status status) {
+        this(eventTime, scheduledTime, alarmId, medicineId, medicineName, patientName, dosage, quantity, status,
+                Source.ALARM);
+    }
+
+    public DoseEvent(long eventTime, long scheduledTime, int alarmId, String medicineId, String medicineName,
+                     String patientName, String dosage, float quantity, Status status, Source source) {
+        this(-1, eventTime, scheduledTime, alarmId, medicineId, medicineName, patientName, dosage, quantity, status,
+                source);
+    }
+
+    DoseEvent(long sequence, long eventTime, long scheduledTime, int alarmId, String medicineId,
+              String medicineName, String patientName, String dosage, float quantity, Status status, Source source) {
+        this.sequence = sequence;
+        this.eventTime = eventTime;
+        this.scheduledTime = scheduledTime;
+        this.alarmId = alarmId;
+        this.medicineId = medicineId != null ? medicineId : "";
+        this.medicineName = medicineName != null ? medicineName : "";
+        this.patientName = patientName != null ? patientName : "";
+        this.dosage = dosage != null ? dosage : "";
+        this.quantity = quantity;
+        this.status = status != null ? status : Status.TAKEN;
+        this.source = source != null ? source : Source.ALARM;
+    }
+
+    /**
+     * How late a taken dose was, in milliseconds; 0 when on time, not taken or not scheduled.
+     */
+    public long getLatenessMs() {
+        if (status != Status.TAKEN || scheduledTime <= 0) {
+            return 0;
+        }
+        return Math.max(0, eventTime - scheduledTime);
+    }
+
+    /**
+     * Whether the times are ones a real dose can have at {@code now}: an event time after 1970
+     * and at most {@link #MAX_FUTURE_MS} ahead, and a scheduled time that is unknown or within
+     * {@link #MAX_SCHEDULE_GAP_MS} of it.
+     */
+    public boolean hasPlausibleTimes(long now) {
+        if (eventTime <= 0 || eventTime > now + MAX_FUTURE_MS) {
+            return false;
+        }
+        return scheduledTime == 0
+                || (scheduledTime > 0 && Math.abs(eventTime - scheduledTime) <= MAX_SCHEDULE_GAP_MS);
+    }
+
+    @Override
+    public String toString() {
+        return "DoseEvent{seq=" + sequence + ", medicine=" + medicineName + ", status=" + status
+                + ", time=" + eventTime + "}";
+    }
+}
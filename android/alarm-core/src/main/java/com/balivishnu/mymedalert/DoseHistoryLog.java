@@ -0,0 +1,345 @@
+package com.balivishnu.mymedalert;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only dose history with a time index.
+ *
+ * Three files in one directory:
+ * <ul>
+ * <li>history.log - one fixed 48-byte record per event: [long eventTime][long scheduledTime]
+ * [int alarmId][int medicineId][int medicineName][int patientName][int dosage][float quantity]
+ * [byte status][byte source][6 unused]. The string fields are keys into the string table.</li>
+ * <li>history.strings - each distinct string once, as [short length][UTF-8 bytes], keyed by its
+ * order in the file. Medicine and patient names repeat on every event, so records stay fixed-width
+ * and small.</li>
+ * <li>history.idx - [long min][long max] event time per block of {@link #BLOCK_RECORDS}
+ * records, rewritten in place as the last block fills.</li>
+ * </ul>
+ * An append writes any new strings, then the record, then its block's index entry: O(1). A range
+ * query skips every block whose time span misses the range and reads only the records of the
+ * blocks it has to look into, a page at a time, so it is bounded by the page size rather than the
+ * history size. Events may be appended out of time order; the index only gets less selective.
+ * A record torn by a crash is cut off on open, and a missing or stale index is rebuilt from the log.
+ */
+public final class DoseHistoryLog {
+    static final int RECORD_SIZE = 48;
+    static final int BLOCK_RECORDS = 256;
+    private static final int INDEX_ENTRY_SIZE = 16;
+    // Records read from disk per batch while scanning a block
+    private static final int READ_BATCH = 32;
+    // Longest string table entry; longer strings are cut to a whole UTF-8 character below it
+    static final int MAX_STRING_BYTES = 0xFFFF;
+    public static final int MAX_PAGE_SIZE = 500;
+
+    /**
+     * Events newest first, and where the next page starts.
+     */
+    public static final class Page {
+        public final List<DoseEvent> events;
+        // Pass as the cursor of the next query; -1 when there is nothing older
+        public final long nextCursor;
+
+        Page(List<DoseEvent> events, long nextCursor) {
+            this.events = events;
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    private final RandomAccessFile log;
+    private final RandomAccessFile strings;
+    private final RandomAccessFile index;
+    private final List<String> stringList = new ArrayList<>();
+    private final Map<String, Integer> stringKeys = new HashMap<>();
+    private long count;
+    private long[] blockMin = new long[16];
+    private long[] blockMax = new long[16];
+
+    public DoseHistoryLog(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        log = new RandomAccessFile(new File(directory, "history.log"), "rw");
+        strings = new RandomAccessFile(new File(directory, "history.strings"), "rw");
+        index = new RandomAccessFile(new File(directory, "history.idx"), "rw");
+
+        // A write torn by a crash would shift every later record - cut it off first
+        long length = log.length();
+        if (length % RECORD_SIZE != 0) {
+            log.setLength(length / RECORD_SIZE * RECORD_SIZE);
+        }
+        count = log.length() / RECORD_SIZE;
+        loadStrings();
+        loadIndex();
+    }
+
+    /**
+     * Appends an event and returns its sequence number. O(1).
+     */
+    public synchronized long append(DoseEvent event) throws IOException {
+        // Strings go first, so a record never points at a key a crash could lose
+        int medicineId = intern(event.medicineId);
+        int medicineName = intern(event.medicineName);
+        int patientName = intern(event.patientName);
+        int dosage = intern(event.dosage);
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putLong(event.eventTime)
+                .putLong(event.scheduledTime)
+                .putInt(event.alarmId)
+                .putInt(medicineId)
+                .putInt(medicineName)
+                .putInt(patientName)
+                .putInt(dosage)
+                .putFloat(event.quantity)
+                .put((byte) event.status.ordinal())
+                .put((byte) event.source.ordinal());
+        long sequence = count;
+        log.seek(sequence * RECORD_SIZE);
+        log.write(record.array());
+        count++;
+
+        int block = (int) (sequence / BLOCK_RECORDS);
+        ensureBlocks(block + 1);
+        if (sequence % BLOCK_RECORDS == 0) {
+            blockMin[block] = event.eventTime;
+            blockMax[block] = event.eventTime;
+        } else {
+            blockMin[block] = Math.min(blockMin[block], event.eventTime);
+            blockMax[block] = Math.max(blockMax[block], event.eventTime);
+        }
+        writeIndexEntry(block);
+        return sequence;
+    }
+
+    /**
+     * Number of events ever appended.
+     */
+    public synchronized long size() {
+        return count;
+    }
+
+    /**
+     * Up to {@code limit} events with {@code from <= eventTime < to}, newest appended first,
+     * starting below sequence {@code cursor} (-1 to start at the newest event).
+     */
+    public synchronized Page query(long from, long to, long cursor, int limit) throws IOException {
+        limit = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        long end = cursor < 0 || cursor > count ? count : cursor;
+        List<DoseEvent> events = new ArrayList<>(Math.min(limit, 64));
+        if (end == 0 || from >= to) {
+            return new Page(events, -1);
+        }
+
+        ByteBuffer batch = ByteBuffer.allocate(READ_BATCH * RECORD_SIZE);
+        for (int block = (int) ((end - 1) / BLOCK_RECORDS); block >= 0; block--) {
+            if (blockMax[block] < from || blockMin[block] >= to) continue;
+
+            long blockStart = (long) block * BLOCK_RECORDS;
+            long position = Math.min(end, blockStart + BLOCK_RECORDS);
+            while (position > blockStart) {
+                int n = (int) Math.min(READ_BATCH, position - blockStart);
+                long first = position - n;
+                readRecords(first, n, batch);
+                for (int i = n - 1; i >= 0; i--) {
+                    long eventTime = batch.getLong(i * RECORD_SIZE);
+                    if (eventTime < from || eventTime >= to) continue;
+                    events.add(decode(first + i, batch, i * RECORD_SIZE));
+                    if (events.size() == limit) {
+                        return new Page(events, first + i > 0 ? first + i : -1);
+                    }
+                }
+                position = first;
+            }
+        }
+        return new Page(events, -1);
+    }
+
+    /**
+     * Up to {@code limit} events in append order, starting at sequence {@code fromSequence}.
+     * For incremental consumers that remember the last sequence they saw.
+     */
+    public synchronized List<DoseEvent> read(long fromSequence, int limit) throws IOException {
+        limit = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        long start = Math.max(0, fromSequence);
+        if (start >= count) {
+            return Collections.emptyList();
+        }
+        int n = (int) Math.min(limit, count - start);
+        ByteBuffer records = ByteBuffer.allocate(n * RECORD_SIZE);
+        readRecords(start, n, records);
+        List<DoseEvent> events = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            events.add(decode(start + i, records, i * RECORD_SIZE));
+        }
+        return events;
+    }
+
+    public synchronized void close() throws IOException {
+        log.close();
+        strings.close();
+        index.close();
+    }
+
+    private void readRecords(long first, int n, ByteBuffer into) throws IOException {
+        log.seek(first * RECORD_SIZE);
+        log.readFully(into.array(), 0, n * RECORD_SIZE);
+    }
+
+    private DoseEvent decode(long sequence, ByteBuffer records, int offset) {
+        int status = records.get(offset + 40);
+        int source = records.get(offset + 41);
+        DoseEvent.Status[] statuses = DoseEvent.Status.values();
+        DoseEvent.Source[] sources = DoseEvent.Source.values();
+        return new DoseEvent(sequence,
+                records.getLong(offset),
+                records.getLong(offset + 8),
+                records.getInt(offset + 16),
+                string(records.getInt(offset + 20)),
+                string(records.getInt(offset + 24)),
+                string(records.getInt(offset + 28)),
+                string(records.getInt(offset + 32)),
+                records.getFloat(offset + 36),
+                status >= 0 && status < statuses.length ? statuses[status] : DoseEvent.Status.TAKEN,
+                // Logs from before sources were recorded hold 0 here, and only the alarm path wrote them
+                source >= 0 && source < sources.length ? sources[source] : DoseEvent.Source.ALARM);
+    }
+
+    private String string(int key) {
+        return key >= 0 && key < stringList.size() ? stringList.get(key) : "";
+    }
+
+    private int intern(String value) throws IOException {
+        Integer key = stringKeys.get(value);
+        if (key != null) {
+            return key;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            // Cut before the sequence that would be split, and key the cache by what the file holds
+            int end = MAX_STRING_BYTES;
+            while (end > 0 && (bytes[end] & 0xC0) == 0x80) {
+                end--;
+            }
+            value = new String(bytes, 0, end, StandardCharsets.UTF_8);
+            key = stringKeys.get(value);
+            if (key != null) {
+                return key;
+            }
+            bytes = Arrays.copyOf(bytes, end);
+        }
+        ByteArrayOutputStream entry = new ByteArrayOutputStream(bytes.length + 2);
+        DataOutputStream out = new DataOutputStream(entry);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+        strings.seek(strings.length());
+        strings.write(entry.toByteArray());
+
+        key = stringList.size();
+        stringList.add(value);
+        stringKeys.put(value, key);
+        return key;
+    }
+
+    private void loadStrings() throws IOException {
+        long length = strings.length();
+        byte[] all = new byte[(int) length];
+        strings.seek(0);
+        strings.readFully(all);
+        int position = 0;
+        while (position + 2 <= all.length) {
+            int size = ((all[position] & 0xFF) << 8) | (all[position + 1] & 0xFF);
+            if (position + 2 + size > all.length) break;
+            String value = new String(all, position + 2, size, StandardCharsets.UTF_8);
+            stringKeys.putIfAbsent(value, stringList.size());
+            stringList.add(value);
+            position += 2 + size;
+        }
+        if (position != length) {
+            strings.setLength(position);
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        int blocks = (int) ((count + BLOCK_RECORDS - 1) / BLOCK_RECORDS);
+        ensureBlocks(blocks);
+        if (index.length() == (long) blocks * INDEX_ENTRY_SIZE) {
+            byte[] all = new byte[blocks * INDEX_ENTRY_SIZE];
+            index.seek(0);
+            index.readFully(all);
+            ByteBuffer entries = ByteBuffer.wrap(all);
+            for (int block = 0; block < blocks; block++) {
+                blockMin[block] = entries.getLong();
+                blockMax[block] = entries.getLong();
+            }
+            // The last entry is written after its record, so only it can be stale
+            if (blocks == 0 || indexCovers(blocks - 1)) {
+                return;
+            }
+        }
+        rebuildIndex(blocks);
+    }
+
+    private boolean indexCovers(int block) throws IOException {
+        long first = (long) block * BLOCK_RECORDS;
+        int n = (int) (count - first);
+        ByteBuffer records = ByteBuffer.allocate(n * RECORD_SIZE);
+        readRecords(first, n, records);
+        for (int i = 0; i < n; i++) {
+            long eventTime = records.getLong(i * RECORD_SIZE);
+            if (eventTime < blockMin[block] || eventTime > blockMax[block]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rebuildIndex(int blocks) throws IOException {
+        ByteBuffer records = ByteBuffer.allocate(BLOCK_RECORDS * RECORD_SIZE);
+        for (int block = 0; block < blocks; block++) {
+            long first = (long) block * BLOCK_RECORDS;
+            int n = (int) Math.min(BLOCK_RECORDS, count - first);
+            readRecords(first, n, records);
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            for (int i = 0; i < n; i++) {
+                long eventTime = records.getLong(i * RECORD_SIZE);
+                min = Math.min(min, eventTime);
+                max = Math.max(max, eventTime);
+            }
+            blockMin[block] = min;
+            blockMax[block] = max;
+        }
+        index.setLength(0);
+        for (int block = 0; block < blocks; block++) {
+            writeIndexEntry(block);
+        }
+    }
+
+    private void writeIndexEntry(int block) throws IOException {
+        ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+        entry.putLong(blockMin[block]).putLong(blockMax[block]);
+        index.seek((long) block * INDEX_ENTRY_SIZE);
+        index.write(entry.array());
+    }
+
+    private void ensureBlocks(int blocks) {
+        if (blocks > blockMin.length) {
+            int capacity = Math.max(blocks, blockMin.length * 2);
+            blockMin = Arrays.copyOf(blockMin, capacity);
+            blockMax = Arrays.copyOf(blockMax, capacity);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.balivishnu.mymedalert;
+
+/**
+ * Fixed-size log-linear histogram in the style of HdrHistogram.
+ *
+ * Values 0-15 get exact buckets; above that every power of two is split into 16 sub-buckets,
+ * so any recorded value is reported within ~6% of its true value while the whole range up to
+ * {@link #MAX_VALUE} fits in a few hundred counters. Recording is O(1) and allocation-free.
+ * Not thread-safe.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // One hour in milliseconds; anything slower is clamped to it
+    public static final long MAX_VALUE = 60L * 60 * 1000;
+    private static final int BUCKET_COUNT = indexOf(MAX_VALUE) + 1;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount;
+    private long maxValue;
+
+    public void record(long value) {
+        long clamped = Math.max(0, Math.min(value, MAX_VALUE));
+        counts[indexOf(clamped)]++;
+        totalCount++;
+        if (clamped > maxValue) maxValue = clamped;
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        maxValue = Math.max(maxValue, other.maxValue);
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    public long getMax() {
+        return maxValue;
+    }
+
+    /**
+     * Value at the given percentile (0-100), reported as the middle of its bucket and never
+     * above the largest recorded value. 0 when empty.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) return 0;
+        long rank = (long) Math.ceil(Math.max(0, Math.min(percentile, 100)) / 100.0 * totalCount);
+        rank = Math.max(rank, 1);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                long low = lowestValueAt(i);
+                long width = lowestValueAt(i + 1) - low;
+                return Math.min(low + (width - 1) / 2, maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    public void reset() {
+        java.util.Arrays.fill(counts, 0);
+        totalCount = 0;
+        maxValue = 0;
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int shift = msb - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    static long lowestValueAt(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int shift = (index >> SUB_BUCKET_BITS) - 1;
+        long sub = index & (SUB_BUCKETS - 1);
+        return (SUB_BUCKETS + sub) << shift;
+    }
+}
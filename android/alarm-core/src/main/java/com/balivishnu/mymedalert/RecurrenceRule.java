@@ -0,0 +1,262 @@
+package com.balivishnu.mymedalert;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Recurrence rule for a medicine course, evaluated lazily.
+ *
+ * Only the next occurrence is ever computed, so a rule costs the same storage and CPU whether the
+ * course lasts a week or a year:
+ *  - DAILY: every day at the given wall-clock times
+ *  - WEEKLY: on the given weekdays at the given times
+ *  - INTERVAL: every N hours from the first time on the start date
+ * Each rule has a start date, an optional inclusive end date and optional tapering steps that
+ * change the dosage from a given course day onwards.
+ */
+public final class RecurrenceRule {
+    private static final int FORMAT_VERSION = 1;
+    // Counts are stored as an unsigned byte and an unsigned short
+    static final int MAX_TIMES = 0xFF;
+    static final int MAX_TAPER_STEPS = 0xFFFF;
+
+    public enum Type { DAILY, WEEKLY, INTERVAL }
+
+    /**
+     * Dosage that applies from {@code fromDay} (0 = start date) until the next step.
+     */
+    public static final class TaperStep {
+        public final int fromDay;
+        public final String dosage;
+
+        public TaperStep(int fromDay, String dosage) {
+            this.fromDay = fromDay;
+            this.dosage = dosage != null ? dosage : "";
+        }
+    }
+
+    /**
+     * A concrete dose produced by {@link #nextOccurrence}.
+     */
+    public static final class Occurrence {
+        public final long triggerTime;
+        public final String dosage;
+
+        Occurrence(long triggerTime, String dosage) {
+            this.triggerTime = triggerTime;
+            this.dosage = dosage;
+        }
+    }
+
+    public final Type type;
+    public final List<LocalTime> times;
+    public final int weekdayMask;
+    public final int intervalHours;
+    public final LocalDate startDate;
+    public final LocalDate endDate;
+    public final String baseDosage;
+    public final List<TaperStep> taper;
+
+    private RecurrenceRule(Type type, List<LocalTime> times, int weekdayMask, int intervalHours,
+                           LocalDate startDate, LocalDate endDate, String baseDosage, List<TaperStep> taper) {
+        if (times.isEmpty()) {
+            throw new IllegalArgumentException("A recurrence rule needs at least one time");
+        }
+        if (times.size() > MAX_TIMES) {
+            throw new IllegalArgumentException("A recurrence rule has at most " + MAX_TIMES + " times");
+        }
+        if (taper.size() > MAX_TAPER_STEPS) {
+            throw new IllegalArgumentException("A recurrence rule has at most " + MAX_TAPER_STEPS + " taper steps");
+        }
+        if (type == Type.WEEKLY && (weekdayMask & 0x7F) == 0) {
+            throw new IllegalArgumentException("A weekly rule needs at least one weekday");
+        }
+        if (type == Type.INTERVAL && intervalHours <= 0) {
+            throw new IllegalArgumentException("Interval must be a positive number of hours");
+        }
+        if (endDate != null && endDate.isBefore(startDate)) {
+            throw new IllegalArgumentException("End date is before start date");
+        }
+        List<LocalTime> sortedTimes = new ArrayList<>(times);
+        Collections.sort(sortedTimes);
+        List<TaperStep> sortedTaper = new ArrayList<>(taper);
+        Collections.sort(sortedTaper, (a, b) -> Integer.compare(a.fromDay, b.fromDay));
+
+        this.type = type;
+        this.times = Collections.unmodifiableList(sortedTimes);
+        this.weekdayMask = weekdayMask & 0x7F;
+        this.intervalHours = intervalHours;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.baseDosage = baseDosage != null ? baseDosage : "";
+        this.taper = Collections.unmodifiableList(sortedTaper);
+    }
+
+    public static RecurrenceRule daily(List<LocalTime> times, LocalDate startDate, LocalDate endDate,
+                                       String baseDosage, List<TaperStep> taper) {
+        return new RecurrenceRule(Type.DAILY, times, 0, 0, startDate, endDate, baseDosage, taper);
+    }
+
+    public static RecurrenceRule weekly(List<DayOfWeek> weekdays, List<LocalTime> times, LocalDate startDate,
+                                        LocalDate endDate, String baseDosage, List<TaperStep> taper) {
+        int mask = 0;
+        for (DayOfWeek day : weekdays) {
+            mask |= weekdayBit(day);
+        }
+        return new RecurrenceRule(Type.WEEKLY, times, mask, 0, startDate, endDate, baseDosage, taper);
+    }
+
+    public static RecurrenceRule everyHours(int intervalHours, LocalTime firstTime, LocalDate startDate,
+                                            LocalDate endDate, String baseDosage, List<TaperStep> taper) {
+        return new RecurrenceRule(Type.INTERVAL, Collections.singletonList(firstTime), 0, intervalHours,
+                startDate, endDate, baseDosage, taper);
+    }
+
+    /**
+     * First occurrence strictly after {@code afterMillis}, or null once the course has ended.
+     * Constant work per call: at most one pass over the times of eight consecutive days.
+     */
+    public Occurrence nextOccurrence(long afterMillis, ZoneId zone) {
+        Instant after = Instant.ofEpochMilli(afterMillis);
+        ZonedDateTime next = type == Type.INTERVAL ? nextInterval(after, zone) : nextOnDays(after, zone);
+        if (next == null) return null;
+
+        LocalDate date = next.toLocalDate();
+        if (endDate != null && date.isAfter(endDate)) return null;
+        return new Occurrence(next.toInstant().toEpochMilli(), dosageForDay(ChronoUnit.DAYS.between(startDate, date)));
+    }
+
+    private ZonedDateTime nextOnDays(Instant after, ZoneId zone) {
+        LocalDate afterDate = after.atZone(zone).toLocalDate();
+        LocalDate date = afterDate.isBefore(startDate) ? startDate : afterDate;
+        // A weekly rule has a matching day within any 7-day window; the 8th covers today's passed times
+        for (int i = 0; i < 8; i++, date = date.plusDays(1)) {
+            if (endDate != null && date.isAfter(endDate)) return null;
+            if (type == Type.WEEKLY && (weekdayMask & weekdayBit(date.getDayOfWeek())) == 0) continue;
+
+            for (LocalTime time : times) {
+                ZonedDateTime candidate = ZonedDateTime.of(date, time, zone);
+                if (candidate.toInstant().isAfter(after)) {
+                    return candidate;
+                }
+            }
+        }
+        return null;
+    }
+
+    private ZonedDateTime nextInterval(Instant after, ZoneId zone) {
+        Instant anchor = ZonedDateTime.of(startDate, times.get(0), zone).toInstant();
+        if (anchor.isAfter(after)) {
+            return anchor.atZone(zone);
+        }
+        long periodMillis = Duration.ofHours(intervalHours).toMillis();
+        long elapsed = after.toEpochMilli() - anchor.toEpochMilli();
+        long periods = elapsed / periodMillis + 1;
+        return Instant.ofEpochMilli(anchor.toEpochMilli() + periods * periodMillis).atZone(zone);
+    }
+
+    private String dosageForDay(long courseDay) {
+        String dosage = baseDosage;
+        for (TaperStep step : taper) {
+            if (step.fromDay > courseDay) break;
+            dosage = step.dosage;
+        }
+        return dosage;
+    }
+
+    private static int weekdayBit(DayOfWeek day) {
+        return 1 << (day.getValue() - 1);
+    }
+
+    public List<DayOfWeek> getWeekdays() {
+        List<DayOfWeek> days = new ArrayList<>();
+        for (DayOfWeek day : DayOfWeek.values()) {
+            if ((weekdayMask & weekdayBit(day)) != 0) days.add(day);
+        }
+        return days;
+    }
+
+    /**
+     * Whether both rules produce the same occurrences and dosages.
+     */
+    public boolean sameAs(RecurrenceRule other) {
+        if (other == this) return true;
+        if (other == null) return false;
+        if (type != other.type || weekdayMask != other.weekdayMask || intervalHours != other.intervalHours
+                || !times.equals(other.times) || !startDate.equals(other.startDate)
+                || (endDate == null ? other.endDate != null : !endDate.equals(other.endDate))
+                || !baseDosage.equals(other.baseDosage) || taper.size() != other.taper.size()) {
+            return false;
+        }
+        for (int i = 0; i < taper.size(); i++) {
+            TaperStep step = taper.get(i);
+            TaperStep otherStep = other.taper.get(i);
+            if (step.fromDay != otherStep.fromDay || !step.dosage.equals(otherStep.dosage)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(FORMAT_VERSION);
+        out.writeByte(type.ordinal());
+        out.writeByte(times.size());
+        for (LocalTime time : times) {
+            out.writeInt(time.toSecondOfDay());
+        }
+        out.writeByte(weekdayMask);
+        out.writeInt(intervalHours);
+        out.writeLong(startDate.toEpochDay());
+        out.writeLong(endDate != null ? endDate.toEpochDay() : Long.MIN_VALUE);
+        out.writeUTF(baseDosage);
+        out.writeShort(taper.size());
+        for (TaperStep step : taper) {
+            out.writeInt(step.fromDay);
+            out.writeUTF(step.dosage);
+        }
+    }
+
+    public static RecurrenceRule readFrom(DataInput in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported recurrence rule version " + version);
+        }
+        Type type = Type.values()[in.readUnsignedByte()];
+        int timeCount = in.readUnsignedByte();
+        LocalTime[] times = new LocalTime[timeCount];
+        for (int i = 0; i < timeCount; i++) {
+            times[i] = LocalTime.ofSecondOfDay(in.readInt());
+        }
+        int weekdayMask = in.readUnsignedByte();
+        int intervalHours = in.readInt();
+        LocalDate startDate = LocalDate.ofEpochDay(in.readLong());
+        long endDay = in.readLong();
+        LocalDate endDate = endDay != Long.MIN_VALUE ? LocalDate.ofEpochDay(endDay) : null;
+        String baseDosage = in.readUTF();
+        int taperCount = in.readUnsignedShort();
+        List<TaperStep> taper = new ArrayList<>(taperCount);
+        for (int i = 0; i < taperCount; i++) {
+            taper.add(new TaperStep(in.readInt(), in.readUTF()));
+        }
+        try {
+            return new RecurrenceRule(type, Arrays.asList(times), weekdayMask, intervalHours,
+                    startDate, endDate, baseDosage, taper);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid stored recurrence rule: " + e.getMessage(), e);
+        }
+    }
+}
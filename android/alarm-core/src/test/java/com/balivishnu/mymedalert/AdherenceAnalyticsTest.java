@@ -0,0 +1,234 @@
+package com.balivishnu.mymedalert;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class AdherenceAnalyticsTest {
+    private static final ZoneId UTC = ZoneId.of("UTC");
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final long MINUTE = 60 * 1000L;
+    // 2024-01-01
+    private static final long START_DAY = 19723;
+
+    private static long at(int day, long offset) {
+        return (START_DAY + day) * DAY + offset;
+    }
+
+    private static DoseEvent event(int day, long lateness, DoseEvent.Status status, String medicineId, String patient) {
+        long scheduled = at(day, 8 * 60 * MINUTE);
+        return new DoseEvent(scheduled + lateness, scheduled, 1, medicineId, "Name " + medicineId, patient,
+                "1 pill", 1f, status);
+    }
+
+    private static DoseEvent taken(int day, long lateness) {
+        return event(day, lateness, DoseEvent.Status.TAKEN, "med-1", "Patient");
+    }
+
+    @Test
+    public void summarize_countsEachStatus() {
+        AdherenceAnalytics analytics = new AdherenceAnalytics(UTC);
+        analytics.record(taken(0, 0));
+        analytics.record(taken(0, 10 * MINUTE));
+        analytics.record(taken(1, 45 * MINUTE));
+        analytics.record(event(1, 0, DoseEvent.Status.MISSED, "med-1", "Patient"));
+        analytics.record(event(2, 0, DoseEvent.Status.SKIPPED, "med-1", "Patient"));
+
+        AdherenceAnalytics.Summary summary = analytics.summarize(AdherenceAnalytics.Scope.ALL, null, at(0, 0), at(3, 0));
+        assertEquals(3, summary.taken);
+        assertEquals(1, summary.missed);
+        assertEquals(1, summary.skipped);
+        assertEquals(1, summary.late);
+        assertEquals(3, summary.latenessCount);
+        assertEquals(55 * MINUTE / 3, summary.getMeanLatenessMs());
+        assertEquals(0.6, summary.getAdherence(), 1e-9);
+        assertEquals(START_DAY, summary.fromDay);
+        assertEquals(START_DAY + 3, summary.toDay);
+    }
+
+    @Test
+    public void summarize_onlyCountsTheRange() {
+        AdherenceAnalytics analytics = new AdherenceAnalytics(UTC);
+        for (int day = 0; day < 10; day++) {
+            analytics.record(taken(day, 0));
+        }
+
+        assertEquals(3, analytics.summarize(AdherenceAnalytics.Scope.ALL, null, at(2, 0), at(5, 0)).taken);
+        // A range ending mid-day includes that whole day
+        assertEquals(4, analytics.summarize(AdherenceAnalytics.Scope.ALL, null, at(2, 0), at(5, 1)).taken);
+        assertEquals(0, analytics.summarize(AdherenceAnalytics.Scope.ALL, null, at(20, 0), at(30, 0)).taken);
+    }
+
+    @Test
+    public void streaks_areBrokenByMissedAndEmptyDays() {
+        AdherenceAnalytics analytics = new AdherenceAnalytics(UTC);
+        // Perfect days 0-3, a missed dose on day 4, nothing on day 7, perfect days 5-6 and 8-9
+        for (int day = 0; day < 10; day++) {
+            if (day != 7) analytics.record(taken(day, 0));
+        }
+        analytics.record(event(4, 0, DoseEvent.Status.MISSED, "med-1", "Patient"));
+
+        AdherenceAnalytics.Summary summary = analytics.summarize(AdherenceAnalytics.Scope.ALL, null, at(0, 0), at(10, 0));
+        assertEquals(4, summary.longestStreak);
+        assertEquals(2, summary.currentStreak);
+
+        AdherenceAnalytics.Summary earlier = analytics.summarize(AdherenceAnalytics.Scope.ALL, null, at(1, 0), at(7, 0));
+        assertEquals(3, earlier.longestStreak);
+        assertEquals(2, earlier.currentStreak);
+
+        // Days past the last recorded one have nothing recorded
+        AdherenceAnalytics.Summary later = analytics.summarize(AdherenceAnalytics.Scope.ALL, null, at(8, 0), at(12, 0));
+        assertEquals(2, later.longestStreak);
+        assertEquals(0, later.currentStreak);
+    }
+
+    @Test
+    public void scopes_keepMedicinesAndPatientsApart() {
+        AdherenceAnalytics analytics = new AdherenceAnalytics(UTC);
+        analytics.record(event(0, 0, DoseEvent.Status.TAKEN, "med-1", "Alice"));
+        analytics.record(event(0, 0, DoseEvent.Status.MISSED, "med-2", "Alice"));
+        analytics.record(event(1, 0, DoseEvent.Status.TAKEN, "med-2", "Bob"));
+        analytics.record(event(1, 0, DoseEvent.Status.TAKEN, "", "Bob"));
+
+        long from = at(0, 0);
+        long to = at(2, 0);
+        AdherenceAnalytics.Summary med1 = analytics.summarize(AdherenceAnalytics.Scope.MEDICINE, "med-1", from, to);
+        assertEquals(1, med1.taken);
+        assertEquals(0, med1.missed);
+        AdherenceAnalytics.Summary med2 = analytics.summarize(AdherenceAnalytics.Scope.MEDICINE, "med-2", from, to);
+        assertEquals(1, med2.taken);
+        assertEquals(1, med2.missed);
+        assertEquals(1, med2.currentStreak);
+        // Without a medicine ID the name is the key
+        assertEquals(1, analytics.summarize(AdherenceAnalytics.Scope.MEDICINE, "Name ", from, to).taken);
+
+        AdherenceAnalytics.Summary alice = analytics.summarize(AdherenceAnalytics.Scope.PATIENT, "Alice", from, to);
+        assertEquals(1, alice.taken);
+        assertEquals(1, alice.missed);
+        assertEquals(0, alice.longestStreak);
+        assertEquals(2, analytics.summarize(AdherenceAnalytics.Scope.PATIENT, "Bob", from, to).taken);
+        assertEquals(0, analytics.summarize(AdherenceAnalytics.Scope.PATIENT, "Carol", from, to).taken);
+        assertEquals(3, analytics.getMedicineIds().size());
+    }
+
+    @Test
+    public void eventsOutsideTheTree_growIt() {
+        AdherenceAnalytics analytics = new AdherenceAnalytics(UTC);
+        analytics.record(taken(500, 0));
+        analytics.record(taken(499, 0));
+        // Earlier than the tree's first day, then far past its end
+        analytics.record(taken(0, 0));
+        analytics.record(taken(1000, 0));
+
+        AdherenceAnalytics.Summary all = analytics.summarize(AdherenceAnalytics.Scope.ALL, null, at(0, 0), at(1001, 0));
+        assertEquals(4, all.taken);
+        assertEquals(2, all.longestStreak);
+        assertEquals(1, all.currentStreak);
+        assertEquals(2, analytics.summarize(AdherenceAnalytics.Scope.ALL, null, at(499, 0), at(501, 0)).currentStreak);
+    }
+
+    @Test
+    public void eventTooFarAway_isLeftOut() {
+        AdherenceAnalytics analytics = new AdherenceAnalytics(UTC);
+        assertTrue(analytics.record(taken(0, 0)));
+        assertTrue(analytics.record(taken(AdherenceAnalytics.MAX_DAYS - 1, 0)));
+        // One day further, in the far future and the far past
+        assertFalse(analytics.record(taken(AdherenceAnalytics.MAX_DAYS, 0)));
+        assertFalse(analytics.record(new DoseEvent(Long.MAX_VALUE, 0, 1, "med-2", "Bogus", "Other", "1 pill", 1f,
+                DoseEvent.Status.TAKEN)));
+        assertFalse(analytics.record(new DoseEvent(Long.MIN_VALUE, 0, 1, "med-2", "Bogus", "Other", "1 pill", 1f,
+                DoseEvent.Status.TAKEN)));
+
+        assertFalse(analytics.getMedicineIds().contains("med-2"));
+        assertFalse(analytics.getPatientNames().contains("Other"));
+        assertTrue(analytics.record(taken(1, 0)));
+        assertEquals(3, analytics.summarize(AdherenceAnalytics.Scope.ALL, null, 0, Long.MAX_VALUE).taken);
+    }
+
+    @Test
+    public void implausibleTimes_areRecognized() {
+        long now = at(10, 0);
+        assertTrue(taken(10, 0).hasPlausibleTimes(now));
+        assertTrue(new DoseEvent(now + DoseEvent.MAX_FUTURE_MS, 0, 1, "med-1", "", "", "", 1f,
+                DoseEvent.Status.MISSED).hasPlausibleTimes(now));
+        assertFalse(new DoseEvent(now + DoseEvent.MAX_FUTURE_MS + 1, 0, 1, "med-1", "", "", "", 1f,
+                DoseEvent.Status.MISSED).hasPlausibleTimes(now));
+        assertFalse(new DoseEvent(0, 0, 1, "med-1", "", "", "", 1f, DoseEvent.Status.TAKEN).hasPlausibleTimes(now));
+        assertFalse(new DoseEvent(now, now - DoseEvent.MAX_SCHEDULE_GAP_MS - 1, 1, "med-1", "", "", "", 1f,
+                DoseEvent.Status.TAKEN).hasPlausibleTimes(now));
+        assertFalse(new DoseEvent(now, -1, 1, "med-1", "", "", "", 1f, DoseEvent.Status.TAKEN).hasPlausibleTimes(now));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void dailyOverTooManyDays_isRejected() {
+        new AdherenceAnalytics(UTC).daily(AdherenceAnalytics.Scope.ALL, null, 0, Long.MAX_VALUE);
+    }
+
+    @Test
+    public void daily_returnsOneSummaryPerDay() {
+        AdherenceAnalytics analytics = new AdherenceAnalytics(UTC);
+        analytics.record(taken(0, 0));
+        analytics.record(taken(0, 0));
+        analytics.record(event(2, 0, DoseEvent.Status.MISSED, "med-1", "Patient"));
+
+        List<AdherenceAnalytics.Summary> days = analytics.daily(AdherenceAnalytics.Scope.ALL, null, at(0, 0), at(3, 0));
+        assertEquals(3, days.size());
+        assertEquals(2, days.get(0).taken);
+        assertEquals(START_DAY, days.get(0).fromDay);
+        assertEquals(0, days.get(1).taken + days.get(1).missed);
+        assertEquals(1, days.get(2).missed);
+        assertEquals(START_DAY + 3, days.get(2).toDay);
+    }
+
+    @Test
+    public void summarize_matchesAPlainRecount() {
+        Random random = new Random(42);
+        AdherenceAnalytics analytics = new AdherenceAnalytics(UTC);
+        List<DoseEvent> events = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            DoseEvent.Status status = random.nextInt(10) == 0 ? DoseEvent.Status.MISSED : DoseEvent.Status.TAKEN;
+            DoseEvent event = event(random.nextInt(300), random.nextInt(60) * MINUTE, status, "med-1", "Patient");
+            events.add(event);
+            analytics.record(event);
+        }
+
+        for (int trial = 0; trial < 200; trial++) {
+            int fromDay = random.nextInt(320) - 10;
+            int toDay = fromDay + 1 + random.nextInt(80);
+            AdherenceAnalytics.Summary summary =
+                    analytics.summarize(AdherenceAnalytics.Scope.ALL, null, at(fromDay, 0), at(toDay, 0));
+
+            int taken = 0, missed = 0, late = 0;
+            int[] dayTaken = new int[toDay - fromDay];
+            int[] dayMissed = new int[toDay - fromDay];
+            for (DoseEvent event : events) {
+                int day = (int) (event.eventTime / DAY - START_DAY);
+                if (day < fromDay || day >= toDay) continue;
+                if (event.status == DoseEvent.Status.TAKEN) {
+                    taken++;
+                    dayTaken[day - fromDay]++;
+                    if (event.getLatenessMs() > AdherenceAnalytics.DEFAULT_LATE_THRESHOLD_MS) late++;
+                } else {
+                    missed++;
+                    dayMissed[day - fromDay]++;
+                }
+            }
+            int run = 0, best = 0;
+            for (int i = 0; i < dayTaken.length; i++) {
+                run = dayTaken[i] > 0 && dayMissed[i] == 0 ? run + 1 : 0;
+                best = Math.max(best, run);
+            }
+
+            assertEquals(taken, summary.taken);
+            assertEquals(missed, summary.missed);
+            assertEquals(late, summary.late);
+            assertEquals(best, summary.longestStreak);
+            assertEquals(run, summary.currentStreak);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.balivishnu.mymedalert;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class AlarmGroupTest {
+    private static AlarmRecord dose(int alarmId, String name, String dosage, String patient) {
+        return new AlarmRecord(alarmId, "med-" + alarmId, name, dosage, patient, 1000L * alarmId);
+    }
+
+    @Test
+    public void singleDose_summarizesItsOwnDetails() {
+        AlarmGroup group = new AlarmGroup(Collections.singletonList(dose(1, "Aspirin", "1 pill", "Alice")));
+
+        assertEquals(1, group.size());
+        assertEquals("Aspirin", group.getTitle());
+        assertEquals("Aspirin", group.getMedicineSummary());
+        assertEquals("1 pill", group.getDosageSummary());
+        assertEquals("Alice", group.getPatientSummary());
+    }
+
+    @Test
+    public void coalescedDoses_summarizeInFiringOrder() {
+        AlarmGroup group = new AlarmGroup(Arrays.asList(
+                dose(1, "Aspirin", "1 pill", "Alice"),
+                dose(2, "Metformin", "500 mg", "Bob"),
+                dose(3, "Vitamin D", "2 drops", "Alice")));
+
+        assertEquals("3 medicines", group.getTitle());
+        assertEquals("Aspirin, Metformin, Vitamin D", group.getMedicineSummary());
+        assertEquals("3 doses", group.getDosageSummary());
+        // Each patient once, in the order their first dose fired
+        assertEquals("Alice, Bob", group.getPatientSummary());
+    }
+
+    @Test
+    public void missingDetails_fallBackToDefaults() {
+        AlarmGroup single = AlarmGroup.of(null, "", null);
+        assertEquals("Medicine", single.getTitle());
+        assertEquals("Unknown dosage", single.getDosageSummary());
+        assertEquals("", single.getPatientSummary());
+
+        AlarmGroup grouped = new AlarmGroup(Arrays.asList(dose(1, "", "1 pill", ""), dose(2, "Aspirin", "1 pill", "")));
+        assertEquals("Medicine, Aspirin", grouped.getMedicineSummary());
+        assertEquals("", grouped.getPatientSummary());
+    }
+
+    @Test
+    public void items_areACopy() {
+        AlarmRecord[] doses = {dose(1, "Aspirin", "1 pill", "Alice")};
+        AlarmGroup group = new AlarmGroup(Arrays.asList(doses));
+        doses[0] = dose(2, "Metformin", "500 mg", "Bob");
+
+        assertEquals(1, group.getItems().get(0).alarmId);
+        try {
+            group.getItems().add(doses[0]);
+            fail("Group items must not be modifiable");
+        } catch (UnsupportedOperationException expected) {
+            // Groups are shared between the receiver, the service and the screen
+        }
+    }
+
+    @Test
+    public void sound_isTheEarliestDoseThatHasOne() {
+        AlarmGroup group = new AlarmGroup(Arrays.asList(
+                new AlarmRecord(1, "med-1", "Aspirin", "1 pill", "Alice", 1000, null, null),
+                new AlarmRecord(2, "med-2", "Metformin", "500 mg", "Alice", 1000, null, "content://sounds/2"),
+                new AlarmRecord(3, "med-3", "Vitamin D", "2 drops", "Alice", 1000, null, "content://sounds/3")));
+
+        assertEquals("content://sounds/2", group.getSound());
+        assertEquals("", AlarmGroup.of("Aspirin", "1 pill", "Alice").getSound());
+    }
+
+    @Test
+    public void toBytes_fromBytes_roundTrips() throws IOException {
+        AlarmGroup group = new AlarmGroup(Arrays.asList(
+                dose(1, "Aspirin", "1 pill", "Alice"),
+                new AlarmRecord(2, "med-2", "Metformin", "500 mg", "Bob", 2000, null, "content://sounds/2")));
+
+        AlarmGroup read = AlarmGroup.fromBytes(group.toBytes());
+        assertEquals(2, read.size());
+        assertEquals(1, read.getItems().get(0).alarmId);
+        assertEquals("Aspirin", read.getItems().get(0).medicineName);
+        assertEquals("Bob", read.getItems().get(1).patientName);
+        assertEquals(2000, read.getItems().get(1).triggerTime);
+        assertEquals("content://sounds/2", read.getSound());
+        assertEquals(group.getMedicineSummary(), read.getMedicineSummary());
+    }
+
+    @Test(expected = IOException.class)
+    public void corruptCount_isRejected() throws IOException {
+        AlarmGroup.fromBytes(new byte[] {0x7F, 0, 0, 0});
+    }
+}
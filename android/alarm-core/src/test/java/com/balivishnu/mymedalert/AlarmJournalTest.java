@@ -0,0 +1,228 @@
+package com.balivishnu.mymedalert;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+public class AlarmJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = folder.newFolder("alarm_store");
+    }
+
+    private static AlarmRecord record(int alarmId, long triggerTime) {
+        return new AlarmRecord(alarmId, "med-" + alarmId, "Medicine " + alarmId, "1 pill", "Patient", triggerTime);
+    }
+
+    private File journalFile() {
+        return new File(dir, AlarmJournal.JOURNAL_FILE);
+    }
+
+    private void append(byte[] bytes) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(journalFile(), "rw")) {
+            raf.seek(raf.length());
+            raf.write(bytes);
+        }
+    }
+
+    @Test
+    public void putAndRemove_surviveReopen() throws IOException {
+        AlarmJournal journal = new AlarmJournal(dir);
+        journal.putAll(Arrays.asList(record(1, 1000), record(2, 2000), record(3, 3000)));
+        journal.put(record(2, 2500));
+        assertTrue(journal.remove(3));
+        assertFalse(journal.remove(3));
+        journal.close();
+
+        AlarmJournal reopened = new AlarmJournal(dir);
+        assertEquals(2, reopened.size());
+        assertEquals(1000, reopened.get(1).triggerTime);
+        assertEquals(2500, reopened.get(2).triggerTime);
+        assertEquals("Medicine 2", reopened.get(2).medicineName);
+        assertNull(reopened.get(3));
+        reopened.close();
+    }
+
+    @Test
+    public void tornTail_isTruncatedAndLaterWritesSurvive() throws IOException {
+        AlarmJournal journal = new AlarmJournal(dir);
+        journal.put(record(1, 1000));
+        journal.put(record(2, 2000));
+        journal.close();
+        long validLength = journalFile().length();
+
+        // Header of a 200-byte entry with only half of it written
+        append(ByteBuffer.allocate(108).putInt(200).putInt(0x12345678).array());
+
+        AlarmJournal reopened = new AlarmJournal(dir);
+        assertEquals(2, reopened.size());
+        assertEquals(validLength, journalFile().length());
+        reopened.put(record(3, 3000));
+        reopened.close();
+
+        AlarmJournal again = new AlarmJournal(dir);
+        assertEquals(3, again.size());
+        assertEquals(3000, again.get(3).triggerTime);
+        again.close();
+    }
+
+    @Test
+    public void crcMismatch_dropsTheDamagedEntryAndEverythingAfter() throws IOException {
+        AlarmJournal journal = new AlarmJournal(dir);
+        journal.put(record(1, 1000));
+        long firstEntryEnd = journalFile().length();
+        journal.put(record(2, 2000));
+        journal.put(record(3, 3000));
+        journal.close();
+
+        // Flip one payload byte of the second entry
+        try (RandomAccessFile raf = new RandomAccessFile(journalFile(), "rw")) {
+            long position = firstEntryEnd + 8 + 4;
+            raf.seek(position);
+            int value = raf.read();
+            raf.seek(position);
+            raf.write(value ^ 0xFF);
+        }
+
+        AlarmJournal reopened = new AlarmJournal(dir);
+        assertEquals(1, reopened.size());
+        assertNotNull(reopened.get(1));
+        assertNull(reopened.get(2));
+        assertNull(reopened.get(3));
+        assertEquals(firstEntryEnd, journalFile().length());
+        reopened.close();
+    }
+
+    @Test
+    public void undecodableEntry_isTruncatedLikeATornTail() throws IOException {
+        AlarmJournal journal = new AlarmJournal(dir);
+        journal.put(record(1, 1000));
+        journal.close();
+        long validLength = journalFile().length();
+
+        // Intact frame with an op this version does not know
+        byte[] payload = {9, 0, 0, 0, 1};
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        append(ByteBuffer.allocate(8 + payload.length)
+                .putInt(payload.length).putInt((int) crc.getValue()).put(payload).array());
+
+        AlarmJournal reopened = new AlarmJournal(dir);
+        assertEquals(1, reopened.size());
+        assertEquals(validLength, journalFile().length());
+        reopened.close();
+    }
+
+    @Test
+    public void recordLargerThanAnEntry_isRejectedBeforeWriting() throws IOException {
+        char[] text = new char[40_000];
+        Arrays.fill(text, 'x');
+        AlarmRecord oversized = new AlarmRecord(2, "med-2", new String(text), new String(text), "Patient", 2000);
+
+        AlarmJournal journal = new AlarmJournal(dir);
+        journal.put(record(1, 1000));
+        long validLength = journalFile().length();
+        try {
+            journal.putAll(Arrays.asList(record(3, 3000), oversized));
+            fail("A record replay would cut off must not be written");
+        } catch (IllegalArgumentException expected) {
+            // The plugin call rejects instead
+        }
+        assertEquals(validLength, journalFile().length());
+        assertNull(journal.get(3));
+        journal.put(record(4, 4000));
+        journal.close();
+
+        AlarmJournal reopened = new AlarmJournal(dir);
+        assertEquals(2, reopened.size());
+        assertEquals(4000, reopened.get(4).triggerTime);
+        reopened.close();
+    }
+
+    @Test
+    public void compaction_writesSnapshotAndEmptiesJournal() throws IOException {
+        AlarmJournal journal = new AlarmJournal(dir);
+        for (int i = 0; i < AlarmJournal.COMPACT_THRESHOLD - 1; i++) {
+            journal.put(record(i % 50, 1000 + i));
+        }
+        assertFalse(new File(dir, AlarmJournal.SNAPSHOT_FILE).exists());
+        journal.remove(0);
+        assertTrue(new File(dir, AlarmJournal.SNAPSHOT_FILE).exists());
+        assertEquals(0, journalFile().length());
+        journal.put(record(100, 9000));
+        journal.close();
+
+        AlarmJournal reopened = new AlarmJournal(dir);
+        assertEquals(50, reopened.size());
+        assertNull(reopened.get(0));
+        assertEquals(9000, reopened.get(100).triggerTime);
+        // Last write of alarm 49 was entry 49 + 50 * 9
+        assertEquals(1000 + 49 + 50 * 9, reopened.get(49).triggerTime);
+        reopened.close();
+    }
+
+    @Test
+    public void snapshotRoundTrip_keepsRecurrenceRules() throws IOException {
+        RecurrenceRule rule = RecurrenceRule.daily(Arrays.asList(LocalTime.of(8, 0), LocalTime.of(20, 0)),
+                LocalDate.of(2024, 1, 1), LocalDate.of(2024, 3, 31), "1 pill", new ArrayList<>());
+        AlarmJournal journal = new AlarmJournal(dir);
+        journal.put(new AlarmRecord(7, "med-7", "Recurring", "1 pill", "Patient", 5000, rule));
+        for (int i = 0; i < AlarmJournal.COMPACT_THRESHOLD; i++) {
+            journal.put(record(1, i));
+        }
+        journal.close();
+
+        AlarmJournal reopened = new AlarmJournal(dir);
+        RecurrenceRule read = reopened.get(7).rule;
+        assertEquals(rule.times, read.times);
+        assertEquals(rule.startDate, read.startDate);
+        assertEquals(rule.endDate, read.endDate);
+        assertEquals(AlarmJournal.COMPACT_THRESHOLD - 1, reopened.get(1).triggerTime);
+        reopened.close();
+    }
+
+    @Test
+    public void corruptSnapshot_failsToOpen() throws IOException {
+        AlarmJournal journal = new AlarmJournal(dir);
+        List<AlarmRecord> batch = new ArrayList<>();
+        for (int i = 0; i < AlarmJournal.COMPACT_THRESHOLD; i++) {
+            batch.add(record(i, i));
+        }
+        journal.putAll(batch);
+        journal.close();
+
+        File snapshot = new File(dir, AlarmJournal.SNAPSHOT_FILE);
+        try (RandomAccessFile raf = new RandomAccessFile(snapshot, "rw")) {
+            raf.seek(raf.length() / 2);
+            int value = raf.read();
+            raf.seek(raf.length() / 2);
+            raf.write(value ^ 0xFF);
+        }
+
+        try {
+            new AlarmJournal(dir);
+            fail("A damaged snapshot must not load");
+        } catch (IOException expected) {
+            // A half-read snapshot would silently lose alarms
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.balivishnu.mymedalert;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class AlarmPayloadIndexTest {
+    private static final int SLOT_COUNT = AlarmPayloadIndex.MAX_SLOTS_PER_PAYLOAD;
+    // Largest payload that still fits in one slot
+    private static final int ONE_SLOT = AlarmPayloadIndex.maxPayloadSize() - (SLOT_COUNT - 1) * AlarmPayloadIndex.SLOT_SIZE;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = new File(folder.getRoot(), "alarm_payloads.idx");
+    }
+
+    private static byte[] payload(int length, int seed) {
+        byte[] payload = new byte[length];
+        for (int i = 0; i < length; i++) {
+            payload[i] = (byte) (seed + i);
+        }
+        return payload;
+    }
+
+    @Test
+    public void put_get_returnsThePayload() throws IOException {
+        AlarmPayloadIndex index = new AlarmPayloadIndex(file, SLOT_COUNT);
+        byte[] small = "Aspirin|1 pill|Patient".getBytes(StandardCharsets.UTF_8);
+        byte[] large = payload(ONE_SLOT * 3, 7);
+        long smallId = index.put(small);
+        long largeId = index.put(large);
+
+        assertNotEquals(smallId, largeId);
+        assertArrayEquals(small, index.get(smallId));
+        assertArrayEquals(large, index.get(largeId));
+        assertTrue(index.contains(smallId));
+        assertFalse(index.contains(largeId + 1));
+        assertNull(index.get(0));
+        assertNull(index.get(-1));
+    }
+
+    @Test
+    public void ids_areNeverReused() throws IOException {
+        AlarmPayloadIndex index = new AlarmPayloadIndex(file, SLOT_COUNT);
+        long previous = 0;
+        for (int i = 0; i < 3 * SLOT_COUNT; i++) {
+            long id = index.put(payload(ONE_SLOT, i));
+            assertTrue(id > previous);
+            previous = id;
+        }
+    }
+
+    @Test
+    public void lappedPayload_resolvesToNull() throws IOException {
+        AlarmPayloadIndex index = new AlarmPayloadIndex(file, SLOT_COUNT);
+        long first = index.put(payload(10, 1));
+        long second = index.put(payload(10, 2));
+        for (int i = 0; i < SLOT_COUNT - 2; i++) {
+            index.put(payload(ONE_SLOT, i));
+        }
+        assertNotNull(index.get(first));
+
+        // One more slot laps the oldest payload only
+        index.put(payload(ONE_SLOT, 99));
+        assertNull(index.get(first));
+        assertFalse(index.contains(first));
+        assertArrayEquals(payload(10, 2), index.get(second));
+    }
+
+    @Test
+    public void payloadThatDoesNotFitAtTheEnd_startsAtTheRingStart() throws IOException {
+        AlarmPayloadIndex index = new AlarmPayloadIndex(file, SLOT_COUNT);
+        long last = 0;
+        // IDs start at 1, so this leaves exactly one slot before the end of the ring
+        for (int i = 0; i < SLOT_COUNT - 2; i++) {
+            last = index.put(payload(ONE_SLOT, i));
+        }
+        assertEquals(SLOT_COUNT - 2, last);
+
+        byte[] twoSlots = payload(ONE_SLOT + 1, 42);
+        long wrapped = index.put(twoSlots);
+        assertEquals(0, wrapped % SLOT_COUNT);
+        assertArrayEquals(twoSlots, index.get(wrapped));
+        // The skipped slot and the first two slots of the ring are gone; the rest is intact
+        assertNull(index.get(1));
+        assertArrayEquals(payload(ONE_SLOT, 1), index.get(2));
+        assertEquals(wrapped + 2, index.put(payload(1, 0)));
+    }
+
+    @Test
+    public void payloads_surviveReopen() throws IOException {
+        AlarmPayloadIndex index = new AlarmPayloadIndex(file, SLOT_COUNT);
+        long id = index.put(payload(300, 5));
+
+        AlarmPayloadIndex reopened = new AlarmPayloadIndex(file, SLOT_COUNT);
+        assertArrayEquals(payload(300, 5), reopened.get(id));
+        assertTrue(reopened.put(payload(1, 0)) > id);
+    }
+
+    @Test
+    public void damagedPayload_resolvesToNull() throws IOException {
+        AlarmPayloadIndex index = new AlarmPayloadIndex(file, SLOT_COUNT);
+        long id = index.put(payload(50, 3));
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // File header, slot header, then the payload
+            long position = 16 + (id % SLOT_COUNT) * AlarmPayloadIndex.SLOT_SIZE + 16 + 10;
+            raf.seek(position);
+            int value = raf.read();
+            raf.seek(position);
+            raf.write(value ^ 0xFF);
+        }
+
+        assertNull(new AlarmPayloadIndex(file, SLOT_COUNT).get(id));
+    }
+
+    @Test
+    public void differentSlotCount_startsAFreshRing() throws IOException {
+        AlarmPayloadIndex index = new AlarmPayloadIndex(file, SLOT_COUNT);
+        long id = index.put(payload(20, 1));
+
+        AlarmPayloadIndex resized = new AlarmPayloadIndex(file, 2 * SLOT_COUNT);
+        assertNull(resized.get(id));
+    }
+
+    @Test
+    public void oversizedPayload_isRejected() throws IOException {
+        AlarmPayloadIndex index = new AlarmPayloadIndex(file, SLOT_COUNT);
+        byte[] largest = new byte[AlarmPayloadIndex.maxPayloadSize()];
+        Arrays.fill(largest, (byte) 1);
+        assertArrayEquals(largest, index.get(index.put(largest)));
+        try {
+            index.put(new byte[AlarmPayloadIndex.maxPayloadSize() + 1]);
+            fail("Payloads above maxPayloadSize() must be rejected");
+        } catch (IllegalArgumentException expected) {
+            // AlarmIntents falls back to plain extras
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void ringSmallerThanOnePayload_isRejected() throws IOException {
+        new AlarmPayloadIndex(file, SLOT_COUNT - 1);
+    }
+}
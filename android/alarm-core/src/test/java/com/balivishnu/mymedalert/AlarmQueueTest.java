@@ -0,0 +1,117 @@
+package com.balivishnu.mymedalert;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class AlarmQueueTest {
+    @Test
+    public void pollDue_returnsDueAlarmsEarliestFirst() {
+        AlarmQueue queue = new AlarmQueue();
+        queue.add(3, 3000);
+        queue.add(1, 1000);
+        queue.add(2, 2000);
+        queue.add(4, 1000);
+
+        assertEquals(1000, queue.peekTriggerTime());
+        assertEquals(Arrays.asList(1, 4, 2), queue.pollDue(2000));
+        assertEquals(1, queue.size());
+        assertEquals(3000, queue.peekTriggerTime());
+    }
+
+    @Test
+    public void emptyQueue_hasNoTriggerTime() {
+        AlarmQueue queue = new AlarmQueue();
+        assertTrue(queue.isEmpty());
+        assertEquals(Long.MAX_VALUE, queue.peekTriggerTime());
+        assertEquals(Collections.emptyList(), queue.pollDue(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void remove_isSkippedLazily() {
+        AlarmQueue queue = new AlarmQueue();
+        queue.add(1, 1000);
+        queue.add(2, 2000);
+
+        assertTrue(queue.remove(1));
+        assertFalse(queue.remove(1));
+        assertFalse(queue.contains(1));
+        assertEquals(1, queue.size());
+        assertEquals(2000, queue.peekTriggerTime());
+        assertEquals(Collections.singletonList(2), queue.pollDue(5000));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void readd_reschedulesAndIgnoresTheStaleEntry() {
+        AlarmQueue queue = new AlarmQueue();
+        queue.add(1, 1000);
+        queue.add(2, 2000);
+        queue.add(1, 3000);
+
+        assertEquals(2, queue.size());
+        assertEquals(Collections.singletonList(2), queue.pollDue(2500));
+        assertEquals(3000, queue.peekTriggerTime());
+        assertEquals(Collections.singletonList(1), queue.pollDue(3000));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void removeThenReadd_isLiveAgain() {
+        AlarmQueue queue = new AlarmQueue();
+        queue.add(1, 1000);
+        queue.remove(1);
+        queue.add(1, 1000);
+
+        assertEquals(Collections.singletonList(1), queue.pollDue(1000));
+        assertTrue(queue.pollDue(Long.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    public void peekDue_leavesAlarmsQueued() {
+        AlarmQueue queue = new AlarmQueue();
+        queue.add(1, 1000);
+        queue.add(2, 2000);
+        queue.add(3, 3000);
+
+        assertEquals(Arrays.asList(1, 2), queue.peekDue(2000));
+        assertEquals(3, queue.size());
+        assertEquals(Arrays.asList(1, 2), queue.pollDue(2000));
+    }
+
+    @Test
+    public void manyRemovals_keepTheQueueConsistent() {
+        AlarmQueue queue = new AlarmQueue();
+        for (int i = 0; i < 200; i++) {
+            queue.add(i, 10_000 - i);
+        }
+        for (int i = 0; i < 200; i++) {
+            if (i % 10 != 0) {
+                queue.remove(i);
+            }
+        }
+        // Rescheduling a survivor leaves one more stale entry behind
+        queue.add(0, 20_000);
+
+        assertEquals(20, queue.size());
+        assertEquals(10_000 - 190, queue.peekTriggerTime());
+        assertEquals(Arrays.asList(190, 180, 170, 160, 150, 140, 130, 120, 110, 100,
+                90, 80, 70, 60, 50, 40, 30, 20, 10, 0), queue.pollDue(Long.MAX_VALUE));
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void clear_dropsEverything() {
+        AlarmQueue queue = new AlarmQueue();
+        queue.add(1, 1000);
+        queue.add(2, 2000);
+        queue.clear();
+
+        assertTrue(queue.isEmpty());
+        assertFalse(queue.contains(1));
+        assertEquals(Long.MAX_VALUE, queue.peekTriggerTime());
+    }
+}
@@ -0,0 +1,84 @@
+package com.balivishnu.mymedalert;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+
+public class AlarmRecordTest {
+    private static final ZoneId LONDON = ZoneId.of("Europe/London");
+    private static final ZoneId TOKYO = ZoneId.of("Asia/Tokyo");
+    private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+
+    private static final RecurrenceRule DAILY_AT_EIGHT = RecurrenceRule.daily(
+            Collections.singletonList(LocalTime.of(8, 0)), LocalDate.of(2024, 1, 1), null, "1 pill",
+            Collections.<RecurrenceRule.TaperStep>emptyList());
+
+    private static long millis(ZoneId zone, int month, int day, int hour, int minute) {
+        return ZonedDateTime.of(2024, month, day, hour, minute, 0, 0, zone).toInstant().toEpochMilli();
+    }
+
+    private static AlarmRecord recurring(long triggerTime) {
+        return new AlarmRecord(1, "med-1", "Aspirin", "1 pill", "Patient", triggerTime, DAILY_AT_EIGHT);
+    }
+
+    private static LocalDateTime local(long millis, ZoneId zone) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), zone);
+    }
+
+    @Test
+    public void eastwardZoneChange_keepsTheWallClockTime() {
+        // Tomorrow's 08:00 dose, computed in London, while the user lands in Tokyo
+        AlarmRecord record = recurring(millis(LONDON, 6, 11, 8, 0));
+        long now = millis(TOKYO, 6, 10, 20, 0);
+
+        AlarmRecord moved = record.recomputed(LONDON, TOKYO, now);
+        assertEquals(LocalDateTime.of(2024, 6, 11, 8, 0), local(moved.triggerTime, TOKYO));
+        assertEquals(record.alarmId, moved.alarmId);
+        assertSame(record.rule, moved.rule);
+    }
+
+    @Test
+    public void westwardZoneChange_keepsTheWallClockTime() {
+        AlarmRecord record = recurring(millis(LONDON, 6, 11, 8, 0));
+        long now = millis(NEW_YORK, 6, 10, 18, 0);
+
+        AlarmRecord moved = record.recomputed(LONDON, NEW_YORK, now);
+        assertEquals(LocalDateTime.of(2024, 6, 11, 8, 0), local(moved.triggerTime, NEW_YORK));
+        assertTrue(moved.triggerTime > record.triggerTime);
+    }
+
+    @Test
+    public void clockSetBack_takesTheEarlierOccurrence() {
+        // Queued for 2024-06-12 08:00, then the clock went back to 2024-06-10 12:00
+        AlarmRecord record = recurring(millis(LONDON, 6, 12, 8, 0));
+        long now = millis(LONDON, 6, 10, 12, 0);
+
+        AlarmRecord moved = record.recomputed(LONDON, LONDON, now);
+        assertEquals(millis(LONDON, 6, 11, 8, 0), moved.triggerTime);
+        assertEquals("1 pill", moved.dosage);
+    }
+
+    @Test
+    public void unchangedZone_returnsTheSameRecord() {
+        AlarmRecord record = recurring(millis(LONDON, 6, 11, 8, 0));
+        assertSame(record, record.recomputed(LONDON, LONDON, millis(LONDON, 6, 10, 20, 0)));
+    }
+
+    @Test
+    public void oneShotAndSnoozedDoses_passThrough() {
+        AlarmRecord oneShot = new AlarmRecord(2, "med-2", "Metformin", "500 mg", "Patient", millis(LONDON, 6, 11, 8, 0));
+        assertSame(oneShot, oneShot.recomputed(LONDON, TOKYO, millis(TOKYO, 6, 10, 20, 0)));
+
+        AlarmRecord snoozed = recurring(millis(LONDON, 6, 11, 8, 0)).snoozed(-2, millis(LONDON, 6, 11, 8, 10));
+        assertTrue(snoozed.isSnoozed());
+        assertSame(snoozed, snoozed.recomputed(LONDON, TOKYO, millis(TOKYO, 6, 10, 20, 0)));
+    }
+}
@@ -0,0 +1,91 @@
+package com.balivishnu.mymedalert;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.List;
+
+public class AlarmSessionQueueTest {
+    private static AlarmGroup group(String medicineName) {
+        return AlarmGroup.of(medicineName, "1 pill", "Patient");
+    }
+
+    @Test
+    public void current_isTheOldestRingingSession() {
+        AlarmSessionQueue queue = new AlarmSessionQueue();
+        assertNull(queue.current());
+        assertTrue(queue.isEmpty());
+
+        AlarmSession first = queue.start(group("Aspirin"), 1000, 11);
+        AlarmSession second = queue.start(group("Metformin"), 2000, 0);
+
+        assertTrue(second.sessionId > first.sessionId);
+        assertSame(first, queue.current());
+        assertEquals(2, queue.size());
+        assertEquals(11, first.traceId);
+        assertEquals(AlarmSession.State.RINGING, first.getState());
+        assertNull(first.getOutcome());
+    }
+
+    @Test
+    public void finish_handsTheScreenToTheNextSession() {
+        AlarmSessionQueue queue = new AlarmSessionQueue();
+        AlarmSession first = queue.start(group("Aspirin"), 1000, 0);
+        AlarmSession second = queue.start(group("Metformin"), 2000, 0);
+
+        assertSame(first, queue.finish(first.sessionId, AlarmSession.Outcome.TAKEN, 3000));
+        assertEquals(AlarmSession.State.FINISHED, first.getState());
+        assertEquals(AlarmSession.Outcome.TAKEN, first.getOutcome());
+        assertEquals(3000, first.getFinishedAt());
+        assertSame(second, queue.current());
+        assertNull(queue.get(first.sessionId));
+        assertSame(second, queue.get(second.sessionId));
+    }
+
+    @Test
+    public void finish_onlyTheFirstOutcomeWins() {
+        AlarmSessionQueue queue = new AlarmSessionQueue();
+        AlarmSession session = queue.start(group("Aspirin"), 1000, 0);
+
+        assertNotNull(queue.finish(session.sessionId, AlarmSession.Outcome.SNOOZED, 2000));
+        // A late auto-stop must not overwrite the user's choice
+        assertNull(queue.finish(session.sessionId, AlarmSession.Outcome.AUTO_STOPPED, 3000));
+        assertEquals(AlarmSession.Outcome.SNOOZED, session.getOutcome());
+        assertEquals(2000, session.getFinishedAt());
+        assertNull(queue.finish(12345, AlarmSession.Outcome.DISMISSED, 3000));
+        assertEquals(1, queue.getHistory().size());
+    }
+
+    @Test
+    public void finishingALaterSession_keepsTheCurrentOne() {
+        AlarmSessionQueue queue = new AlarmSessionQueue();
+        AlarmSession first = queue.start(group("Aspirin"), 1000, 0);
+        AlarmSession second = queue.start(group("Metformin"), 2000, 0);
+        AlarmSession third = queue.start(group("Vitamin D"), 3000, 0);
+
+        queue.finish(second.sessionId, AlarmSession.Outcome.DISMISSED, 4000);
+        assertSame(first, queue.current());
+        queue.finish(first.sessionId, AlarmSession.Outcome.TAKEN, 5000);
+        assertSame(third, queue.current());
+
+        List<AlarmSession> active = queue.getActive();
+        assertEquals(1, active.size());
+        assertSame(third, active.get(0));
+    }
+
+    @Test
+    public void history_keepsTheNewestFinishedSessions() {
+        AlarmSessionQueue queue = new AlarmSessionQueue();
+        for (int i = 0; i < 40; i++) {
+            AlarmSession session = queue.start(group("Medicine " + i), i, 0);
+            queue.finish(session.sessionId, AlarmSession.Outcome.TAKEN, i);
+        }
+
+        List<AlarmSession> history = queue.getHistory();
+        assertEquals(32, history.size());
+        assertEquals("Medicine 8", history.get(0).group.getMedicineSummary());
+        assertEquals("Medicine 39", history.get(31).group.getMedicineSummary());
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,49 @@
+package com.balivishnu.mymedalert;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+public class AlarmStateTest {
+    private static void assertMoves(AlarmState.Phase from, EnumSet<AlarmState.Phase> allowed) {
+        for (AlarmState.Phase to : AlarmState.Phase.values()) {
+            assertEquals(from + " -> " + to, allowed.contains(to), from.canMoveTo(to));
+        }
+    }
+
+    @Test
+    public void canMoveTo_followsTheLifecycle() {
+        assertMoves(AlarmState.Phase.IDLE, EnumSet.of(AlarmState.Phase.RINGING));
+        assertMoves(AlarmState.Phase.RINGING, EnumSet.allOf(AlarmState.Phase.class));
+        assertMoves(AlarmState.Phase.SNOOZED, EnumSet.of(AlarmState.Phase.RINGING, AlarmState.Phase.IDLE));
+        assertMoves(AlarmState.Phase.DISMISSED, EnumSet.of(AlarmState.Phase.RINGING, AlarmState.Phase.IDLE));
+    }
+
+    @Test
+    public void next_ringingTakesTheGroupSummary() {
+        AlarmGroup group = AlarmGroup.of("Aspirin", "1 pill", "Patient");
+        AlarmState ringing = AlarmState.IDLE.next(AlarmState.Phase.RINGING, group);
+
+        assertEquals(1, ringing.version);
+        assertTrue(ringing.active);
+        assertEquals("Aspirin", ringing.medicineName);
+        assertEquals("1 pill", ringing.dosage);
+        assertEquals("Patient", ringing.patientName);
+        assertSame(group, ringing.group);
+    }
+
+    @Test
+    public void next_endedKeepsTheLastAlarmsDetails() {
+        AlarmGroup group = AlarmGroup.of("Aspirin", "1 pill", "Patient");
+        AlarmState dismissed = AlarmState.IDLE.next(AlarmState.Phase.RINGING, group)
+                .next(AlarmState.Phase.DISMISSED, null);
+
+        assertEquals(2, dismissed.version);
+        assertFalse(dismissed.active);
+        assertEquals(AlarmState.Phase.DISMISSED, dismissed.phase);
+        assertEquals("Aspirin", dismissed.medicineName);
+        assertSame(group, dismissed.group);
+    }
+}
@@ -0,0 +1,195 @@
+package com.balivishnu.mymedalert;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class DoseHistoryLogTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = folder.newFolder("dose_history");
+    }
+
+    private static DoseEvent event(long eventTime, DoseEvent.Status status) {
+        return new DoseEvent(eventTime, eventTime - 60_000, 7, "med-1", "Aspirin", "Patient", "1 pill", 1f, status);
+    }
+
+    private static List<Long> times(List<DoseEvent> events) {
+        List<Long> times = new ArrayList<>();
+        for (DoseEvent event : events) {
+            times.add(event.eventTime);
+        }
+        return times;
+    }
+
+    private static DoseHistoryLog filled(File dir, int events) throws IOException {
+        DoseHistoryLog log = new DoseHistoryLog(dir);
+        for (int i = 0; i < events; i++) {
+            log.append(event(1000L * i, DoseEvent.Status.TAKEN));
+        }
+        return log;
+    }
+
+    @Test
+    public void append_read_keepsEveryField() throws IOException {
+        DoseHistoryLog log = new DoseHistoryLog(dir);
+        assertEquals(0, log.append(new DoseEvent(5000, 4000, 3, "med-3", "Metformin", "Grandma",
+                "500 mg", 0.5f, DoseEvent.Status.SKIPPED, DoseEvent.Source.APP)));
+        assertEquals(1, log.append(event(6000, DoseEvent.Status.MISSED)));
+        log.close();
+
+        DoseHistoryLog reopened = new DoseHistoryLog(dir);
+        assertEquals(2, reopened.size());
+        List<DoseEvent> events = reopened.read(0, 10);
+        DoseEvent first = events.get(0);
+        assertEquals(0, first.sequence);
+        assertEquals(5000, first.eventTime);
+        assertEquals(4000, first.scheduledTime);
+        assertEquals(3, first.alarmId);
+        assertEquals("med-3", first.medicineId);
+        assertEquals("Metformin", first.medicineName);
+        assertEquals("Grandma", first.patientName);
+        assertEquals("500 mg", first.dosage);
+        assertEquals(0.5f, first.quantity, 0f);
+        assertEquals(DoseEvent.Status.SKIPPED, first.status);
+        assertEquals(DoseEvent.Source.APP, first.source);
+        assertEquals(DoseEvent.Status.MISSED, events.get(1).status);
+        assertEquals(DoseEvent.Source.ALARM, events.get(1).source);
+        assertEquals("Aspirin", events.get(1).medicineName);
+        assertTrue(reopened.read(2, 10).isEmpty());
+        reopened.close();
+    }
+
+    @Test
+    public void tornRecord_isCutOffOnOpen() throws IOException {
+        DoseHistoryLog log = filled(dir, 3);
+        log.close();
+        File file = new File(dir, "history.log");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length());
+            raf.write(new byte[DoseHistoryLog.RECORD_SIZE / 2]);
+        }
+
+        DoseHistoryLog reopened = new DoseHistoryLog(dir);
+        assertEquals(3, reopened.size());
+        assertEquals(3L * DoseHistoryLog.RECORD_SIZE, file.length());
+        assertEquals(3, reopened.append(event(9000, DoseEvent.Status.TAKEN)));
+        assertEquals(9000, reopened.read(3, 1).get(0).eventTime);
+        reopened.close();
+    }
+
+    @Test
+    public void query_returnsTheRangeNewestFirstInPages() throws IOException {
+        DoseHistoryLog log = filled(dir, 3 * DoseHistoryLog.BLOCK_RECORDS);
+        long from = 1000L * 250;
+        long to = 1000L * 520;
+
+        List<Long> seen = new ArrayList<>();
+        long cursor = -1;
+        int pages = 0;
+        do {
+            DoseHistoryLog.Page page = log.query(from, to, cursor, 100);
+            seen.addAll(times(page.events));
+            cursor = page.nextCursor;
+            pages++;
+        } while (cursor >= 0);
+
+        assertEquals(270, seen.size());
+        assertEquals(Long.valueOf(1000L * 519), seen.get(0));
+        assertEquals(Long.valueOf(from), seen.get(seen.size() - 1));
+        for (int i = 1; i < seen.size(); i++) {
+            assertTrue(seen.get(i) < seen.get(i - 1));
+        }
+        // Three full pages; the last one knows nothing older matches only once it has looked
+        assertTrue(pages >= 3 && pages <= 4);
+        log.close();
+    }
+
+    @Test
+    public void query_findsEventsAppendedOutOfOrder() throws IOException {
+        DoseHistoryLog log = filled(dir, DoseHistoryLog.BLOCK_RECORDS + 10);
+        log.append(event(500, DoseEvent.Status.MISSED));
+
+        DoseHistoryLog.Page page = log.query(0, 600, -1, 10);
+        assertEquals(2, page.events.size());
+        assertEquals(DoseEvent.Status.MISSED, page.events.get(0).status);
+        assertEquals(DoseHistoryLog.BLOCK_RECORDS + 10, page.events.get(0).sequence);
+        assertEquals(0, page.events.get(1).eventTime);
+        assertEquals(-1, page.nextCursor);
+        log.close();
+    }
+
+    @Test
+    public void missingIndex_isRebuilt() throws IOException {
+        filled(dir, 2 * DoseHistoryLog.BLOCK_RECORDS + 5).close();
+        assertTrue(new File(dir, "history.idx").delete());
+
+        DoseHistoryLog reopened = new DoseHistoryLog(dir);
+        DoseHistoryLog.Page page = reopened.query(1000L * 300, 1000L * 303, -1, 10);
+        assertEquals(3, page.events.size());
+        assertEquals(3 * 16, new File(dir, "history.idx").length());
+        reopened.close();
+    }
+
+    @Test
+    public void staleIndex_isRebuilt() throws IOException {
+        filled(dir, DoseHistoryLog.BLOCK_RECORDS + 5).close();
+        // A crash between a record and its index entry leaves the last entry behind
+        try (RandomAccessFile raf = new RandomAccessFile(new File(dir, "history.idx"), "rw")) {
+            raf.seek(16);
+            raf.write(ByteBuffer.allocate(16).putLong(Long.MAX_VALUE).putLong(Long.MAX_VALUE).array());
+        }
+
+        DoseHistoryLog reopened = new DoseHistoryLog(dir);
+        DoseHistoryLog.Page page = reopened.query(1000L * 257, 1000L * 259, -1, 10);
+        assertEquals(2, page.events.size());
+        assertEquals(1000L * 258, page.events.get(0).eventTime);
+        reopened.close();
+    }
+
+    @Test
+    public void emptyRange_returnsNothing() throws IOException {
+        DoseHistoryLog log = filled(dir, 10);
+        assertTrue(log.query(5000, 5000, -1, 10).events.isEmpty());
+        assertTrue(log.query(100_000, 200_000, -1, 10).events.isEmpty());
+        assertEquals(-1, log.query(100_000, 200_000, -1, 10).nextCursor);
+        log.close();
+    }
+
+    @Test
+    public void overlongString_isCutOnACharacterBoundary() throws IOException {
+        // One ASCII byte, then three-byte characters, so the byte limit falls inside a character
+        StringBuilder name = new StringBuilder("a");
+        for (int i = 0; i < DoseHistoryLog.MAX_STRING_BYTES / 3 + 10; i++) {
+            name.append('\u20AC');
+        }
+        String stored = name.substring(0, 1 + (DoseHistoryLog.MAX_STRING_BYTES - 1) / 3);
+        DoseHistoryLog log = new DoseHistoryLog(dir);
+        log.append(new DoseEvent(1000, 0, 1, "med-1", name.toString(), "Patient", "1 pill", 1f, DoseEvent.Status.TAKEN));
+        log.append(new DoseEvent(2000, 0, 1, "med-1", name.toString(), "Patient", "1 pill", 1f, DoseEvent.Status.TAKEN));
+        assertEquals(stored, log.read(0, 1).get(0).medicineName);
+        log.close();
+
+        DoseHistoryLog reopened = new DoseHistoryLog(dir);
+        List<DoseEvent> events = reopened.read(0, 2);
+        assertEquals(stored, events.get(0).medicineName);
+        assertEquals(stored, events.get(1).medicineName);
+        assertEquals("Patient", events.get(1).patientName);
+        reopened.close();
+    }
+}
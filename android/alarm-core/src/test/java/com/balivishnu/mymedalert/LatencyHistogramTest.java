@@ -0,0 +1,90 @@
+package com.balivishnu.mymedalert;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+    @Test
+    public void smallValues_haveExactBuckets() {
+        for (int value = 0; value < 16; value++) {
+            assertEquals(value, LatencyHistogram.indexOf(value));
+            assertEquals(value, LatencyHistogram.lowestValueAt(value));
+        }
+    }
+
+    @Test
+    public void indexOf_andLowestValueAt_agree() {
+        int previous = -1;
+        for (long value = 0; value <= LatencyHistogram.MAX_VALUE; value += 1 + value / 64) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue("indexes never go down", index >= previous);
+            assertTrue(value + " below its bucket", LatencyHistogram.lowestValueAt(index) <= value);
+            assertTrue(value + " above its bucket", LatencyHistogram.lowestValueAt(index + 1) > value);
+            previous = index;
+        }
+    }
+
+    @Test
+    public void buckets_stayWithinSixPercent() {
+        for (int index = 16; index <= LatencyHistogram.indexOf(LatencyHistogram.MAX_VALUE); index++) {
+            long low = LatencyHistogram.lowestValueAt(index);
+            long width = LatencyHistogram.lowestValueAt(index + 1) - low;
+            assertTrue("bucket " + index + " too wide", width * 16 <= low);
+        }
+    }
+
+    @Test
+    public void percentiles_reportTheRightBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(100, histogram.getMax());
+        assertEquals(1, histogram.getValueAtPercentile(0));
+        assertWithinBucket(50, histogram.getValueAtPercentile(50));
+        assertWithinBucket(90, histogram.getValueAtPercentile(90));
+        assertWithinBucket(99, histogram.getValueAtPercentile(99));
+        assertEquals(100, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void outOfRangeValues_areClamped() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(LatencyHistogram.MAX_VALUE * 10);
+
+        assertEquals(2, histogram.getCount());
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void add_mergesAndResetClears() {
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        a.record(10);
+        b.record(2000);
+        b.record(3000);
+        a.add(b);
+
+        assertEquals(3, a.getCount());
+        assertEquals(3000, a.getMax());
+        assertEquals(10, a.getValueAtPercentile(30));
+        assertWithinBucket(3000, a.getValueAtPercentile(100));
+
+        a.reset();
+        assertEquals(0, a.getCount());
+        assertEquals(0, a.getMax());
+        assertEquals(0, a.getValueAtPercentile(50));
+    }
+
+    private static void assertWithinBucket(long expected, long actual) {
+        int index = LatencyHistogram.indexOf(expected);
+        assertTrue(actual + " not in the bucket of " + expected,
+                actual >= LatencyHistogram.lowestValueAt(index) && actual < LatencyHistogram.lowestValueAt(index + 1));
+    }
+}
@@ -0,0 +1,200 @@
+package com.balivishnu.mymedalert;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class RecurrenceRuleTest {
+    private static final ZoneId NEW_YORK = ZoneId.of("America/New_York");
+    private static final List<RecurrenceRule.TaperStep> NO_TAPER = Collections.emptyList();
+
+    private static long millis(int year, int month, int day, int hour, int minute) {
+        return ZonedDateTime.of(year, month, day, hour, minute, 0, 0, NEW_YORK).toInstant().toEpochMilli();
+    }
+
+    private static ZonedDateTime at(long millis) {
+        return ZonedDateTime.ofInstant(Instant.ofEpochMilli(millis), NEW_YORK);
+    }
+
+    @Test
+    public void daily_walksThroughTheTimesOfEachDay() {
+        RecurrenceRule rule = RecurrenceRule.daily(Arrays.asList(LocalTime.of(20, 0), LocalTime.of(8, 0)),
+                LocalDate.of(2024, 1, 1), null, "1 pill", NO_TAPER);
+
+        long first = rule.nextOccurrence(millis(2023, 12, 20, 12, 0), NEW_YORK).triggerTime;
+        assertEquals(millis(2024, 1, 1, 8, 0), first);
+        long second = rule.nextOccurrence(first, NEW_YORK).triggerTime;
+        assertEquals(millis(2024, 1, 1, 20, 0), second);
+        assertEquals(millis(2024, 1, 2, 8, 0), rule.nextOccurrence(second, NEW_YORK).triggerTime);
+    }
+
+    @Test
+    public void dstGap_movesTheDoseForwardByTheGap() {
+        RecurrenceRule rule = RecurrenceRule.daily(Collections.singletonList(LocalTime.of(2, 30)),
+                LocalDate.of(2024, 3, 1), null, "1 pill", NO_TAPER);
+
+        // 02:30 does not exist on 2024-03-10; the dose rings at 03:30 EDT instead
+        ZonedDateTime next = at(rule.nextOccurrence(millis(2024, 3, 9, 12, 0), NEW_YORK).triggerTime);
+        assertEquals(LocalDateTime.of(2024, 3, 10, 3, 30), next.toLocalDateTime());
+        assertEquals(ZoneOffset.ofHours(-4), next.getOffset());
+
+        ZonedDateTime after = at(rule.nextOccurrence(next.toInstant().toEpochMilli(), NEW_YORK).triggerTime);
+        assertEquals(LocalDateTime.of(2024, 3, 11, 2, 30), after.toLocalDateTime());
+    }
+
+    @Test
+    public void dstOverlap_ringsOnceAtTheEarlierOffset() {
+        RecurrenceRule rule = RecurrenceRule.daily(Collections.singletonList(LocalTime.of(1, 30)),
+                LocalDate.of(2024, 11, 1), null, "1 pill", NO_TAPER);
+
+        // 01:30 happens twice on 2024-11-03; only the first (EDT) one is a dose
+        ZonedDateTime next = at(rule.nextOccurrence(millis(2024, 11, 2, 12, 0), NEW_YORK).triggerTime);
+        assertEquals(LocalDateTime.of(2024, 11, 3, 1, 30), next.toLocalDateTime());
+        assertEquals(ZoneOffset.ofHours(-4), next.getOffset());
+
+        ZonedDateTime after = at(rule.nextOccurrence(next.toInstant().toEpochMilli(), NEW_YORK).triggerTime);
+        assertEquals(LocalDateTime.of(2024, 11, 4, 1, 30), after.toLocalDateTime());
+    }
+
+    @Test
+    public void weekly_skipsDaysThatAreNotSelected() {
+        // 2024-01-01 is a Monday
+        RecurrenceRule rule = RecurrenceRule.weekly(Arrays.asList(DayOfWeek.MONDAY, DayOfWeek.FRIDAY),
+                Collections.singletonList(LocalTime.of(9, 0)), LocalDate.of(2024, 1, 1), null, "1 pill", NO_TAPER);
+
+        long monday = rule.nextOccurrence(millis(2024, 1, 1, 0, 0), NEW_YORK).triggerTime;
+        assertEquals(millis(2024, 1, 1, 9, 0), monday);
+        long friday = rule.nextOccurrence(monday, NEW_YORK).triggerTime;
+        assertEquals(millis(2024, 1, 5, 9, 0), friday);
+        assertEquals(millis(2024, 1, 8, 9, 0), rule.nextOccurrence(friday, NEW_YORK).triggerTime);
+        assertEquals(Arrays.asList(DayOfWeek.MONDAY, DayOfWeek.FRIDAY), rule.getWeekdays());
+    }
+
+    @Test
+    public void interval_countsElapsedHoursFromTheFirstDose() {
+        RecurrenceRule rule = RecurrenceRule.everyHours(8, LocalTime.of(6, 0),
+                LocalDate.of(2024, 1, 1), null, "1 pill", NO_TAPER);
+
+        assertEquals(millis(2024, 1, 1, 6, 0), rule.nextOccurrence(millis(2023, 12, 31, 0, 0), NEW_YORK).triggerTime);
+        assertEquals(millis(2024, 1, 1, 14, 0), rule.nextOccurrence(millis(2024, 1, 1, 6, 0), NEW_YORK).triggerTime);
+        assertEquals(millis(2024, 1, 2, 6, 0), rule.nextOccurrence(millis(2024, 1, 1, 23, 0), NEW_YORK).triggerTime);
+    }
+
+    @Test
+    public void taper_changesTheDosageFromItsCourseDay() {
+        List<RecurrenceRule.TaperStep> taper = Arrays.asList(
+                new RecurrenceRule.TaperStep(5, "half a pill"),
+                new RecurrenceRule.TaperStep(2, "1 pill"));
+        RecurrenceRule rule = RecurrenceRule.daily(Collections.singletonList(LocalTime.of(8, 0)),
+                LocalDate.of(2024, 1, 1), null, "2 pills", taper);
+
+        assertEquals("2 pills", rule.nextOccurrence(millis(2024, 1, 1, 0, 0), NEW_YORK).dosage);
+        assertEquals("2 pills", rule.nextOccurrence(millis(2024, 1, 2, 0, 0), NEW_YORK).dosage);
+        assertEquals("1 pill", rule.nextOccurrence(millis(2024, 1, 3, 0, 0), NEW_YORK).dosage);
+        assertEquals("half a pill", rule.nextOccurrence(millis(2024, 1, 6, 0, 0), NEW_YORK).dosage);
+        assertEquals("half a pill", rule.nextOccurrence(millis(2024, 2, 1, 0, 0), NEW_YORK).dosage);
+    }
+
+    @Test
+    public void endDate_isInclusiveAndEndsTheCourse() {
+        RecurrenceRule daily = RecurrenceRule.daily(Collections.singletonList(LocalTime.of(8, 0)),
+                LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 3), "1 pill", NO_TAPER);
+        assertEquals(millis(2024, 1, 3, 8, 0), daily.nextOccurrence(millis(2024, 1, 2, 9, 0), NEW_YORK).triggerTime);
+        assertNull(daily.nextOccurrence(millis(2024, 1, 3, 8, 0), NEW_YORK));
+
+        RecurrenceRule interval = RecurrenceRule.everyHours(12, LocalTime.of(8, 0),
+                LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 2), "1 pill", NO_TAPER);
+        assertEquals(millis(2024, 1, 2, 20, 0), interval.nextOccurrence(millis(2024, 1, 2, 8, 0), NEW_YORK).triggerTime);
+        assertNull(interval.nextOccurrence(millis(2024, 1, 2, 20, 0), NEW_YORK));
+    }
+
+    @Test
+    public void writeTo_readFrom_roundTrips() throws IOException {
+        List<RecurrenceRule> rules = Arrays.asList(
+                RecurrenceRule.daily(Arrays.asList(LocalTime.of(8, 0), LocalTime.of(20, 30)),
+                        LocalDate.of(2024, 1, 1), null, "1 pill", NO_TAPER),
+                RecurrenceRule.weekly(Arrays.asList(DayOfWeek.TUESDAY, DayOfWeek.SUNDAY),
+                        Collections.singletonList(LocalTime.of(7, 15)), LocalDate.of(2024, 2, 1),
+                        LocalDate.of(2024, 6, 30), "5 ml", NO_TAPER),
+                RecurrenceRule.everyHours(6, LocalTime.of(0, 0), LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 10),
+                        "2 pills", Arrays.asList(new RecurrenceRule.TaperStep(3, "1 pill"),
+                                new RecurrenceRule.TaperStep(7, "half a pill"))));
+
+        for (RecurrenceRule rule : rules) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            rule.writeTo(new DataOutputStream(bytes));
+            RecurrenceRule read = RecurrenceRule.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            assertSameRule(rule, read);
+        }
+    }
+
+    @Test
+    public void sameAs_seesDifferentRules() {
+        RecurrenceRule rule = RecurrenceRule.daily(Collections.singletonList(LocalTime.of(8, 0)),
+                LocalDate.of(2024, 1, 1), null, "1 pill", NO_TAPER);
+        RecurrenceRule otherTime = RecurrenceRule.daily(Collections.singletonList(LocalTime.of(9, 0)),
+                LocalDate.of(2024, 1, 1), null, "1 pill", NO_TAPER);
+        RecurrenceRule otherEnd = RecurrenceRule.daily(Collections.singletonList(LocalTime.of(8, 0)),
+                LocalDate.of(2024, 1, 1), LocalDate.of(2024, 2, 1), "1 pill", NO_TAPER);
+
+        assertTrue(rule.sameAs(RecurrenceRule.daily(Collections.singletonList(LocalTime.of(8, 0)),
+                LocalDate.of(2024, 1, 1), null, "1 pill", NO_TAPER)));
+        assertFalse(rule.sameAs(otherTime));
+        assertFalse(rule.sameAs(otherEnd));
+        assertFalse(rule.sameAs(null));
+    }
+
+    @Test
+    public void moreTimesThanTheFormatHolds_isRejected() {
+        List<LocalTime> times = new ArrayList<>();
+        for (int minute = 0; minute <= RecurrenceRule.MAX_TIMES; minute++) {
+            times.add(LocalTime.ofSecondOfDay(minute * 60L));
+        }
+        try {
+            RecurrenceRule.daily(times, LocalDate.of(2024, 1, 1), null, "1 pill", NO_TAPER);
+            fail("More than " + RecurrenceRule.MAX_TIMES + " times must be rejected");
+        } catch (IllegalArgumentException expected) {
+            // writeTo stores the count in one byte
+        }
+        RecurrenceRule.daily(times.subList(0, RecurrenceRule.MAX_TIMES), LocalDate.of(2024, 1, 1), null, "1 pill", NO_TAPER);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void endDateBeforeStartDate_isRejected() {
+        RecurrenceRule.daily(Collections.singletonList(LocalTime.of(8, 0)),
+                LocalDate.of(2024, 1, 2), LocalDate.of(2024, 1, 1), "1 pill", NO_TAPER);
+    }
+
+    private static void assertSameRule(RecurrenceRule expected, RecurrenceRule actual) {
+        assertEquals(expected.type, actual.type);
+        assertEquals(expected.times, actual.times);
+        assertEquals(expected.weekdayMask, actual.weekdayMask);
+        assertEquals(expected.intervalHours, actual.intervalHours);
+        assertEquals(expected.startDate, actual.startDate);
+        assertEquals(expected.endDate, actual.endDate);
+        assertEquals(expected.baseDosage, actual.baseDosage);
+        assertEquals(expected.taper.size(), actual.taper.size());
+        for (int i = 0; i < expected.taper.size(); i++) {
+            assertEquals(expected.taper.get(i).fromDay, actual.taper.get(i).fromDay);
+            assertEquals(expected.taper.get(i).dosage, actual.taper.get(i).dosage);
+        }
+    }
+}
@@ -8,24 +8,35 @@ import android.content.IntentFilter;
 import android.content.Intent;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
-import android.os.PowerManager;
 import android.provider.Settings;
 import android.util.Log;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.view.WindowManager;
 import android.widget.Button;
 import android.widget.TextView;
 
 public class AlarmActivity extends Activity {
     private static final String TAG = "AlarmActivity";
-    private Handler handler;
-    private Runnable bringToFrontRunnable;
-    private boolean isActive = true;
     private BroadcastReceiver userPresentReceiver;
     private BroadcastReceiver screenOnReceiver;
-    private PowerManager.WakeLock screenWakeLock;
+    // Brings this screen back only when something covers it - no polling
+    private AlarmForegroundCoordinator foreground;
+    private WakeLockManager.Lease screenLease;
+    // Session on screen and how many more alarms wait behind it in AlarmService
+    private long sessionId = -1;
+    private int waitingSessions = 0;
+    private AlarmStateStore alarmState;
+    // Drops the screen lease the moment the alarm ends, and lets the coordinator check again if
+    // the service publishes the alarm only after this activity was launched by the receiver
+    private final AlarmStateStore.Listener alarmStateListener = state -> {
+        if (!state.active) {
+            releaseScreenLease();
+        }
+        if (foreground != null) {
+            foreground.onAlarmStateChanged(state.active);
+        }
+    };
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -34,21 +45,22 @@ public class AlarmActivity extends Activity {
         Log.d(TAG, "🚨🚨🚨 AlarmActivity.onCreate() - ACTIVITY STARTED!");
         Log.d(TAG, "Intent extras: " + getIntent().getExtras());
         
-        // CRITICAL: Acquire a FULL wake lock to turn on screen and keep it on
-        try {
-            PowerManager pm = (PowerManager) getSystemService(Context.POWER_SERVICE);
-            screenWakeLock = pm.newWakeLock(
-                PowerManager.FULL_WAKE_LOCK |
-                PowerManager.ACQUIRE_CAUSES_WAKEUP |
-                PowerManager.ON_AFTER_RELEASE,
-                "MyMedAlert:AlarmScreenWakeLock"
-            );
-            screenWakeLock.acquire(120000); // Hold for 2 minutes max
-            Log.d(TAG, "✅ Screen wake lock acquired - screen should turn on");
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to acquire screen wake lock: " + e.getMessage());
+        // Only AlarmService starts this screen with a session; anything else asks it to
+        if (!AlarmIntents.hasAlarmDetails(getIntent())) {
+            AlarmService.showCurrentAlarm(this);
         }
         
+        // CRITICAL: Turn on the screen and keep it on while this alarm rings. The lease ends when
+        // the alarm state goes inactive, or after 2 minutes at most
+        AlarmGroup firedGroup = AlarmIntents.getGroup(this, getIntent());
+        screenLease = WakeLockManager.getInstance(this).acquire(
+            getIntent().getLongExtra(FireLatencyTracer.EXTRA_TRACE_ID, 0),
+            firedGroup.isEmpty() ? -1 : firedGroup.getItems().get(0).alarmId,
+            WakeLockManager.Kind.SCREEN,
+            120000
+        );
+        Log.d(TAG, "✅ Screen wake lock lease acquired - screen should turn on");
+        
         // CRITICAL: Set ALL window flags BEFORE setContentView
         // This ensures the activity appears OVER the lock screen like native alarm
         getWindow().addFlags(
@@ -92,13 +104,16 @@ public class AlarmActivity extends Activity {
             }
         }
         
-        // Register receiver for user unlock event to bring alarm to front
+        alarmState = AlarmStateStore.getInstance(this);
+        foreground = new AlarmForegroundCoordinator(this, alarmState);
+        
+        // Register receiver for user unlock event - the unlocked home screen may cover the alarm
         userPresentReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
                 if (Intent.ACTION_USER_PRESENT.equals(intent.getAction())) {
-                    Log.d(TAG, "🔓 User unlocked device - forcing AlarmActivity to front");
-                    bringActivityToFront();
+                    Log.d(TAG, "🔓 User unlocked device - checking AlarmActivity is still in front");
+                    foreground.onUserPresent();
                 }
             }
         };
@@ -109,8 +124,8 @@ public class AlarmActivity extends Activity {
             @Override
             public void onReceive(Context context, Intent intent) {
                 if (Intent.ACTION_SCREEN_ON.equals(intent.getAction())) {
-                    Log.d(TAG, "📱 Screen turned on - bringing AlarmActivity to front");
-                    bringActivityToFront();
+                    Log.d(TAG, "📱 Screen turned on - checking AlarmActivity is still in front");
+                    foreground.onScreenOn();
                 }
             }
         };
@@ -127,34 +142,15 @@ public class AlarmActivity extends Activity {
         
         // Create a simple layout programmatically
         setContentView(createAlarmLayout());
+        traceFirstFrame(getIntent().getLongExtra(FireLatencyTracer.EXTRA_TRACE_ID, 0));
         
-        // Get alarm details from intent
-        Intent intent = getIntent();
-        String medicineName = intent.getStringExtra("medicineName");
-        String dosage = intent.getStringExtra("dosage");
-        String patientName = intent.getStringExtra("patientName");
-        
-        // Safe string handling with defaults
-        String safeMedicineName = (medicineName != null && !medicineName.isEmpty()) ? medicineName : "Medicine";
-        String safeDosage = (dosage != null && !dosage.isEmpty()) ? dosage : "Unknown dosage";
-        String safePatientName = (patientName != null && !patientName.isEmpty()) ? patientName : "";
-        
-        // Update the display with enhanced medicine information
-        TextView titleText = findViewById(android.R.id.text1);
-        TextView messageText = findViewById(android.R.id.text2);
-        
-        if (titleText != null) {
-            titleText.setText("🚨 MEDICINE ALARM 🚨\n💊 " + safeMedicineName);
-        }
+        // Show every dose in this alarm (one or more coalesced medicines)
+        showAlarmDetails(getIntent());
         
-        if (messageText != null) {
-            String message = "💊 DOSAGE: " + safeDosage + "\n";
-            if (!safePatientName.isEmpty()) {
-                message += "👤 PATIENT: " + safePatientName + "\n";
-            }
-            message += "⏰ TIME: " + java.text.DateFormat.getTimeInstance(java.text.DateFormat.SHORT).format(new java.util.Date()) + "\n\n";
-            message += "🔔 Please take your medicine now!";
-            messageText.setText(message);
+        // Set up taken button
+        Button takenButton = findViewById(android.R.id.button3);
+        if (takenButton != null) {
+            takenButton.setOnClickListener(v -> takeDose());
         }
         
         // Set up dismiss button
@@ -169,63 +165,78 @@ public class AlarmActivity extends Activity {
             snoozeButton.setOnClickListener(v -> snoozeAlarm());
         }
         
-        // CRITICAL: Set up handler to periodically bring this activity to front
-        // This ensures we stay visible even after phone unlock
-        handler = new Handler(Looper.getMainLooper());
-        bringToFrontRunnable = new Runnable() {
+        // Keep listening for the end of the alarm
+        alarmState.addListener(alarmStateListener);
+    }
+    
+    /**
+     * Stamps the fire latency trace when the first frame of the alarm screen is drawn.
+     */
+    private void traceFirstFrame(long traceId) {
+        if (traceId <= 0) return;
+        View decorView = getWindow().getDecorView();
+        ViewTreeObserver.OnDrawListener drawListener = new ViewTreeObserver.OnDrawListener() {
             @Override
-            public void run() {
-                // Check SharedPreferences for alarm state (more reliable than static variable)
-                if (isActive && AlarmService.isAlarmActiveFromPrefs(AlarmActivity.this)) {
-                    Log.d(TAG, "📱 Checking if AlarmActivity needs to come to front");
-                    
-                    // Re-apply window flags
-                    getWindow().addFlags(
-                        WindowManager.LayoutParams.FLAG_SHOW_WHEN_LOCKED |
-                        WindowManager.LayoutParams.FLAG_DISMISS_KEYGUARD |
-                        WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON |
-                        WindowManager.LayoutParams.FLAG_TURN_SCREEN_ON
-                    );
-                    
-                    // Bring the window's decor view to front
-                    getWindow().getDecorView().bringToFront();
-                    
-                    // Schedule next check
-                    handler.postDelayed(this, 500); // Check every 500ms
-                }
+            public void onDraw() {
+                FireLatencyTracer.getInstance(AlarmActivity.this)
+                    .mark(traceId, FireLatencyTracer.Stage.FIRST_FRAME, System.currentTimeMillis());
+                // Listeners cannot be removed while the tree is drawing
+                ViewTreeObserver.OnDrawListener self = this;
+                decorView.post(() -> decorView.getViewTreeObserver().removeOnDrawListener(self));
             }
         };
-        // Start periodic checking
-        handler.postDelayed(bringToFrontRunnable, 500);
+        decorView.getViewTreeObserver().addOnDrawListener(drawListener);
     }
     
     /**
-     * CRITICAL: Helper method to bring this activity to the front
-     * This is called when screen turns on or user unlocks device
+     * Fills the title and message with the doses carried by the intent. A grouped alarm lists
+     * each medicine with its dosage and patient.
      */
-    private void bringActivityToFront() {
-        if (!isActive) return;
-        
-        try {
-            // Re-apply all window flags
-            getWindow().addFlags(
-                WindowManager.LayoutParams.FLAG_SHOW_WHEN_LOCKED |
-                WindowManager.LayoutParams.FLAG_DISMISS_KEYGUARD |
-                WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON |
-                WindowManager.LayoutParams.FLAG_TURN_SCREEN_ON
-            );
-            
-            // Bring window to front
-            getWindow().getDecorView().bringToFront();
-            
-            // Also try to reorder activity to front
-            Intent bringToFrontIntent = new Intent(this, AlarmActivity.class);
-            bringToFrontIntent.setFlags(Intent.FLAG_ACTIVITY_REORDER_TO_FRONT | Intent.FLAG_ACTIVITY_NEW_TASK);
-            startActivity(bringToFrontIntent);
-            
-            Log.d(TAG, "✅ Activity brought to front");
-        } catch (Exception e) {
-            Log.e(TAG, "Error bringing activity to front: " + e.getMessage());
+    private void showAlarmDetails(Intent intent) {
+        AlarmGroup group = AlarmIntents.getGroup(this, intent);
+        sessionId = intent.getLongExtra(AlarmService.EXTRA_SESSION_ID, -1);
+        waitingSessions = intent.getIntExtra(AlarmService.EXTRA_WAITING_SESSIONS, 0);
+        
+        TextView titleText = findViewById(android.R.id.text1);
+        TextView messageText = findViewById(android.R.id.text2);
+        
+        if (titleText != null) {
+            String title = group.size() == 1 ? group.getTitle() : group.getTitle().toUpperCase() + " DUE";
+            titleText.setText("🚨 MEDICINE ALARM 🚨\n💊 " + title);
+        }
+        
+        if (messageText != null) {
+            StringBuilder message = new StringBuilder();
+            if (group.size() == 1) {
+                AlarmRecord item = group.getItems().get(0);
+                message.append("💊 DOSAGE: ").append(item.dosage.isEmpty() ? "Unknown dosage" : item.dosage).append("\n");
+                if (!item.patientName.isEmpty()) {
+                    message.append("👤 PATIENT: ").append(item.patientName).append("\n");
+                }
+            } else {
+                for (AlarmRecord item : group.getItems()) {
+                    message.append("💊 ").append(item.medicineName.isEmpty() ? "Medicine" : item.medicineName)
+                            .append(" - ").append(item.dosage.isEmpty() ? "Unknown dosage" : item.dosage);
+                    if (!item.patientName.isEmpty()) {
+                        message.append(" (👤 ").append(item.patientName).append(")");
+                    }
+                    message.append("\n");
+                }
+            }
+            message.append("⏰ TIME: ").append(java.text.DateFormat.getTimeInstance(java.text.DateFormat.SHORT).format(new java.util.Date())).append("\n\n");
+            message.append(group.size() == 1 ? "🔔 Please take your medicine now!" : "🔔 Please take your medicines now!");
+            if (waitingSessions > 0) {
+                message.append("\n➕ ").append(waitingSessions).append(" more alarm(s) waiting");
+            }
+            messageText.setText(message.toString());
+        }
+        
+        // Offer snooze only while the policy still allows it for these doses
+        Button snoozeButton = findViewById(android.R.id.button2);
+        if (snoozeButton != null) {
+            AlarmSnoozeEngine snoozeEngine = AlarmSnoozeEngine.getInstance(this);
+            snoozeButton.setText("⏰ SNOOZE " + snoozeEngine.getIntervalMinutes() + " MINUTES");
+            snoozeButton.setVisibility(snoozeEngine.canSnooze(group) ? View.VISIBLE : View.GONE);
         }
     }
     
@@ -264,12 +275,29 @@ public class AlarmActivity extends Activity {
         messageText.setTypeface(null, android.graphics.Typeface.BOLD); // Make it bold
         layout.addView(messageText);
         
+        // Taken button - LARGE and PROMINENT, records the dose natively
+        Button takenButton = new Button(this);
+        takenButton.setId(android.R.id.button3);
+        takenButton.setText("💊 TAKEN");
+        takenButton.setTextSize(24); // Much larger text
+        takenButton.setBackgroundColor(0xFF00CC00); // Brighter green
+        takenButton.setTextColor(0xFFFFFFFF);
+        takenButton.setPadding(50, 50, 50, 50); // Larger padding
+        takenButton.setTypeface(null, android.graphics.Typeface.BOLD); // Bold text
+        takenButton.setAllCaps(true);
+        android.widget.LinearLayout.LayoutParams takenParams = new android.widget.LinearLayout.LayoutParams(
+            android.widget.LinearLayout.LayoutParams.MATCH_PARENT,
+            250 // Fixed height of 250dp for bigger button
+        );
+        takenParams.setMargins(40, 30, 40, 20);
+        layout.addView(takenButton, takenParams);
+        
         // Dismiss button - LARGE and PROMINENT
         Button dismissButton = new Button(this);
         dismissButton.setId(android.R.id.button1);
-        dismissButton.setText("✅ DISMISS ALARM");
+        dismissButton.setText("✕ DISMISS ALARM");
         dismissButton.setTextSize(24); // Much larger text
-        dismissButton.setBackgroundColor(0xFF00CC00); // Brighter green
+        dismissButton.setBackgroundColor(0xFF777777); // Neutral grey
         dismissButton.setTextColor(0xFFFFFFFF);
         dismissButton.setPadding(50, 50, 50, 50); // Larger padding
         dismissButton.setTypeface(null, android.graphics.Typeface.BOLD); // Bold text
@@ -278,13 +306,13 @@ public class AlarmActivity extends Activity {
             android.widget.LinearLayout.LayoutParams.MATCH_PARENT,
             250 // Fixed height of 250dp for bigger button
         );
-        dismissParams.setMargins(40, 30, 40, 20);
+        dismissParams.setMargins(40, 20, 40, 20);
         layout.addView(dismissButton, dismissParams);
         
         // Snooze button - LARGE and PROMINENT
         Button snoozeButton = new Button(this);
         snoozeButton.setId(android.R.id.button2);
-        snoozeButton.setText("⏰ SNOOZE 5 MINUTES");
+        snoozeButton.setText("⏰ SNOOZE");
         snoozeButton.setTextSize(24); // Much larger text
         snoozeButton.setBackgroundColor(0xFF0099FF); // Brighter blue
         snoozeButton.setTextColor(0xFFFFFFFF);
@@ -301,19 +329,39 @@ public class AlarmActivity extends Activity {
         return layout;
     }
     
+    private void takeDose() {
+        Log.d(TAG, "👆 User clicked TAKEN button");
+        
+        // Another alarm is waiting: stay on screen, the service sends its details next
+        if (waitingSessions > 0) {
+            sendAlarmAction("TAKE_ALARM");
+            return;
+        }
+        
+        // Closing on purpose - nothing may pull this screen back
+        foreground.stop();
+        
+        // The service records the dose and stops the alarm
+        sendAlarmAction("TAKE_ALARM");
+        
+        Log.d(TAG, "💊 Dose taken, closing activity");
+        finish();
+    }
+    
     private void dismissAlarm() {
         Log.d(TAG, "👆 User clicked DISMISS button");
         
-        // Stop the periodic handler
-        isActive = false;
-        if (handler != null && bringToFrontRunnable != null) {
-            handler.removeCallbacks(bringToFrontRunnable);
+        // Another alarm is waiting: stay on screen, the service sends its details next
+        if (waitingSessions > 0) {
+            sendAlarmAction("DISMISS_ALARM");
+            return;
         }
         
+        // Closing on purpose - nothing may pull this screen back
+        foreground.stop();
+        
         // Stop the alarm service
-        Intent stopIntent = new Intent(this, AlarmService.class);
-        stopIntent.setAction("DISMISS_ALARM");
-        startService(stopIntent);
+        sendAlarmAction("DISMISS_ALARM");
         
         Log.d(TAG, "✅ Alarm dismissed, closing activity");
         // Close this activity
@@ -323,22 +371,40 @@ public class AlarmActivity extends Activity {
     private void snoozeAlarm() {
         Log.d(TAG, "👆 User clicked SNOOZE button");
         
-        // Stop the periodic handler
-        isActive = false;
-        if (handler != null && bringToFrontRunnable != null) {
-            handler.removeCallbacks(bringToFrontRunnable);
+        if (waitingSessions > 0) {
+            sendAlarmAction("SNOOZE_ALARM");
+            return;
         }
         
+        // Closing on purpose - nothing may pull this screen back
+        foreground.stop();
+        
         // Snooze the alarm
-        Intent snoozeIntent = new Intent(this, AlarmService.class);
-        snoozeIntent.setAction("SNOOZE_ALARM");
-        startService(snoozeIntent);
+        sendAlarmAction("SNOOZE_ALARM");
         
-        Log.d(TAG, "⏰ Alarm snoozed for 5 minutes, closing activity");
+        Log.d(TAG, "⏰ Alarm snoozed, closing activity");
         // Close this activity
         finish();
     }
     
+    /**
+     * Sends a taken/dismiss/snooze for the session on screen, so it never hits a newer alarm.
+     */
+    private void sendAlarmAction(String action) {
+        Intent actionIntent = new Intent(this, AlarmService.class);
+        actionIntent.setAction(action);
+        actionIntent.putExtra(AlarmService.EXTRA_SESSION_ID, sessionId);
+        startService(actionIntent);
+    }
+    
+    private void releaseScreenLease() {
+        if (screenLease != null) {
+            screenLease.release();
+            screenLease = null;
+            Log.d(TAG, "Screen wake lock lease released");
+        }
+    }
+    
     @Override
     public void onBackPressed() {
         // Prevent back button from dismissing alarm - user must use dismiss button
@@ -375,6 +441,14 @@ public class AlarmActivity extends Activity {
         }
         
         Log.d(TAG, "✅ All window flags re-applied in onResume");
+        foreground.onResumed();
+    }
+    
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // Another activity may be coming on top; the coordinator looks once it settles
+        foreground.onPaused();
     }
     
     @Override
@@ -382,6 +456,13 @@ public class AlarmActivity extends Activity {
         super.onNewIntent(intent);
         // Handle new intent if activity is already running
         setIntent(intent);
+        // Relaunches from the service carry the session on screen and its doses - refresh the list
+        // in place. Anything without a session ID (bring-to-front) keeps the session shown, so the
+        // buttons never act on a different alarm than the one on screen.
+        if (AlarmIntents.hasAlarmDetails(intent) && intent.getLongExtra(AlarmService.EXTRA_SESSION_ID, -1) >= 0) {
+            showAlarmDetails(intent);
+            foreground.onNewAlarm();
+        }
     }
     
     @Override
@@ -401,22 +482,10 @@ public class AlarmActivity extends Activity {
                 );
             }
         } else {
-            Log.d(TAG, "⚠️ AlarmActivity LOST window focus - will try to regain it");
-            // When we lose focus (e.g., another activity comes to front), try to bring back
-            // Check SharedPreferences for alarm state (more reliable)
-            if (isActive && AlarmService.isAlarmActiveFromPrefs(this)) {
-                // Schedule bringing to front after a short delay
-                if (handler != null) {
-                    handler.postDelayed(() -> {
-                        if (isActive && AlarmService.isAlarmActiveFromPrefs(AlarmActivity.this)) {
-                            Log.d(TAG, "🔄 Attempting to bring AlarmActivity back to front");
-                            Intent intent = new Intent(AlarmActivity.this, AlarmActivity.class);
-                            intent.setFlags(Intent.FLAG_ACTIVITY_REORDER_TO_FRONT);
-                            startActivity(intent);
-                        }
-                    }, 300);
-                }
-            }
+            Log.d(TAG, "⚠️ AlarmActivity lost window focus");
+            // A dialog or the notification shade only takes focus; the coordinator re-asserts
+            // only if the activity is really covered once things settle
+            foreground.onFocusLost();
         }
     }
     
@@ -424,8 +493,8 @@ public class AlarmActivity extends Activity {
     protected void onDestroy() {
         super.onDestroy();
         
-        // Clean up - set inactive first
-        isActive = false;
+        // Clean up - nothing may bring this screen back now
+        foreground.stop();
         
         // Unregister userPresentReceiver
         if (userPresentReceiver != null) {
@@ -448,19 +517,10 @@ public class AlarmActivity extends Activity {
         }
         
         // Release screen wake lock
-        if (screenWakeLock != null && screenWakeLock.isHeld()) {
-            try {
-                screenWakeLock.release();
-                screenWakeLock = null;
-                Log.d(TAG, "Screen wake lock released");
-            } catch (Exception e) {
-                Log.e(TAG, "Error releasing screen wake lock: " + e.getMessage());
-            }
-        }
+        releaseScreenLease();
         
-        // Clean up handler
-        if (handler != null && bringToFrontRunnable != null) {
-            handler.removeCallbacks(bringToFrontRunnable);
+        if (alarmState != null) {
+            alarmState.removeListener(alarmStateListener);
         }
         
         Log.d(TAG, "🔴 AlarmActivity destroyed");
@@ -0,0 +1,499 @@
+package com.balivishnu.mymedalert;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.media.AudioAttributes;
+import android.media.AudioFormat;
+import android.media.AudioTrack;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.RingtoneManager;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Alarm sound playback that does not depend on Ringtone's start latency or looping.
+ *
+ * Each sound (the default alarm sound or a medicine's own URI) is decoded once into 16-bit PCM
+ * and cached in memory and under the cache dir, so later fires - and later processes - skip the
+ * decoder. Playback streams the cached PCM into one small AudioTrack on the alarm usage from a
+ * single audio-priority thread, wrapping around the same array so the loop has no gap and
+ * allocates nothing. An optional volume ramp starts quiet and reaches full volume after a
+ * configurable time. A sound that has not been decoded yet is decoded in the background while
+ * the caller falls back to Ringtone for this one fire.
+ */
+public final class AlarmAudioEngine {
+    private static final String TAG = "AlarmAudioEngine";
+    static final String PREFS_NAME = "AlarmAudioPrefs";
+    private static final String KEY_RAMP_SECONDS = "rampSeconds";
+    private static final String KEY_RAMP_START_VOLUME = "rampStartVolume";
+    private static final String CACHE_DIR = "alarm_pcm";
+    private static final int CACHE_MAGIC = 0x50434D31; // "PCM1"
+    // Longer sounds are cut here; an alarm loops anyway
+    private static final int MAX_PCM_BYTES = 4 * 1024 * 1024;
+    private static final int MAX_MEMORY_CACHE_BYTES = 8 * 1024 * 1024;
+    private static final long DECODE_TIMEOUT_US = 10_000;
+    public static final int MAX_RAMP_SECONDS = 5 * 60;
+
+    /**
+     * One decoded sound: interleaved 16-bit PCM.
+     */
+    static final class Pcm {
+        final String key;
+        final int sampleRate;
+        final int channels;
+        final byte[] data;
+        final int length;
+
+        Pcm(String key, int sampleRate, int channels, byte[] data, int length) {
+            this.key = key;
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+            this.data = data;
+            this.length = length;
+        }
+
+        int frameSize() {
+            return channels * 2;
+        }
+    }
+
+    private static AlarmAudioEngine instance;
+
+    private final Context context;
+    private final Context storage;
+    private final File cacheDir;
+    private final ExecutorService decoder = Executors.newSingleThreadExecutor();
+    // Access-ordered, so the least recently played sound is evicted first
+    private final LinkedHashMap<String, Pcm> memoryCache = new LinkedHashMap<>(8, 0.75f, true);
+    private int memoryCacheBytes;
+    private Player player;
+    private int rampSeconds;
+    private float rampStartVolume;
+
+    private AlarmAudioEngine(Context context) {
+        this.context = context.getApplicationContext();
+        // Device-protected, so an alarm before the first unlock still plays with its settings
+        this.storage = DeviceStorage.get(this.context);
+        this.cacheDir = new File(storage.getCacheDir(), CACHE_DIR);
+        SharedPreferences prefs = storage.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.rampSeconds = prefs.getInt(KEY_RAMP_SECONDS, 0);
+        this.rampStartVolume = prefs.getFloat(KEY_RAMP_START_VOLUME, 0.2f);
+    }
+
+    public static synchronized AlarmAudioEngine getInstance(Context context) {
+        if (instance == null) {
+            instance = new AlarmAudioEngine(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Ramps the alarm from {@code startVolume} (0..1) to full volume over {@code seconds};
+     * 0 seconds plays at full volume from the start.
+     */
+    public synchronized void setVolumeRamp(int seconds, float startVolume) {
+        rampSeconds = Math.max(0, Math.min(seconds, MAX_RAMP_SECONDS));
+        rampStartVolume = Math.max(0f, Math.min(startVolume, 1f));
+        storage.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putInt(KEY_RAMP_SECONDS, rampSeconds)
+                .putFloat(KEY_RAMP_START_VOLUME, rampStartVolume)
+                .apply();
+    }
+
+    public synchronized int getRampSeconds() {
+        return rampSeconds;
+    }
+
+    public synchronized float getRampStartVolume() {
+        return rampStartVolume;
+    }
+
+    /**
+     * Decodes {@code sound} into the cache in the background if it is not cached yet.
+     */
+    public void preload(String sound) {
+        final Uri uri = resolve(sound);
+        if (uri == null) return;
+        decoder.execute(() -> load(uri.toString(), uri));
+    }
+
+    /**
+     * Starts looping {@code sound} (empty for the default alarm sound), replacing whatever plays.
+     *
+     * @return false when the sound is not decoded yet or the track failed - the caller should
+     *         fall back to Ringtone; the sound is then decoded for the next fire
+     */
+    public synchronized boolean play(String sound) {
+        stop();
+        Uri uri = resolve(sound);
+        if (uri == null) {
+            Log.w(TAG, "No alarm sound to play");
+            return false;
+        }
+        String key = uri.toString();
+        Pcm pcm = cached(key);
+        if (pcm == null) {
+            preload(sound);
+            return false;
+        }
+        try {
+            player = new Player(pcm, rampSeconds * 1000L, rampStartVolume);
+            player.start();
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Failed to start alarm track: " + e.getMessage());
+            player = null;
+            return false;
+        }
+    }
+
+    public synchronized boolean isPlaying() {
+        return player != null;
+    }
+
+    public synchronized void stop() {
+        if (player != null) {
+            player.halt();
+            player = null;
+        }
+    }
+
+    /**
+     * The URI a sound string refers to. The default alarm sound is resolved to the actual file so
+     * the cache notices when the user picks another one.
+     */
+    private Uri resolve(String sound) {
+        if (sound != null && !sound.isEmpty()) {
+            return Uri.parse(sound);
+        }
+        try {
+            Uri uri = RingtoneManager.getActualDefaultRingtoneUri(context, RingtoneManager.TYPE_ALARM);
+            if (uri == null) {
+                uri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_ALARM);
+            }
+            if (uri == null) {
+                uri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION);
+            }
+            return uri;
+        } catch (Exception e) {
+            Log.e(TAG, "Error resolving default alarm sound: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * The cached PCM for {@code key} from memory or disk, or null.
+     */
+    private Pcm cached(String key) {
+        synchronized (memoryCache) {
+            Pcm pcm = memoryCache.get(key);
+            if (pcm != null) return pcm;
+        }
+        Pcm pcm = readCacheFile(key);
+        if (pcm != null) {
+            remember(pcm);
+        }
+        return pcm;
+    }
+
+    private void load(String key, Uri uri) {
+        if (cached(key) != null) return;
+        long startedAt = SystemClock.elapsedRealtime();
+        try {
+            Pcm pcm = decode(key, uri);
+            writeCacheFile(pcm);
+            remember(pcm);
+            Log.d(TAG, "Decoded alarm sound " + key + ": " + pcm.length + " bytes at " + pcm.sampleRate
+                    + "Hz x" + pcm.channels + " in " + (SystemClock.elapsedRealtime() - startedAt) + "ms");
+        } catch (Exception e) {
+            Log.e(TAG, "❌ Failed to decode alarm sound " + key + ": " + e.getMessage());
+        }
+    }
+
+    private void remember(Pcm pcm) {
+        synchronized (memoryCache) {
+            Pcm previous = memoryCache.put(pcm.key, pcm);
+            memoryCacheBytes += pcm.length - (previous != null ? previous.length : 0);
+            Iterator<Map.Entry<String, Pcm>> eldest = memoryCache.entrySet().iterator();
+            while (memoryCacheBytes > MAX_MEMORY_CACHE_BYTES && memoryCache.size() > 1) {
+                memoryCacheBytes -= eldest.next().getValue().length;
+                eldest.remove();
+            }
+        }
+    }
+
+    private Pcm decode(String key, Uri uri) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            extractor.setDataSource(context, uri, null);
+            MediaFormat format = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat candidate = extractor.getTrackFormat(i);
+                String mime = candidate.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    format = candidate;
+                    break;
+                }
+            }
+            if (format == null) {
+                throw new IOException("No audio track");
+            }
+
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+
+            int sampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            int channels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            byte[] chunk = new byte[0];
+            boolean inputDone = false;
+            boolean outputDone = false;
+            while (!outputDone && out.size() < MAX_PCM_BYTES) {
+                if (!inputDone) {
+                    int inIndex = codec.dequeueInputBuffer(DECODE_TIMEOUT_US);
+                    if (inIndex >= 0) {
+                        ByteBuffer input = codec.getInputBuffer(inIndex);
+                        int size = extractor.readSampleData(input, 0);
+                        if (size < 0) {
+                            codec.queueInputBuffer(inIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            codec.queueInputBuffer(inIndex, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+                int outIndex = codec.dequeueOutputBuffer(info, DECODE_TIMEOUT_US);
+                if (outIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    MediaFormat outFormat = codec.getOutputFormat();
+                    sampleRate = outFormat.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                    channels = outFormat.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+                            && outFormat.containsKey(MediaFormat.KEY_PCM_ENCODING)
+                            && outFormat.getInteger(MediaFormat.KEY_PCM_ENCODING) != AudioFormat.ENCODING_PCM_16BIT) {
+                        throw new IOException("Decoder output is not 16-bit PCM");
+                    }
+                } else if (outIndex >= 0) {
+                    if (info.size > 0) {
+                        ByteBuffer output = codec.getOutputBuffer(outIndex);
+                        if (chunk.length < info.size) {
+                            chunk = new byte[info.size];
+                        }
+                        ((Buffer) output).position(info.offset);
+                        output.get(chunk, 0, info.size);
+                        out.write(chunk, 0, info.size);
+                    }
+                    codec.releaseOutputBuffer(outIndex, false);
+                    outputDone = (info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0;
+                }
+            }
+            if (channels < 1 || channels > 2) {
+                throw new IOException("Unsupported channel count " + channels);
+            }
+
+            int frameSize = channels * 2;
+            int length = Math.min(out.size(), MAX_PCM_BYTES) / frameSize * frameSize;
+            if (length == 0) {
+                throw new IOException("Sound decoded to nothing");
+            }
+            return new Pcm(key, sampleRate, channels, out.toByteArray(), length);
+        } finally {
+            if (codec != null) {
+                try {
+                    codec.stop();
+                } catch (Exception ignored) {
+                    // Already stopped or never started
+                }
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+
+    private File cacheFile(String key) {
+        return new File(cacheDir, Integer.toHexString(key.hashCode()) + ".pcm");
+    }
+
+    /**
+     * Cache file: [int magic][UTF key][int sampleRate][int channels][int length][PCM bytes].
+     * The key guards against hash collisions between sound URIs.
+     */
+    private Pcm readCacheFile(String key) {
+        File file = cacheFile(key);
+        if (!file.exists()) return null;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != CACHE_MAGIC || !key.equals(in.readUTF())) {
+                return null;
+            }
+            int sampleRate = in.readInt();
+            int channels = in.readInt();
+            int length = in.readInt();
+            if (length <= 0 || length > MAX_PCM_BYTES) {
+                return null;
+            }
+            byte[] data = new byte[length];
+            in.readFully(data);
+            return new Pcm(key, sampleRate, channels, data, length);
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable PCM cache " + file.getName() + ": " + e.getMessage());
+            file.delete();
+            return null;
+        }
+    }
+
+    private void writeCacheFile(Pcm pcm) {
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+            Log.w(TAG, "Cannot create PCM cache dir");
+            return;
+        }
+        File file = cacheFile(pcm.key);
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+            out.writeInt(CACHE_MAGIC);
+            out.writeUTF(pcm.key);
+            out.writeInt(pcm.sampleRate);
+            out.writeInt(pcm.channels);
+            out.writeInt(pcm.length);
+            out.write(pcm.data, 0, pcm.length);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to cache decoded sound: " + e.getMessage());
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Streams one cached sound in a loop until halted. Owns its AudioTrack, which it releases.
+     */
+    private static final class Player extends Thread {
+        private final Pcm pcm;
+        private final AudioTrack track;
+        private final int chunkBytes;
+        private final long rampMs;
+        private final float startVolume;
+        private volatile boolean running = true;
+
+        Player(Pcm pcm, long rampMs, float startVolume) {
+            super("AlarmAudio");
+            this.pcm = pcm;
+            this.rampMs = rampMs;
+            this.startVolume = startVolume;
+
+            int channelMask = pcm.channels == 1 ? AudioFormat.CHANNEL_OUT_MONO : AudioFormat.CHANNEL_OUT_STEREO;
+            int minBuffer = AudioTrack.getMinBufferSize(pcm.sampleRate, channelMask, AudioFormat.ENCODING_PCM_16BIT);
+            // Smallest buffer the device allows keeps start latency low; the writer keeps it full
+            int bufferBytes = Math.max(minBuffer, pcm.frameSize() * 256);
+            AudioTrack.Builder builder = new AudioTrack.Builder()
+                    .setAudioAttributes(new AudioAttributes.Builder()
+                            .setUsage(AudioAttributes.USAGE_ALARM)
+                            .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                            .build())
+                    .setAudioFormat(new AudioFormat.Builder()
+                            .setEncoding(AudioFormat.ENCODING_PCM_16BIT)
+                            .setSampleRate(pcm.sampleRate)
+                            .setChannelMask(channelMask)
+                            .build())
+                    .setTransferMode(AudioTrack.MODE_STREAM)
+                    .setBufferSizeInBytes(bufferBytes);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                builder.setPerformanceMode(AudioTrack.PERFORMANCE_MODE_LOW_LATENCY);
+            }
+            track = builder.build();
+            if (track.getState() != AudioTrack.STATE_INITIALIZED) {
+                track.release();
+                throw new IllegalStateException("AudioTrack not initialized");
+            }
+            chunkBytes = Math.max(pcm.frameSize(), bufferBytes / 2 / pcm.frameSize() * pcm.frameSize());
+        }
+
+        void halt() {
+            running = false;
+            try {
+                // Unblocks a write in progress; the thread releases the track
+                track.pause();
+            } catch (IllegalStateException ignored) {
+                // Track already released by the thread
+            }
+        }
+
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+            long startedAt = SystemClock.elapsedRealtime();
+            float volume = volumeAt(0);
+            int position = 0;
+            try {
+                track.setVolume(volume);
+                // Prime the buffer before play so the first frames are already queued
+                position = write(position);
+                track.play();
+                while (running) {
+                    float next = volumeAt(SystemClock.elapsedRealtime() - startedAt);
+                    if (next != volume) {
+                        volume = next;
+                        track.setVolume(volume);
+                    }
+                    position = write(position);
+                    if (position < 0) break;
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Alarm track stopped: " + e.getMessage());
+            } finally {
+                try {
+                    track.stop();
+                } catch (IllegalStateException ignored) {
+                    // Never started
+                }
+                track.release();
+            }
+        }
+
+        /**
+         * Writes the next chunk, wrapping to the start of the sound. Returns the new position,
+         * or -1 when the track rejected the write.
+         */
+        private int write(int position) {
+            int length = Math.min(chunkBytes, pcm.length - position);
+            int written = track.write(pcm.data, position, length);
+            if (written < 0) {
+                return -1;
+            }
+            position += written;
+            return position >= pcm.length ? 0 : position;
+        }
+
+        private float volumeAt(long elapsedMs) {
+            if (rampMs <= 0 || elapsedMs >= rampMs) {
+                return 1f;
+            }
+            return startVolume + (1f - startVolume) * elapsedMs / rampMs;
+        }
+    }
+}
@@ -0,0 +1,1012 @@
+package com.balivishnu.mymedalert;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * CRITICAL: The MedicineAlarm plugin's commands, run inside the :alarm process.
+ * The alarm store, scheduler, dose history and every other piece of native alarm state have a
+ * single owner: the :alarm process. MedicineAlarmPlugin lives in the app process with the WebView
+ * and forwards each call here through AlarmProvider as { method, JSON arguments }; the reply is a
+ * JSON result or an error message, which the plugin resolves or rejects with unchanged. Nothing
+ * here touches Capacitor, so the :alarm process never loads it.
+ */
+final class AlarmCommands {
+    private static final String TAG = "AlarmCommands";
+
+    /**
+     * One forwarded plugin call: its arguments and, once run, its result or error.
+     */
+    static final class Call {
+        private final JSONObject data;
+        JSONObject result;
+        String error;
+
+        Call(JSONObject data) {
+            this.data = data;
+        }
+
+        JSONObject getData() {
+            return data;
+        }
+
+        Integer getInt(String name) {
+            return getInt(name, null);
+        }
+
+        Integer getInt(String name, Integer defaultValue) {
+            Object value = data.opt(name);
+            return value instanceof Number ? (Integer) ((Number) value).intValue() : defaultValue;
+        }
+
+        Long getLong(String name, Long defaultValue) {
+            Object value = data.opt(name);
+            return value instanceof Number ? (Long) ((Number) value).longValue() : defaultValue;
+        }
+
+        Double getDouble(String name, Double defaultValue) {
+            Object value = data.opt(name);
+            return value instanceof Number ? (Double) ((Number) value).doubleValue() : defaultValue;
+        }
+
+        String getString(String name, String defaultValue) {
+            Object value = data.opt(name);
+            return value instanceof String ? (String) value : defaultValue;
+        }
+
+        Boolean getBoolean(String name, Boolean defaultValue) {
+            Object value = data.opt(name);
+            return value instanceof Boolean ? (Boolean) value : defaultValue;
+        }
+
+        JSONArray getArray(String name) {
+            Object value = data.opt(name);
+            return value instanceof JSONArray ? (JSONArray) value : null;
+        }
+
+        void resolve(JSONObject result) {
+            this.result = result;
+        }
+
+        void reject(String error) {
+            this.error = error;
+        }
+    }
+
+    private final Context context;
+
+    AlarmCommands(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Runs {@code method} with its arguments; the call holds the result or error afterwards.
+     */
+    Call execute(String method, JSONObject arguments) {
+        Call call = new Call(arguments != null ? arguments : new JSONObject());
+        try {
+            switch (method) {
+                case "rearm":
+                    rearm(call);
+                    break;
+                case "getAlarmState":
+                    getAlarmState(call);
+                    break;
+                case "getAlarmEvents":
+                    getAlarmEvents(call);
+                    break;
+                case "scheduleAlarm":
+                    scheduleAlarm(call);
+                    break;
+                case "scheduleAlarms":
+                    scheduleAlarms(call);
+                    break;
+                case "cancelAlarm":
+                    cancelAlarm(call);
+                    break;
+                case "cancelAlarms":
+                    cancelAlarms(call);
+                    break;
+                case "syncAlarms":
+                    syncAlarms(call);
+                    break;
+                case "getScheduledAlarms":
+                    getScheduledAlarms(call);
+                    break;
+                case "setCoalesceWindow":
+                    setCoalesceWindow(call);
+                    break;
+                case "setWarmUpLead":
+                    setWarmUpLead(call);
+                    break;
+                case "setSnoozePolicy":
+                    setSnoozePolicy(call);
+                    break;
+                case "setVolumeRamp":
+                    setVolumeRamp(call);
+                    break;
+                case "preloadSound":
+                    preloadSound(call);
+                    break;
+                case "getFireLatencyStats":
+                    getFireLatencyStats(call);
+                    break;
+                case "getDriftStats":
+                    getDriftStats(call);
+                    break;
+                case "getWakeLockStats":
+                    getWakeLockStats(call);
+                    break;
+                case "appendDoseEvent":
+                    appendDoseEvent(call);
+                    break;
+                case "queryDoseHistory":
+                    queryDoseHistory(call);
+                    break;
+                case "readDoseHistory":
+                    readDoseHistory(call);
+                    break;
+                case "syncInventory":
+                    syncInventory(call);
+                    break;
+                case "getInventory":
+                    getInventory(call);
+                    break;
+                case "getAdherenceSummary":
+                    getAdherenceSummary(call);
+                    break;
+                default:
+                    call.reject("Unknown alarm command: " + method);
+                    break;
+            }
+        } catch (JSONException | RuntimeException e) {
+            Log.e(TAG, "❌ Alarm command " + method + " failed: " + e.getMessage());
+            call.reject("Error running " + method + ": " + e.getMessage());
+        }
+        if (call.result == null && call.error == null) {
+            call.reject(method + " returned no result");
+        }
+        return call;
+    }
+
+    /**
+     * Makes sure the earliest stored dose is armed, e.g. after an app update replaced the process.
+     */
+    private void rearm(Call call) throws JSONException {
+        AlarmScheduler scheduler = AlarmScheduler.getInstance(context);
+        scheduler.rearm();
+        JSONObject result = new JSONObject();
+        result.put("success", true);
+        result.put("nextTriggerTime", scheduler.getNextTriggerTime());
+        call.resolve(result);
+    }
+
+    /**
+     * The alarm ringing right now, for the app process: { active, medicineName }.
+     */
+    private void getAlarmState(Call call) throws JSONException {
+        AlarmState state = AlarmStateStore.getInstance(context).get();
+        JSONObject result = new JSONObject();
+        result.put("active", state.active);
+        result.put("medicineName", state.medicineName);
+        call.resolve(result);
+    }
+
+    /**
+     * Alarm events after a sequence number, oldest first, for replaying what happened while the
+     * WebView was down: { afterSequence }. Resolves { events, lastSequence }. Live events arrive
+     * as alarmFired, alarmTaken, alarmDismissed, alarmSnoozed and alarmAutoStopped, each with the
+     * same shape as an entry of events.
+     */
+    private void getAlarmEvents(Call call) throws JSONException {
+        AlarmEventBus bus = AlarmEventBus.getInstance(context);
+        JSONArray events = new JSONArray();
+        for (AlarmEventBus.Event event : bus.getSince(call.getLong("afterSequence", 0L))) {
+            events.put(toJSON(event));
+        }
+        JSONObject result = new JSONObject();
+        result.put("events", events);
+        result.put("lastSequence", bus.getLastSequence());
+        call.resolve(result);
+    }
+
+    private void scheduleAlarm(Call call) throws JSONException {
+        try {
+            JSONObject spec = call.getData();
+            if (!spec.has("alarmId")) {
+                spec.put("alarmId", 1);
+            }
+            AlarmRecord record = recordFromSpec(spec, System.currentTimeMillis());
+            int alarmId = record.alarmId;
+            long triggerTime = record.triggerTime;
+            
+            // Persist and enqueue - the scheduler keeps only the earliest dose armed with AlarmManager
+            AlarmScheduler scheduler = AlarmScheduler.getInstance(context);
+            boolean persisted = scheduler.schedule(record);
+            preloadSounds(Collections.singletonList(record));
+            
+            JSONObject result = new JSONObject();
+            result.put("success", true);
+            result.put("message", "Alarm scheduled successfully");
+            result.put("alarmId", alarmId);
+            result.put("triggerTime", triggerTime);
+            result.put("persisted", persisted);
+            result.put("nextTriggerTime", scheduler.getNextTriggerTime());
+            call.resolve(result);
+        } catch (IllegalArgumentException e) {
+            call.reject(e.getMessage());
+        } catch (Exception e) {
+            call.reject("Error scheduling alarm: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Builds a record from one alarm spec. A spec either carries an absolute triggerTime or a
+     * recurrence rule, in which case the first occurrence after {@code now} is computed natively.
+     * An optional sound (content URI) rings for this medicine instead of the default alarm sound.
+     * rule: { type: 'daily' | 'weekly' | 'interval', times: ['08:00'], weekdays: [1..7, Monday = 1],
+     *         intervalHours, startDate: 'YYYY-MM-DD', endDate: 'YYYY-MM-DD', taper: [{ fromDay, dosage }] }
+     */
+    private static AlarmRecord recordFromSpec(JSONObject spec, long now) {
+        int alarmId = spec.optInt("alarmId", 1);
+        String medicineId = spec.optString("medicineId", "");
+        String medicineName = spec.optString("medicineName", "Medicine");
+        String dosage = spec.optString("dosage", "1 tablet");
+        String patientName = spec.optString("patientName", "");
+        String sound = spec.optString("sound", "");
+
+        JSONObject ruleJson = spec.optJSONObject("rule");
+        if (ruleJson == null) {
+            if (!spec.has("triggerTime")) {
+                throw new IllegalArgumentException("Trigger time is required");
+            }
+            AlarmRecord record = new AlarmRecord(alarmId, medicineId, medicineName, dosage, patientName,
+                    spec.optLong("triggerTime"), null, sound);
+            AlarmJournal.checkFits(record);
+            return record;
+        }
+
+        RecurrenceRule rule = parseRule(ruleJson, dosage);
+        RecurrenceRule.Occurrence first = rule.nextOccurrence(now, ZoneId.systemDefault());
+        if (first == null) {
+            throw new IllegalArgumentException("Course has already ended");
+        }
+        AlarmRecord record = new AlarmRecord(alarmId, medicineId, medicineName, first.dosage, patientName,
+                first.triggerTime, rule, sound);
+        AlarmJournal.checkFits(record);
+        return record;
+    }
+
+    /**
+     * Decodes each distinct sound of the records in the background so their first fire already
+     * plays from the PCM cache.
+     */
+    private void preloadSounds(List<AlarmRecord> records) {
+        Set<String> sounds = new HashSet<>();
+        for (AlarmRecord record : records) {
+            sounds.add(record.sound);
+        }
+        AlarmAudioEngine engine = AlarmAudioEngine.getInstance(context);
+        for (String sound : sounds) {
+            engine.preload(sound);
+        }
+    }
+
+    private static RecurrenceRule parseRule(JSONObject json, String baseDosage) {
+        try {
+            List<LocalTime> times = new ArrayList<>();
+            JSONArray timesJson = json.optJSONArray("times");
+            if (timesJson != null) {
+                for (int i = 0; i < timesJson.length(); i++) {
+                    times.add(LocalTime.parse(timesJson.getString(i)));
+                }
+            }
+            LocalDate startDate = json.has("startDate") ? LocalDate.parse(json.getString("startDate")) : LocalDate.now();
+            LocalDate endDate = json.has("endDate") && !json.isNull("endDate")
+                    ? LocalDate.parse(json.getString("endDate")) : null;
+
+            List<RecurrenceRule.TaperStep> taper = new ArrayList<>();
+            JSONArray taperJson = json.optJSONArray("taper");
+            if (taperJson != null) {
+                for (int i = 0; i < taperJson.length(); i++) {
+                    JSONObject step = taperJson.getJSONObject(i);
+                    taper.add(new RecurrenceRule.TaperStep(step.getInt("fromDay"), step.getString("dosage")));
+                }
+            }
+
+            String type = json.optString("type", "daily");
+            switch (type) {
+                case "daily":
+                    return RecurrenceRule.daily(times, startDate, endDate, baseDosage, taper);
+                case "weekly":
+                    List<DayOfWeek> weekdays = new ArrayList<>();
+                    JSONArray weekdaysJson = json.optJSONArray("weekdays");
+                    if (weekdaysJson != null) {
+                        for (int i = 0; i < weekdaysJson.length(); i++) {
+                            weekdays.add(DayOfWeek.of(weekdaysJson.getInt(i)));
+                        }
+                    }
+                    return RecurrenceRule.weekly(weekdays, times, startDate, endDate, baseDosage, taper);
+                case "interval":
+                    LocalTime firstTime = times.isEmpty() ? LocalTime.MIDNIGHT : times.get(0);
+                    return RecurrenceRule.everyHours(json.optInt("intervalHours", 0), firstTime,
+                            startDate, endDate, baseDosage, taper);
+                default:
+                    throw new IllegalArgumentException("Unknown rule type: " + type);
+            }
+        } catch (JSONException | DateTimeException e) {
+            throw new IllegalArgumentException("Invalid recurrence rule: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Schedules many alarms in one bridge call: { alarms: [{ alarmId, triggerTime | rule, medicineName, ... }] }.
+     * All valid items are enqueued in one pass, persisted with a single store write and re-armed once.
+     * Resolves with one result per input item, in input order.
+     */
+    private void scheduleAlarms(Call call) throws JSONException {
+        try {
+            JSONArray alarms = call.getArray("alarms");
+            if (alarms == null) {
+                call.reject("alarms array is required");
+                return;
+            }
+
+            JSONArray results = new JSONArray();
+            List<AlarmRecord> accepted = new ArrayList<>(alarms.length());
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < alarms.length(); i++) {
+                JSONObject spec = alarms.optJSONObject(i);
+                JSONObject item = new JSONObject();
+                if (spec != null && spec.has("alarmId")) item.put("alarmId", spec.optInt("alarmId"));
+                try {
+                    if (spec == null || !spec.has("alarmId")) {
+                        throw new IllegalArgumentException("alarmId is required");
+                    }
+                    AlarmRecord record = recordFromSpec(spec, now);
+                    item.put("triggerTime", record.triggerTime);
+                    item.put("success", true);
+                    accepted.add(record);
+                } catch (IllegalArgumentException e) {
+                    item.put("success", false);
+                    item.put("error", e.getMessage());
+                }
+                results.put(item);
+            }
+
+            AlarmScheduler scheduler = AlarmScheduler.getInstance(context);
+            boolean persisted = scheduler.schedule(accepted);
+            preloadSounds(accepted);
+
+            JSONObject result = new JSONObject();
+            result.put("success", true);
+            result.put("scheduled", accepted.size());
+            result.put("failed", alarms.length() - accepted.size());
+            result.put("persisted", persisted);
+            result.put("nextTriggerTime", scheduler.getNextTriggerTime());
+            result.put("results", results);
+            call.resolve(result);
+        } catch (Exception e) {
+            call.reject("Error scheduling alarms: " + e.getMessage());
+        }
+    }
+
+    private void cancelAlarm(Call call) throws JSONException {
+        try {
+            Integer alarmId = call.getInt("alarmId");
+            
+            if (alarmId == null) {
+                call.reject("Alarm ID is required");
+                return;
+            }
+
+            AlarmScheduler.getInstance(context).cancel(Collections.singletonList(alarmId));
+            
+            JSONObject result = new JSONObject();
+            result.put("success", true);
+            result.put("message", "Alarm cancelled successfully");
+            result.put("alarmId", alarmId);
+            call.resolve(result);
+        } catch (Exception e) {
+            call.reject("Error cancelling alarm: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Cancels many alarms in one bridge call: { alarmIds: [...] }.
+     * Removal from the queue and the native store is a single pass. Resolves with one result per id.
+     */
+    private void cancelAlarms(Call call) throws JSONException {
+        try {
+            JSONArray alarmIds = call.getArray("alarmIds");
+            if (alarmIds == null) {
+                call.reject("alarmIds array is required");
+                return;
+            }
+
+            JSONArray results = new JSONArray();
+            List<Integer> cancelled = new ArrayList<>(alarmIds.length());
+            for (int i = 0; i < alarmIds.length(); i++) {
+                JSONObject item = new JSONObject();
+                Object raw = alarmIds.opt(i);
+                if (!(raw instanceof Number)) {
+                    item.put("success", false);
+                    item.put("error", "Alarm ID must be a number");
+                    results.put(item);
+                    continue;
+                }
+                int alarmId = ((Number) raw).intValue();
+                item.put("alarmId", alarmId);
+                item.put("success", true);
+                cancelled.add(alarmId);
+                results.put(item);
+            }
+
+            int removed = AlarmScheduler.getInstance(context).cancel(cancelled);
+
+            JSONObject result = new JSONObject();
+            result.put("success", true);
+            result.put("cancelled", cancelled.size());
+            result.put("removedFromStore", removed);
+            result.put("results", results);
+            call.resolve(result);
+        } catch (Exception e) {
+            call.reject("Error cancelling alarms: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Makes the native alarms match a desired set: { alarms: [spec], medicineIds?: [...] }.
+     * Each spec is compared with the armed alarm of the same ID; only added and changed alarms are
+     * scheduled, and armed alarms of the listed medicines - or of any medicine when medicineIds is
+     * omitted - that are not in the set are cancelled. A rule without startDate keeps the armed
+     * rule's start date, so re-sending an unchanged schedule on another day is a no-op.
+     * Rejects without touching anything if a spec is invalid. Resolves with the diff and the
+     * armed set: { added, changed, removed, unchanged, alarms, nextTriggerTime }.
+     */
+    private void syncAlarms(Call call) throws JSONException {
+        try {
+            JSONArray alarms = call.getArray("alarms");
+            if (alarms == null) {
+                call.reject("alarms array is required");
+                return;
+            }
+            List<String> medicineIds = null;
+            JSONArray medicineIdsJson = call.getArray("medicineIds");
+            if (medicineIdsJson != null) {
+                medicineIds = new ArrayList<>(medicineIdsJson.length());
+                for (int i = 0; i < medicineIdsJson.length(); i++) {
+                    medicineIds.add(medicineIdsJson.getString(i));
+                }
+            }
+
+            AlarmStore store = AlarmStore.getInstance(context);
+            List<AlarmRecord> desired = new ArrayList<>(alarms.length());
+            Set<Integer> seen = new HashSet<>();
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < alarms.length(); i++) {
+                JSONObject spec = alarms.optJSONObject(i);
+                if (spec == null || !spec.has("alarmId")) {
+                    call.reject("alarmId is required (item " + i + ")");
+                    return;
+                }
+                int alarmId = spec.optInt("alarmId");
+                if (!seen.add(alarmId)) {
+                    call.reject("Duplicate alarmId " + alarmId);
+                    return;
+                }
+                JSONObject rule = spec.optJSONObject("rule");
+                AlarmRecord current = store.get(alarmId);
+                if (rule != null && !rule.has("startDate") && current != null && current.rule != null) {
+                    rule.put("startDate", current.rule.startDate.toString());
+                }
+                try {
+                    desired.add(recordFromSpec(spec, now));
+                } catch (IllegalArgumentException e) {
+                    call.reject("Alarm " + alarmId + ": " + e.getMessage());
+                    return;
+                }
+            }
+
+            AlarmScheduler scheduler = AlarmScheduler.getInstance(context);
+            AlarmScheduler.SyncDiff diff = scheduler.reconcile(desired, medicineIds);
+            List<AlarmRecord> upserted = new ArrayList<>(diff.added);
+            upserted.addAll(diff.changed);
+            preloadSounds(upserted);
+
+            JSONObject result = new JSONObject();
+            result.put("success", true);
+            result.put("added", alarmIds(diff.added));
+            result.put("changed", alarmIds(diff.changed));
+            JSONArray removed = new JSONArray();
+            for (Integer alarmId : diff.removed) {
+                removed.put(alarmId);
+            }
+            result.put("removed", removed);
+            result.put("unchanged", diff.unchanged);
+            JSONArray armed = new JSONArray();
+            for (AlarmRecord record : store.getAll()) {
+                armed.put(toJSON(record));
+            }
+            result.put("alarms", armed);
+            result.put("nextTriggerTime", scheduler.getNextTriggerTime());
+            call.resolve(result);
+        } catch (Exception e) {
+            call.reject("Error syncing alarms: " + e.getMessage());
+        }
+    }
+
+    private static JSONArray alarmIds(List<AlarmRecord> records) {
+        JSONArray ids = new JSONArray();
+        for (AlarmRecord record : records) {
+            ids.put(record.alarmId);
+        }
+        return ids;
+    }
+
+    private void getScheduledAlarms(Call call) throws JSONException {
+        try {
+            JSONArray alarms = new JSONArray();
+            for (AlarmRecord record : AlarmStore.getInstance(context).getAll()) {
+                alarms.put(toJSON(record));
+            }
+            JSONObject result = new JSONObject();
+            result.put("alarms", alarms);
+            result.put("count", alarms.length());
+            call.resolve(result);
+        } catch (Exception e) {
+            call.reject("Error reading scheduled alarms: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Sets the coalescing window: doses due within this many seconds after a fire ring with it as
+     * one grouped alarm, so up to that many seconds early; at most
+     * AlarmScheduler.MAX_COALESCE_WINDOW_SECONDS. { seconds } - 0 still groups doses due within the
+     * same second; the reply carries the window actually applied.
+     */
+    private void setCoalesceWindow(Call call) throws JSONException {
+        Integer seconds = call.getInt("seconds");
+        if (seconds == null || seconds < 0) {
+            call.reject("seconds must be a non-negative number");
+            return;
+        }
+        AlarmScheduler scheduler = AlarmScheduler.getInstance(context);
+        scheduler.setCoalesceWindowSeconds(seconds);
+
+        JSONObject result = new JSONObject();
+        result.put("success", true);
+        result.put("seconds", scheduler.getCoalesceWindowSeconds());
+        call.resolve(result);
+    }
+
+    /**
+     * Sets how many seconds before each dose the app warms up (starts the process, prepares the
+     * sound and notification) so the alarm itself only plays and shows. { seconds } - 0 turns it off.
+     */
+    private void setWarmUpLead(Call call) throws JSONException {
+        Integer seconds = call.getInt("seconds");
+        if (seconds == null || seconds < 0) {
+            call.reject("seconds must be a non-negative number");
+            return;
+        }
+        AlarmScheduler scheduler = AlarmScheduler.getInstance(context);
+        scheduler.setWarmUpLeadSeconds(seconds);
+
+        JSONObject result = new JSONObject();
+        result.put("success", true);
+        result.put("seconds", scheduler.getWarmUpLeadSeconds());
+        call.resolve(result);
+    }
+
+    /**
+     * Sets the snooze policy: { intervalMinutes, maxCount }. maxCount limits how many times one
+     * dose may be snoozed; 0 allows unlimited snoozes.
+     */
+    private void setSnoozePolicy(Call call) throws JSONException {
+        AlarmSnoozeEngine snoozeEngine = AlarmSnoozeEngine.getInstance(context);
+        Integer intervalMinutes = call.getInt("intervalMinutes", snoozeEngine.getIntervalMinutes());
+        Integer maxCount = call.getInt("maxCount", snoozeEngine.getMaxCount());
+        if (intervalMinutes == null || intervalMinutes < 1) {
+            call.reject("intervalMinutes must be a positive number");
+            return;
+        }
+        if (maxCount == null || maxCount < 0) {
+            call.reject("maxCount must be a non-negative number");
+            return;
+        }
+        snoozeEngine.setPolicy(intervalMinutes, maxCount);
+
+        JSONObject result = new JSONObject();
+        result.put("success", true);
+        result.put("intervalMinutes", snoozeEngine.getIntervalMinutes());
+        result.put("maxCount", snoozeEngine.getMaxCount());
+        call.resolve(result);
+    }
+
+    /**
+     * Sets the alarm volume ramp: { seconds, startVolume (0..1, default 0.2) }. The alarm starts at
+     * startVolume and reaches full volume after seconds; 0 seconds rings at full volume at once.
+     */
+    private void setVolumeRamp(Call call) throws JSONException {
+        Integer seconds = call.getInt("seconds");
+        if (seconds == null || seconds < 0) {
+            call.reject("seconds must be a non-negative number");
+            return;
+        }
+        Double startVolume = call.getDouble("startVolume", 0.2);
+        AlarmAudioEngine engine = AlarmAudioEngine.getInstance(context);
+        engine.setVolumeRamp(seconds, startVolume.floatValue());
+
+        JSONObject result = new JSONObject();
+        result.put("success", true);
+        result.put("seconds", engine.getRampSeconds());
+        result.put("startVolume", engine.getRampStartVolume());
+        call.resolve(result);
+    }
+
+    /**
+     * Decodes a sound into the alarm audio cache ahead of its first alarm: { sound } (content URI,
+     * omit for the default alarm sound).
+     */
+    private void preloadSound(Call call) throws JSONException {
+        AlarmAudioEngine.getInstance(context).preload(call.getString("sound", ""));
+        JSONObject result = new JSONObject();
+        result.put("success", true);
+        call.resolve(result);
+    }
+
+    /**
+     * Fire-path latency per stage over the last traced fires, in milliseconds:
+     * { traces, stages: [{ stage, count, sinceTrigger: { p50, p95, p99, max }, sincePreviousStage: {...} }] }
+     */
+    private void getFireLatencyStats(Call call) throws JSONException {
+        try {
+            FireLatencyTracer tracer = FireLatencyTracer.getInstance(context);
+            JSONArray stages = new JSONArray();
+            for (FireLatencyTracer.StageStats stats : tracer.getStats()) {
+                JSONObject stage = new JSONObject();
+                stage.put("stage", stats.stage.key);
+                stage.put("count", stats.sinceTrigger.getCount());
+                stage.put("sinceTrigger", toPercentiles(stats.sinceTrigger));
+                stage.put("sincePreviousStage", toPercentiles(stats.sincePrevious));
+                stages.put(stage);
+            }
+            JSONObject result = new JSONObject();
+            result.put("traces", tracer.getTraceCount());
+            result.put("stages", stages);
+            call.resolve(result);
+        } catch (Exception e) {
+            call.reject("Error reading fire latency stats: " + e.getMessage());
+        }
+    }
+
+    /**
+     * How late alarms fired, in milliseconds, for fires scheduled in [from, to) (defaults: all):
+     * { count, earlyCount, overall: { p50, p95, p99, max },
+     *   byHourOfDay: [{ hour, count, p50, ... }], byDeviceState: [{ state, count, p50, ... }] }
+     */
+    private void getDriftStats(Call call) throws JSONException {
+        try {
+            long from = call.getLong("from", 0L);
+            long to = call.getLong("to", Long.MAX_VALUE);
+            DriftLog.Stats stats = DriftLog.getInstance(context).query(from, to, ZoneId.systemDefault());
+
+            JSONArray byHour = new JSONArray();
+            for (int hour = 0; hour < stats.byHourOfDay.length; hour++) {
+                LatencyHistogram histogram = stats.byHourOfDay[hour];
+                if (histogram.getCount() == 0) continue;
+                JSONObject bucket = toPercentiles(histogram);
+                bucket.put("hour", hour);
+                bucket.put("count", histogram.getCount());
+                byHour.put(bucket);
+            }
+            JSONArray byState = new JSONArray();
+            for (int state = 0; state < stats.byState.length; state++) {
+                LatencyHistogram histogram = stats.byState[state];
+                if (histogram.getCount() == 0) continue;
+                JSONObject bucket = toPercentiles(histogram);
+                bucket.put("state", DriftLog.STATE_NAMES[state]);
+                bucket.put("count", histogram.getCount());
+                byState.put(bucket);
+            }
+
+            JSONObject result = new JSONObject();
+            result.put("count", stats.overall.getCount());
+            result.put("earlyCount", stats.earlyCount);
+            result.put("overall", toPercentiles(stats.overall));
+            result.put("byHourOfDay", byHour);
+            result.put("byDeviceState", byState);
+            call.resolve(result);
+        } catch (Exception e) {
+            call.reject("Error reading drift stats: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Wake lock time held per alarm, in milliseconds, for alarms that started in [from, to):
+     * { alarms, totalCpuMs, totalScreenMs, cpuPerAlarm: { p50, p95, p99, max }, screenPerAlarm: {...},
+     *   openLeases }
+     */
+    private void getWakeLockStats(Call call) throws JSONException {
+        try {
+            long from = call.getLong("from", 0L);
+            long to = call.getLong("to", Long.MAX_VALUE);
+            WakeLockManager manager = WakeLockManager.getInstance(context);
+            WakeLockManager.Stats stats = manager.query(from, to);
+
+            JSONObject result = new JSONObject();
+            result.put("alarms", stats.alarms);
+            result.put("totalCpuMs", stats.totalCpuMs);
+            result.put("totalScreenMs", stats.totalScreenMs);
+            result.put("cpuPerAlarm", toPercentiles(stats.cpuPerAlarm));
+            result.put("screenPerAlarm", toPercentiles(stats.screenPerAlarm));
+            result.put("openLeases", manager.getOpenLeaseCount());
+            call.resolve(result);
+        } catch (Exception e) {
+            call.reject("Error reading wake lock stats: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Appends one dose the app recorded to the native history: { status: taken|missed|skipped,
+     * medicineId, medicineName, patientName, dosage, quantity, time (ms, default now), scheduledTime,
+     * alarmId }. The event is tagged source 'app'. The app's own counts already include it, so its
+     * import skips it. Resolves { success, sequence }; rejects a time more than a day ahead or a scheduledTime more
+     * than a year away from it without writing anything.
+     */
+    private void appendDoseEvent(Call call) throws JSONException {
+        try {
+            DoseEvent event = new DoseEvent(
+                    call.getLong("time", System.currentTimeMillis()),
+                    call.getLong("scheduledTime", 0L),
+                    call.getInt("alarmId", -1),
+                    call.getString("medicineId", ""),
+                    call.getString("medicineName", ""),
+                    call.getString("patientName", ""),
+                    call.getString("dosage", ""),
+                    call.getDouble("quantity", 0.0).floatValue(),
+                    DoseEvent.Status.parse(call.getString("status", "taken")),
+                    DoseEvent.Source.APP);
+            long sequence = DoseHistory.getInstance(context).append(event);
+            MedicineInventory.getInstance(context).recordTaken(event);
+
+            JSONObject result = new JSONObject();
+            result.put("success", true);
+            result.put("sequence", sequence);
+            call.resolve(result);
+        } catch (IllegalArgumentException e) {
+            call.reject(e.getMessage());
+        } catch (Exception e) {
+            call.reject("Error appending dose event: " + e.getMessage());
+        }
+    }
+
+    /**
+     * One page of dose history with from <= time < to, newest first: { from, to, cursor, limit }.
+     * Resolves { events, nextCursor }; pass nextCursor back for the next page, -1 means no more.
+     */
+    private void queryDoseHistory(Call call) throws JSONException {
+        try {
+            DoseHistoryLog.Page page = DoseHistory.getInstance(context).query(
+                    call.getLong("from", 0L),
+                    call.getLong("to", Long.MAX_VALUE),
+                    call.getLong("cursor", -1L),
+                    call.getInt("limit", 50));
+
+            JSONArray events = new JSONArray();
+            for (DoseEvent event : page.events) {
+                events.put(toJSON(event));
+            }
+            JSONObject result = new JSONObject();
+            result.put("events", events);
+            result.put("nextCursor", page.nextCursor);
+            call.resolve(result);
+        } catch (Exception e) {
+            call.reject("Error querying dose history: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Dose history in append order from a sequence number, for incremental sync:
+     * { fromSequence, limit }. Resolves { events, nextSequence, total }.
+     */
+    private void readDoseHistory(Call call) throws JSONException {
+        try {
+            DoseHistory history = DoseHistory.getInstance(context);
+            long fromSequence = call.getLong("fromSequence", 0L);
+            List<DoseEvent> read = history.read(fromSequence, call.getInt("limit", 100));
+
+            JSONArray events = new JSONArray();
+            for (DoseEvent event : read) {
+                events.put(toJSON(event));
+            }
+            JSONObject result = new JSONObject();
+            result.put("events", events);
+            result.put("nextSequence", read.isEmpty() ? Math.max(0, fromSequence) : read.get(read.size() - 1).sequence + 1);
+            result.put("total", history.size());
+            call.resolve(result);
+        } catch (Exception e) {
+            call.reject("Error reading dose history: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Pushes the app's pill counts to the native inventory: { medicines: [{ medicineId,
+     * currentPills, dosePills }], historySequence }, where historySequence is the first dose
+     * history sequence the counts do not account for yet (nextSequence of the last read).
+     */
+    private void syncInventory(Call call) throws JSONException {
+        JSONArray medicines = call.getArray("medicines");
+        if (medicines == null) {
+            call.reject("medicines is required");
+            return;
+        }
+        try {
+            Map<String, MedicineInventory.Item> items = new HashMap<>();
+            for (int i = 0; i < medicines.length(); i++) {
+                JSONObject medicine = medicines.getJSONObject(i);
+                items.put(medicine.getString("medicineId"), new MedicineInventory.Item(
+                        (float) medicine.optDouble("currentPills", 0),
+                        (float) medicine.optDouble("dosePills", 0)));
+            }
+            MedicineInventory inventory = MedicineInventory.getInstance(context);
+            inventory.setSnapshot(items, call.getLong("historySequence", 0L));
+
+            JSONObject result = new JSONObject();
+            result.put("success", true);
+            result.put("medicines", items.size());
+            call.resolve(result);
+        } catch (JSONException e) {
+            call.reject("Invalid inventory: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Native pill counts, including doses taken from the alarm screen or notification since the
+     * last sync: { medicines: { medicineId: pills } }.
+     */
+    private void getInventory(Call call) throws JSONException {
+        JSONObject medicines = new JSONObject();
+        for (Map.Entry<String, Float> entry : MedicineInventory.getInstance(context).getAll().entrySet()) {
+            medicines.put(entry.getKey(), (double) entry.getValue());
+        }
+        JSONObject result = new JSONObject();
+        result.put("medicines", medicines);
+        call.resolve(result);
+    }
+
+    /**
+     * Adherence for [from, to), counted by whole local days: { from, to, daily }.
+     * Resolves { overall, medicines: { medicineId: summary }, patients: { patientName: summary } },
+     * each summary being { taken, missed, skipped, late, adherence, meanLatenessMs, currentStreak,
+     * longestStreak }, plus days: [summary...] one per day of the range when daily is set. A streak
+     * counts days with a dose taken and none missed or skipped; pass to as the start of today to
+     * leave a day still in progress out of the current streak.
+     */
+    private void getAdherenceSummary(Call call) throws JSONException {
+        try {
+            long to = call.getLong("to", System.currentTimeMillis());
+            long from = call.getLong("from", to - 30L * 24 * 60 * 60 * 1000);
+            if (from >= to) {
+                call.reject("from must be before to");
+                return;
+            }
+            DoseHistory history = DoseHistory.getInstance(context);
+
+            JSONObject medicines = new JSONObject();
+            for (String medicineId : history.getMedicineIds()) {
+                medicines.put(medicineId, toJSON(history.summarize(
+                        AdherenceAnalytics.Scope.MEDICINE, medicineId, from, to)));
+            }
+            JSONObject patients = new JSONObject();
+            for (String patientName : history.getPatientNames()) {
+                patients.put(patientName, toJSON(history.summarize(
+                        AdherenceAnalytics.Scope.PATIENT, patientName, from, to)));
+            }
+            JSONObject result = new JSONObject();
+            result.put("overall", toJSON(history.summarize(AdherenceAnalytics.Scope.ALL, null, from, to)));
+            result.put("medicines", medicines);
+            result.put("patients", patients);
+            if (call.getBoolean("daily", false)) {
+                JSONArray days = new JSONArray();
+                for (AdherenceAnalytics.Summary day : history.daily(AdherenceAnalytics.Scope.ALL, null, from, to)) {
+                    days.put(toJSON(day));
+                }
+                result.put("days", days);
+            }
+            call.resolve(result);
+        } catch (Exception e) {
+            call.reject("Error computing adherence: " + e.getMessage());
+        }
+    }
+
+    private static JSONObject toJSON(AdherenceAnalytics.Summary summary) throws JSONException {
+        JSONObject adherence = new JSONObject();
+        adherence.put("fromDay", LocalDate.ofEpochDay(summary.fromDay).toString());
+        adherence.put("toDay", LocalDate.ofEpochDay(summary.toDay).toString());
+        adherence.put("taken", summary.taken);
+        adherence.put("missed", summary.missed);
+        adherence.put("skipped", summary.skipped);
+        adherence.put("late", summary.late);
+        adherence.put("adherence", summary.getAdherence());
+        adherence.put("meanLatenessMs", summary.getMeanLatenessMs());
+        adherence.put("currentStreak", summary.currentStreak);
+        adherence.put("longestStreak", summary.longestStreak);
+        return adherence;
+    }
+
+    private static JSONObject toJSON(AlarmEventBus.Event event) throws JSONException {
+        JSONArray doses = new JSONArray();
+        for (AlarmRecord dose : event.doses) {
+            doses.put(toJSON(dose));
+        }
+        JSONObject alarm = new JSONObject();
+        alarm.put("sequence", event.sequence);
+        alarm.put("type", event.type.eventName);
+        alarm.put("time", event.time);
+        alarm.put("sessionId", event.sessionId);
+        alarm.put("doses", doses);
+        return alarm;
+    }
+
+    private static JSONObject toJSON(DoseEvent event) throws JSONException {
+        JSONObject dose = new JSONObject();
+        dose.put("sequence", event.sequence);
+        dose.put("status", event.status.name().toLowerCase(Locale.ROOT));
+        dose.put("time", event.eventTime);
+        dose.put("scheduledTime", event.scheduledTime);
+        dose.put("alarmId", event.alarmId);
+        dose.put("medicineId", event.medicineId);
+        dose.put("medicineName", event.medicineName);
+        dose.put("patientName", event.patientName);
+        dose.put("dosage", event.dosage);
+        dose.put("quantity", (double) event.quantity);
+        dose.put("source", event.source.name().toLowerCase(Locale.ROOT));
+        return dose;
+    }
+
+    private static JSONObject toPercentiles(LatencyHistogram histogram) throws JSONException {
+        JSONObject percentiles = new JSONObject();
+        percentiles.put("p50", histogram.getValueAtPercentile(50));
+        percentiles.put("p95", histogram.getValueAtPercentile(95));
+        percentiles.put("p99", histogram.getValueAtPercentile(99));
+        percentiles.put("max", histogram.getMax());
+        return percentiles;
+    }
+
+    private static JSONObject toJSON(AlarmRecord record) throws JSONException {
+        JSONObject alarm = new JSONObject();
+        alarm.put("alarmId", record.alarmId);
+        alarm.put("medicineId", record.medicineId);
+        alarm.put("medicineName", record.medicineName);
+        alarm.put("dosage", record.dosage);
+        alarm.put("patientName", record.patientName);
+        alarm.put("triggerTime", record.triggerTime);
+        alarm.put("recurring", record.rule != null);
+        alarm.put("sound", record.sound);
+        if (record.isSnoozed()) {
+            alarm.put("snoozeCount", record.snoozeCount);
+            alarm.put("snoozeOf", record.snoozeOf);
+        }
+        return alarm;
+    }
+}
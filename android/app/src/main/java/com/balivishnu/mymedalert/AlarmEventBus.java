@@ -0,0 +1,259 @@
+package com.balivishnu.mymedalert;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Alarm lifecycle events for the app: fired, taken, dismissed, snoozed, auto-stopped.
+ *
+ * AlarmService publishes every session start and outcome here. Each event gets a sequence number
+ * and is appended to a replay log before the app process is notified through AlarmProvider -
+ * MedicineAlarmPlugin then fetches what it has not delivered while the WebView is up - so the app
+ * can replay what happened while it was closed by asking for everything after the last sequence
+ * it saw. Log records are [int length][payload], the payload
+ * written with DataOutput; a torn tail is cut off on load and the log keeps its newest
+ * {@link #MAX_EVENTS} events.
+ */
+public final class AlarmEventBus {
+    private static final String TAG = "AlarmEventBus";
+    static final String FILE_NAME = "alarm_events.log";
+    private static final int FORMAT_VERSION = 1;
+    static final int MAX_EVENTS = 256;
+    private static final int MAX_RECORD_SIZE = 64 * 1024;
+
+    public enum Type {
+        FIRED("alarmFired"),
+        TAKEN("alarmTaken"),
+        DISMISSED("alarmDismissed"),
+        SNOOZED("alarmSnoozed"),
+        AUTO_STOPPED("alarmAutoStopped");
+
+        // Listener event name on the JS side
+        public final String eventName;
+
+        Type(String eventName) {
+            this.eventName = eventName;
+        }
+
+        static Type of(AlarmSession.Outcome outcome) {
+            switch (outcome) {
+                case TAKEN:
+                    return TAKEN;
+                case SNOOZED:
+                    return SNOOZED;
+                case AUTO_STOPPED:
+                    return AUTO_STOPPED;
+                default:
+                    return DISMISSED;
+            }
+        }
+    }
+
+    public static final class Event {
+        public final long sequence;
+        public final Type type;
+        public final long time;
+        public final long sessionId;
+        public final List<AlarmRecord> doses;
+
+        Event(long sequence, Type type, long time, long sessionId, List<AlarmRecord> doses) {
+            this.sequence = sequence;
+            this.type = type;
+            this.time = time;
+            this.sessionId = sessionId;
+            this.doses = doses;
+        }
+    }
+
+    private static AlarmEventBus instance;
+
+    private final Context context;
+    private final File file;
+    private final ArrayDeque<Event> buffer = new ArrayDeque<>();
+    private long nextSequence = 1;
+    private int loggedEvents;
+
+    private AlarmEventBus(Context context) {
+        this.context = context.getApplicationContext();
+        this.file = new File(DeviceStorage.get(this.context).getFilesDir(), FILE_NAME);
+        load();
+    }
+
+    public static synchronized AlarmEventBus getInstance(Context context) {
+        if (instance == null) {
+            instance = new AlarmEventBus(context);
+        }
+        return instance;
+    }
+
+    /**
+     * An alarm session started ringing.
+     */
+    public void publishFired(AlarmSession session, long time) {
+        publish(Type.FIRED, time, session);
+    }
+
+    /**
+     * An alarm session ended with {@code outcome}.
+     */
+    public void publishOutcome(AlarmSession session, AlarmSession.Outcome outcome, long time) {
+        publish(Type.of(outcome), time, session);
+    }
+
+    private void publish(Type type, long time, AlarmSession session) {
+        Event event;
+        synchronized (this) {
+            event = new Event(nextSequence++, type, time, session.sessionId, session.group.getItems());
+            buffer.addLast(event);
+            while (buffer.size() > MAX_EVENTS) {
+                buffer.removeFirst();
+            }
+            append(event);
+        }
+        Log.d(TAG, "📣 " + type.eventName + " #" + event.sequence + " for session " + session.sessionId);
+        // The plugin in the app process observes this and fetches the new events
+        AlarmProvider.notifyChange(context, AlarmProvider.PATH_EVENTS);
+    }
+
+    /**
+     * Buffered events with a sequence after {@code afterSequence}, oldest first.
+     */
+    public synchronized List<Event> getSince(long afterSequence) {
+        List<Event> events = new ArrayList<>();
+        for (Event event : buffer) {
+            if (event.sequence > afterSequence) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    public synchronized long getLastSequence() {
+        return nextSequence - 1;
+    }
+
+    private void append(Event event) {
+        try {
+            if (loggedEvents >= 2 * MAX_EVENTS) {
+                rewrite();
+            }
+            try (FileOutputStream out = new FileOutputStream(file, true)) {
+                out.write(encode(event));
+            }
+            loggedEvents++;
+        } catch (IOException e) {
+            // Replay is best effort; the buffer still serves the event
+            Log.e(TAG, "❌ Failed to log alarm event: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replaces the log with the buffered, newest events.
+     */
+    private void rewrite() throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            for (Event event : buffer) {
+                out.write(encode(event));
+            }
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Failed to replace alarm event log");
+        }
+        loggedEvents = buffer.size();
+    }
+
+    private void load() {
+        if (!file.exists()) return;
+        long good = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException end) {
+                    break;
+                }
+                if (length <= 0 || length > MAX_RECORD_SIZE) {
+                    throw new IOException("Bad record length " + length);
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                Event event = decode(payload);
+                buffer.addLast(event);
+                while (buffer.size() > MAX_EVENTS) {
+                    buffer.removeFirst();
+                }
+                nextSequence = Math.max(nextSequence, event.sequence + 1);
+                loggedEvents++;
+                good += 4 + length;
+            }
+        } catch (IOException | RuntimeException e) {
+            // Torn or damaged tail: keep what was read and cut the rest off
+            Log.w(TAG, "Alarm event log truncated after " + loggedEvents + " events: " + e.getMessage());
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(good);
+            } catch (IOException truncateError) {
+                Log.e(TAG, "Failed to truncate alarm event log: " + truncateError.getMessage());
+            }
+        }
+        Log.d(TAG, "Loaded " + buffer.size() + " alarm events, last #" + (nextSequence - 1));
+    }
+
+    private static byte[] encode(Event event) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0); // length, patched below
+        out.writeByte(FORMAT_VERSION);
+        out.writeLong(event.sequence);
+        out.writeByte(event.type.ordinal());
+        out.writeLong(event.time);
+        out.writeLong(event.sessionId);
+        out.writeInt(event.doses.size());
+        for (AlarmRecord dose : event.doses) {
+            dose.writeTo(out);
+        }
+        byte[] record = bytes.toByteArray();
+        int length = record.length - 4;
+        record[0] = (byte) (length >>> 24);
+        record[1] = (byte) (length >>> 16);
+        record[2] = (byte) (length >>> 8);
+        record[3] = (byte) length;
+        return record;
+    }
+
+    private static Event decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int version = in.readUnsignedByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported alarm event version " + version);
+        }
+        long sequence = in.readLong();
+        Type type = Type.values()[in.readUnsignedByte()];
+        long time = in.readLong();
+        long sessionId = in.readLong();
+        int count = in.readInt();
+        List<AlarmRecord> doses = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            doses.add(AlarmRecord.readFrom(in));
+        }
+        return new Event(sequence, type, time, sessionId, Collections.unmodifiableList(doses));
+    }
+}
@@ -0,0 +1,149 @@
+package com.balivishnu.mymedalert;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.WindowManager;
+
+/**
+ * CRITICAL: Keeps the alarm screen in front without polling.
+ * AlarmActivity reports lifecycle, focus, screen-on, unlock and alarm state events here. After
+ * any of them the coordinator checks, once and after a short settle delay, whether the alarm
+ * window is really covered - the alarm still rings, the screen is on and the activity is no
+ * longer resumed because something else came on top - and only then re-asserts it with one
+ * REORDER_TO_FRONT launch. Launches are at least {@link #MIN_RELAUNCH_INTERVAL_MS} apart and capped
+ * at {@link #MAX_RELAUNCHES} per alarm, so an app that insists on the foreground cannot start a
+ * launch loop; the full-screen notification still leads back to the alarm after that. While the
+ * alarm sits on screen nothing is scheduled at all. Main thread only.
+ */
+final class AlarmForegroundCoordinator {
+    private static final String TAG = "AlarmForeground";
+    // Focus and lifecycle flicker when a dialog or the keyguard passes by - look again after this
+    static final long SETTLE_DELAY_MS = 300;
+    static final long MIN_RELAUNCH_INTERVAL_MS = 2000;
+    static final int MAX_RELAUNCHES = 5;
+
+    private final Activity activity;
+    private final AlarmStateStore alarmState;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable check = this::check;
+    private boolean resumed;
+    private boolean stopped;
+    private boolean checkPending;
+    private int relaunches;
+    private long lastRelaunchAt = -MIN_RELAUNCH_INTERVAL_MS;
+
+    AlarmForegroundCoordinator(Activity activity, AlarmStateStore alarmState) {
+        this.activity = activity;
+        this.alarmState = alarmState;
+    }
+
+    void onResumed() {
+        resumed = true;
+        cancelCheck();
+    }
+
+    void onPaused() {
+        resumed = false;
+        scheduleCheck(SETTLE_DELAY_MS);
+    }
+
+    void onFocusLost() {
+        scheduleCheck(SETTLE_DELAY_MS);
+    }
+
+    void onScreenOn() {
+        scheduleCheck(SETTLE_DELAY_MS);
+    }
+
+    void onUserPresent() {
+        scheduleCheck(SETTLE_DELAY_MS);
+    }
+
+    void onAlarmStateChanged(boolean active) {
+        if (active) {
+            scheduleCheck(SETTLE_DELAY_MS);
+        } else {
+            cancelCheck();
+        }
+    }
+
+    /**
+     * A new alarm is on screen: it gets its own relaunch budget.
+     */
+    void onNewAlarm() {
+        relaunches = 0;
+    }
+
+    /**
+     * The alarm was answered or the screen is going away; nothing is re-asserted after this.
+     */
+    void stop() {
+        stopped = true;
+        cancelCheck();
+    }
+
+    private void scheduleCheck(long delayMs) {
+        if (stopped) return;
+        handler.removeCallbacks(check);
+        handler.postDelayed(check, delayMs);
+        checkPending = true;
+    }
+
+    private void cancelCheck() {
+        if (!checkPending) return;
+        handler.removeCallbacks(check);
+        checkPending = false;
+    }
+
+    private void check() {
+        checkPending = false;
+        if (stopped || resumed || activity.isFinishing() || !alarmState.isAlarmActive()) {
+            return;
+        }
+        if (!isInteractive()) {
+            // Screen off: the screen-on event checks again
+            return;
+        }
+        if (relaunches >= MAX_RELAUNCHES) {
+            Log.w(TAG, "⚠️ Alarm screen covered but relaunch cap (" + MAX_RELAUNCHES + ") reached - leaving it to the notification");
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        long wait = lastRelaunchAt + MIN_RELAUNCH_INTERVAL_MS - now;
+        if (wait > 0) {
+            scheduleCheck(wait);
+            return;
+        }
+        reassert();
+        relaunches++;
+        lastRelaunchAt = now;
+    }
+
+    private void reassert() {
+        Log.d(TAG, "🔄 Alarm screen covered - bringing it back to front (" + (relaunches + 1) + "/" + MAX_RELAUNCHES + ")");
+        try {
+            activity.getWindow().addFlags(
+                WindowManager.LayoutParams.FLAG_SHOW_WHEN_LOCKED |
+                WindowManager.LayoutParams.FLAG_DISMISS_KEYGUARD |
+                WindowManager.LayoutParams.FLAG_KEEP_SCREEN_ON |
+                WindowManager.LayoutParams.FLAG_TURN_SCREEN_ON
+            );
+            Intent intent = new Intent(activity, AlarmActivity.class);
+            intent.setFlags(Intent.FLAG_ACTIVITY_REORDER_TO_FRONT | Intent.FLAG_ACTIVITY_NEW_TASK);
+            activity.startActivity(intent);
+        } catch (Exception e) {
+            Log.e(TAG, "Error bringing alarm screen to front: " + e.getMessage());
+        }
+    }
+
+    private boolean isInteractive() {
+        PowerManager powerManager = (PowerManager) activity.getSystemService(Context.POWER_SERVICE);
+        return powerManager == null || powerManager.isInteractive();
+    }
+}
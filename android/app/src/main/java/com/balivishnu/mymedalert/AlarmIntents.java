@@ -0,0 +1,182 @@
+package com.balivishnu.mymedalert;
+
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Carries an AlarmGroup between AlarmReceiver, AlarmService and AlarmActivity, and inside the
+ * snooze and notification PendingIntents.
+ *
+ * The group itself lives in the memory-mapped AlarmPayloadIndex; an intent carries only its
+ * 64-bit payload ID, so a PendingIntent reused with FLAG_UPDATE_CURRENT can never hold stale
+ * details and the fire path resolves them with one lookup. The summary extras (medicineName,
+ * dosage, patientName) always ride along, so an ID the ring has since lapped still names the
+ * doses. Parallel array extras are the fallback when the index is unavailable and are still read
+ * from intents created by earlier versions.
+ */
+public final class AlarmIntents {
+    private static final String TAG = "AlarmIntents";
+    static final String INDEX_FILE_NAME = "alarm_payloads.idx";
+    static final String EXTRA_PAYLOAD_ID = "payloadId";
+    static final String EXTRA_ALARM_IDS = "alarmIds";
+    static final String EXTRA_MEDICINE_IDS = "medicineIds";
+    static final String EXTRA_MEDICINE_NAMES = "medicineNames";
+    static final String EXTRA_DOSAGES = "dosages";
+    static final String EXTRA_PATIENT_NAMES = "patientNames";
+    static final String EXTRA_SOUNDS = "sounds";
+
+    private static AlarmPayloadIndex index;
+    // Groups are immutable and compared by identity, so the same group object is written once
+    private static final Map<AlarmGroup, Long> payloadIds = new WeakHashMap<>();
+
+    private AlarmIntents() {
+    }
+
+    public static void putGroup(Context context, Intent intent, AlarmGroup group) {
+        long payloadId = payloadId(context, group);
+        if (payloadId > 0) {
+            intent.putExtra(EXTRA_PAYLOAD_ID, payloadId);
+            putSummaryExtras(intent, group);
+        } else {
+            putGroupExtras(intent, group);
+        }
+    }
+
+    /**
+     * Reads a group written by {@link #putGroup}, falling back to the array and summary extras.
+     */
+    public static AlarmGroup getGroup(Context context, Intent intent) {
+        long payloadId = intent.getLongExtra(EXTRA_PAYLOAD_ID, 0);
+        if (payloadId > 0) {
+            AlarmGroup group = resolve(context, payloadId);
+            if (group != null) {
+                return group;
+            }
+            Log.w(TAG, "Payload " + payloadId + " no longer in the index - using the summary extras");
+        }
+        return getGroupExtras(intent);
+    }
+
+    public static boolean hasAlarmDetails(Intent intent) {
+        return intent.hasExtra(EXTRA_PAYLOAD_ID) || intent.hasExtra(EXTRA_MEDICINE_NAMES)
+                || intent.hasExtra("medicineName");
+    }
+
+    private static synchronized long payloadId(Context context, AlarmGroup group) {
+        AlarmPayloadIndex payloads = getIndex(context);
+        if (payloads == null) return 0;
+        Long cached = payloadIds.get(group);
+        if (cached != null && payloads.contains(cached)) {
+            return cached;
+        }
+        byte[] payload = group.toBytes();
+        if (payload.length > AlarmPayloadIndex.maxPayloadSize()) {
+            return 0;
+        }
+        long payloadId = payloads.put(payload);
+        payloadIds.put(group, payloadId);
+        return payloadId;
+    }
+
+    private static synchronized AlarmGroup resolve(Context context, long payloadId) {
+        AlarmPayloadIndex payloads = getIndex(context);
+        byte[] payload = payloads != null ? payloads.get(payloadId) : null;
+        if (payload == null) return null;
+        try {
+            AlarmGroup group = AlarmGroup.fromBytes(payload);
+            payloadIds.put(group, payloadId);
+            return group;
+        } catch (IOException e) {
+            Log.e(TAG, "❌ Corrupt payload " + payloadId + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static AlarmPayloadIndex getIndex(Context context) {
+        if (index == null) {
+            try {
+                index = new AlarmPayloadIndex(new File(DeviceStorage.get(context).getFilesDir(), INDEX_FILE_NAME));
+            } catch (IOException e) {
+                // Intents then carry the payload as extras
+                Log.e(TAG, "❌ Payload index unavailable: " + e.getMessage());
+            }
+        }
+        return index;
+    }
+
+    private static void putGroupExtras(Intent intent, AlarmGroup group) {
+        List<AlarmRecord> items = group.getItems();
+        int count = items.size();
+        int[] alarmIds = new int[count];
+        String[] medicineIds = new String[count];
+        String[] medicineNames = new String[count];
+        String[] dosages = new String[count];
+        String[] patientNames = new String[count];
+        String[] sounds = new String[count];
+        for (int i = 0; i < count; i++) {
+            AlarmRecord item = items.get(i);
+            alarmIds[i] = item.alarmId;
+            medicineIds[i] = item.medicineId;
+            medicineNames[i] = item.medicineName;
+            dosages[i] = item.dosage;
+            patientNames[i] = item.patientName;
+            sounds[i] = item.sound;
+        }
+        intent.putExtra(EXTRA_ALARM_IDS, alarmIds);
+        intent.putExtra(EXTRA_MEDICINE_IDS, medicineIds);
+        intent.putExtra(EXTRA_MEDICINE_NAMES, medicineNames);
+        intent.putExtra(EXTRA_DOSAGES, dosages);
+        intent.putExtra(EXTRA_PATIENT_NAMES, patientNames);
+        intent.putExtra(EXTRA_SOUNDS, sounds);
+        putSummaryExtras(intent, group);
+    }
+
+    private static void putSummaryExtras(Intent intent, AlarmGroup group) {
+        intent.putExtra("medicineName", group.getMedicineSummary());
+        intent.putExtra("dosage", group.getDosageSummary());
+        intent.putExtra("patientName", group.getPatientSummary());
+    }
+
+    private static AlarmGroup getGroupExtras(Intent intent) {
+        String[] medicineNames = intent.getStringArrayExtra(EXTRA_MEDICINE_NAMES);
+        if (medicineNames == null) {
+            return AlarmGroup.of(intent.getStringExtra("medicineName"), intent.getStringExtra("dosage"),
+                    intent.getStringExtra("patientName"));
+        }
+        int[] alarmIds = intent.getIntArrayExtra(EXTRA_ALARM_IDS);
+        String[] medicineIds = intent.getStringArrayExtra(EXTRA_MEDICINE_IDS);
+        String[] dosages = intent.getStringArrayExtra(EXTRA_DOSAGES);
+        String[] patientNames = intent.getStringArrayExtra(EXTRA_PATIENT_NAMES);
+        String[] sounds = intent.getStringArrayExtra(EXTRA_SOUNDS);
+
+        List<AlarmRecord> items = new ArrayList<>(medicineNames.length);
+        for (int i = 0; i < medicineNames.length; i++) {
+            items.add(new AlarmRecord(
+                    at(alarmIds, i),
+                    at(medicineIds, i),
+                    medicineNames[i],
+                    at(dosages, i),
+                    at(patientNames, i),
+                    0,
+                    null,
+                    at(sounds, i)));
+        }
+        return new AlarmGroup(items);
+    }
+
+    private static int at(int[] values, int index) {
+        return values != null && index < values.length ? values[index] : -1;
+    }
+
+    private static String at(String[] values, int index) {
+        return values != null && index < values.length ? values[index] : null;
+    }
+}
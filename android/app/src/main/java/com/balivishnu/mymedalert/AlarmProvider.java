@@ -0,0 +1,150 @@
+package com.balivishnu.mymedalert;
+
+import android.content.ContentProvider;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Binder;
+import android.os.Bundle;
+import android.os.Process;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * CRITICAL: Door into the :alarm process for the app process.
+ * AlarmReceiver, AlarmService, AlarmActivity and the boot and clock receivers run in their own
+ * small :alarm process, which never loads the WebView or Capacitor; it is the single owner of the
+ * alarm store, scheduler, dose history and alarm state. MedicineAlarmPlugin and MainActivity stay
+ * in the app process and reach that state only through {@link #send}, a ContentResolver#call that
+ * AlarmCommands answers. The content URIs carry no data: they are notified so the app process can
+ * observe alarm events ({@link #PATH_EVENTS}) and alarm state ({@link #PATH_STATE}) without polling.
+ */
+public class AlarmProvider extends ContentProvider {
+    private static final String TAG = "AlarmProvider";
+    private static final String AUTHORITY_SUFFIX = ".alarms";
+    private static final String KEY_RESULT = "result";
+    private static final String KEY_ERROR = "error";
+    static final String PATH_EVENTS = "events";
+    static final String PATH_STATE = "state";
+
+    /**
+     * A command the :alarm process rejected, or that could not reach it.
+     */
+    static final class CommandException extends Exception {
+        CommandException(String message) {
+            super(message);
+        }
+    }
+
+    private AlarmCommands commands;
+
+    static Uri uri(Context context, String path) {
+        return new Uri.Builder()
+                .scheme(ContentResolver.SCHEME_CONTENT)
+                .authority(context.getPackageName() + AUTHORITY_SUFFIX)
+                .appendPath(path)
+                .build();
+    }
+
+    /**
+     * Tells observers in other processes that {@code path} changed. Never throws: the alarm path
+     * must not fail because nobody could be told.
+     */
+    static void notifyChange(Context context, String path) {
+        try {
+            context.getContentResolver().notifyChange(uri(context, path), null);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to notify " + path + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs an AlarmCommands method in the :alarm process, starting it if needed. Blocks on IPC;
+     * never call on the main thread.
+     */
+    static JSONObject send(Context context, String method, JSONObject arguments) throws CommandException {
+        Bundle reply;
+        try {
+            reply = context.getContentResolver().call(uri(context, ""), method,
+                    arguments != null ? arguments.toString() : null, null);
+        } catch (RuntimeException e) {
+            throw new CommandException("Alarm process unavailable: " + e.getMessage());
+        }
+        if (reply == null) {
+            throw new CommandException("Alarm process unavailable");
+        }
+        String error = reply.getString(KEY_ERROR);
+        if (error != null) {
+            throw new CommandException(error);
+        }
+        try {
+            return new JSONObject(reply.getString(KEY_RESULT, "{}"));
+        } catch (JSONException e) {
+            throw new CommandException("Invalid reply to " + method + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean onCreate() {
+        // Created with every :alarm process start, on its main thread - keep it empty
+        return true;
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (Binder.getCallingUid() != Process.myUid()) {
+            throw new SecurityException("Alarm commands are private to this app");
+        }
+        Bundle reply = new Bundle();
+        JSONObject arguments;
+        try {
+            arguments = arg != null ? new JSONObject(arg) : null;
+        } catch (JSONException e) {
+            reply.putString(KEY_ERROR, "Invalid arguments for " + method + ": " + e.getMessage());
+            return reply;
+        }
+        AlarmCommands.Call call = commands().execute(method, arguments);
+        if (call.error != null) {
+            reply.putString(KEY_ERROR, call.error);
+        } else {
+            reply.putString(KEY_RESULT, call.result.toString());
+        }
+        return reply;
+    }
+
+    private synchronized AlarmCommands commands() {
+        if (commands == null) {
+            commands = new AlarmCommands(getContext());
+        }
+        return commands;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        return null;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        return 0;
+    }
+}
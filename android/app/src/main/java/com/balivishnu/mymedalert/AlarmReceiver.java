@@ -6,6 +6,9 @@ import android.content.Intent;
 import android.os.Build;
 import android.util.Log;
 
+import java.util.Collections;
+import java.util.List;
+
 /**
  * CRITICAL COMPONENT: AlarmReceiver receives alarm broadcasts when app is closed
  * This is the ONLY way alarms can fire when app is not running
@@ -15,20 +18,70 @@ public class AlarmReceiver extends BroadcastReceiver {
 
     @Override
     public void onReceive(Context context, Intent intent) {
+        long receivedAt = System.currentTimeMillis();
         Log.d(TAG, "🚨 AlarmReceiver.onReceive() - ALARM TRIGGERED!");
+        FireLatencyTracer tracer = FireLatencyTracer.getInstance(context);
+        
+        // Warm-up ahead of the next fire: prepare its sound and notification, ring nothing
+        if (AlarmScheduler.ACTION_WARM_UP.equals(intent.getAction())) {
+            List<AlarmRecord> upcoming = AlarmScheduler.getInstance(context).peekNextFire();
+            if (!upcoming.isEmpty()) {
+                AlarmWarmUp.getInstance(context).prepare(new AlarmGroup(upcoming), upcoming.get(0).triggerTime);
+            }
+            return;
+        }
         
-        // Extract medicine details from intent
+        // Single armed scheduler alarm: take every dose due within the coalescing window, which also
+        // re-arms the next one, and ring them together as ONE grouped alarm
+        if (AlarmScheduler.ACTION_FIRE.equals(intent.getAction())) {
+            List<AlarmRecord> due = AlarmScheduler.getInstance(context).pollDue(receivedAt);
+            Log.d(TAG, "Scheduler fire: " + due.size() + " dose(s) due");
+            if (!due.isEmpty()) {
+                // The earliest due dose is the one AlarmManager was armed for
+                AlarmRecord armed = due.get(0);
+                long traceId = tracer.begin(armed.alarmId, armed.triggerTime, receivedAt);
+                DriftLog.getInstance(context).append(armed.alarmId, armed.triggerTime, receivedAt,
+                        DriftLog.currentDeviceFlags(context));
+                startAlarm(context, new AlarmGroup(due), traceId);
+            }
+            return;
+        }
+        
+        // Legacy per-dose PendingIntent armed before the single-alarm scheduler
         String medicineName = intent.getStringExtra("medicineName");
         String dosage = intent.getStringExtra("dosage");
         String patientName = intent.getStringExtra("patientName");
+        int alarmId = intent.getIntExtra("alarmId", -1);
         
-        Log.d(TAG, "Medicine: " + medicineName + ", Dosage: " + dosage + ", Patient: " + patientName);
+        // Resolve from the native store when the PendingIntent carried no payload,
+        // then drop the fired one-shot alarm from the queue and the store
+        String medicineId = "";
+        long triggerTime = receivedAt;
+        if (alarmId != -1) {
+            AlarmRecord record = AlarmStore.getInstance(context).get(alarmId);
+            if (record != null) {
+                medicineId = record.medicineId;
+                triggerTime = record.triggerTime;
+                if (medicineName == null) medicineName = record.medicineName;
+                if (dosage == null) dosage = record.dosage;
+                if (patientName == null) patientName = record.patientName;
+            }
+            AlarmScheduler.getInstance(context).cancel(Collections.singletonList(alarmId));
+        }
+        
+        long traceId = tracer.begin(alarmId, triggerTime, receivedAt);
+        startAlarm(context, new AlarmGroup(Collections.singletonList(
+                new AlarmRecord(alarmId, medicineId, medicineName, dosage, patientName, 0))), traceId);
+    }
+    
+    private static void startAlarm(Context context, AlarmGroup group, long traceId) {
+        Log.d(TAG, "Medicines: " + group.getMedicineSummary() + " (" + group.size() + " dose(s))"
+                + ", Patient: " + group.getPatientSummary());
         
         // CRITICAL: Start AlarmService to handle the alarm sound/vibration
         Intent serviceIntent = new Intent(context, AlarmService.class);
-        serviceIntent.putExtra("medicineName", medicineName);
-        serviceIntent.putExtra("dosage", dosage);
-        serviceIntent.putExtra("patientName", patientName);
+        AlarmIntents.putGroup(context, serviceIntent, group);
+        serviceIntent.putExtra(FireLatencyTracer.EXTRA_TRACE_ID, traceId);
         
         try {
             // Use startForegroundService for Android 8+
@@ -44,23 +97,7 @@ public class AlarmReceiver extends BroadcastReceiver {
             e.printStackTrace();
         }
         
-        // CRITICAL: Also launch AlarmActivity DIRECTLY from receiver
-        // This ensures the red screen shows immediately, even before service is fully started
-        try {
-            Intent activityIntent = new Intent(context, AlarmActivity.class);
-            activityIntent.setFlags(
-                Intent.FLAG_ACTIVITY_NEW_TASK |
-                Intent.FLAG_ACTIVITY_CLEAR_TOP |
-                Intent.FLAG_ACTIVITY_REORDER_TO_FRONT
-            );
-            activityIntent.putExtra("medicineName", medicineName);
-            activityIntent.putExtra("dosage", dosage);
-            activityIntent.putExtra("patientName", patientName);
-            context.startActivity(activityIntent);
-            Log.d(TAG, "✅ Launched AlarmActivity directly from receiver");
-        } catch (Exception e) {
-            Log.e(TAG, "❌ Failed to launch AlarmActivity: " + e.getMessage());
-            e.printStackTrace();
-        }
+        // AlarmService launches AlarmActivity as soon as the session starts, with its session ID,
+        // so the screen's buttons always act on the alarm it shows
     }
 }
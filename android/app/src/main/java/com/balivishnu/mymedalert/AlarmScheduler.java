@@ -0,0 +1,533 @@
+package com.balivishnu.mymedalert;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * CRITICAL: Single-armed alarm scheduler.
+ * All upcoming doses live in an in-memory min-heap (AlarmQueue) backed by AlarmStore.
+ * Only the earliest trigger is registered with AlarmManager, through one fixed PendingIntent,
+ * so the system alarm queue holds exactly one entry for this app however many doses exist.
+ * AlarmReceiver calls {@link #pollDue} on every fire, which advances recurring alarms to their
+ * next occurrence and re-arms the next trigger.
+ * With a warm-up lead set, a second PendingIntent fires that many seconds before the earliest
+ * trigger so AlarmWarmUp can prepare the process, sound and notification ahead of the dose.
+ * Snoozed doses go back into the same queue as one-shot records under reserved negative IDs, so
+ * any number of concurrent snoozes still costs one system alarm.
+ * Scheduled alarms are also indexed by medicine, so {@link #reconcile} can diff a desired set
+ * against what is armed and touch only the alarms that changed.
+ * Recurring alarms are wall-clock rules; when the clock or time zone changes,
+ * {@link #recomputeForClockChange} moves their pending triggers to the same local time.
+ */
+public final class AlarmScheduler {
+    private static final String TAG = "AlarmScheduler";
+    public static final String ACTION_FIRE = "com.balivishnu.mymedalert.ACTION_FIRE_DUE_ALARMS";
+    public static final String ACTION_WARM_UP = "com.balivishnu.mymedalert.ACTION_WARM_UP";
+    private static final int FIRE_REQUEST_CODE = 0;
+    private static final int WARM_UP_REQUEST_CODE = 1;
+    static final String PREFS_NAME = "AlarmSchedulerPrefs";
+    private static final String KEY_COALESCE_WINDOW = "coalesceWindowSeconds";
+    // Doses due within this many seconds of a fire ring together as one grouped alarm. Kept to a
+    // few seconds of jitter: a larger window would ring later doses early, which is a dosing error
+    public static final int DEFAULT_COALESCE_WINDOW_SECONDS = 5;
+    public static final int MAX_COALESCE_WINDOW_SECONDS = 10;
+    private static final String KEY_WARM_UP_LEAD = "warmUpLeadSeconds";
+    // Off by default; 0 arms no warm-up alarm
+    public static final int MAX_WARM_UP_LEAD_SECONDS = 5 * 60;
+    private static final String KEY_NEXT_SNOOZE_ID = "nextSnoozeId";
+    // Time zone the queued recurring triggers were computed in
+    private static final String KEY_ZONE = "zoneId";
+    // Snoozed doses take IDs from this range; alarm IDs from the app are never negative
+    private static final int FIRST_SNOOZE_ID = -2;
+    private static final int LAST_SNOOZE_ID = -1_000_000_000;
+
+    private static AlarmScheduler instance;
+
+    private final Context context;
+    // Device-protected, like the store, so settings are readable before the first unlock
+    private final Context storage;
+    private final AlarmStore store;
+    private final AlarmQueue queue = new AlarmQueue();
+    private long armedTriggerTime = Long.MAX_VALUE;
+    private long armedWarmUpTime = Long.MAX_VALUE;
+    private boolean armedKnown = false;
+    private long coalesceWindowMs;
+    private long warmUpLeadMs;
+    // Pending snooze alarm ID per original dose; snoozing a dose again replaces its pending snooze
+    private final Map<Integer, Integer> pendingSnoozes = new HashMap<>();
+    private int nextSnoozeId;
+
+    /**
+     * What {@link #reconcile} changed.
+     */
+    public static final class SyncDiff {
+        public final List<AlarmRecord> added = new ArrayList<>();
+        public final List<AlarmRecord> changed = new ArrayList<>();
+        public final List<Integer> removed = new ArrayList<>();
+        public int unchanged;
+    }
+
+    // Scheduled (not snoozed) alarm IDs per medicine ID
+    private final Map<String, Set<Integer>> byMedicine = new HashMap<>();
+
+    private AlarmScheduler(Context context) {
+        this.context = context.getApplicationContext();
+        this.storage = DeviceStorage.get(this.context);
+        this.store = AlarmStore.getInstance(this.context);
+        SharedPreferences prefs = storage.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        // Older versions allowed windows of up to 15 minutes; never honour more than the cap
+        this.coalesceWindowMs = Math.min(prefs.getInt(KEY_COALESCE_WINDOW, DEFAULT_COALESCE_WINDOW_SECONDS),
+                MAX_COALESCE_WINDOW_SECONDS) * 1000L;
+        this.warmUpLeadMs = prefs.getInt(KEY_WARM_UP_LEAD, 0) * 1000L;
+        this.nextSnoozeId = prefs.getInt(KEY_NEXT_SNOOZE_ID, FIRST_SNOOZE_ID);
+        if (!prefs.contains(KEY_ZONE)) {
+            prefs.edit().putString(KEY_ZONE, ZoneId.systemDefault().getId()).apply();
+        }
+        for (AlarmRecord record : store.getAll()) {
+            queue.add(record.alarmId, record.triggerTime);
+            if (record.isSnoozed()) {
+                pendingSnoozes.put(record.snoozeOf, record.alarmId);
+            } else {
+                index(record);
+            }
+        }
+        Log.d(TAG, "Scheduler loaded " + queue.size() + " alarms from store");
+    }
+
+    public static synchronized AlarmScheduler getInstance(Context context) {
+        if (instance == null) {
+            instance = new AlarmScheduler(context);
+        }
+        return instance;
+    }
+
+    public synchronized boolean schedule(AlarmRecord record) {
+        return schedule(Collections.singletonList(record));
+    }
+
+    /**
+     * Persists and enqueues all records, then re-arms once. O(k log n) for k records.
+     */
+    public synchronized boolean schedule(Collection<AlarmRecord> records) {
+        for (AlarmRecord record : records) {
+            unindex(store.get(record.alarmId));
+            index(record);
+        }
+        boolean persisted = store.putAll(records);
+        for (AlarmRecord record : records) {
+            queue.add(record.alarmId, record.triggerTime);
+        }
+        rearm();
+        return persisted;
+    }
+
+    /**
+     * Makes the scheduled alarms match {@code desired}: alarms that are new or differ are
+     * scheduled, and alarms of the same medicines - or of {@code medicineIds} - that are not
+     * desired are cancelled. With {@code medicineIds} null every scheduled alarm is in scope.
+     * Comparing is O(d) for d desired alarms; only the differences touch the queue and the store,
+     * and the system alarm is re-armed once.
+     */
+    public synchronized SyncDiff reconcile(Collection<AlarmRecord> desired, Collection<String> medicineIds) {
+        SyncDiff diff = new SyncDiff();
+        Set<Integer> desiredIds = new HashSet<>();
+        Set<String> scope = new HashSet<>();
+        List<AlarmRecord> upserts = new ArrayList<>();
+        for (AlarmRecord record : desired) {
+            desiredIds.add(record.alarmId);
+            scope.add(record.medicineId);
+            AlarmRecord current = store.get(record.alarmId);
+            if (current == null) {
+                diff.added.add(record);
+            } else if (!current.sameScheduleAs(record)) {
+                diff.changed.add(record);
+                // A medicine change moves the alarm out of its old medicine's scope
+                scope.add(current.medicineId);
+            } else {
+                diff.unchanged++;
+                continue;
+            }
+            upserts.add(record);
+        }
+
+        Collection<String> candidates = medicineIds != null ? medicineIds : new ArrayList<>(byMedicine.keySet());
+        scope.addAll(candidates);
+        for (String medicineId : scope) {
+            Set<Integer> alarmIds = byMedicine.get(medicineId);
+            if (alarmIds == null) continue;
+            for (Integer alarmId : alarmIds) {
+                if (!desiredIds.contains(alarmId)) {
+                    diff.removed.add(alarmId);
+                }
+            }
+        }
+        if (upserts.isEmpty() && diff.removed.isEmpty()) {
+            return diff;
+        }
+
+        for (AlarmRecord record : upserts) {
+            unindex(store.get(record.alarmId));
+            index(record);
+            queue.add(record.alarmId, record.triggerTime);
+        }
+        store.putAll(upserts);
+        store.removeAll(removeAlarms(diff.removed));
+        rearm();
+        Log.d(TAG, "🔁 Reconciled: +" + diff.added.size() + " ~" + diff.changed.size() + " -" + diff.removed.size()
+                + " =" + diff.unchanged);
+        return diff;
+    }
+
+    /**
+     * Removes the alarms from the queue and the store, then re-arms once.
+     *
+     * @return the number of alarms removed from the store
+     */
+    public synchronized int cancel(Collection<Integer> alarmIds) {
+        int removed = store.removeAll(removeAlarms(alarmIds));
+        rearm();
+        return removed;
+    }
+
+    /**
+     * Takes the alarms and their pending snoozes out of the queue and the index.
+     *
+     * @return the IDs to remove from the store
+     */
+    private List<Integer> removeAlarms(Collection<Integer> alarmIds) {
+        List<Integer> removing = new ArrayList<>(alarmIds);
+        for (Integer alarmId : alarmIds) {
+            unindex(store.get(alarmId));
+            queue.remove(alarmId);
+            cancelLegacyAlarm(alarmId);
+            // A cancelled dose must not come back through a pending snooze
+            Integer snoozeId = pendingSnoozes.remove(alarmId);
+            if (snoozeId != null) {
+                queue.remove(snoozeId);
+                removing.add(snoozeId);
+            } else if (alarmId < 0) {
+                pendingSnoozes.values().remove(alarmId);
+            }
+        }
+        return removing;
+    }
+
+    private void index(AlarmRecord record) {
+        if (record == null || record.isSnoozed()) return;
+        Set<Integer> alarmIds = byMedicine.get(record.medicineId);
+        if (alarmIds == null) {
+            alarmIds = new HashSet<>();
+            byMedicine.put(record.medicineId, alarmIds);
+        }
+        alarmIds.add(record.alarmId);
+    }
+
+    private void unindex(AlarmRecord record) {
+        if (record == null || record.isSnoozed()) return;
+        Set<Integer> alarmIds = byMedicine.get(record.medicineId);
+        if (alarmIds != null && alarmIds.remove(record.alarmId) && alarmIds.isEmpty()) {
+            byMedicine.remove(record.medicineId);
+        }
+    }
+
+    /**
+     * Puts the doses back into the queue to ring again at {@code triggerTime}, keeping their
+     * payload and original alarm IDs. A dose that already has a pending snooze has it replaced.
+     * O(k log n) for k doses, with a single re-arm.
+     *
+     * @return the snoozed records, as queued
+     */
+    public synchronized List<AlarmRecord> snooze(Collection<AlarmRecord> doses, long triggerTime) {
+        List<AlarmRecord> snoozed = new ArrayList<>(doses.size());
+        List<Integer> replaced = new ArrayList<>();
+        for (AlarmRecord dose : doses) {
+            Integer previous = pendingSnoozes.remove(dose.snoozeOf);
+            if (previous != null) {
+                queue.remove(previous);
+                replaced.add(previous);
+            }
+            AlarmRecord record = dose.snoozed(allocateSnoozeId(), triggerTime);
+            snoozed.add(record);
+            pendingSnoozes.put(record.snoozeOf, record.alarmId);
+            queue.add(record.alarmId, record.triggerTime);
+        }
+        store.removeAll(replaced);
+        store.putAll(snoozed);
+        storage.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .edit().putInt(KEY_NEXT_SNOOZE_ID, nextSnoozeId).apply();
+        rearm();
+        return snoozed;
+    }
+
+    private int allocateSnoozeId() {
+        // The range is far larger than the queue, so skipping live IDs ends quickly
+        do {
+            int id = nextSnoozeId;
+            nextSnoozeId = id == LAST_SNOOZE_ID ? FIRST_SNOOZE_ID : id - 1;
+            if (!queue.contains(id)) {
+                return id;
+            }
+        } while (true);
+    }
+
+    /**
+     * Recomputes recurring triggers after the wall clock or time zone changed, so every dose
+     * keeps its local time in {@code zone}. Only doses whose trigger moves are re-queued and
+     * rewritten, in one store write, and the system alarm is re-armed once.
+     *
+     * @return how many triggers moved
+     */
+    public synchronized int recomputeForClockChange(ZoneId zone, long now) {
+        SharedPreferences prefs = storage.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        ZoneId previousZone = zone;
+        try {
+            previousZone = ZoneId.of(prefs.getString(KEY_ZONE, zone.getId()));
+        } catch (DateTimeException e) {
+            Log.w(TAG, "Unknown previous time zone, recomputing in " + zone + ": " + e.getMessage());
+        }
+
+        List<AlarmRecord> moved = new ArrayList<>();
+        for (AlarmRecord record : store.getAll()) {
+            AlarmRecord recomputed = record.recomputed(previousZone, zone, now);
+            if (recomputed != record) {
+                moved.add(recomputed);
+                queue.add(recomputed.alarmId, recomputed.triggerTime);
+            }
+        }
+        store.putAll(moved);
+        if (!zone.equals(previousZone)) {
+            prefs.edit().putString(KEY_ZONE, zone.getId()).apply();
+        }
+        restore();
+        Log.d(TAG, "🕐 Clock change (" + previousZone + " -> " + zone + "): " + moved.size() + " of "
+                + queue.size() + " triggers moved");
+        return moved.size();
+    }
+
+    /**
+     * Sets how far ahead of a fire other doses are pulled into the same grouped alarm, clamped to
+     * {@link #MAX_COALESCE_WINDOW_SECONDS}. A pulled-in dose rings early by up to the window, so
+     * no dose ever rings more than 10 s before its trigger.
+     */
+    public synchronized void setCoalesceWindowSeconds(int seconds) {
+        int clamped = Math.max(0, Math.min(seconds, MAX_COALESCE_WINDOW_SECONDS));
+        storage.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .edit().putInt(KEY_COALESCE_WINDOW, clamped).apply();
+        coalesceWindowMs = clamped * 1000L;
+    }
+
+    public synchronized int getCoalesceWindowSeconds() {
+        return (int) (coalesceWindowMs / 1000);
+    }
+
+    /**
+     * Sets how many seconds before each fire the warm-up alarm runs; 0 turns warm-up off.
+     */
+    public synchronized void setWarmUpLeadSeconds(int seconds) {
+        int clamped = Math.max(0, Math.min(seconds, MAX_WARM_UP_LEAD_SECONDS));
+        storage.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .edit().putInt(KEY_WARM_UP_LEAD, clamped).apply();
+        warmUpLeadMs = clamped * 1000L;
+        rearm();
+    }
+
+    public synchronized int getWarmUpLeadSeconds() {
+        return (int) (warmUpLeadMs / 1000);
+    }
+
+    /**
+     * The doses the next fire will ring together, without removing them.
+     */
+    public synchronized List<AlarmRecord> peekNextFire() {
+        long next = queue.peekTriggerTime();
+        if (next == Long.MAX_VALUE) {
+            return Collections.emptyList();
+        }
+        List<AlarmRecord> upcoming = new ArrayList<>();
+        for (Integer alarmId : queue.peekDue(next + Math.max(coalesceWindowMs, 1000))) {
+            AlarmRecord record = store.get(alarmId);
+            if (record != null) {
+                upcoming.add(record);
+            }
+        }
+        return upcoming;
+    }
+
+    /**
+     * Removes and returns every dose that is due now or within the coalescing window, earliest
+     * first, then arms the next one. The caller rings them as one grouped alarm, so a dose due
+     * inside the window rings up to the window early: 5 s by default, at least 1 s even with the
+     * window off, and never more than {@link #MAX_COALESCE_WINDOW_SECONDS}. Doses due after the
+     * window keep their own trigger.
+     */
+    public synchronized List<AlarmRecord> pollDue(long now) {
+        // The armed alarm just fired, so the system no longer holds it
+        armedKnown = false;
+
+        // Always take at least a second so doses a few ms apart never need a separate re-arm
+        List<Integer> dueIds = queue.pollDue(now + Math.max(coalesceWindowMs, 1000));
+        List<AlarmRecord> due = new ArrayList<>(dueIds.size());
+        List<AlarmRecord> advanced = new ArrayList<>();
+        List<Integer> finished = new ArrayList<>();
+        for (Integer alarmId : dueIds) {
+            AlarmRecord record = store.get(alarmId);
+            if (record == null) continue;
+            due.add(record);
+
+            // Recurring course: compute only the next occurrence and keep the same alarm queued.
+            // Occurrences missed while the device was off are skipped, not replayed.
+            if (record.rule != null) {
+                RecurrenceRule.Occurrence next = record.rule.nextOccurrence(
+                        Math.max(record.triggerTime, now), ZoneId.systemDefault());
+                if (next != null) {
+                    AlarmRecord nextRecord = record.withOccurrence(next);
+                    advanced.add(nextRecord);
+                    queue.add(nextRecord.alarmId, nextRecord.triggerTime);
+                    continue;
+                }
+                Log.d(TAG, "Course finished for " + record.medicineName + " (alarm " + alarmId + ")");
+            }
+            if (record.isSnoozed()) {
+                pendingSnoozes.remove(record.snoozeOf, alarmId);
+            }
+            unindex(record);
+            finished.add(alarmId);
+        }
+        store.putAll(advanced);
+        store.removeAll(finished);
+        rearm();
+        return due;
+    }
+
+    public synchronized int size() {
+        return queue.size();
+    }
+
+    public synchronized long getNextTriggerTime() {
+        return queue.peekTriggerTime();
+    }
+
+    /**
+     * Arms the earliest trigger even if this process armed it before, since the system drops
+     * every alarm on reboot. An overdue trigger - a dose due while the device was off or locked -
+     * fires at once.
+     */
+    public synchronized void restore() {
+        armedKnown = false;
+        rearm();
+    }
+
+    /**
+     * Makes sure AlarmManager holds exactly the earliest trigger (and its warm-up), skipping the
+     * system calls when the armed times are already correct.
+     */
+    public synchronized void rearm() {
+        long next = queue.peekTriggerTime();
+        long warmUp = warmUpTime(next, System.currentTimeMillis());
+        if (armedKnown && next == armedTriggerTime && warmUp == armedWarmUpTime) {
+            return;
+        }
+
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        if (alarmManager == null) {
+            Log.e(TAG, "❌ AlarmManager not available - cannot arm next alarm");
+            return;
+        }
+
+        PendingIntent fireIntent = createFireIntent(context);
+        if (next == Long.MAX_VALUE) {
+            alarmManager.cancel(fireIntent);
+            Log.d(TAG, "No upcoming alarms - system alarm cleared");
+        } else {
+            // Use setExactAndAllowWhileIdle for exact timing and to work in Doze mode
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, next, fireIntent);
+            } else {
+                alarmManager.setExact(AlarmManager.RTC_WAKEUP, next, fireIntent);
+            }
+            Log.d(TAG, "⏰ Armed next alarm at " + next + " (" + queue.size() + " queued)");
+        }
+
+        PendingIntent warmUpIntent = createWarmUpIntent(context);
+        if (warmUp == Long.MAX_VALUE) {
+            alarmManager.cancel(warmUpIntent);
+        } else {
+            // Not allow-while-idle: in Doze the warm-up waits for a maintenance window instead of
+            // spending the idle alarm quota the fire itself needs. A late warm-up is harmless.
+            alarmManager.setExact(AlarmManager.RTC_WAKEUP, warmUp, warmUpIntent);
+            Log.d(TAG, "Armed warm-up at " + warmUp);
+        }
+        armedTriggerTime = next;
+        armedWarmUpTime = warmUp;
+        armedKnown = true;
+    }
+
+    /**
+     * When to warm up for a fire at {@code next}, or {@link Long#MAX_VALUE} for no warm-up.
+     */
+    private long warmUpTime(long next, long now) {
+        if (warmUpLeadMs == 0 || next == Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        long warmUp = next - warmUpLeadMs;
+        return warmUp > now ? warmUp : Long.MAX_VALUE;
+    }
+
+    private static PendingIntent createFireIntent(Context context) {
+        // CRITICAL: Use getBroadcast so the alarm fires even when app is completely closed
+        Intent intent = new Intent(context, AlarmReceiver.class);
+        intent.setAction(ACTION_FIRE);
+        return PendingIntent.getBroadcast(
+                context,
+                FIRE_REQUEST_CODE,
+                intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+    }
+
+    private static PendingIntent createWarmUpIntent(Context context) {
+        Intent intent = new Intent(context, AlarmReceiver.class);
+        intent.setAction(ACTION_WARM_UP);
+        return PendingIntent.getBroadcast(
+                context,
+                WARM_UP_REQUEST_CODE,
+                intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+    }
+
+    /**
+     * Alarms armed by earlier versions used one PendingIntent per alarm ID; drop any leftover.
+     */
+    private void cancelLegacyAlarm(int alarmId) {
+        PendingIntent legacy = PendingIntent.getBroadcast(
+                context,
+                alarmId,
+                new Intent(context, AlarmReceiver.class),
+                PendingIntent.FLAG_NO_CREATE | PendingIntent.FLAG_IMMUTABLE
+        );
+        if (legacy != null) {
+            AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+            if (alarmManager != null) {
+                alarmManager.cancel(legacy);
+            }
+            legacy.cancel();
+        }
+    }
+}
@@ -7,7 +7,6 @@ import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.media.AudioAttributes;
 import android.media.AudioManager;
 import android.media.Ringtone;
@@ -17,79 +16,72 @@ import android.os.Build;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
-import android.os.PowerManager;
 import android.os.Vibrator;
 import android.util.Log;
 import android.content.IntentFilter;
 import androidx.core.app.NotificationCompat;
 
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 public class AlarmService extends Service {
     private static final String TAG = "AlarmService";
     private static final String CHANNEL_ID = "MEDICINE_ALARM_CHANNEL";
+    private static final String INFO_CHANNEL_ID = "MEDICINE_INFO_CHANNEL";
     private static final int NOTIFICATION_ID = 12345;
-    private static final String PREFS_NAME = "AlarmPrefs";
-    private static final String KEY_ALARM_ACTIVE = "isAlarmActive";
-    private static final String KEY_MEDICINE_NAME = "medicineName";
-    private static final String KEY_DOSAGE = "dosage";
-    private static final String KEY_PATIENT_NAME = "patientName";
-    
-    // CRITICAL: Static flag to track if alarm is currently active
-    // This is used by MainActivity to check if it should show AlarmActivity
-    public static boolean isAlarmActive = false;
-    public static String currentMedicineName = "";
-    public static String currentDosage = "";
-    public static String currentPatientName = "";
+    static final String EXTRA_SESSION_ID = "sessionId";
+    static final String EXTRA_WAITING_SESSIONS = "waitingSessions";
+    // Puts the session on screen back in front; the only way other components show AlarmActivity
+    static final String ACTION_SHOW_ALARM = "SHOW_ALARM";
+    private static final long AUTO_STOP_MS = 60000;
+    // The dose history replays its whole log when first opened and forces every append to disk,
+    // so outcomes are written off the main thread; one thread keeps them in the order they happened
+    private static final ExecutorService HISTORY_WRITER = Executors.newSingleThreadExecutor();
+    private static final long HISTORY_WRITE_TIMEOUT_MS = 30000;
     
     // Screen on receiver for lock screen detection
     private ScreenOnReceiver screenOnReceiver;
     
-    // Helper methods to persist alarm state using SharedPreferences
-    public static void setAlarmActive(Context context, boolean active, String medicineName, String dosage, String patientName) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
-        editor.putBoolean(KEY_ALARM_ACTIVE, active);
-        editor.putString(KEY_MEDICINE_NAME, medicineName != null ? medicineName : "");
-        editor.putString(KEY_DOSAGE, dosage != null ? dosage : "");
-        editor.putString(KEY_PATIENT_NAME, patientName != null ? patientName : "");
-        editor.apply();
-        
-        // Also update static variables
-        isAlarmActive = active;
-        currentMedicineName = medicineName != null ? medicineName : "";
-        currentDosage = dosage != null ? dosage : "";
-        currentPatientName = patientName != null ? patientName : "";
-        
-        Log.d(TAG, "Alarm state saved to SharedPreferences: active=" + active);
+    // Helper methods to publish alarm state through AlarmStateStore (lock-free, persisted write-behind)
+    public static void setAlarmActive(Context context, AlarmGroup group) {
+        AlarmStateStore.getInstance(context).transition(AlarmState.Phase.RINGING, group);
     }
     
-    public static boolean isAlarmActiveFromPrefs(Context context) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        boolean active = prefs.getBoolean(KEY_ALARM_ACTIVE, false);
-        // Also sync static variables
-        if (active) {
-            isAlarmActive = true;
-            currentMedicineName = prefs.getString(KEY_MEDICINE_NAME, "");
-            currentDosage = prefs.getString(KEY_DOSAGE, "");
-            currentPatientName = prefs.getString(KEY_PATIENT_NAME, "");
-        }
-        return active;
+    /**
+     * Ends the ringing state in {@code phase}: SNOOZED or DISMISSED after a user action, IDLE when
+     * the alarm stopped on its own.
+     */
+    public static void clearAlarmState(Context context, AlarmState.Phase phase) {
+        AlarmStateStore.getInstance(context).transition(phase, null);
     }
     
-    public static void clearAlarmState(Context context) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        prefs.edit().clear().apply();
-        isAlarmActive = false;
-        currentMedicineName = "";
-        currentDosage = "";
-        currentPatientName = "";
-        Log.d(TAG, "Alarm state cleared from SharedPreferences");
+    /**
+     * Asks the service to bring the alarm on screen back to the front. AlarmActivity is only ever
+     * started by the service, so it always knows which session its buttons act on.
+     */
+    public static void showCurrentAlarm(Context context) {
+        Intent intent = new Intent(context, AlarmService.class);
+        intent.setAction(ACTION_SHOW_ALARM);
+        try {
+            context.startService(intent);
+        } catch (Exception e) {
+            // Not allowed to start from the background: nothing is ringing in this process
+            Log.w(TAG, "Could not ask AlarmService to show the alarm: " + e.getMessage());
+        }
     }
     
     private Ringtone ringtone;
     private Vibrator vibrator;
-    private PowerManager.WakeLock wakeLock;
     private Handler handler;
-    private Runnable stopAlarmRunnable;
+    private FireLatencyTracer tracer;
+    // Every alarm that fired and has no outcome yet - a new alarm queues behind the one on screen
+    private final AlarmSessionQueue sessions = new AlarmSessionQueue();
+    private final Map<Long, Runnable> autoStopRunnables = new HashMap<>();
+    // CPU wake lock lease per ringing session, released when that session finishes
+    private final Map<Long, WakeLockManager.Lease> sessionLeases = new HashMap<>();
     
     @Override
     public void onCreate() {
@@ -97,20 +89,14 @@ public class AlarmService extends Service {
         Log.d(TAG, "AlarmService onCreate");
         
         handler = new Handler(Looper.getMainLooper());
+        tracer = FireLatencyTracer.getInstance(this);
         
-        // Create notification channel
-        createNotificationChannel();
+        // Create notification channels (already done when AlarmWarmUp ran before this fire)
+        createNotificationChannels(this);
         
         // Initialize vibrator
         vibrator = (Vibrator) getSystemService(Context.VIBRATOR_SERVICE);
         
-        // Acquire wake lock to keep device awake
-        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
-        wakeLock = powerManager.newWakeLock(
-            PowerManager.PARTIAL_WAKE_LOCK | PowerManager.ACQUIRE_CAUSES_WAKEUP,
-            "MedicineAlarm::WakeLock"
-        );
-        
         // CRITICAL: Register ScreenOnReceiver dynamically
         // This catches SCREEN_ON events (even on lock screen) to show alarm
         try {
@@ -128,90 +114,84 @@ public class AlarmService extends Service {
     
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
+        long startedAt = System.currentTimeMillis();
         Log.d(TAG, "AlarmService onStartCommand");
         
         if (intent != null) {
             String action = intent.getAction();
             
-            // Handle alarm actions
-            if ("DISMISS_ALARM".equals(action)) {
+            // Handle alarm actions - they apply to one session, the one on screen by default
+            long sessionId = intent.getLongExtra(EXTRA_SESSION_ID, -1);
+            if ("TAKE_ALARM".equals(action)) {
+                Log.d(TAG, "User took the dose(s)");
+                AlarmSession session = resolveSession(sessionId);
+                if (session != null) {
+                    long takenAt = System.currentTimeMillis();
+                    Context app = getApplicationContext();
+                    writeHistory(session, () -> recordDoses(app, session.group, DoseEvent.Status.TAKEN, takenAt));
+                } else {
+                    Log.w(TAG, "⚠️ No alarm session to mark as taken");
+                }
+                finishSession(sessionId, AlarmSession.Outcome.TAKEN);
+                return START_NOT_STICKY;
+            } else if ("DISMISS_ALARM".equals(action)) {
                 Log.d(TAG, "User dismissed alarm");
-                stopAlarm();
-                stopSelf();
+                finishSession(sessionId, AlarmSession.Outcome.DISMISSED);
                 return START_NOT_STICKY;
             } else if ("SNOOZE_ALARM".equals(action)) {
                 Log.d(TAG, "User snoozed alarm");
-                stopAlarm();
-                // Snooze for 5 minutes - reschedule alarm
-                scheduleSnoozeAlarm();
-                stopSelf();
+                AlarmSession session = resolveSession(sessionId);
+                // The snoozed doses go back into the native schedule with their full payload
+                if (session != null) {
+                    AlarmSnoozeEngine.getInstance(this).snooze(session.group, System.currentTimeMillis());
+                } else {
+                    Log.w(TAG, "⚠️ No alarm session to snooze");
+                }
+                finishSession(sessionId, AlarmSession.Outcome.SNOOZED);
+                return START_NOT_STICKY;
+            } else if (ACTION_SHOW_ALARM.equals(action)) {
+                AlarmSession current = sessions.current();
+                if (current != null) {
+                    launchAlarmActivity(current, false);
+                } else {
+                    // Stale ringing state from a process that died mid-alarm: nothing to show
+                    Log.w(TAG, "⚠️ Asked to show the alarm but no session is ringing");
+                    stopAlarm(AlarmState.Phase.IDLE);
+                }
                 return START_NOT_STICKY;
             }
             
-            String medicineName = intent.getStringExtra("medicineName");
-            String dosage = intent.getStringExtra("dosage");
-            String patientName = intent.getStringExtra("patientName");
-            
-            // CRITICAL: Save alarm state to SharedPreferences (persists across process restarts)
-            setAlarmActive(this, true, medicineName, dosage, patientName);
+            // One or more doses coalesced by AlarmReceiver into a single alarm
+            AlarmGroup group = AlarmIntents.getGroup(this, intent);
+            long traceId = intent.getLongExtra(FireLatencyTracer.EXTRA_TRACE_ID, 0);
+            tracer.mark(traceId, FireLatencyTracer.Stage.SERVICE_START, startedAt);
+            AlarmSession session = sessions.start(group, startedAt, traceId);
+            AlarmEventBus.getInstance(this).publishFired(session, startedAt);
+            boolean alreadyRinging = sessions.size() > 1;
+            Log.d(TAG, "Alarm session " + session.sessionId + " started for " + group.getMedicineSummary()
+                    + " (" + sessions.size() + " active)");
             
             // CRITICAL: Start foreground service IMMEDIATELY to prevent crash
             // This MUST be the first operation to avoid Android 8+ crash
-            try {
-                startForeground(NOTIFICATION_ID, createAlarmNotification(medicineName, dosage, patientName));
-                Log.d(TAG, "Foreground service started successfully");
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to start foreground service: " + e.getMessage());
-                // Still try to continue with alarm functionality
-            }
+            // A session that arrives while another rings waits behind it - the screen keeps the oldest
+            AlarmSession shown = sessions.current();
+            showSession(shown, !alreadyRinging);
             
-            // Now acquire wake lock (after foreground service)
-            try {
-                if (wakeLock != null && !wakeLock.isHeld()) {
-                    wakeLock.acquire(65000); // Hold for 65 seconds max
-                    Log.d(TAG, "Wake lock acquired");
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to acquire wake lock: " + e.getMessage());
-            }
-            
-            // Play alarm sound IMMEDIATELY
-            playAlarmSound();
-            
-            // Start vibration IMMEDIATELY
-            startVibration();
-            
-            // CRITICAL: Launch full-screen alarm activity IMMEDIATELY (no delay)
-            // Launch directly to ensure it appears on top even when phone is unlocked
-            try {
-                Intent alarmActivityIntent = new Intent(this, AlarmActivity.class);
-                // CRITICAL FLAGS: These ensure AlarmActivity appears ON TOP of everything
-                // Use NEW_TASK | CLEAR_TASK to start fresh in isolated task
-                alarmActivityIntent.setFlags(
-                    Intent.FLAG_ACTIVITY_NEW_TASK |
-                    Intent.FLAG_ACTIVITY_CLEAR_TASK
-                );
-                alarmActivityIntent.putExtra("medicineName", medicineName);
-                alarmActivityIntent.putExtra("dosage", dosage);
-                alarmActivityIntent.putExtra("patientName", patientName);
-                startActivity(alarmActivityIntent);
-                Log.d(TAG, "✅ Full-screen alarm activity launched IMMEDIATELY with matching flags");
-            } catch (Exception e) {
-                Log.e(TAG, "❌ CRITICAL: Failed to launch alarm activity: " + e.getMessage());
-                e.printStackTrace();
+            if (!alreadyRinging) {
+                // Play alarm sound IMMEDIATELY
+                playAlarmSound(group, session.traceId);
+                
+                // Start vibration IMMEDIATELY
+                startVibration();
+            } else {
+                Log.d(TAG, "Alarm already ringing - session " + session.sessionId + " queued behind session " + shown.sessionId);
             }
-            
-            // Stop alarm after 60 seconds
-            stopAlarmRunnable = () -> {
-                Log.d(TAG, "Auto-stopping alarm after 60 seconds");
-                stopAlarm();
-            };
-            handler.postDelayed(stopAlarmRunnable, 60000);
         } else {
             Log.w(TAG, "onStartCommand called with null intent");
             // Even with null intent, we should start foreground to prevent crash
             try {
-                startForeground(NOTIFICATION_ID, createAlarmNotification("Unknown Medicine", "Unknown Dosage", ""));
+                startForeground(NOTIFICATION_ID, createAlarmNotification(
+                    AlarmGroup.of("Unknown Medicine", "Unknown Dosage", ""), -1, 0));
             } catch (Exception e) {
                 Log.e(TAG, "Failed to start foreground service with default notification: " + e.getMessage());
             }
@@ -220,7 +200,197 @@ public class AlarmService extends Service {
         return START_NOT_STICKY;
     }
     
-    private void createNotificationChannel() {
+    private AlarmSession resolveSession(long sessionId) {
+        return sessionId >= 0 ? sessions.get(sessionId) : sessions.current();
+    }
+    
+    /**
+     * Records a session's outcome. The next waiting session, if any, takes over the screen and
+     * notification while sound and the service keep running; otherwise the alarm stops.
+     */
+    private void finishSession(long sessionId, AlarmSession.Outcome outcome) {
+        AlarmSession session = resolveSession(sessionId);
+        if (session != null) {
+            Runnable autoStop = autoStopRunnables.remove(session.sessionId);
+            if (autoStop != null) {
+                handler.removeCallbacks(autoStop);
+            }
+            long now = System.currentTimeMillis();
+            if (sessions.finish(session.sessionId, outcome, now) != null
+                    && outcome == AlarmSession.Outcome.AUTO_STOPPED) {
+                // Nobody answered: the doses count as missed in the history and adherence
+                Context app = getApplicationContext();
+                writeHistory(session, () -> recordDoses(app, session.group, DoseEvent.Status.MISSED, now));
+            }
+            // Queued behind the session's history write, so the app finds the dose when it reacts
+            AlarmEventBus bus = AlarmEventBus.getInstance(this);
+            HISTORY_WRITER.execute(() -> bus.publishOutcome(session, outcome, now));
+            releaseLease(session.sessionId);
+            Log.d(TAG, "Alarm session finished: " + session);
+        }
+        
+        AlarmSession next = sessions.current();
+        if (next == null) {
+            stopAlarm(endPhase(outcome));
+            return;
+        }
+        Log.d(TAG, "➡️ Showing next alarm session " + next.sessionId + " (" + sessions.size() + " active)");
+        showSession(next, false);
+    }
+    
+    /**
+     * Runs a history write for the session on {@link #HISTORY_WRITER}. It holds a CPU lease of
+     * its own, so the write completes even after the session and its lease have ended.
+     */
+    private void writeHistory(AlarmSession session, Runnable write) {
+        WakeLockManager.Lease lease = WakeLockManager.getInstance(this).acquire(session.traceId,
+                firstAlarmId(session.group), WakeLockManager.Kind.CPU, HISTORY_WRITE_TIMEOUT_MS);
+        HISTORY_WRITER.execute(() -> {
+            try {
+                write.run();
+            } catch (RuntimeException e) {
+                // Thrown on this thread it would take the alarm process down
+                Log.e(TAG, "❌ History write for session " + session.sessionId + " failed: " + e.getMessage());
+            } finally {
+                lease.release();
+            }
+        });
+    }
+    
+    /**
+     * Writes an event per dose to the native history, and for TAKEN takes the pills off the native
+     * inventory; the app picks both up on its next sync. Blocks on disk, so never on the main thread.
+     */
+    static void recordDoses(Context context, AlarmGroup group, DoseEvent.Status status, long at) {
+        MedicineInventory inventory = MedicineInventory.getInstance(context);
+        boolean taken = status == DoseEvent.Status.TAKEN;
+        try {
+            DoseHistory history = DoseHistory.getInstance(context);
+            for (AlarmRecord item : group.getItems()) {
+                DoseEvent event = new DoseEvent(at, item.triggerTime, item.snoozeOf, item.medicineId,
+                        item.medicineName, item.patientName, item.dosage,
+                        taken ? inventory.getDosePills(item.medicineId) : 0, status);
+                history.append(event);
+                if (taken) {
+                    inventory.recordTaken(event);
+                }
+            }
+            Log.d(TAG, "💊 Recorded " + group.size() + " dose(s) as " + status);
+        } catch (IOException | IllegalArgumentException e) {
+            Log.e(TAG, "❌ Failed to record " + status + " dose: " + e.getMessage());
+        }
+    }
+    
+    private void releaseLease(long sessionId) {
+        WakeLockManager.Lease lease = sessionLeases.remove(sessionId);
+        if (lease != null) {
+            lease.release();
+        }
+    }
+    
+    private static int firstAlarmId(AlarmGroup group) {
+        return group.isEmpty() ? -1 : group.getItems().get(0).alarmId;
+    }
+    
+    private static AlarmState.Phase endPhase(AlarmSession.Outcome outcome) {
+        switch (outcome) {
+            case SNOOZED:
+                return AlarmState.Phase.SNOOZED;
+            case AUTO_STOPPED:
+                return AlarmState.Phase.IDLE;
+            default:
+                return AlarmState.Phase.DISMISSED;
+        }
+    }
+    
+    /**
+     * Puts a session on screen: alarm state, foreground notification and AlarmActivity.
+     *
+     * @param freshTask start AlarmActivity in a fresh task (first alarm) instead of updating it in place
+     */
+    private void showSession(AlarmSession session, boolean freshTask) {
+        AlarmGroup group = session.group;
+        int waiting = sessions.size() - 1;
+        startOnScreenTimers(session);
+        
+        // CRITICAL: Publish alarm state (persisted write-behind, survives process restarts)
+        setAlarmActive(this, group);
+        
+        try {
+            // The first session can use the notification AlarmWarmUp built for these doses
+            Notification notification = freshTask ? AlarmWarmUp.getInstance(this).takeNotification(group) : null;
+            if (notification != null) {
+                showMedicineInfoNotification(group);
+            } else {
+                notification = createAlarmNotification(group, session.sessionId, waiting);
+            }
+            startForeground(NOTIFICATION_ID, notification);
+            tracer.mark(session.traceId, FireLatencyTracer.Stage.FOREGROUND, System.currentTimeMillis());
+            Log.d(TAG, "Foreground service started successfully");
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to start foreground service: " + e.getMessage());
+            // Still try to continue with alarm functionality
+        }
+        
+        // CRITICAL: Launch full-screen alarm activity IMMEDIATELY (no delay)
+        launchAlarmActivity(session, freshTask);
+    }
+    
+    /**
+     * Starts the CPU lease and 60 second auto-stop of the session on screen, once. A session
+     * waiting behind another gets them only when it reaches the screen, so it can never time out
+     * as missed without having been shown.
+     */
+    private void startOnScreenTimers(AlarmSession session) {
+        if (autoStopRunnables.containsKey(session.sessionId)) return;
+        
+        // Keep the CPU awake for this session (after foreground service); the lease ends with
+        // the session, and at the latest when it would auto-stop
+        sessionLeases.put(session.sessionId, WakeLockManager.getInstance(this).acquire(
+                session.traceId, firstAlarmId(session.group), WakeLockManager.Kind.CPU, AUTO_STOP_MS + 5000));
+        
+        // Each session stops on its own 60 seconds after it reaches the screen
+        final long autoStopId = session.sessionId;
+        Runnable autoStop = () -> {
+            Log.d(TAG, "Auto-stopping alarm session " + autoStopId + " after 60 seconds on screen");
+            finishSession(autoStopId, AlarmSession.Outcome.AUTO_STOPPED);
+        };
+        autoStopRunnables.put(autoStopId, autoStop);
+        handler.postDelayed(autoStop, AUTO_STOP_MS);
+    }
+    
+    /**
+     * Starts AlarmActivity for {@code session}, always with its session ID and waiting count.
+     */
+    private void launchAlarmActivity(AlarmSession session, boolean freshTask) {
+        AlarmGroup group = session.group;
+        int waiting = sessions.size() - 1;
+        // Launch directly to ensure it appears on top even when phone is unlocked
+        try {
+            Intent alarmActivityIntent = new Intent(this, AlarmActivity.class);
+            // CRITICAL FLAGS: These ensure AlarmActivity appears ON TOP of everything
+            // Use NEW_TASK | CLEAR_TASK to start fresh in isolated task; later sessions
+            // reuse the running activity, which refreshes its details from onNewIntent
+            alarmActivityIntent.setFlags(freshTask
+                ? Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK
+                : Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_REORDER_TO_FRONT
+            );
+            AlarmIntents.putGroup(this, alarmActivityIntent, group);
+            alarmActivityIntent.putExtra(EXTRA_SESSION_ID, session.sessionId);
+            alarmActivityIntent.putExtra(EXTRA_WAITING_SESSIONS, waiting);
+            alarmActivityIntent.putExtra(FireLatencyTracer.EXTRA_TRACE_ID, session.traceId);
+            startActivity(alarmActivityIntent);
+            Log.d(TAG, "✅ Full-screen alarm activity launched IMMEDIATELY with matching flags");
+        } catch (Exception e) {
+            Log.e(TAG, "❌ CRITICAL: Failed to launch alarm activity: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Creates the alarm and medicine info channels if they do not exist yet.
+     */
+    static void createNotificationChannels(Context context) {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             try {
                 NotificationChannel channel = new NotificationChannel(
@@ -257,9 +427,10 @@ public class AlarmService extends Service {
                     channel.setSound(alarmSound, audioAttributes);
                 }
                 
-                NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+                NotificationManager notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
                 if (notificationManager != null) {
                     notificationManager.createNotificationChannel(channel);
+                    createInfoChannel(notificationManager);
                     Log.d(TAG, "Notification channel created successfully");
                 } else {
                     Log.e(TAG, "NotificationManager is null - cannot create channel");
@@ -271,19 +442,50 @@ public class AlarmService extends Service {
         }
     }
     
-    private Notification createAlarmNotification(String medicineName, String dosage, String patientName) {
+    private static void createInfoChannel(NotificationManager notificationManager) {
+        NotificationChannel infoChannel = notificationManager.getNotificationChannel(INFO_CHANNEL_ID);
+        if (infoChannel == null) {
+            infoChannel = new NotificationChannel(
+                INFO_CHANNEL_ID,
+                "Medicine Information",
+                NotificationManager.IMPORTANCE_HIGH
+            );
+            infoChannel.setDescription("Persistent medicine reminder information");
+            infoChannel.enableLights(true);
+            infoChannel.setLightColor(android.graphics.Color.BLUE);
+            infoChannel.enableVibration(false); // Info notification shouldn't vibrate
+            infoChannel.setShowBadge(true);
+            notificationManager.createNotificationChannel(infoChannel);
+        }
+    }
+    
+    private Notification createAlarmNotification(AlarmGroup group, long sessionId, int waiting) {
+        Notification notification = buildAlarmNotification(this, group, sessionId, waiting, System.currentTimeMillis());
+        
+        // Also show a separate informational notification that persists
+        showMedicineInfoNotification(group);
+        return notification;
+    }
+    
+    /**
+     * Builds the foreground alarm notification without showing anything, so AlarmWarmUp can
+     * build it ahead of the fire. Session -1 addresses whichever session is on screen.
+     *
+     * @param when the time the notification reports the alarm for
+     */
+    static Notification buildAlarmNotification(Context context, AlarmGroup group, long sessionId, int waiting, long when) {
         try {
             // Create intent for full-screen alarm activity with ALL necessary flags
-            Intent alarmActivityIntent = new Intent(this, AlarmActivity.class);
+            Intent alarmActivityIntent = new Intent(context, AlarmActivity.class);
             // CRITICAL: These flags ensure AlarmActivity appears ON TOP of main app when unlocking
             // Removed FLAG_ACTIVITY_NO_HISTORY to prevent activity from disappearing on unlock
             alarmActivityIntent.setFlags(
                 Intent.FLAG_ACTIVITY_NEW_TASK |
                 Intent.FLAG_ACTIVITY_CLEAR_TASK
             );
-            alarmActivityIntent.putExtra("medicineName", medicineName);
-            alarmActivityIntent.putExtra("dosage", dosage);
-            alarmActivityIntent.putExtra("patientName", patientName);
+            AlarmIntents.putGroup(context, alarmActivityIntent, group);
+            alarmActivityIntent.putExtra(EXTRA_SESSION_ID, sessionId);
+            alarmActivityIntent.putExtra(EXTRA_WAITING_SESSIONS, waiting);
             
             // CRITICAL: Use FLAG_MUTABLE for clickable notifications on Android 12+
             // FLAG_IMMUTABLE prevents the intent from being triggered!
@@ -294,51 +496,64 @@ public class AlarmService extends Service {
             }
             
             // Create unique request code using timestamp to avoid conflicts
-            int requestCode = (int) System.currentTimeMillis();
+            int requestCode = (int) when;
             PendingIntent alarmActivityPendingIntent = PendingIntent.getActivity(
-                this, 
+                context, 
                 requestCode, 
                 alarmActivityIntent, 
                 flags
             );
             
             // Create dismiss alarm intent with proper flags
-            Intent dismissIntent = new Intent(this, AlarmService.class);
+            Intent dismissIntent = new Intent(context, AlarmService.class);
             dismissIntent.setAction("DISMISS_ALARM");
+            dismissIntent.putExtra(EXTRA_SESSION_ID, sessionId);
             PendingIntent dismissPendingIntent = PendingIntent.getService(
-                this, 
+                context, 
                 requestCode + 1, 
                 dismissIntent, 
                 flags
             );
             
+            // Create taken intent: records the dose natively, no WebView needed
+            Intent takenIntent = new Intent(context, AlarmService.class);
+            takenIntent.setAction("TAKE_ALARM");
+            takenIntent.putExtra(EXTRA_SESSION_ID, sessionId);
+            PendingIntent takenPendingIntent = PendingIntent.getService(
+                context, 
+                requestCode + 3, 
+                takenIntent, 
+                flags
+            );
+            
             // Create snooze alarm intent with proper flags
-            Intent snoozeIntent = new Intent(this, AlarmService.class);
+            Intent snoozeIntent = new Intent(context, AlarmService.class);
             snoozeIntent.setAction("SNOOZE_ALARM");
+            snoozeIntent.putExtra(EXTRA_SESSION_ID, sessionId);
             PendingIntent snoozePendingIntent = PendingIntent.getService(
-                this, 
+                context, 
                 requestCode + 2, 
                 snoozeIntent, 
                 flags
             );
             
             // Safe string handling with null checks
-            String safeMedicineName = (medicineName != null && !medicineName.isEmpty()) ? medicineName : "Medicine";
-            String safeDosage = (dosage != null && !dosage.isEmpty()) ? dosage : "Unknown dosage";
-            String safePatientName = (patientName != null && !patientName.isEmpty()) ? patientName : "";
+            String safeMedicineName = group.getTitle();
+            String safeDosage = group.getDosageSummary();
+            String safePatientName = group.getPatientSummary();
             
             String title = "🚨 MEDICINE ALARM: " + safeMedicineName;
-            String content = "Time to take " + safeDosage + 
-                            (!safePatientName.isEmpty() ? " for " + safePatientName : "");
+            String content = group.size() == 1
+                    ? "Time to take " + safeDosage + (!safePatientName.isEmpty() ? " for " + safePatientName : "")
+                    : "Time to take " + group.getMedicineSummary();
             
             // Enhanced notification with more detailed medicine information
-            String bigText = "💊 MEDICINE: " + safeMedicineName + "\n" +
-                           "💊 DOSAGE: " + safeDosage + "\n" +
-                           (!safePatientName.isEmpty() ? "👤 PATIENT: " + safePatientName + "\n" : "") +
-                           "⏰ TIME: " + java.text.DateFormat.getTimeInstance(java.text.DateFormat.SHORT).format(new java.util.Date()) + "\n\n" +
+            String bigText = describeDoses(group) +
+                           "⏰ TIME: " + java.text.DateFormat.getTimeInstance(java.text.DateFormat.SHORT).format(new java.util.Date(when)) + "\n\n" +
+                           (waiting > 0 ? "➕ " + waiting + " more alarm(s) waiting\n\n" : "") +
                            "🔔 Tap to dismiss alarm or use buttons below";
             
-            NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
+            NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
                 .setContentTitle(title)
                 .setContentText(content)
                 .setStyle(new NotificationCompat.BigTextStyle().bigText(bigText))
@@ -358,19 +573,21 @@ public class AlarmService extends Service {
                 .setColor(0xFFFF0000)
                 .setColorized(true) // Make entire notification red
                 .setTicker("Medicine Alarm: " + safeMedicineName)
-                .setWhen(System.currentTimeMillis())
+                .setWhen(when)
                 .setShowWhen(true)
                 .setUsesChronometer(false)
                 .setTimeoutAfter(60000) // Auto-dismiss after 60 seconds if not acted upon
                 // Add action buttons
-                .addAction(android.R.drawable.ic_delete, "✕ DISMISS", dismissPendingIntent)
-                .addAction(android.R.drawable.ic_media_pause, "⏰ SNOOZE 5 MIN", snoozePendingIntent);
+                .addAction(android.R.drawable.checkbox_on_background, "💊 TAKEN", takenPendingIntent)
+                .addAction(android.R.drawable.ic_delete, "✕ DISMISS", dismissPendingIntent);
+            AlarmSnoozeEngine snoozeEngine = AlarmSnoozeEngine.getInstance(context);
+            if (snoozeEngine.canSnooze(group)) {
+                builder.addAction(android.R.drawable.ic_media_pause,
+                        "⏰ SNOOZE " + snoozeEngine.getIntervalMinutes() + " MIN", snoozePendingIntent);
+            }
             
             Notification notification = builder.build();
             
-            // Also show a separate informational notification that persists
-            showMedicineInfoNotification(safeMedicineName, safeDosage, safePatientName);
-            
             Log.d(TAG, "Enhanced alarm notification created successfully");
             return notification;
             
@@ -379,7 +596,7 @@ public class AlarmService extends Service {
             
             // Fallback minimal notification to prevent crash
             try {
-                return new NotificationCompat.Builder(this, CHANNEL_ID)
+                return new NotificationCompat.Builder(context, CHANNEL_ID)
                     .setContentTitle("Medicine Alarm")
                     .setContentText("Time to take your medicine")
                     .setSmallIcon(android.R.drawable.ic_dialog_alert)
@@ -393,11 +610,32 @@ public class AlarmService extends Service {
         }
     }
     
+    /**
+     * Medicine, dosage and patient lines for every dose in the alarm.
+     */
+    private static String describeDoses(AlarmGroup group) {
+        StringBuilder text = new StringBuilder();
+        for (AlarmRecord item : group.getItems()) {
+            text.append("💊 MEDICINE: ").append(item.medicineName.isEmpty() ? "Medicine" : item.medicineName).append("\n");
+            text.append("💊 DOSAGE: ").append(item.dosage.isEmpty() ? "Unknown dosage" : item.dosage).append("\n");
+            if (!item.patientName.isEmpty()) {
+                text.append("👤 PATIENT: ").append(item.patientName).append("\n");
+            }
+            if (group.size() > 1) {
+                text.append("\n");
+            }
+        }
+        return text.toString();
+    }
+    
     /**
      * Shows a separate persistent notification with detailed medicine information
      * This notification stays in the notification tray for user reference
      */
-    private void showMedicineInfoNotification(String medicineName, String dosage, String patientName) {
+    private void showMedicineInfoNotification(AlarmGroup group) {
+        String medicineName = group.getTitle();
+        String dosage = group.getDosageSummary();
+        String patientName = group.getPatientSummary();
         try {
             NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
             if (notificationManager == null) {
@@ -406,22 +644,8 @@ public class AlarmService extends Service {
             }
             
             // Create a separate notification channel for medicine info (if not exists)
-            String infoChannelId = "MEDICINE_INFO_CHANNEL";
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                NotificationChannel infoChannel = notificationManager.getNotificationChannel(infoChannelId);
-                if (infoChannel == null) {
-                    infoChannel = new NotificationChannel(
-                        infoChannelId,
-                        "Medicine Information",
-                        NotificationManager.IMPORTANCE_HIGH
-                    );
-                    infoChannel.setDescription("Persistent medicine reminder information");
-                    infoChannel.enableLights(true);
-                    infoChannel.setLightColor(android.graphics.Color.BLUE);
-                    infoChannel.enableVibration(false); // Info notification shouldn't vibrate
-                    infoChannel.setShowBadge(true);
-                    notificationManager.createNotificationChannel(infoChannel);
-                }
+                createInfoChannel(notificationManager);
             }
             
             // Create intent to open the main app when notification is tapped
@@ -442,14 +666,12 @@ public class AlarmService extends Service {
             String infoContent = "Dosage: " + dosage + (!patientName.isEmpty() ? " for " + patientName : "");
             
             String detailedInfo = "📋 MEDICINE DETAILS:\n\n" +
-                                "💊 Medicine: " + medicineName + "\n" +
-                                "💊 Dosage: " + dosage + "\n" +
-                                (!patientName.isEmpty() ? "👤 Patient: " + patientName + "\n" : "") +
+                                describeDoses(group) +
                                 "⏰ Reminder Time: " + java.text.DateFormat.getTimeInstance(java.text.DateFormat.SHORT).format(new java.util.Date()) + "\n\n" +
                                 "ℹ️ This is your medicine reminder. Please take your medication as prescribed.\n" +
                                 "📱 Tap to open MyMedAlert app for more details.";
             
-            NotificationCompat.Builder infoBuilder = new NotificationCompat.Builder(this, infoChannelId)
+            NotificationCompat.Builder infoBuilder = new NotificationCompat.Builder(this, INFO_CHANNEL_ID)
                 .setContentTitle(infoTitle)
                 .setContentText(infoContent)
                 .setStyle(new NotificationCompat.BigTextStyle().bigText(detailedInfo))
@@ -476,7 +698,7 @@ public class AlarmService extends Service {
         }
     }
     
-    private void playAlarmSound() {
+    private void playAlarmSound(AlarmGroup group, long traceId) {
         try {
             // Stop any existing ringtone first
             if (ringtone != null && ringtone.isPlaying()) {
@@ -484,48 +706,20 @@ public class AlarmService extends Service {
                 ringtone = null;
             }
             
-            // Get alarm sound URI with multiple fallbacks
-            Uri alarmUri = null;
-            try {
-                alarmUri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_ALARM);
-                if (alarmUri == null) {
-                    Log.w(TAG, "No alarm URI found, trying notification URI");
-                    alarmUri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION);
-                }
-                if (alarmUri == null) {
-                    Log.w(TAG, "No notification URI found, trying ringtone URI");
-                    alarmUri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_RINGTONE);
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error getting alarm URI: " + e.getMessage());
+            // Cached PCM starts on a low-latency alarm track; a sound heard for the first time
+            // rings through Ringtone while it is decoded for the next fire
+            if (AlarmAudioEngine.getInstance(this).play(group.getSound())) {
+                tracer.mark(traceId, FireLatencyTracer.Stage.RINGTONE, System.currentTimeMillis());
+                Log.d(TAG, "Alarm sound started on the audio engine");
+                return;
             }
-            
-            if (alarmUri != null) {
-                ringtone = RingtoneManager.getRingtone(this, alarmUri);
-                if (ringtone != null) {
-                    // Set audio attributes for alarm (API 28+)
-                    try {
-                        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
-                            AudioAttributes audioAttributes = new AudioAttributes.Builder()
-                                .setUsage(AudioAttributes.USAGE_ALARM)
-                                .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
-                                .build();
-                            ringtone.setAudioAttributes(audioAttributes);
-                        } else {
-                            // Fallback for older Android versions
-                            ringtone.setStreamType(AudioManager.STREAM_ALARM);
-                        }
-                    } catch (Exception e) {
-                        Log.w(TAG, "Failed to set audio attributes: " + e.getMessage());
-                    }
-                    
-                    ringtone.play();
-                    Log.d(TAG, "Alarm sound started successfully");
-                } else {
-                    Log.w(TAG, "Failed to create ringtone from URI");
-                }
+            ringtone = createAlarmRingtone(this, group.getSound());
+            if (ringtone != null) {
+                ringtone.play();
+                tracer.mark(traceId, FireLatencyTracer.Stage.RINGTONE, System.currentTimeMillis());
+                Log.d(TAG, "Alarm sound started successfully");
             } else {
-                Log.w(TAG, "No alarm URI available - sound will not play");
+                Log.w(TAG, "No alarm ringtone available - sound will not play");
             }
             
         } catch (Exception e) {
@@ -534,6 +728,53 @@ public class AlarmService extends Service {
         }
     }
     
+    /**
+     * Prepares a Ringtone on the alarm stream for {@code sound}, or for the default alarm sound
+     * with fallbacks when it is empty. Null when no sound is available.
+     */
+    private static Ringtone createAlarmRingtone(Context context, String sound) {
+        // Get alarm sound URI with multiple fallbacks
+        Uri alarmUri = null;
+        try {
+            alarmUri = !sound.isEmpty() ? Uri.parse(sound) : RingtoneManager.getDefaultUri(RingtoneManager.TYPE_ALARM);
+            if (alarmUri == null) {
+                Log.w(TAG, "No alarm URI found, trying notification URI");
+                alarmUri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_NOTIFICATION);
+            }
+            if (alarmUri == null) {
+                Log.w(TAG, "No notification URI found, trying ringtone URI");
+                alarmUri = RingtoneManager.getDefaultUri(RingtoneManager.TYPE_RINGTONE);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error getting alarm URI: " + e.getMessage());
+        }
+        if (alarmUri == null) {
+            return null;
+        }
+        
+        Ringtone ringtone = RingtoneManager.getRingtone(context, alarmUri);
+        if (ringtone == null) {
+            Log.w(TAG, "Failed to create ringtone from URI");
+            return null;
+        }
+        // Set audio attributes for alarm (API 28+)
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+                AudioAttributes audioAttributes = new AudioAttributes.Builder()
+                    .setUsage(AudioAttributes.USAGE_ALARM)
+                    .setContentType(AudioAttributes.CONTENT_TYPE_SONIFICATION)
+                    .build();
+                ringtone.setAudioAttributes(audioAttributes);
+            } else {
+                // Fallback for older Android versions
+                ringtone.setStreamType(AudioManager.STREAM_ALARM);
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to set audio attributes: " + e.getMessage());
+        }
+        return ringtone;
+    }
+    
     private void startVibration() {
         try {
             if (vibrator != null && vibrator.hasVibrator()) {
@@ -564,56 +805,26 @@ public class AlarmService extends Service {
         }
     }
     
-    private void scheduleSnoozeAlarm() {
-        try {
-            Log.d(TAG, "Scheduling snooze alarm for 5 minutes");
-            
-            // Get current alarm details from the intent (we'll need to store these globally)
-            // For now, we'll create a simple snooze notification
-            Intent snoozeIntent = new Intent(this, AlarmService.class);
-            snoozeIntent.putExtra("medicineName", "Snoozed Medicine");
-            snoozeIntent.putExtra("dosage", "Previous Dose");
-            snoozeIntent.putExtra("patientName", "");
-            
-            // Use AlarmManager to schedule snooze
-            android.app.AlarmManager alarmManager = (android.app.AlarmManager) getSystemService(Context.ALARM_SERVICE);
-            if (alarmManager != null) {
-                long snoozeTime = System.currentTimeMillis() + (5 * 60 * 1000); // 5 minutes
-                
-                int flags = PendingIntent.FLAG_UPDATE_CURRENT;
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                    flags |= PendingIntent.FLAG_IMMUTABLE;
-                }
-                
-                PendingIntent snoozePendingIntent = PendingIntent.getService(this, 999, snoozeIntent, flags);
-                
-                // Use setExactAndAllowWhileIdle for Android 6+ compatibility
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                    alarmManager.setExactAndAllowWhileIdle(android.app.AlarmManager.RTC_WAKEUP, snoozeTime, snoozePendingIntent);
-                } else {
-                    alarmManager.setExact(android.app.AlarmManager.RTC_WAKEUP, snoozeTime, snoozePendingIntent);
-                }
-                
-                Log.d(TAG, "Snooze alarm scheduled successfully for 5 minutes");
-            } else {
-                Log.e(TAG, "AlarmManager not available for snooze");
-            }
-        } catch (Exception e) {
-            Log.e(TAG, "Error scheduling snooze alarm: " + e.getMessage());
-        }
-    }
-    
-    private void stopAlarm() {
+    private void stopAlarm(AlarmState.Phase endPhase) {
         Log.d(TAG, "Stopping alarm service");
         
-        // CRITICAL: Clear alarm state from SharedPreferences (persists across process restarts)
-        clearAlarmState(this);
+        // CRITICAL: Clear alarm state (persisted write-behind, survives process restarts)
+        if (AlarmStateStore.getInstance(this).isAlarmActive()) {
+            clearAlarmState(this, endPhase);
+        }
         
-        // Remove any pending stop callback
+        // Remove any pending stop callbacks; sessions still ringing end as auto-stopped
         try {
-            if (stopAlarmRunnable != null && handler != null) {
-                handler.removeCallbacks(stopAlarmRunnable);
-                stopAlarmRunnable = null;
+            if (handler != null) {
+                for (Runnable autoStop : autoStopRunnables.values()) {
+                    handler.removeCallbacks(autoStop);
+                }
+            }
+            autoStopRunnables.clear();
+            long now = System.currentTimeMillis();
+            for (AlarmSession session : sessions.getActive()) {
+                sessions.finish(session.sessionId, AlarmSession.Outcome.AUTO_STOPPED, now);
+                AlarmEventBus.getInstance(this).publishOutcome(session, AlarmSession.Outcome.AUTO_STOPPED, now);
             }
         } catch (Exception e) {
             Log.e(TAG, "Error removing stop callback: " + e.getMessage());
@@ -621,6 +832,7 @@ public class AlarmService extends Service {
         
         // Stop ringtone
         try {
+            AlarmAudioEngine.getInstance(this).stop();
             if (ringtone != null) {
                 if (ringtone.isPlaying()) {
                     ringtone.stop();
@@ -642,12 +854,13 @@ public class AlarmService extends Service {
             Log.e(TAG, "Error stopping vibration: " + e.getMessage());
         }
         
-        // Release wake lock
+        // Release wake lock leases of every session still holding one
         try {
-            if (wakeLock != null && wakeLock.isHeld()) {
-                wakeLock.release();
-                Log.d(TAG, "Wake lock released");
+            for (WakeLockManager.Lease lease : sessionLeases.values()) {
+                lease.release();
             }
+            sessionLeases.clear();
+            Log.d(TAG, "Wake lock leases released");
         } catch (Exception e) {
             Log.e(TAG, "Error releasing wake lock: " + e.getMessage());
         }
@@ -685,7 +898,7 @@ public class AlarmService extends Service {
         }
         
         try {
-            stopAlarm();
+            stopAlarm(AlarmState.Phase.IDLE);
         } catch (Exception e) {
             Log.e(TAG, "Error in onDestroy: " + e.getMessage());
         }
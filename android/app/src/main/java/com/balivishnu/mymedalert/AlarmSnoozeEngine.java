@@ -0,0 +1,115 @@
+package com.balivishnu.mymedalert;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Snooze policy and the snooze action itself.
+ *
+ * A snoozed dose keeps its full payload - medicine, dosage, patient, sound - and goes back into
+ * AlarmScheduler's queue instead of getting its own AlarmManager entry, so it rings again through
+ * AlarmReceiver, AlarmActivity and AlarmService like any scheduled dose. The interval and the
+ * number of times one dose may be snoozed are configurable; a dose that reached the limit is not
+ * snoozed again and the alarm screen and notification stop offering it.
+ */
+public final class AlarmSnoozeEngine {
+    private static final String TAG = "AlarmSnoozeEngine";
+    static final String PREFS_NAME = "AlarmSnoozePrefs";
+    private static final String KEY_INTERVAL_MINUTES = "intervalMinutes";
+    private static final String KEY_MAX_COUNT = "maxCount";
+    public static final int DEFAULT_INTERVAL_MINUTES = 5;
+    public static final int MAX_INTERVAL_MINUTES = 60;
+    // 0 allows unlimited snoozes
+    public static final int DEFAULT_MAX_COUNT = 3;
+    public static final int MAX_MAX_COUNT = 20;
+
+    private static AlarmSnoozeEngine instance;
+
+    private final Context context;
+    private final Context storage;
+    private int intervalMinutes;
+    private int maxCount;
+
+    private AlarmSnoozeEngine(Context context) {
+        this.context = context.getApplicationContext();
+        // Device-protected, so a snooze before the first unlock follows the same policy
+        this.storage = DeviceStorage.get(this.context);
+        SharedPreferences prefs = storage.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.intervalMinutes = prefs.getInt(KEY_INTERVAL_MINUTES, DEFAULT_INTERVAL_MINUTES);
+        this.maxCount = prefs.getInt(KEY_MAX_COUNT, DEFAULT_MAX_COUNT);
+    }
+
+    public static synchronized AlarmSnoozeEngine getInstance(Context context) {
+        if (instance == null) {
+            instance = new AlarmSnoozeEngine(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Sets the snooze interval and how many times one dose may be snoozed (0 for no limit).
+     */
+    public synchronized void setPolicy(int intervalMinutes, int maxCount) {
+        this.intervalMinutes = Math.max(1, Math.min(intervalMinutes, MAX_INTERVAL_MINUTES));
+        this.maxCount = Math.max(0, Math.min(maxCount, MAX_MAX_COUNT));
+        storage.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putInt(KEY_INTERVAL_MINUTES, this.intervalMinutes)
+                .putInt(KEY_MAX_COUNT, this.maxCount)
+                .apply();
+    }
+
+    public synchronized int getIntervalMinutes() {
+        return intervalMinutes;
+    }
+
+    public synchronized int getMaxCount() {
+        return maxCount;
+    }
+
+    /**
+     * Whether at least one dose of the alarm may still be snoozed.
+     */
+    public synchronized boolean canSnooze(AlarmGroup group) {
+        for (AlarmRecord item : group.getItems()) {
+            if (canSnooze(item)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean canSnooze(AlarmRecord item) {
+        return maxCount == 0 || item.snoozeCount < maxCount;
+    }
+
+    /**
+     * Snoozes every dose of the alarm that is still under the limit.
+     *
+     * @return the snoozed records; empty when none could be snoozed
+     */
+    public List<AlarmRecord> snooze(AlarmGroup group, long now) {
+        List<AlarmRecord> doses = new ArrayList<>(group.size());
+        long triggerTime;
+        synchronized (this) {
+            for (AlarmRecord item : group.getItems()) {
+                if (canSnooze(item)) {
+                    doses.add(item);
+                } else {
+                    Log.w(TAG, "⚠️ " + item.medicineName + " already snoozed " + item.snoozeCount
+                            + " times - not snoozing again");
+                }
+            }
+            triggerTime = now + intervalMinutes * 60_000L;
+        }
+        if (doses.isEmpty()) {
+            return doses;
+        }
+        List<AlarmRecord> snoozed = AlarmScheduler.getInstance(context).snooze(doses, triggerTime);
+        Log.d(TAG, "⏰ Snoozed " + snoozed.size() + " dose(s) until " + triggerTime);
+        return snoozed;
+    }
+}
@@ -0,0 +1,173 @@
+package com.balivishnu.mymedalert;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * CRITICAL: Process-wide holder of the current alarm state.
+ * Reads are a single volatile load of an immutable, versioned snapshot - no disk access and no
+ * lock, safe on the main thread. Writers move between phases with compare-and-set, so two racing
+ * transitions can never interleave their fields; the loser retries against the new snapshot or
+ * finds the move no longer allowed. Listeners are told on the main thread and the change is
+ * written behind to SharedPreferences so a restarted process still knows an alarm is ringing.
+ * SharedPreferences is only read once, when the store is created. The store lives in the :alarm
+ * process; the app process reads it through AlarmProvider and is notified after each write.
+ */
+public final class AlarmStateStore {
+    private static final String TAG = "AlarmStateStore";
+    static final String PREFS_NAME = "AlarmPrefs";
+    private static final String KEY_ALARM_ACTIVE = "isAlarmActive";
+    private static final String KEY_MEDICINE_NAME = "medicineName";
+    private static final String KEY_DOSAGE = "dosage";
+    private static final String KEY_PATIENT_NAME = "patientName";
+    private static final String KEY_PHASE = "alarmPhase";
+    private static final String KEY_VERSION = "stateVersion";
+
+    public interface Listener {
+        void onAlarmStateChanged(AlarmState state);
+    }
+
+    private static volatile AlarmStateStore instance;
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    private final AtomicReference<AlarmState> state;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean writePending = new AtomicBoolean(false);
+
+    private AlarmStateStore(Context context) {
+        this.context = context;
+        // Device-protected, so an alarm ringing before the first unlock can publish its state
+        prefs = DeviceStorage.get(context).getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        state = new AtomicReference<>(load(prefs));
+        Log.d(TAG, "Alarm state loaded: " + state.get());
+    }
+
+    public static AlarmStateStore getInstance(Context context) {
+        AlarmStateStore store = instance;
+        if (store == null) {
+            synchronized (AlarmStateStore.class) {
+                store = instance;
+                if (store == null) {
+                    store = new AlarmStateStore(context.getApplicationContext());
+                    instance = store;
+                }
+            }
+        }
+        return store;
+    }
+
+    private static AlarmState load(SharedPreferences prefs) {
+        // Files written before phases existed only carry the active flag
+        AlarmState.Phase phase = prefs.getBoolean(KEY_ALARM_ACTIVE, false) ? AlarmState.Phase.RINGING : AlarmState.Phase.IDLE;
+        try {
+            phase = AlarmState.Phase.valueOf(prefs.getString(KEY_PHASE, phase.name()));
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Unknown stored alarm phase, using " + phase);
+        }
+        return new AlarmState(prefs.getLong(KEY_VERSION, 0), phase,
+                prefs.getString(KEY_MEDICINE_NAME, ""),
+                prefs.getString(KEY_DOSAGE, ""),
+                prefs.getString(KEY_PATIENT_NAME, ""),
+                null);
+    }
+
+    public AlarmState get() {
+        return state.get();
+    }
+
+    public boolean isAlarmActive() {
+        return state.get().active;
+    }
+
+    /**
+     * Installs {@code next} only if the current snapshot is still {@code expected}.
+     */
+    public boolean compareAndSet(AlarmState expected, AlarmState next) {
+        if (!state.compareAndSet(expected, next)) return false;
+        scheduleWrite();
+        dispatch(next);
+        return true;
+    }
+
+    /**
+     * Moves to {@code phase}, retrying on contention. {@code ringingGroup} is required when
+     * moving to RINGING and ignored otherwise.
+     *
+     * @return the new snapshot, or null when the current phase does not allow the move
+     */
+    public AlarmState transition(AlarmState.Phase phase, AlarmGroup ringingGroup) {
+        while (true) {
+            AlarmState current = state.get();
+            if (!current.phase.canMoveTo(phase)) {
+                Log.w(TAG, "Ignoring alarm state transition " + current.phase + " → " + phase);
+                return null;
+            }
+            AlarmState next = current.next(phase, ringingGroup);
+            if (compareAndSet(current, next)) {
+                Log.d(TAG, "Alarm state: " + current.phase + " → " + next);
+                return next;
+            }
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void dispatch(AlarmState snapshot) {
+        if (listeners.isEmpty()) return;
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            notifyListeners(snapshot);
+        } else {
+            mainHandler.post(() -> notifyListeners(snapshot));
+        }
+    }
+
+    private void notifyListeners(AlarmState snapshot) {
+        for (Listener listener : listeners) {
+            try {
+                listener.onAlarmStateChanged(snapshot);
+            } catch (Exception e) {
+                Log.e(TAG, "Alarm state listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Write-behind: one pending write at a time, and it always writes the newest snapshot, so a
+     * burst of transitions costs a single disk write.
+     */
+    private void scheduleWrite() {
+        if (!writePending.compareAndSet(false, true)) return;
+        writer.execute(() -> {
+            writePending.set(false);
+            AlarmState snapshot = state.get();
+            boolean written = prefs.edit()
+                    .putBoolean(KEY_ALARM_ACTIVE, snapshot.active)
+                    .putString(KEY_PHASE, snapshot.phase.name())
+                    .putLong(KEY_VERSION, snapshot.version)
+                    .putString(KEY_MEDICINE_NAME, snapshot.medicineName)
+                    .putString(KEY_DOSAGE, snapshot.dosage)
+                    .putString(KEY_PATIENT_NAME, snapshot.patientName)
+                    .commit();
+            Log.d(TAG, (written ? "Alarm state persisted: " : "❌ Failed to persist alarm state: ") + snapshot);
+            AlarmProvider.notifyChange(context, AlarmProvider.PATH_STATE);
+        });
+    }
+}
@@ -0,0 +1,137 @@
+package com.balivishnu.mymedalert;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * IMPORTANT: Native source of truth for scheduled alarms.
+ * MedicineAlarmPlugin writes through to this store on every schedule/cancel, so receivers and
+ * services can read the full schedule from local files without starting the WebView.
+ */
+public final class AlarmStore {
+    private static final String TAG = "AlarmStore";
+    // Kept in device-protected storage so BootReceiver can re-arm before the first unlock
+    static final String STORE_DIR = "alarm_store";
+
+    private static AlarmStore instance;
+
+    private final AlarmJournal journal;
+
+    private AlarmStore(AlarmJournal journal) {
+        this.journal = journal;
+    }
+
+    public static synchronized AlarmStore getInstance(Context context) {
+        if (instance == null) {
+            File dir = new File(DeviceStorage.get(context).getFilesDir(), STORE_DIR);
+            instance = new AlarmStore(openJournal(dir));
+        }
+        return instance;
+    }
+
+    private static AlarmJournal openJournal(File dir) {
+        long start = System.nanoTime();
+        try {
+            AlarmJournal journal = new AlarmJournal(dir);
+            Log.d(TAG, "✅ Alarm store loaded: " + journal.size() + " alarms in "
+                    + (System.nanoTime() - start) / 1000 + "µs");
+            return journal;
+        } catch (IOException e) {
+            // A corrupt snapshot must not take alarms down with it - keep it aside and replay the journal alone
+            Log.e(TAG, "❌ Alarm store unreadable: " + e.getMessage());
+        }
+        moveAside(new File(dir, AlarmJournal.SNAPSHOT_FILE));
+        try {
+            return new AlarmJournal(dir);
+        } catch (IOException e) {
+            // Neither is readable: keep the journal aside too and start empty; the app resyncs the schedule
+            Log.e(TAG, "❌ Alarm journal unreadable, starting empty: " + e.getMessage());
+        }
+        moveAside(new File(dir, AlarmJournal.JOURNAL_FILE));
+        try {
+            return new AlarmJournal(dir);
+        } catch (IOException retryError) {
+            throw new IllegalStateException("Alarm store unavailable", retryError);
+        }
+    }
+
+    private static void moveAside(File file) {
+        if (!file.exists() || file.renameTo(new File(file.getPath() + ".corrupt"))) return;
+        // Could not keep it: an unreadable file left in place would fail every later open
+        if (!file.delete()) {
+            Log.e(TAG, "Failed to move corrupt " + file.getName() + " aside");
+        }
+    }
+
+    public AlarmRecord get(int alarmId) {
+        return journal.get(alarmId);
+    }
+
+    /**
+     * All stored alarms ordered by trigger time.
+     */
+    public List<AlarmRecord> getAll() {
+        List<AlarmRecord> all = journal.getAll();
+        Collections.sort(all, Comparator.comparingLong(r -> r.triggerTime));
+        return all;
+    }
+
+    /**
+     * Alarms whose trigger time is at or after {@code fromTime}, ordered by trigger time.
+     */
+    public List<AlarmRecord> getUpcoming(long fromTime) {
+        List<AlarmRecord> upcoming = new ArrayList<>();
+        for (AlarmRecord record : getAll()) {
+            if (record.triggerTime >= fromTime) {
+                upcoming.add(record);
+            }
+        }
+        return upcoming;
+    }
+
+    public boolean put(AlarmRecord record) {
+        try {
+            journal.put(record);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "❌ Failed to persist alarm " + record.alarmId + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    public boolean putAll(Collection<AlarmRecord> records) {
+        try {
+            journal.putAll(records);
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "❌ Failed to persist " + records.size() + " alarms: " + e.getMessage());
+            return false;
+        }
+    }
+
+    public boolean remove(int alarmId) {
+        try {
+            return journal.remove(alarmId);
+        } catch (IOException e) {
+            Log.e(TAG, "❌ Failed to remove alarm " + alarmId + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    public int removeAll(Collection<Integer> alarmIds) {
+        try {
+            return journal.removeAll(alarmIds);
+        } catch (IOException e) {
+            Log.e(TAG, "❌ Failed to remove " + alarmIds.size() + " alarms: " + e.getMessage());
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.balivishnu.mymedalert;
+
+import android.app.Notification;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pre-alarm warm-up: does the slow, cold-start part of a fire ahead of time.
+ *
+ * AlarmScheduler's warm-up alarm runs a configurable number of seconds before a dose. Its
+ * broadcast starts the process, opens the native stores, creates the notification channels,
+ * decodes the alarm sound into AlarmAudioEngine's PCM cache and builds the foreground
+ * notification for the doses about to ring. On the fire AlarmService takes what was prepared and only has to play and show;
+ * when nothing matches (process killed in between, doses changed) it builds everything itself.
+ * Whatever the fire does not claim is released shortly after the dose was due.
+ */
+public final class AlarmWarmUp {
+    private static final String TAG = "AlarmWarmUp";
+    // How long after the expected fire prepared resources are kept for it
+    private static final long EXPIRY_MS = 2 * 60 * 1000;
+
+    private static AlarmWarmUp instance;
+
+    private final Context context;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable expire = this::release;
+    private Notification notification;
+    private List<Integer> notificationAlarmIds = new ArrayList<>();
+
+    private AlarmWarmUp(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    public static synchronized AlarmWarmUp getInstance(Context context) {
+        if (instance == null) {
+            instance = new AlarmWarmUp(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Prepares the fire of {@code group}, expected at {@code fireAt}.
+     */
+    public synchronized void prepare(AlarmGroup group, long fireAt) {
+        long startedAt = System.currentTimeMillis();
+        release();
+
+        // Open the native stores now instead of on the fire path
+        AlarmStore.getInstance(context);
+        AlarmStateStore.getInstance(context);
+        FireLatencyTracer.getInstance(context);
+        DriftLog.getInstance(context);
+
+        AlarmService.createNotificationChannels(context);
+        AlarmAudioEngine.getInstance(context).preload(group.getSound());
+        notification = AlarmService.buildAlarmNotification(context, group, -1, 0, fireAt);
+        notificationAlarmIds = alarmIds(group);
+
+        handler.postDelayed(expire, Math.max(0, fireAt - startedAt) + EXPIRY_MS);
+        Log.d(TAG, "🔥 Warmed up for " + group.getMedicineSummary() + " due at " + fireAt
+                + " in " + (System.currentTimeMillis() - startedAt) + "ms");
+    }
+
+    /**
+     * The notification prepared for exactly these doses, or null.
+     */
+    public synchronized Notification takeNotification(AlarmGroup group) {
+        if (notification == null || !notificationAlarmIds.equals(alarmIds(group))) {
+            return null;
+        }
+        Notification prepared = notification;
+        notification = null;
+        return prepared;
+    }
+
+    public synchronized void release() {
+        handler.removeCallbacks(expire);
+        notification = null;
+        notificationAlarmIds = new ArrayList<>();
+    }
+
+    private static List<Integer> alarmIds(AlarmGroup group) {
+        List<Integer> ids = new ArrayList<>(group.size());
+        for (AlarmRecord item : group.getItems()) {
+            ids.add(item.alarmId);
+        }
+        return ids;
+    }
+}
@@ -5,25 +5,91 @@ import android.content.Context;
 import android.content.Intent;
 import android.util.Log;
 
+import java.time.ZoneId;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
 /**
- * IMPORTANT: Receives BOOT_COMPLETED broadcast to reschedule alarms after device restart
+ * IMPORTANT: Re-arms alarms natively after device restart
  * Without this, all alarms are lost when phone restarts
+ *
+ * The system drops every AlarmManager alarm on reboot. This receiver is direct-boot aware and
+ * reloads the schedule from device-protected storage (see DeviceStorage) on LOCKED_BOOT_COMPLETED,
+ * before the user unlocks, and again on BOOT_COMPLETED / QUICKBOOT_POWERON. The work runs under
+ * goAsync on a single background thread, so alarms come back seconds after boot without the
+ * WebView or the main thread.
  */
 public class BootReceiver extends BroadcastReceiver {
     private static final String TAG = "BootReceiver";
+    private static final String ACTION_QUICKBOOT_POWERON = "android.intent.action.QUICKBOOT_POWERON";
+
+    // One thread and a short queue: boot and clock broadcasts come in bursts and every re-arm
+    // after the first is cheap, so anything beyond that is refused rather than piled up.
+    // Shared with ClockChangeReceiver.
+    static final ExecutorService EXECUTOR = createExecutor();
 
     @Override
     public void onReceive(Context context, Intent intent) {
-        if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) {
-            Log.d(TAG, "🔄 Device boot completed - alarms need to be rescheduled");
-            Log.d(TAG, "⚠️ Note: App must be opened at least once to reschedule alarms");
-            
+        final String action = intent.getAction();
+        if (!Intent.ACTION_LOCKED_BOOT_COMPLETED.equals(action)
+                && !Intent.ACTION_BOOT_COMPLETED.equals(action)
+                && !ACTION_QUICKBOOT_POWERON.equals(action)) {
+            return;
+        }
+        Log.d(TAG, "🔄 " + action + " - re-arming alarms natively");
+
+        final Context appContext = context.getApplicationContext();
+        final PendingResult pendingResult = goAsync();
+        try {
+            EXECUTOR.execute(() -> {
+                try {
+                    restoreAlarms(appContext, action);
+                } catch (Exception e) {
+                    Log.e(TAG, "❌ Failed to re-arm alarms after boot: " + e.getMessage());
+                } finally {
+                    pendingResult.finish();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Re-arm already queued, skipping " + action);
+            pendingResult.finish();
+        }
+    }
+
+    private static void restoreAlarms(Context context, String action) {
+        long startedAt = System.currentTimeMillis();
+        boolean locked = Intent.ACTION_LOCKED_BOOT_COMPLETED.equals(action);
+        if (locked && !DeviceStorage.isReady(context)) {
+            // Schedule still in credential-protected storage from an older version; BOOT_COMPLETED moves it
+            Log.d(TAG, "⚠️ Schedule not readable before unlock yet - waiting for BOOT_COMPLETED");
+            return;
+        }
+
+        // The time zone may have changed while the device was off; this also re-arms
+        AlarmScheduler scheduler = AlarmScheduler.getInstance(context);
+        scheduler.recomputeForClockChange(ZoneId.systemDefault(), startedAt);
+        Log.d(TAG, "✅ " + scheduler.size() + " alarms restored, next at " + scheduler.getNextTriggerTime()
+                + " (" + (System.currentTimeMillis() - startedAt) + "ms)");
+
+        if (!locked) {
             // Send broadcast to notify app that boot completed
-            // The JavaScript side should listen for this and reschedule alarms
             Intent broadcastIntent = new Intent("com.balivishnu.mymedalert.BOOT_COMPLETED");
+            broadcastIntent.setPackage(context.getPackageName());
             context.sendBroadcast(broadcastIntent);
-            
-            Log.d(TAG, "✅ Boot broadcast sent to app");
         }
     }
+
+    private static ExecutorService createExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(2), runnable -> {
+                    Thread thread = new Thread(runnable, "BootReceiver");
+                    thread.setPriority(Thread.NORM_PRIORITY);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
 }
@@ -0,0 +1,70 @@
+package com.balivishnu.mymedalert;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * IMPORTANT: Keeps doses at their wall-clock time when the clock or time zone changes.
+ * Travel across time zones or a manual clock change would otherwise leave every queued trigger
+ * at the old absolute instant. On TIME_SET, TIMEZONE_CHANGED and DATE_CHANGED this recomputes the
+ * recurring triggers natively (AlarmScheduler#recomputeForClockChange) and re-arms once, without
+ * opening the app. DST needs nothing here: each occurrence is already computed with the zone's
+ * rules for its own date, and DATE_CHANGED picks up anything else at midnight.
+ */
+public class ClockChangeReceiver extends BroadcastReceiver {
+    private static final String TAG = "ClockChangeReceiver";
+    // Intent.EXTRA_TIMEZONE, public from API 30
+    private static final String EXTRA_TIME_ZONE = "time-zone";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        final String action = intent.getAction();
+        if (!Intent.ACTION_TIME_CHANGED.equals(action)
+                && !Intent.ACTION_TIMEZONE_CHANGED.equals(action)
+                && !Intent.ACTION_DATE_CHANGED.equals(action)) {
+            return;
+        }
+        final ZoneId zone = zoneOf(intent);
+        Log.d(TAG, "🕐 " + action + " - recomputing alarms in " + zone);
+
+        final Context appContext = context.getApplicationContext();
+        final PendingResult pendingResult = goAsync();
+        try {
+            BootReceiver.EXECUTOR.execute(() -> {
+                try {
+                    if (!DeviceStorage.isReady(appContext)) {
+                        // Locked and not migrated yet: BOOT_COMPLETED recomputes after unlock
+                        Log.d(TAG, "⚠️ Schedule not readable before unlock - skipping");
+                        return;
+                    }
+                    AlarmScheduler.getInstance(appContext).recomputeForClockChange(zone, System.currentTimeMillis());
+                } catch (Exception e) {
+                    Log.e(TAG, "❌ Failed to recompute alarms: " + e.getMessage());
+                } finally {
+                    pendingResult.finish();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Recompute already queued, skipping " + action);
+            pendingResult.finish();
+        }
+    }
+
+    private static ZoneId zoneOf(Intent intent) {
+        String zoneId = intent.getStringExtra(EXTRA_TIME_ZONE);
+        if (zoneId != null) {
+            try {
+                return ZoneId.of(zoneId);
+            } catch (DateTimeException e) {
+                Log.w(TAG, "Unknown time zone " + zoneId + ", using the system default");
+            }
+        }
+        return ZoneId.systemDefault();
+    }
+}
@@ -0,0 +1,114 @@
+package com.balivishnu.mymedalert;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.UserManager;
+import android.util.Log;
+
+import java.io.File;
+
+/**
+ * IMPORTANT: Device-protected storage for everything the alarm fire path touches.
+ * After a reboot, credential-protected storage (getFilesDir, SharedPreferences) stays locked until
+ * the user first unlocks the device. The alarm store and settings, alarm state, event log, payload
+ * index, dose history, inventory and diagnostics therefore live in device-protected storage, so
+ * BootReceiver can re-arm on LOCKED_BOOT_COMPLETED and the alarm can fire, ring and be answered
+ * before the first unlock. What older versions wrote to credential-protected storage is moved
+ * across the first time the app runs unlocked; {@link #MIGRATION_VERSION} grows when more files
+ * join. Below Android N there is no direct boot and the app context is used.
+ */
+final class DeviceStorage {
+    private static final String TAG = "DeviceStorage";
+    private static final String PREFS_NAME = "DeviceStoragePrefs";
+    // Set by the first version, which only moved the schedule
+    private static final String KEY_MIGRATED = "migrated";
+    private static final String KEY_MIGRATION_VERSION = "migrationVersion";
+    // 1: schedule only; 2: the whole fire path
+    private static final int MIGRATION_VERSION = 2;
+
+    // Everything the :alarm process reads or writes, from re-arming to recording a taken dose
+    private static final String[] MIGRATED_PREFS = {
+            AlarmScheduler.PREFS_NAME, AlarmSnoozeEngine.PREFS_NAME, AlarmStateStore.PREFS_NAME,
+            AlarmAudioEngine.PREFS_NAME, MedicineInventory.PREFS_NAME};
+    // Files and directories; a rename moves either
+    private static final String[] MIGRATED_FILES = {
+            AlarmStore.STORE_DIR, DoseHistory.DIRECTORY_NAME, AlarmEventBus.FILE_NAME,
+            AlarmIntents.INDEX_FILE_NAME, DriftLog.FILE_NAME, FireLatencyTracer.FILE_NAME,
+            WakeLockManager.FILE_NAME};
+
+    private static Boolean migrated;
+
+    private DeviceStorage() {
+    }
+
+    /**
+     * A context whose files and preferences stay readable before the first unlock.
+     */
+    static synchronized Context get(Context context) {
+        Context app = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            return app;
+        }
+        Context device = app.createDeviceProtectedStorageContext();
+        if (!isMigrated(device) && isUserUnlocked(app) && !migrate(app, device)) {
+            // Keep reading the old location rather than re-arm from a partial schedule
+            return app;
+        }
+        return device;
+    }
+
+    /**
+     * Whether device-protected storage already holds everything the fire path needs. False only
+     * before the first unlock after upgrading from a version that kept it elsewhere; nothing is
+     * re-armed until then, so no alarm fires against half-moved state.
+     */
+    static synchronized boolean isReady(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            return true;
+        }
+        return isMigrated(get(context));
+    }
+
+    private static boolean isMigrated(Context device) {
+        if (migrated == null) {
+            SharedPreferences prefs = device.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            int version = prefs.getInt(KEY_MIGRATION_VERSION, prefs.getBoolean(KEY_MIGRATED, false) ? 1 : 0);
+            migrated = version >= MIGRATION_VERSION;
+        }
+        return migrated;
+    }
+
+    private static boolean isUserUnlocked(Context context) {
+        UserManager userManager = (UserManager) context.getSystemService(Context.USER_SERVICE);
+        return userManager == null || userManager.isUserUnlocked();
+    }
+
+    private static boolean migrate(Context app, Context device) {
+        boolean complete = true;
+        for (String name : MIGRATED_PREFS) {
+            if (!device.moveSharedPreferencesFrom(app, name)) {
+                Log.e(TAG, "❌ Failed to move preferences " + name);
+                complete = false;
+            }
+        }
+        for (String name : MIGRATED_FILES) {
+            File from = new File(app.getFilesDir(), name);
+            File to = new File(device.getFilesDir(), name);
+            if (!from.exists() || to.exists()) continue;
+            // Both live on the data partition, so this is a rename, not a copy
+            if (!from.renameTo(to)) {
+                Log.e(TAG, "❌ Failed to move " + name + " to device-protected storage");
+                complete = false;
+            }
+        }
+        if (!complete) {
+            return false;
+        }
+        SharedPreferences prefs = device.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        prefs.edit().putBoolean(KEY_MIGRATED, true).putInt(KEY_MIGRATION_VERSION, MIGRATION_VERSION).commit();
+        migrated = true;
+        Log.d(TAG, "✅ Alarm data moved to device-protected storage");
+        return true;
+    }
+}
@@ -0,0 +1,124 @@
+package com.balivishnu.mymedalert;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * IMPORTANT: Native dose history.
+ * Owns the process-wide DoseHistoryLog under files/dose_history, so the plugin and the alarm
+ * components append to and read from the same log without going through the WebView.
+ * AdherenceAnalytics is replayed from the log once when the history opens and then updated on
+ * every append, so adherence summaries never rescan the history.
+ */
+public final class DoseHistory {
+    private static final String TAG = "DoseHistory";
+    static final String DIRECTORY_NAME = "dose_history";
+
+    private static DoseHistory instance;
+
+    private final DoseHistoryLog log;
+    private final AdherenceAnalytics analytics = new AdherenceAnalytics(ZoneId.systemDefault());
+
+    private DoseHistory(Context context) throws IOException {
+        Context app = context.getApplicationContext();
+        this.log = new DoseHistoryLog(new File(DeviceStorage.get(app).getFilesDir(), DIRECTORY_NAME));
+        long startedAt = System.currentTimeMillis();
+        replay();
+        Log.d(TAG, "Dose history opened with " + log.size() + " events, analytics replayed in "
+                + (System.currentTimeMillis() - startedAt) + "ms");
+    }
+
+    public static synchronized DoseHistory getInstance(Context context) throws IOException {
+        if (instance == null) {
+            instance = new DoseHistory(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Appends an event and returns its sequence number.
+     *
+     * @throws IllegalArgumentException when the event's times are implausible; nothing is written
+     */
+    public synchronized long append(DoseEvent event) throws IOException {
+        if (!event.hasPlausibleTimes(System.currentTimeMillis())) {
+            throw new IllegalArgumentException("Dose event time " + event.eventTime + " (scheduled "
+                    + event.scheduledTime + ") is out of range");
+        }
+        long sequence = log.append(event);
+        record(event);
+        Log.d(TAG, "📝 Dose event " + sequence + ": " + event.status + " " + event.medicineName);
+        return sequence;
+    }
+
+    public DoseHistoryLog.Page query(long from, long to, long cursor, int limit) throws IOException {
+        return log.query(from, to, cursor, limit);
+    }
+
+    public List<DoseEvent> read(long fromSequence, int limit) throws IOException {
+        return log.read(fromSequence, limit);
+    }
+
+    public long size() {
+        return log.size();
+    }
+
+    /**
+     * Adherence for events in [from, to), by whole days. O(log days).
+     */
+    public synchronized AdherenceAnalytics.Summary summarize(AdherenceAnalytics.Scope scope, String key,
+                                                             long from, long to) {
+        return analytics.summarize(scope, key, from, to);
+    }
+
+    public synchronized List<AdherenceAnalytics.Summary> daily(AdherenceAnalytics.Scope scope, String key,
+                                                               long from, long to) {
+        return analytics.daily(scope, key, from, to);
+    }
+
+    public synchronized List<String> getMedicineIds() {
+        return new ArrayList<>(analytics.getMedicineIds());
+    }
+
+    public synchronized List<String> getPatientNames() {
+        return new ArrayList<>(analytics.getPatientNames());
+    }
+
+    private void replay() throws IOException {
+        long now = System.currentTimeMillis();
+        long sequence = 0;
+        List<DoseEvent> batch;
+        while (!(batch = log.read(sequence, DoseHistoryLog.MAX_PAGE_SIZE)).isEmpty()) {
+            for (DoseEvent event : batch) {
+                // Logs written before times were checked may hold a bogus one; it must not stretch
+                // the day trees so far that every later event is left out
+                if (event.hasPlausibleTimes(now)) {
+                    record(event);
+                } else {
+                    Log.w(TAG, "⚠️ Left implausible " + event + " out of the analytics");
+                }
+            }
+            sequence += batch.size();
+        }
+    }
+
+    /**
+     * The event is already in the log, so an analytics failure is logged, never thrown: the
+     * append must not fail after the write, and replay must not fail on every open.
+     */
+    private void record(DoseEvent event) {
+        try {
+            if (!analytics.record(event)) {
+                Log.w(TAG, "⚠️ " + event + " is outside the days the analytics cover");
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "❌ Could not add " + event + " to the analytics: " + e.getMessage());
+        }
+    }
+}
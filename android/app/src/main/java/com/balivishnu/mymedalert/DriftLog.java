@@ -0,0 +1,176 @@
+package com.balivishnu.mymedalert;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.PowerManager;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.ZoneId;
+
+/**
+ * Append-only binary log of how late each alarm actually fired.
+ *
+ * One fixed 24-byte record per fire: [long scheduled][long actual][int alarmId][byte flags][3 unused],
+ * where flags hold the device state at fire time (Doze idle, battery saver). Only the dose
+ * AlarmManager was armed for is logged; doses pulled in early by the coalescing window say
+ * nothing about system timing. The file is trimmed to its newest half once it reaches
+ * {@link #MAX_RECORDS}, so it stays bounded.
+ */
+public final class DriftLog {
+    private static final String TAG = "DriftLog";
+    static final String FILE_NAME = "alarm_drift.log";
+    static final int RECORD_SIZE = 24;
+    static final int MAX_RECORDS = 16384;
+
+    public static final int FLAG_IDLE = 1;
+    public static final int FLAG_POWER_SAVE = 1 << 1;
+
+    /**
+     * Device states a fire can be grouped by; index = flags.
+     */
+    public static final String[] STATE_NAMES = {"normal", "idle", "batterySaver", "idleAndBatterySaver"};
+
+    /**
+     * Lateness histograms (ms) for a queried range.
+     */
+    public static final class Stats {
+        public final LatencyHistogram overall = new LatencyHistogram();
+        public final LatencyHistogram[] byHourOfDay = new LatencyHistogram[24];
+        public final LatencyHistogram[] byState = new LatencyHistogram[STATE_NAMES.length];
+        // Fires that arrived before their scheduled time; recorded as 0 lateness
+        public long earlyCount;
+
+        Stats() {
+            for (int i = 0; i < byHourOfDay.length; i++) byHourOfDay[i] = new LatencyHistogram();
+            for (int i = 0; i < byState.length; i++) byState[i] = new LatencyHistogram();
+        }
+    }
+
+    private static DriftLog instance;
+
+    private final File file;
+
+    DriftLog(File file) {
+        this.file = file;
+    }
+
+    public static synchronized DriftLog getInstance(Context context) {
+        if (instance == null) {
+            instance = new DriftLog(new File(DeviceStorage.get(context).getFilesDir(), FILE_NAME));
+        }
+        return instance;
+    }
+
+    /**
+     * Device state flags right now.
+     */
+    public static int currentDeviceFlags(Context context) {
+        int flags = 0;
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        if (powerManager != null) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && powerManager.isDeviceIdleMode()) {
+                flags |= FLAG_IDLE;
+            }
+            if (powerManager.isPowerSaveMode()) {
+                flags |= FLAG_POWER_SAVE;
+            }
+        }
+        return flags;
+    }
+
+    public synchronized void append(int alarmId, long scheduled, long actual, int flags) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putLong(scheduled).putLong(actual).putInt(alarmId).put((byte) flags);
+        try {
+            long length = file.length();
+            if (length >= (long) MAX_RECORDS * RECORD_SIZE) {
+                trim();
+            } else if (length % RECORD_SIZE != 0) {
+                // A write torn by a crash would shift every later record - cut it off first
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.setLength(length / RECORD_SIZE * RECORD_SIZE);
+                }
+            }
+            try (FileOutputStream out = new FileOutputStream(file, true)) {
+                out.write(record.array());
+            }
+        } catch (IOException e) {
+            // Drift logging must never stop an alarm
+            Log.e(TAG, "❌ Failed to log alarm drift: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Lateness percentiles for fires scheduled in [from, to), grouped by the local hour of day
+     * of the scheduled time and by device state.
+     */
+    public synchronized Stats query(long from, long to, ZoneId zone) throws IOException {
+        Stats stats = new Stats();
+        if (!file.exists()) return stats;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            byte[] reserved = new byte[3];
+            while (true) {
+                long scheduled;
+                try {
+                    scheduled = in.readLong();
+                } catch (EOFException end) {
+                    break;
+                }
+                long actual;
+                int flags;
+                try {
+                    actual = in.readLong();
+                    in.readInt();
+                    flags = in.readUnsignedByte() & (FLAG_IDLE | FLAG_POWER_SAVE);
+                    in.readFully(reserved);
+                } catch (EOFException tornTail) {
+                    break;
+                }
+                if (scheduled < from || scheduled >= to) continue;
+
+                long lateness = actual - scheduled;
+                if (lateness < 0) {
+                    stats.earlyCount++;
+                    lateness = 0;
+                }
+                int hour = Instant.ofEpochMilli(scheduled).atZone(zone).getHour();
+                stats.overall.record(lateness);
+                stats.byHourOfDay[hour].record(lateness);
+                stats.byState[flags].record(lateness);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Keeps the newest half of the log. A torn final record is dropped with it.
+     */
+    private void trim() throws IOException {
+        long keep = (long) (MAX_RECORDS / 2) * RECORD_SIZE;
+        long whole = file.length() / RECORD_SIZE * RECORD_SIZE;
+        byte[] tail = new byte[(int) keep];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(whole - keep);
+            raf.readFully(tail);
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(tail);
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Failed to replace drift log");
+        }
+    }
+}
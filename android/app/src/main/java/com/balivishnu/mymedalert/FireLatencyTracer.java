@@ -0,0 +1,167 @@
+package com.balivishnu.mymedalert;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Fire-path latency tracing: how long each stage takes from the AlarmManager trigger time to a
+ * visible alarm.
+ *
+ * Every fire gets a trace ID that travels with the intents. Each stage stamps the wall-clock time
+ * it was reached into a fixed-size ring of trace slots in a memory-mapped file, so traces survive
+ * the process being killed between the fire and the query and the ring never grows. A slot is
+ * 64 bytes: [long traceId][int alarmId][int unused][long triggerTime][long stamp x 5].
+ * Stamps are first-wins, so a stage reached twice (e.g. AlarmActivity relaunched) keeps the first.
+ */
+public final class FireLatencyTracer {
+    private static final String TAG = "FireLatencyTracer";
+    static final String FILE_NAME = "fire_latency.ring";
+    private static final int MAGIC = 0x464C5431; // "FLT1"
+    private static final int HEADER_SIZE = 16;
+    private static final int SLOT_SIZE = 64;
+    private static final int STAMPS_OFFSET = 24;
+    public static final int CAPACITY = 256;
+    public static final String EXTRA_TRACE_ID = "fireTraceId";
+
+    public enum Stage {
+        RECEIVER("receiver"),
+        SERVICE_START("serviceStart"),
+        FOREGROUND("startForeground"),
+        RINGTONE("ringtonePlay"),
+        FIRST_FRAME("firstFrame");
+
+        public final String key;
+
+        Stage(String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * Percentiles for one stage, in milliseconds.
+     */
+    public static final class StageStats {
+        public final Stage stage;
+        // From the scheduled trigger time to this stage
+        public final LatencyHistogram sinceTrigger = new LatencyHistogram();
+        // From the previous recorded stage of the same fire to this stage
+        public final LatencyHistogram sincePrevious = new LatencyHistogram();
+
+        StageStats(Stage stage) {
+            this.stage = stage;
+        }
+    }
+
+    private static FireLatencyTracer instance;
+
+    private final MappedByteBuffer ring;
+    private long nextTraceId;
+
+    FireLatencyTracer(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long size = HEADER_SIZE + (long) CAPACITY * SLOT_SIZE;
+            boolean fresh = raf.length() != size;
+            raf.setLength(size);
+            ring = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (fresh || ring.getInt(0) != MAGIC) {
+                for (int i = 0; i < size; i += 8) {
+                    ring.putLong(i, 0);
+                }
+                ring.putInt(0, MAGIC);
+            }
+            nextTraceId = ring.getLong(8) + 1;
+        }
+    }
+
+    public static synchronized FireLatencyTracer getInstance(Context context) {
+        if (instance == null) {
+            Context storage = DeviceStorage.get(context);
+            File file = new File(storage.getFilesDir(), FILE_NAME);
+            try {
+                instance = new FireLatencyTracer(file);
+            } catch (IOException e) {
+                // Tracing must never stop an alarm - fall back to a throwaway ring
+                Log.e(TAG, "❌ Latency ring unavailable: " + e.getMessage());
+                try {
+                    instance = new FireLatencyTracer(File.createTempFile("fire_latency", ".ring",
+                            storage.getCacheDir()));
+                } catch (IOException retryError) {
+                    throw new IllegalStateException("Latency ring unavailable", retryError);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Starts a trace for a fire scheduled at {@code triggerTime} and stamps the receiver stage.
+     *
+     * @return the trace ID to pass along with the fire's intents
+     */
+    public synchronized long begin(int alarmId, long triggerTime, long now) {
+        long traceId = nextTraceId++;
+        int slot = slotOffset(traceId);
+        ring.putLong(slot, traceId);
+        ring.putInt(slot + 8, alarmId);
+        ring.putInt(slot + 12, 0);
+        ring.putLong(slot + 16, triggerTime);
+        for (int i = 0; i < Stage.values().length; i++) {
+            ring.putLong(slot + STAMPS_OFFSET + i * 8, 0);
+        }
+        ring.putLong(slot + STAMPS_OFFSET + Stage.RECEIVER.ordinal() * 8, now);
+        ring.putLong(8, traceId);
+        return traceId;
+    }
+
+    /**
+     * Stamps {@code stage} of a trace unless it is already stamped or the slot has been reused.
+     */
+    public synchronized void mark(long traceId, Stage stage, long now) {
+        if (traceId <= 0) return;
+        int slot = slotOffset(traceId);
+        if (ring.getLong(slot) != traceId) return;
+        int offset = slot + STAMPS_OFFSET + stage.ordinal() * 8;
+        if (ring.getLong(offset) == 0) {
+            ring.putLong(offset, now);
+        }
+    }
+
+    /**
+     * Builds per-stage histograms over every trace still in the ring.
+     */
+    public synchronized StageStats[] getStats() {
+        Stage[] stages = Stage.values();
+        StageStats[] stats = new StageStats[stages.length];
+        for (Stage stage : stages) {
+            stats[stage.ordinal()] = new StageStats(stage);
+        }
+        for (int i = 0; i < CAPACITY; i++) {
+            int slot = HEADER_SIZE + i * SLOT_SIZE;
+            if (ring.getLong(slot) == 0) continue;
+            long triggerTime = ring.getLong(slot + 16);
+            long previous = triggerTime;
+            for (Stage stage : stages) {
+                long stamp = ring.getLong(slot + STAMPS_OFFSET + stage.ordinal() * 8);
+                if (stamp == 0) continue;
+                stats[stage.ordinal()].sinceTrigger.record(stamp - triggerTime);
+                stats[stage.ordinal()].sincePrevious.record(stamp - previous);
+                previous = stamp;
+            }
+        }
+        return stats;
+    }
+
+    public synchronized int getTraceCount() {
+        return (int) Math.min(nextTraceId - 1, CAPACITY);
+    }
+
+    private static int slotOffset(long traceId) {
+        return HEADER_SIZE + (int) (traceId % CAPACITY) * SLOT_SIZE;
+    }
+}
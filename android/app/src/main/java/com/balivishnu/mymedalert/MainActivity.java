@@ -1,6 +1,7 @@
 package com.balivishnu.mymedalert;
 
 import android.content.Intent;
+import android.database.ContentObserver;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
@@ -10,26 +11,32 @@ import android.provider.Settings;
 import android.util.Log;
 import com.getcapacitor.BridgeActivity;
 
+import org.json.JSONObject;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 public class MainActivity extends BridgeActivity {
     private static final String TAG = "MainActivity";
     private static final int OVERLAY_PERMISSION_REQUEST_CODE = 5469;
     
+    // Redirects as soon as an alarm starts while this activity is in the foreground
+    // The alarm state lives in the :alarm process; it is asked off the main thread
+    private final ExecutorService alarmStateChecker = Executors.newSingleThreadExecutor();
+    private final ContentObserver alarmStateObserver = new ContentObserver(new Handler(Looper.getMainLooper())) {
+        @Override
+        public void onChange(boolean selfChange) {
+            checkAlarmActive("alarm state changed");
+        }
+    };
+    
     @Override
     public void onCreate(Bundle savedInstanceState) {
-        // CRITICAL: Check and request overlay permission for showing alarm over lock screen
         checkOverlayPermission();
         
-        // CRITICAL: Check SharedPreferences for active alarm BEFORE anything else
-        boolean alarmActive = AlarmService.isAlarmActiveFromPrefs(this);
-        Log.d(TAG, "MainActivity onCreate - isAlarmActive from prefs: " + alarmActive);
-        
-        // If alarm is active, redirect to AlarmActivity BEFORE calling super.onCreate()
-        if (alarmActive) {
-            Log.d(TAG, "🚨 ALARM ACTIVE during onCreate - redirecting to AlarmActivity immediately");
-            redirectToAlarmActivity();
-        }
+        // Redirects to AlarmActivity as soon as the :alarm process answers
+        checkAlarmActive("onCreate");
         
-        // Register custom plugins before calling super.onCreate()
         registerPlugin(MedicineAlarmPlugin.class);
         super.onCreate(savedInstanceState);
     }
@@ -76,48 +83,63 @@ public class MainActivity extends BridgeActivity {
     public void onResume() {
         super.onResume();
         
-        // Check SharedPreferences on resume in case we're returning from lock screen
-        boolean alarmActive = AlarmService.isAlarmActiveFromPrefs(this);
-        Log.d(TAG, "MainActivity onResume - isAlarmActive from prefs: " + alarmActive);
-        
-        if (alarmActive) {
-            Log.d(TAG, "🚨 ALARM ACTIVE during onResume - redirecting to AlarmActivity");
-            // Use a small delay to ensure the activity is fully resumed
-            new Handler(Looper.getMainLooper()).postDelayed(() -> {
-                if (AlarmService.isAlarmActiveFromPrefs(this)) {
-                    redirectToAlarmActivity();
-                }
-            }, 50);
-        }
+        // Check alarm state on resume in case we're returning from lock screen
+        getContentResolver().registerContentObserver(
+            AlarmProvider.uri(this, AlarmProvider.PATH_STATE), false, alarmStateObserver);
+        checkAlarmActive("onResume");
+    }
+    
+    @Override
+    public void onPause() {
+        super.onPause();
+        getContentResolver().unregisterContentObserver(alarmStateObserver);
     }
     
     @Override
     public void onWindowFocusChanged(boolean hasFocus) {
         super.onWindowFocusChanged(hasFocus);
-        boolean alarmActive = AlarmService.isAlarmActiveFromPrefs(this);
-        Log.d(TAG, "MainActivity onWindowFocusChanged: " + hasFocus + ", isAlarmActive: " + alarmActive);
+        Log.d(TAG, "MainActivity onWindowFocusChanged: " + hasFocus);
         
         // If we gain focus while alarm is active, redirect immediately
-        if (hasFocus && alarmActive) {
-            Log.d(TAG, "🚨 MainActivity gained focus while alarm active - redirecting!");
-            redirectToAlarmActivity();
+        if (hasFocus) {
+            checkAlarmActive("focus");
         }
     }
     
-    private void redirectToAlarmActivity() {
-        Log.d(TAG, "➡️ Redirecting to AlarmActivity with medicine: " + AlarmService.currentMedicineName);
+    @Override
+    public void onDestroy() {
+        alarmStateChecker.shutdown();
+        super.onDestroy();
+    }
+    
+    /**
+     * Asks the :alarm process whether an alarm is ringing and redirects to it if so.
+     */
+    private void checkAlarmActive(String reason) {
+        if (alarmStateChecker.isShutdown()) return;
+        alarmStateChecker.execute(() -> {
+            try {
+                JSONObject state = AlarmProvider.send(this, "getAlarmState", null);
+                Log.d(TAG, "MainActivity " + reason + " - isAlarmActive: " + state.optBoolean("active"));
+                if (state.optBoolean("active")) {
+                    String medicineName = state.optString("medicineName");
+                    runOnUiThread(() -> {
+                        Log.d(TAG, "🚨 ALARM ACTIVE (" + reason + ") - redirecting to AlarmActivity");
+                        redirectToAlarmActivity(medicineName);
+                    });
+                }
+            } catch (AlarmProvider.CommandException e) {
+                Log.e(TAG, "❌ Could not read alarm state: " + e.getMessage());
+            }
+        });
+    }
+    
+    private void redirectToAlarmActivity(String medicineName) {
+        if (isFinishing()) return;
+        Log.d(TAG, "➡️ Redirecting to AlarmActivity with medicine: " + medicineName);
         
-        Intent alarmIntent = new Intent(this, AlarmActivity.class);
-        alarmIntent.setFlags(
-            Intent.FLAG_ACTIVITY_NEW_TASK |
-            Intent.FLAG_ACTIVITY_CLEAR_TOP |
-            Intent.FLAG_ACTIVITY_SINGLE_TOP
-        );
-        // Pass the current alarm details
-        alarmIntent.putExtra("medicineName", AlarmService.currentMedicineName);
-        alarmIntent.putExtra("dosage", AlarmService.currentDosage);
-        alarmIntent.putExtra("patientName", AlarmService.currentPatientName);
-        startActivity(alarmIntent);
+        // AlarmService in the :alarm process launches AlarmActivity for the session it rings
+        AlarmService.showCurrentAlarm(this);
         
         // Move this activity to back so AlarmActivity is visible
         moveTaskToBack(true);
@@ -1,10 +1,13 @@
 package com.balivishnu.mymedalert;
 
 import android.app.AlarmManager;
-import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
+import android.database.ContentObserver;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
 
 import com.getcapacitor.JSObject;
 import com.getcapacitor.Plugin;
@@ -12,103 +15,198 @@ import com.getcapacitor.PluginCall;
 import com.getcapacitor.PluginMethod;
 import com.getcapacitor.annotation.CapacitorPlugin;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * JS bridge to the native alarms. The alarm state lives in the :alarm process, so every alarm
+ * method is forwarded unchanged to AlarmCommands through AlarmProvider - see AlarmCommands for
+ * what each one takes and resolves. Alarm events reach JS as alarmFired, alarmTaken,
+ * alarmDismissed, alarmSnoozed and alarmAutoStopped: the :alarm process notifies the events URI
+ * and this plugin fetches what it has not delivered yet.
+ */
 @CapacitorPlugin(name = "MedicineAlarm")
 public class MedicineAlarmPlugin extends Plugin {
+    private static final String TAG = "MedicineAlarmPlugin";
 
-    @PluginMethod
-    public void scheduleAlarm(PluginCall call) {
-        try {
-            String medicineName = call.getString("medicineName", "Medicine");
-            String dosage = call.getString("dosage", "1 tablet");
-            String patientName = call.getString("patientName", "");
-            Long triggerTime = call.getLong("triggerTime");
-            Integer alarmId = call.getInt("alarmId", 1);
-
-            if (triggerTime == null) {
-                call.reject("Trigger time is required");
-                return;
+    private HandlerThread eventThread;
+    private ContentObserver eventObserver;
+    // Last alarm event pushed to JS listeners; touched only on eventThread
+    private long deliveredSequence = -1;
+
+    @Override
+    public void load() {
+        eventThread = new HandlerThread("AlarmEvents");
+        eventThread.start();
+        Handler handler = new Handler(eventThread.getLooper());
+        handler.post(() -> {
+            try {
+                // Make sure the earliest stored dose is armed, e.g. after an app update replaced the process
+                AlarmProvider.send(getContext(), "rearm", null);
+                // Live events start from here; getAlarmEvents replays anything older
+                deliveredSequence = AlarmProvider.send(getContext(), "getAlarmEvents",
+                        new JSONObject().put("afterSequence", Long.MAX_VALUE)).getLong("lastSequence");
+            } catch (AlarmProvider.CommandException | JSONException e) {
+                Log.e(TAG, "❌ Alarm process not reachable on load: " + e.getMessage());
+            }
+        });
+        eventObserver = new ContentObserver(handler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                deliverEvents();
             }
+        };
+        getContext().getContentResolver().registerContentObserver(
+                AlarmProvider.uri(getContext(), AlarmProvider.PATH_EVENTS), false, eventObserver);
+    }
 
-            Context context = getContext();
-            
-            // CRITICAL FIX: Create intent for AlarmReceiver (BroadcastReceiver)
-            // This is the ONLY way alarms work when app is closed!
-            Intent receiverIntent = new Intent(context, AlarmReceiver.class);
-            receiverIntent.putExtra("medicineName", medicineName);
-            receiverIntent.putExtra("dosage", dosage);
-            receiverIntent.putExtra("patientName", patientName);
-
-            // CRITICAL: Use getBroadcast instead of getService
-            // This allows alarm to fire even when app is completely closed
-            PendingIntent pendingIntent = PendingIntent.getBroadcast(
-                    context,
-                    alarmId,
-                    receiverIntent,
-                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-            );
+    @Override
+    protected void handleOnDestroy() {
+        if (eventObserver != null) {
+            getContext().getContentResolver().unregisterContentObserver(eventObserver);
+        }
+        if (eventThread != null) {
+            eventThread.quitSafely();
+        }
+        super.handleOnDestroy();
+    }
 
-            AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-            
-            if (alarmManager != null) {
-                // Use setExactAndAllowWhileIdle for exact timing and to work in Doze mode
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                    alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, triggerTime, pendingIntent);
-                } else {
-                    alarmManager.setExact(AlarmManager.RTC_WAKEUP, triggerTime, pendingIntent);
-                }
-                
-                JSObject result = new JSObject();
-                result.put("success", true);
-                result.put("message", "Alarm scheduled successfully");
-                result.put("alarmId", alarmId);
-                result.put("triggerTime", triggerTime);
-                call.resolve(result);
-            } else {
-                call.reject("AlarmManager not available");
+    /**
+     * Pushes alarm events after the last delivered one to JS listeners, oldest first.
+     */
+    private void deliverEvents() {
+        if (deliveredSequence < 0) return;
+        try {
+            JSONArray events = AlarmProvider.send(getContext(), "getAlarmEvents",
+                    new JSONObject().put("afterSequence", deliveredSequence)).getJSONArray("events");
+            for (int i = 0; i < events.length(); i++) {
+                JSONObject event = events.getJSONObject(i);
+                deliveredSequence = Math.max(deliveredSequence, event.getLong("sequence"));
+                notifyListeners(event.getString("type"), new JSObject(event.toString()));
             }
-        } catch (Exception e) {
-            call.reject("Error scheduling alarm: " + e.getMessage());
+        } catch (AlarmProvider.CommandException | JSONException e) {
+            Log.e(TAG, "❌ Failed to deliver alarm events: " + e.getMessage());
         }
     }
 
+    /**
+     * Runs the call's method in the :alarm process and settles the call with its reply.
+     */
+    private void forward(PluginCall call) {
+        try {
+            JSONObject result = AlarmProvider.send(getContext(), call.getMethodName(), call.getData());
+            call.resolve(new JSObject(result.toString()));
+        } catch (AlarmProvider.CommandException e) {
+            call.reject(e.getMessage());
+        } catch (JSONException e) {
+            call.reject("Invalid reply from alarm process: " + e.getMessage());
+        }
+    }
+
+    @PluginMethod
+    public void getAlarmEvents(PluginCall call) {
+        forward(call);
+    }
+
+    @PluginMethod
+    public void scheduleAlarm(PluginCall call) {
+        forward(call);
+    }
+
+    @PluginMethod
+    public void scheduleAlarms(PluginCall call) {
+        forward(call);
+    }
+
     @PluginMethod
     public void cancelAlarm(PluginCall call) {
-        try {
-            Integer alarmId = call.getInt("alarmId");
-            
-            if (alarmId == null) {
-                call.reject("Alarm ID is required");
-                return;
-            }
+        forward(call);
+    }
 
-            Context context = getContext();
-            
-            // CRITICAL FIX: Create intent for AlarmReceiver (BroadcastReceiver)
-            Intent receiverIntent = new Intent(context, AlarmReceiver.class);
-            
-            // CRITICAL: Use getBroadcast instead of getService for cancellation
-            PendingIntent pendingIntent = PendingIntent.getBroadcast(
-                    context,
-                    alarmId,
-                    receiverIntent,
-                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-            );
+    @PluginMethod
+    public void cancelAlarms(PluginCall call) {
+        forward(call);
+    }
 
-            AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
-            if (alarmManager != null) {
-                alarmManager.cancel(pendingIntent);
-                
-                JSObject result = new JSObject();
-                result.put("success", true);
-                result.put("message", "Alarm cancelled successfully");
-                result.put("alarmId", alarmId);
-                call.resolve(result);
-            } else {
-                call.reject("AlarmManager not available");
-            }
-        } catch (Exception e) {
-            call.reject("Error cancelling alarm: " + e.getMessage());
-        }
+    @PluginMethod
+    public void syncAlarms(PluginCall call) {
+        forward(call);
+    }
+
+    @PluginMethod
+    public void getScheduledAlarms(PluginCall call) {
+        forward(call);
+    }
+
+    @PluginMethod
+    public void setCoalesceWindow(PluginCall call) {
+        forward(call);
+    }
+
+    @PluginMethod
+    public void setWarmUpLead(PluginCall call) {
+        forward(call);
+    }
+
+    @PluginMethod
+    public void setSnoozePolicy(PluginCall call) {
+        forward(call);
+    }
+
+    @PluginMethod
+    public void setVolumeRamp(PluginCall call) {
+        forward(call);
+    }
+
+    @PluginMethod
+    public void preloadSound(PluginCall call) {
+        forward(call);
+    }
+
+    @PluginMethod
+    public void getFireLatencyStats(PluginCall call) {
+        forward(call);
+    }
+
+    @PluginMethod
+    public void getDriftStats(PluginCall call) {
+        forward(call);
+    }
+
+    @PluginMethod
+    public void getWakeLockStats(PluginCall call) {
+        forward(call);
+    }
+
+    @PluginMethod
+    public void appendDoseEvent(PluginCall call) {
+        forward(call);
+    }
+
+    @PluginMethod
+    public void queryDoseHistory(PluginCall call) {
+        forward(call);
+    }
+
+    @PluginMethod
+    public void readDoseHistory(PluginCall call) {
+        forward(call);
+    }
+
+    @PluginMethod
+    public void syncInventory(PluginCall call) {
+        forward(call);
+    }
+
+    @PluginMethod
+    public void getInventory(PluginCall call) {
+        forward(call);
+    }
+
+    @PluginMethod
+    public void getAdherenceSummary(PluginCall call) {
+        forward(call);
     }
 
     @PluginMethod
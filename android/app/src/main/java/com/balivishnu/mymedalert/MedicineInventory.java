@@ -0,0 +1,163 @@
+package com.balivishnu.mymedalert;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Native pill inventory, so a dose confirmed from the alarm screen or notification can take
+ * pills off the count without the WebView.
+ *
+ * The app pushes a snapshot of every medicine's pill count and dose size together with the dose
+ * history sequence the snapshot already accounts for. The count of a medicine is its snapshot
+ * minus the doses taken natively since that sequence; those are read back from DoseHistory when
+ * the inventory loads, so nothing but the snapshot needs persisting and a pushed snapshot never
+ * double-counts a dose. Doses the app recorded itself are in its counts whatever their sequence,
+ * so the replay leaves them out.
+ */
+public final class MedicineInventory {
+    private static final String TAG = "MedicineInventory";
+    static final String PREFS_NAME = "MedicineInventoryPrefs";
+    private static final String KEY_SNAPSHOT = "snapshot";
+    private static final String KEY_SYNCED_SEQUENCE = "syncedSequence";
+
+    /**
+     * One medicine as last pushed by the app.
+     */
+    public static final class Item {
+        public final float pills;
+        // Pills per dose
+        public final float dosePills;
+
+        public Item(float pills, float dosePills) {
+            this.pills = pills;
+            this.dosePills = dosePills;
+        }
+    }
+
+    private static MedicineInventory instance;
+
+    private final Context context;
+    private final Context storage;
+    private final Map<String, Item> snapshot = new HashMap<>();
+    // Pills taken natively per medicine since the snapshot
+    private final Map<String, Float> taken = new HashMap<>();
+    private long syncedSequence;
+
+    private MedicineInventory(Context context) {
+        this.context = context.getApplicationContext();
+        // Device-protected, so a dose taken before the first unlock still comes off the stock
+        this.storage = DeviceStorage.get(this.context);
+        SharedPreferences prefs = storage.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        syncedSequence = prefs.getLong(KEY_SYNCED_SEQUENCE, 0);
+        try {
+            JSONObject items = new JSONObject(prefs.getString(KEY_SNAPSHOT, "{}"));
+            Iterator<String> ids = items.keys();
+            while (ids.hasNext()) {
+                String medicineId = ids.next();
+                JSONObject item = items.getJSONObject(medicineId);
+                snapshot.put(medicineId, new Item((float) item.getDouble("pills"), (float) item.getDouble("dosePills")));
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "❌ Inventory snapshot unreadable, starting empty: " + e.getMessage());
+            snapshot.clear();
+        }
+        replayTaken();
+    }
+
+    public static synchronized MedicineInventory getInstance(Context context) {
+        if (instance == null) {
+            instance = new MedicineInventory(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Replaces the snapshot with the app's counts, which account for every dose history event
+     * before {@code historySequence}.
+     */
+    public synchronized void setSnapshot(Map<String, Item> items, long historySequence) {
+        snapshot.clear();
+        snapshot.putAll(items);
+        syncedSequence = Math.max(0, historySequence);
+
+        JSONObject json = new JSONObject();
+        try {
+            for (Map.Entry<String, Item> entry : items.entrySet()) {
+                json.put(entry.getKey(), new JSONObject()
+                        .put("pills", entry.getValue().pills)
+                        .put("dosePills", entry.getValue().dosePills));
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to encode inventory snapshot: " + e.getMessage());
+        }
+        storage.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putString(KEY_SNAPSHOT, json.toString())
+                .putLong(KEY_SYNCED_SEQUENCE, syncedSequence)
+                .apply();
+        replayTaken();
+    }
+
+    /**
+     * Pills per dose of the medicine, or 0 when the app never pushed it.
+     */
+    public synchronized float getDosePills(String medicineId) {
+        Item item = snapshot.get(medicineId);
+        return item != null ? item.dosePills : 0;
+    }
+
+    /**
+     * Pills left of the medicine, or -1 when the app never pushed it.
+     */
+    public synchronized float getPills(String medicineId) {
+        Item item = snapshot.get(medicineId);
+        if (item == null) return -1;
+        Float used = taken.get(medicineId);
+        return Math.max(0, item.pills - (used != null ? used : 0));
+    }
+
+    public synchronized Map<String, Float> getAll() {
+        Map<String, Float> pills = new HashMap<>();
+        for (String medicineId : snapshot.keySet()) {
+            pills.put(medicineId, getPills(medicineId));
+        }
+        return pills;
+    }
+
+    /**
+     * Takes a dose's pills off the count once its TAKEN event is in the dose history.
+     */
+    public synchronized void recordTaken(DoseEvent event) {
+        if (event.status != DoseEvent.Status.TAKEN || event.quantity <= 0) return;
+        Float used = taken.get(event.medicineId);
+        taken.put(event.medicineId, (used != null ? used : 0) + event.quantity);
+    }
+
+    private void replayTaken() {
+        taken.clear();
+        try {
+            DoseHistory history = DoseHistory.getInstance(context);
+            long sequence = syncedSequence;
+            List<DoseEvent> batch;
+            while (!(batch = history.read(sequence, DoseHistoryLog.MAX_PAGE_SIZE)).isEmpty()) {
+                for (DoseEvent event : batch) {
+                    if (event.source == DoseEvent.Source.ALARM) {
+                        recordTaken(event);
+                    }
+                }
+                sequence += batch.size();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "❌ Failed to read dose history for inventory: " + e.getMessage());
+        }
+    }
+}
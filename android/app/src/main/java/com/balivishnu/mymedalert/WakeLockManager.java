@@ -0,0 +1,299 @@
+package com.balivishnu.mymedalert;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The one place the alarm path holds wake locks.
+ *
+ * Components take a {@link Lease} for the alarm they serve - keyed by its fire trace ID, which
+ * travels with every alarm intent - and release it the moment that alarm's session ends. Leases
+ * are reference-counted onto one system wake lock per {@link Kind}, each still bounded by a
+ * timeout in case a release is missed. When the last lease of an alarm goes, the time each kind
+ * was held for it is appended to a fixed-record usage log:
+ * [long startedAt][long cpuHeldMs][long screenHeldMs][int alarmId][int leases], 32 bytes,
+ * trimmed to its newest half at {@link #MAX_RECORDS}.
+ */
+public final class WakeLockManager {
+    private static final String TAG = "WakeLockManager";
+    static final String FILE_NAME = "wakelock_usage.log";
+    static final int RECORD_SIZE = 32;
+    static final int MAX_RECORDS = 8192;
+
+    public enum Kind {
+        // Keeps the CPU running while the alarm rings
+        CPU,
+        // Turns the screen on and keeps it on while the alarm screen shows. From O_MR1 the alarm
+        // window does this itself, so the lease is only accounted and no system lock is taken.
+        SCREEN
+    }
+
+    /**
+     * Held time per alarm, in milliseconds, over a queried range.
+     */
+    public static final class Stats {
+        public final LatencyHistogram cpuPerAlarm = new LatencyHistogram();
+        public final LatencyHistogram screenPerAlarm = new LatencyHistogram();
+        public long alarms;
+        public long totalCpuMs;
+        public long totalScreenMs;
+    }
+
+    /**
+     * One component's hold on a wake lock for one alarm. Releasing twice is harmless.
+     */
+    public final class Lease {
+        final long traceId;
+        final Kind kind;
+        final long acquiredAt;
+        final Runnable timeout = this::release;
+        boolean released;
+
+        Lease(long traceId, Kind kind, long acquiredAt) {
+            this.traceId = traceId;
+            this.kind = kind;
+            this.acquiredAt = acquiredAt;
+        }
+
+        public void release() {
+            WakeLockManager.this.release(this);
+        }
+    }
+
+    /**
+     * Open accounting for one alarm.
+     */
+    private static final class Usage {
+        final long startedAt = System.currentTimeMillis();
+        final int alarmId;
+        final long[] heldMs = new long[Kind.values().length];
+        int open;
+        int leases;
+
+        Usage(int alarmId) {
+            this.alarmId = alarmId;
+        }
+    }
+
+    private static WakeLockManager instance;
+
+    private final File file;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final PowerManager.WakeLock[] locks = new PowerManager.WakeLock[Kind.values().length];
+    private final int[] held = new int[Kind.values().length];
+    // Latest timeout deadline (elapsedRealtime) among the open leases of each kind
+    private final long[] deadlines = new long[Kind.values().length];
+    private final Map<Long, Usage> usage = new HashMap<>();
+    private final Set<Lease> openLeases = new HashSet<>();
+
+    private WakeLockManager(Context context) {
+        Context app = context.getApplicationContext();
+        this.file = new File(DeviceStorage.get(app).getFilesDir(), FILE_NAME);
+        PowerManager powerManager = (PowerManager) app.getSystemService(Context.POWER_SERVICE);
+        if (powerManager != null) {
+            locks[Kind.CPU.ordinal()] = powerManager.newWakeLock(
+                    PowerManager.PARTIAL_WAKE_LOCK | PowerManager.ACQUIRE_CAUSES_WAKEUP,
+                    "MedicineAlarm::WakeLock");
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O_MR1) {
+                @SuppressWarnings("deprecation")
+                int screenFlags = PowerManager.SCREEN_BRIGHT_WAKE_LOCK | PowerManager.ACQUIRE_CAUSES_WAKEUP;
+                locks[Kind.SCREEN.ordinal()] = powerManager.newWakeLock(screenFlags, "MyMedAlert:AlarmScreenWakeLock");
+            }
+            for (PowerManager.WakeLock lock : locks) {
+                // Counting is done here, per lease
+                if (lock != null) lock.setReferenceCounted(false);
+            }
+        }
+    }
+
+    public static synchronized WakeLockManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new WakeLockManager(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Takes a {@code kind} lease for the alarm traced as {@code traceId} (0 when untraced),
+     * released automatically after {@code timeoutMs} if nobody releases it first.
+     */
+    public synchronized Lease acquire(long traceId, int alarmId, Kind kind, long timeoutMs) {
+        long now = SystemClock.elapsedRealtime();
+        Lease lease = new Lease(traceId, kind, now);
+        Usage alarm = usage.get(traceId);
+        if (alarm == null) {
+            alarm = new Usage(alarmId);
+            usage.put(traceId, alarm);
+        }
+        alarm.open++;
+        alarm.leases++;
+
+        int k = kind.ordinal();
+        held[k]++;
+        long deadline = now + timeoutMs;
+        if (held[k] == 1 || deadline > deadlines[k]) {
+            deadlines[k] = Math.max(deadlines[k], deadline);
+            PowerManager.WakeLock lock = locks[k];
+            if (lock != null) {
+                try {
+                    // Not reference-counted: re-acquiring only moves the system timeout out
+                    lock.acquire(deadlines[k] - now);
+                } catch (Exception e) {
+                    Log.e(TAG, "Failed to acquire " + kind + " wake lock: " + e.getMessage());
+                }
+            }
+        }
+        openLeases.add(lease);
+        handler.postDelayed(lease.timeout, timeoutMs);
+        Log.d(TAG, kind + " lease acquired for trace " + traceId + " (" + held[k] + " held)");
+        return lease;
+    }
+
+    /**
+     * Releases every open lease of the alarm traced as {@code traceId}.
+     */
+    public synchronized void releaseAll(long traceId) {
+        for (Lease lease : openLeases.toArray(new Lease[0])) {
+            if (lease.traceId == traceId) {
+                release(lease);
+            }
+        }
+    }
+
+    private synchronized void release(Lease lease) {
+        if (lease.released) return;
+        lease.released = true;
+        handler.removeCallbacks(lease.timeout);
+        openLeases.remove(lease);
+
+        long now = SystemClock.elapsedRealtime();
+        int k = lease.kind.ordinal();
+        held[k]--;
+        if (held[k] == 0) {
+            deadlines[k] = 0;
+            PowerManager.WakeLock lock = locks[k];
+            if (lock != null && lock.isHeld()) {
+                try {
+                    lock.release();
+                } catch (Exception e) {
+                    Log.e(TAG, "Failed to release " + lease.kind + " wake lock: " + e.getMessage());
+                }
+            }
+        }
+
+        Usage alarm = usage.get(lease.traceId);
+        if (alarm == null) return;
+        alarm.heldMs[k] += now - lease.acquiredAt;
+        if (--alarm.open == 0) {
+            usage.remove(lease.traceId);
+            append(alarm);
+            Log.d(TAG, "Wake locks for trace " + lease.traceId + " held cpu=" + alarm.heldMs[Kind.CPU.ordinal()]
+                    + "ms screen=" + alarm.heldMs[Kind.SCREEN.ordinal()] + "ms");
+        }
+    }
+
+    /**
+     * Leases open right now, of every kind.
+     */
+    public synchronized int getOpenLeaseCount() {
+        return openLeases.size();
+    }
+
+    private void append(Usage alarm) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putLong(alarm.startedAt)
+                .putLong(alarm.heldMs[Kind.CPU.ordinal()])
+                .putLong(alarm.heldMs[Kind.SCREEN.ordinal()])
+                .putInt(alarm.alarmId)
+                .putInt(alarm.leases);
+        try {
+            long length = file.length();
+            if (length >= (long) MAX_RECORDS * RECORD_SIZE) {
+                trim();
+            } else if (length % RECORD_SIZE != 0) {
+                // A write torn by a crash would shift every later record - cut it off first
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.setLength(length / RECORD_SIZE * RECORD_SIZE);
+                }
+            }
+            try (FileOutputStream out = new FileOutputStream(file, true)) {
+                out.write(record.array());
+            }
+        } catch (IOException e) {
+            // Accounting must never hold up an alarm
+            Log.e(TAG, "❌ Failed to log wake lock usage: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Held time per alarm for alarms that started in [from, to).
+     */
+    public synchronized Stats query(long from, long to) throws IOException {
+        Stats stats = new Stats();
+        if (!file.exists()) return stats;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                long startedAt;
+                long cpuMs;
+                long screenMs;
+                try {
+                    startedAt = in.readLong();
+                    cpuMs = in.readLong();
+                    screenMs = in.readLong();
+                    in.readInt();
+                    in.readInt();
+                } catch (EOFException end) {
+                    break;
+                }
+                if (startedAt < from || startedAt >= to) continue;
+                stats.alarms++;
+                stats.totalCpuMs += cpuMs;
+                stats.totalScreenMs += screenMs;
+                stats.cpuPerAlarm.record(cpuMs);
+                stats.screenPerAlarm.record(screenMs);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Keeps the newest half of the log. A torn final record is dropped with it.
+     */
+    private void trim() throws IOException {
+        long keep = (long) (MAX_RECORDS / 2) * RECORD_SIZE;
+        long whole = file.length() / RECORD_SIZE * RECORD_SIZE;
+        byte[] tail = new byte[(int) keep];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(whole - keep);
+            raf.readFully(tail);
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(tail);
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Failed to replace wake lock usage log");
+        }
+    }
+}
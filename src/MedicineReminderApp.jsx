@@ -1,4 +1,4 @@
-import React, { useState, useEffect } from 'react';
+import React, { useState, useEffect, useRef } from 'react';
 import { Plus, Edit2, Trash2, Camera, Clock, Pill, Bell, Calendar, TrendingUp, AlertCircle, Check, X, BarChart3, Package, ChevronDown, ChevronRight, Settings, Info, Phone, AlertTriangle, Share2, Mic, MicOff, MessageCircle, MessageSquare, Mail, Copy, Printer } from 'lucide-react';
 import { LocalNotifications } from '@capacitor/local-notifications';
 import PrivacyPolicy from './PrivacyPolicy';
@@ -9,8 +9,13 @@ const STORAGE_KEYS = {
   dosageHistory: 'pill_reminder_dosage_history',
   emergencyContacts: 'pill_reminder_emergency_contacts',
   appSettings: 'pill_reminder_app_settings',
+  nativeHistorySequence: 'pill_reminder_native_history_sequence',
+  alarmEventSequence: 'pill_reminder_alarm_event_sequence',
 };
 
+// Listener events MedicineAlarmPlugin pushes for every native alarm
+const ALARM_EVENT_NAMES = ['alarmFired', 'alarmTaken', 'alarmDismissed', 'alarmSnoozed', 'alarmAutoStopped'];
+
 const MedicineReminderApp = () => {
   const [medicines, setMedicines] = useState([]);
   const [dosageHistory, setDosageHistory] = useState([]);
@@ -65,6 +70,13 @@ const MedicineReminderApp = () => {
     '#8B5CF6', '#EC4899', '#06B6D4', '#84CC16'
   ];
 
+  // Set once doses taken natively have been imported; the native inventory is only pushed after that
+  const nativeSyncedRef = useRef(false);
+  // Imports run one after another so no native dose is counted twice
+  const importChainRef = useRef(Promise.resolve());
+  // Bumped when today's notifications need regenerating: a native alarm fired or a new day began
+  const [scheduleTick, setScheduleTick] = useState(0);
+
   // Load from localStorage on mount
   useEffect(() => {
     const storedMeds = localStorage.getItem(STORAGE_KEYS.medicines);
@@ -74,6 +86,8 @@ const MedicineReminderApp = () => {
     if (storedNotifs) setNotifications(JSON.parse(storedNotifs));
     if (storedHistory) setDosageHistory(JSON.parse(storedHistory));
 
+    importNativeDoses(storedMeds ? JSON.parse(storedMeds) : []);
+
     // CRITICAL FIX: Delay cleanup to ensure medicines are loaded first
     // This prevents cancelling valid alarms during app startup
     setTimeout(() => {
@@ -81,6 +95,172 @@ const MedicineReminderApp = () => {
     }, 2000); // Wait 2 seconds for app to fully initialize
   }, []);
 
+  // Doses marked taken from the native alarm screen or notification, and alarms that stopped
+  // unanswered, are written to the native dose history and inventory; fold the ones not seen yet
+  // into the app's history and pill counts
+  const importNativeDoses = (storedMedicines) => {
+    importChainRef.current = importChainRef.current.then(() =>
+      runNativeDoseImport(storedMedicines ?? JSON.parse(localStorage.getItem(STORAGE_KEYS.medicines) || '[]')));
+    return importChainRef.current;
+  };
+
+  const runNativeDoseImport = async (storedMedicines) => {
+    const plugin = window.Capacitor?.Plugins?.MedicineAlarm;
+    if (!plugin || !window.Capacitor.isNativePlatform()) {
+      nativeSyncedRef.current = true;
+      return;
+    }
+    let updatedMedicines = storedMedicines;
+    try {
+      let sequence = parseInt(localStorage.getItem(STORAGE_KEYS.nativeHistorySequence) || '0', 10);
+      const events = [];
+      for (;;) {
+        const page = await plugin.readDoseHistory({ fromSequence: sequence, limit: 100 });
+        if (!page.events || page.events.length === 0) break;
+        events.push(...page.events);
+        sequence = page.nextSequence;
+      }
+
+      // Doses the app recorded itself are already in its history and pill counts
+      const nativeEvents = events.filter(e => e.source !== 'app');
+      if (nativeEvents.length > 0) {
+        const taken = nativeEvents.filter(e => e.status === 'taken');
+        const newRecords = nativeEvents.map(e => ({
+          id: `native-${e.sequence}`,
+          medicineId: isNaN(Number(e.medicineId)) ? e.medicineId : Number(e.medicineId),
+          medicineName: e.medicineName,
+          patientName: e.patientName,
+          dosage: e.dosage,
+          takenAt: new Date(e.time).toISOString(),
+          status: e.status
+        })).reverse();
+        setDosageHistory(prev => [...newRecords, ...prev]);
+        updatedMedicines = storedMedicines.map(m => {
+          const doses = taken.filter(e => e.medicineId === String(m.id));
+          if (doses.length === 0) return m;
+          const used = doses.reduce((sum, e) => sum + (e.quantity > 0 ? e.quantity : m.dosage), 0);
+          return { ...m, currentPills: Math.max(0, m.currentPills - used) };
+        });
+        setMedicines(updatedMedicines);
+        console.log(`✅ Imported ${taken.length} dose(s) taken and ${nativeEvents.length - taken.length} missed from the alarm screen`);
+      }
+      localStorage.setItem(STORAGE_KEYS.nativeHistorySequence, String(sequence));
+    } catch (error) {
+      console.error('❌ Error importing native doses:', error);
+    }
+    nativeSyncedRef.current = true;
+    pushNativeInventory(updatedMedicines);
+  };
+
+  // Doses recorded in the app go to the native history too, so adherence covers them. They are
+  // tagged 'app' there and the import above skips them: their pills are already counted here
+  const recordNativeDose = (medicine, status, quantity = status === 'taken' ? Number(medicine?.dosage) || 0 : 0) => {
+    const plugin = window.Capacitor?.Plugins?.MedicineAlarm;
+    if (!medicine || !plugin || !window.Capacitor.isNativePlatform()) return;
+    plugin.appendDoseEvent({
+      status,
+      medicineId: String(medicine.id),
+      medicineName: medicine.name,
+      patientName: medicine.patientName || '',
+      dosage: `${medicine.dosage} ${medicine.dosageType}`,
+      quantity
+    }).catch(error => console.error('❌ Error recording dose natively:', error));
+  };
+
+  const pushNativeInventory = (meds) => {
+    const plugin = window.Capacitor?.Plugins?.MedicineAlarm;
+    if (!nativeSyncedRef.current || !plugin || !window.Capacitor.isNativePlatform()) return;
+    plugin.syncInventory({
+      medicines: meds.map(m => ({
+        medicineId: String(m.id),
+        currentPills: Number(m.currentPills) || 0,
+        dosePills: Number(m.dosage) || 0
+      })),
+      historySequence: parseInt(localStorage.getItem(STORAGE_KEYS.nativeHistorySequence) || '0', 10)
+    }).catch(error => console.error('❌ Error syncing native inventory:', error));
+  };
+
+  // Native alarm events keep the UI current without polling: live events while the app is open,
+  // plus a replay of the ones that happened while it was closed
+  useEffect(() => {
+    const plugin = window.Capacitor?.Plugins?.MedicineAlarm;
+    if (!plugin || !window.Capacitor.isNativePlatform()) return;
+
+    let lastSequence = parseInt(localStorage.getItem(STORAGE_KEYS.alarmEventSequence) || '0', 10);
+    let cancelled = false;
+    // Live events wait here until the replay is applied; delivering one first would move
+    // lastSequence past replayed events and drop them as already seen
+    let liveEvents = [];
+    const handles = [];
+    const deliverAlarmEvent = (event) => {
+      if (!event || event.sequence <= lastSequence) return;
+      lastSequence = event.sequence;
+      localStorage.setItem(STORAGE_KEYS.alarmEventSequence, String(lastSequence));
+      applyAlarmEvent(event);
+    };
+    const handleAlarmEvent = (event) => {
+      if (liveEvents) {
+        liveEvents.push(event);
+      } else {
+        deliverAlarmEvent(event);
+      }
+    };
+
+    const subscribe = async () => {
+      for (const name of ALARM_EVENT_NAMES) {
+        const handle = await plugin.addListener(name, handleAlarmEvent);
+        if (cancelled) {
+          handle.remove();
+          return;
+        }
+        handles.push(handle);
+      }
+      let replayed = [];
+      try {
+        const replay = await plugin.getAlarmEvents({ afterSequence: lastSequence });
+        replayed = replay.events || [];
+      } finally {
+        // Replay and buffered live events overlap; in sequence order each is applied once
+        const buffered = liveEvents;
+        liveEvents = null;
+        if (!cancelled) {
+          [...replayed, ...buffered]
+            .filter(Boolean)
+            .sort((a, b) => a.sequence - b.sequence)
+            .forEach(deliverAlarmEvent);
+        }
+      }
+    };
+    subscribe().catch(error => console.error('❌ Error subscribing to alarm events:', error));
+
+    return () => {
+      cancelled = true;
+      handles.forEach(handle => handle.remove());
+    };
+  }, []);
+
+  const applyAlarmEvent = (event) => {
+    console.log(`📣 Alarm event ${event.type}:`, event.doses?.map(d => d.medicineName).join(', '));
+    if (event.type === 'alarmFired') {
+      setScheduleTick(tick => tick + 1);
+      return;
+    }
+    if (event.type === 'alarmTaken' || event.type === 'alarmAutoStopped') {
+      importNativeDoses();
+    }
+
+    const status = event.type === 'alarmTaken' ? 'taken' : event.type === 'alarmAutoStopped' ? 'missed' : null;
+    if (!status) return;
+    const medicineIds = new Set((event.doses || []).map(d => d.medicineId));
+    const day = new Date(event.time).toDateString();
+    setNotifications(prev => prev.map(n =>
+      n.type !== 'refill' && n.status === 'pending' && medicineIds.has(String(n.medicineId)) &&
+        new Date(n.time).toDateString() === day
+        ? { ...n, status }
+        : n
+    ));
+  };
+
   // Clean up any notifications scheduled for past times
   const cleanupPastNotifications = async () => {
     try {
@@ -116,6 +296,9 @@ const MedicineReminderApp = () => {
   // Save medicines to localStorage whenever they change
   useEffect(() => {
     localStorage.setItem(STORAGE_KEYS.medicines, JSON.stringify(medicines));
+
+    // Keep the native inventory in step so a dose taken from the alarm screen counts pills
+    pushNativeInventory(medicines);
   }, [medicines]);
 
   // Save notifications to localStorage whenever they change
@@ -230,6 +413,7 @@ const MedicineReminderApp = () => {
                     const currentHistory = JSON.parse(localStorage.getItem(STORAGE_KEYS.dosageHistory) || '[]');
                     const updatedHistory = [newRecord, ...currentHistory];
                     localStorage.setItem(STORAGE_KEYS.dosageHistory, JSON.stringify(updatedHistory));
+                    recordNativeDose(medicine, 'taken');
 
                     // Update current pills count
                     const updatedMedicines = medicines.map(m =>
@@ -311,6 +495,7 @@ const MedicineReminderApp = () => {
                     const currentHistory = JSON.parse(localStorage.getItem(STORAGE_KEYS.dosageHistory) || '[]');
                     const updatedHistory = [skipRecord, ...currentHistory];
                     localStorage.setItem(STORAGE_KEYS.dosageHistory, JSON.stringify(updatedHistory));
+                    recordNativeDose(medicine_skip, 'skipped');
                   }
 
                   // Cancel this notification
@@ -445,11 +630,15 @@ const MedicineReminderApp = () => {
       }
     };
 
-    const interval = setInterval(generateNotifications, 60000); // Check every minute
-    generateNotifications(); // Initial check
+    generateNotifications();
 
-    return () => clearInterval(interval);
-  }, [medicines, notifications]);
+    // No polling: native alarm events bump scheduleTick, and one timer picks up the next day
+    const now = new Date();
+    const nextDay = new Date(now.getFullYear(), now.getMonth(), now.getDate() + 1, 0, 0, 5);
+    const timer = setTimeout(() => setScheduleTick(tick => tick + 1), nextDay.getTime() - now.getTime());
+
+    return () => clearTimeout(timer);
+  }, [medicines, notifications, scheduleTick]);
 
   const handleImageUpload = (e) => {
     const file = e.target.files[0];
@@ -782,15 +971,24 @@ const MedicineReminderApp = () => {
         console.log(`🚫 Cancelled ${pending.notifications.length} pending notifications`);
       }
 
-      // Cancel all native alarms for existing medicines
-      for (const medicine of medicines) {
-        if (medicine.alertType === 'native-alarm') {
-          await cancelNativeAlarm(medicine.id);
+      // Native alarms: ONE declarative sync of the whole set. Native diffs it against what is
+      // armed and only touches alarms that were added, changed or removed
+      let pendingMedicines = medicines;
+      const nativeMedicines = medicines.filter(m => m.alertType === 'native-alarm');
+      if (window.Capacitor?.isNativePlatform() && window.Capacitor.Plugins?.MedicineAlarm) {
+        try {
+          const syncResult = await window.Capacitor.Plugins.MedicineAlarm.syncAlarms({
+            alarms: nativeMedicines.map(nativeAlarmSpec)
+          });
+          console.log(`🔁 Native alarms synced: +${syncResult.added.length} ~${syncResult.changed.length} -${syncResult.removed.length} =${syncResult.unchanged}`);
+          pendingMedicines = medicines.filter(m => m.alertType !== 'native-alarm');
+        } catch (error) {
+          console.error('❌ Native alarm sync failed, scheduling one by one:', error);
         }
       }
 
-      // Reschedule for all medicines with a small delay to avoid conflicts
-      for (const medicine of medicines) {
+      // Reschedule the rest with a small delay to avoid conflicts
+      for (const medicine of pendingMedicines) {
         await new Promise(resolve => setTimeout(resolve, 100)); // 100ms delay between each
         await scheduleLocalNotification(medicine);
       }
@@ -898,6 +1096,7 @@ const MedicineReminderApp = () => {
       const currentHistory = JSON.parse(localStorage.getItem(STORAGE_KEYS.dosageHistory) || '[]');
       const updatedHistory = [newRecord, ...currentHistory];
       localStorage.setItem(STORAGE_KEYS.dosageHistory, JSON.stringify(updatedHistory));
+      recordNativeDose(medicine, 'taken');
 
       // Update current pills count
       const updatedMedicines = medicines.map(m =>
@@ -1029,6 +1228,7 @@ const MedicineReminderApp = () => {
       status: 'taken'
     };
     setDosageHistory(prev => [...prev, dosageRecord]);
+    recordNativeDose(medicine, 'taken', 1);
 
     // Update pill count
     setMedicines(prev =>
@@ -1041,6 +1241,8 @@ const MedicineReminderApp = () => {
   };
 
   const markMedicineMissed = (notificationId) => {
+    const notification = notifications.find(n => n.id === notificationId);
+    recordNativeDose(medicines.find(m => m.id === notification?.medicineId), 'missed');
     setNotifications(prev =>
       prev.map(n =>
         n.id === notificationId
@@ -1338,11 +1540,25 @@ For Android 12+, ensure "Alarms & reminders" permission is enabled in app settin
     }
   };
 
+  // ONE recurring alarm per medicine - the native rule engine computes each next dose
+  // lazily, so the schedule never runs out and no per-day alarms need to be queued here
+  const nativeAlarmSpec = (medicine) => ({
+    medicineId: String(medicine.id),
+    medicineName: medicine.name,
+    dosage: `${medicine.dosage} ${medicine.dosageType}`,
+    patientName: medicine.patientName || 'Patient',
+    alarmId: generateNotificationId(medicine.id, 0),
+    rule: {
+      type: 'daily',
+      times: [medicine.alertTime]
+    }
+  });
+
   // NEW: Native Medicine Alarm functions using our custom plugin
-  const scheduleNativeAlarm = async (medicine, scheduleForDays = 7) => {
+  const scheduleNativeAlarm = async (medicine) => {
     try {
       if (window.Capacitor && window.Capacitor.isNativePlatform()) {
-        console.log('🚨 Scheduling NATIVE alarms for:', medicine.name, `(${scheduleForDays} days)`);
+        console.log('🚨 Scheduling NATIVE alarms for:', medicine.name, `(daily at ${medicine.alertTime})`);
 
         // Enhanced debugging: Log the medicine details to understand the issue
         console.log('📋 Medicine details:', {
@@ -1375,82 +1591,41 @@ For Android 12+, ensure "Alarms & reminders" permission is enabled in app settin
         console.log('   • RTC_WAKEUP alarm type for device wake-up');
         console.log('📱 Testing native alarm for:', medicine.name);
 
-        const [hours, minutes] = medicine.alertTime.split(':');
         const results = [];
 
-        // Schedule native alarms for multiple days to ensure persistence  
-        for (let day = 0; day < scheduleForDays; day++) {
-          const now = new Date();
-          const alarmTime = new Date(now);
-          alarmTime.setDate(alarmTime.getDate() + day);
-          alarmTime.setHours(parseInt(hours), parseInt(minutes), 0, 0);
-
-          // For day 0, check if time has passed - strict no-past-time policy
-          const timeDiffMinutes = (alarmTime.getTime() - now.getTime()) / (1000 * 60);
-
-          // Strict logic: Only schedule if time is in the future (at least 5 seconds from now)
-          // This prevents alarms from triggering immediately when app opens
-          // REDUCED from 10s to 5s for better reliability
-          const minimumFutureSeconds = 5; // Must be at least 5 seconds in the future
-
-          console.log(`🕒 Time comparison (Day ${day}):`, {
-            alarmTime: alarmTime.toLocaleString(),
-            now: now.toLocaleString(),
-            timeDiffMinutes: timeDiffMinutes,
-            timeDiffSeconds: (alarmTime.getTime() - now.getTime()) / 1000,
-            willSchedule: day > 0 || (alarmTime.getTime() - now.getTime()) / 1000 >= minimumFutureSeconds
-          });
+        const spec = nativeAlarmSpec(medicine);
+        const alarmId = spec.alarmId;
 
-          if (day === 0 && (alarmTime.getTime() - now.getTime()) / 1000 < minimumFutureSeconds) {
-            const secondsRemaining = ((alarmTime.getTime() - now.getTime()) / 1000).toFixed(1);
-            console.warn(`🚨 NATIVE ALARM SKIPPED: ${medicine.name}`);
-            console.warn(`   Reason: Only ${secondsRemaining}s remaining (need ${minimumFutureSeconds}s minimum)`);
-            console.warn(`   Scheduled time: ${alarmTime.toLocaleString()}`);
-            console.warn(`   Current time: ${now.toLocaleString()}`);
-            continue;
-          }
+        console.log('🚨 Syncing recurring native alarm:', { alarmId, alertTime: medicine.alertTime, medicineName: medicine.name });
 
-          const alarmId = generateNotificationId(medicine.id, day);
-          const triggerTime = alarmTime.getTime();
+        try {
+          // Scoped to this medicine: an unchanged alarm is left armed, and stale alarms of this
+          // medicine (e.g. per-day alarms from older versions) are cancelled in the same call
+          const syncResult = await window.Capacitor.Plugins.MedicineAlarm.syncAlarms({
+            alarms: [spec],
+            medicineIds: [spec.medicineId]
+          });
 
-          console.log(`🚨 Scheduling native alarm ${day + 1}/${scheduleForDays}:`, {
+          console.log(`✅ Native recurring alarm synced:`, {
+            added: syncResult.added,
+            changed: syncResult.changed,
+            removed: syncResult.removed,
+            unchanged: syncResult.unchanged
+          });
+          const armed = syncResult.alarms?.find(a => a.alarmId === alarmId) || {};
+          results.push({
             alarmId,
-            triggerTime,
-            triggerTimeFormatted: new Date(triggerTime).toLocaleString(),
-            medicineName: medicine.name
+            triggerTime: armed.triggerTime,
+            triggerTimeFormatted: armed.triggerTime ? new Date(armed.triggerTime).toLocaleString() : null,
+            result: armed
           });
-
-          try {
-            const result = await window.Capacitor.Plugins.MedicineAlarm.scheduleAlarm({
-              medicineName: medicine.name,
-              dosage: `${medicine.dosage} ${medicine.dosageType}`,
-              patientName: medicine.patientName || 'Patient',
-              triggerTime: triggerTime,
-              alarmId: alarmId
-            });
-
-            console.log(`✅ Native alarm ${day + 1} scheduled successfully:`, result);
-            results.push({
-              day,
-              alarmId,
-              triggerTime,
-              result
-            });
-
-          } catch (alarmError) {
-            console.error(`❌ Failed to schedule native alarm for day ${day}:`, alarmError);
-            // Don't throw here, continue with other days
-            results.push({
-              day,
-              alarmId,
-              triggerTime,
-              error: alarmError.message
-            });
-          }
+        } catch (alarmError) {
+          console.error(`❌ Failed to schedule native recurring alarm:`, alarmError);
+          results.push({ alarmId, error: alarmError.message });
         }
 
         console.log(`🚨 Native alarm scheduling complete for ${medicine.name}:`, {
-          totalAttempted: scheduleForDays,
+          totalAttempted: 1,
           successful: results.filter(r => !r.error).length,
           failed: results.filter(r => r.error).length,
           results
@@ -1460,7 +1635,7 @@ For Android 12+, ensure "Alarms & reminders" permission is enabled in app settin
         return {
           medicine: medicine.name,
           totalScheduled: results.filter(r => !r.error).length,
-          totalAttempted: scheduleForDays,
+          totalAttempted: 1,
           results
         };
 
@@ -1486,21 +1661,25 @@ For Android 12+, ensure "Alarms & reminders" permission is enabled in app settin
         }
 
         const results = [];
-        // Cancel alarms for the next 7 days (matching the scheduling logic)
+        // Cancel the recurring alarm (day 0) plus per-day alarms left by older versions in ONE bridge call
+        const alarmIds = [];
         for (let day = 0; day < 7; day++) {
-          const alarmId = generateNotificationId(medicineId, day);
+          alarmIds.push(generateNotificationId(medicineId, day));
+        }
 
-          try {
-            const result = await window.Capacitor.Plugins.MedicineAlarm.cancelAlarm({
-              alarmId: alarmId
-            });
+        try {
+          const batchResult = await window.Capacitor.Plugins.MedicineAlarm.cancelAlarms({ alarmIds });
 
-            console.log(`✅ Native alarm cancelled for day ${day} (ID: ${alarmId}):`, result);
-            results.push({ day, alarmId, success: true });
-          } catch (cancelError) {
-            console.error(`❌ Failed to cancel native alarm for day ${day}:`, cancelError);
+          console.log(`✅ Native alarms cancelled (IDs: ${alarmIds.join(', ')}):`, batchResult);
+          alarmIds.forEach((alarmId, day) => {
+            const item = batchResult.results?.[day] || {};
+            results.push({ day, alarmId, success: !!item.success, ...(item.success ? {} : { error: item.error }) });
+          });
+        } catch (cancelError) {
+          console.error(`❌ Failed to cancel native alarms:`, cancelError);
+          alarmIds.forEach((alarmId, day) => {
             results.push({ day, alarmId, error: cancelError.message, success: false });
-          }
+          });
         }
 
         console.log(`🚫 Native alarm cancellation complete for medicine ${medicineId}:`, {